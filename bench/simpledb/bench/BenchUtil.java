@@ -0,0 +1,60 @@
+package simpledb.bench;
+
+import org.openjdk.jmh.infra.Blackhole;
+
+import simpledb.*;
+import simpledb.systemtest.SystemTestUtil;
+
+/**
+ * Helpers shared by the benchmarks: synthetic tables made with the system
+ * test utilities, and draining operators into a Blackhole.
+ */
+public class BenchUtil {
+
+    /**
+     * Resets the database and gives it a buffer pool of the specified
+     * number of pages.
+     */
+    public static void resetDatabase(int poolPages) {
+        Database.reset();
+        Database.resetBufferPool(poolPages);
+    }
+
+    /**
+     * Creates a table of random integers, and adds it to the catalog.
+     *
+     * @param columns
+     *            the number of fields of each tuple
+     * @param rows
+     *            the number of tuples
+     * @param maxValue
+     *            the values of each field are below this
+     */
+    public static HeapFile createTable(int columns, int rows, int maxValue) throws Exception {
+        return SystemTestUtil.createRandomHeapFile(columns, rows, maxValue, null, null);
+    }
+
+    /** @return the number of pages a pool needs to cache the specified tables */
+    public static int pagesOf(HeapFile... files) {
+        int pages = 0;
+        for (HeapFile f : files)
+            pages += f.numPages();
+        return pages;
+    }
+
+    /**
+     * Runs an operator to the end, consuming every tuple.
+     *
+     * @return the number of tuples
+     */
+    public static int drain(DbIterator it, Blackhole bh) throws Exception {
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            bh.consume(it.next());
+            n++;
+        }
+        it.close();
+        return n;
+    }
+}
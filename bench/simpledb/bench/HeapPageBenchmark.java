@@ -0,0 +1,55 @@
+package simpledb.bench;
+
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import simpledb.*;
+
+/**
+ * Decoding HeapPages from bytes, encoding them back, and iterating over
+ * their tuples.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HeapPageBenchmark {
+
+    @Param({ "2", "8" })
+    public int columns;
+
+    private HeapPageId pid;
+    private byte[] data;
+    private HeapPage page;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchUtil.resetDatabase(BufferPool.DEFAULT_PAGES);
+        HeapFile hf = BenchUtil.createTable(columns, 2000, 1 << 16);
+        pid = new HeapPageId(hf.getId(), 0);
+        page = (HeapPage) hf.readPage(pid);
+        data = page.getPageData();
+    }
+
+    @Benchmark
+    public HeapPage decode() throws Exception {
+        return new HeapPage(pid, data);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        return page.getPageData();
+    }
+
+    @Benchmark
+    public void iterate(Blackhole bh) {
+        Iterator<Tuple> it = page.iterator();
+        while (it.hasNext())
+            bh.consume(it.next());
+    }
+}
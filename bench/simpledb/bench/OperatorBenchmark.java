@@ -0,0 +1,81 @@
+package simpledb.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import simpledb.*;
+
+/**
+ * Running the operators over tables cached in the buffer pool, so that what
+ * is measured is the time the operators take rather than file reads. Joins
+ * are of the table with a table a hundredth its size.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OperatorBenchmark {
+
+    @Param({ "10000", "100000" })
+    public int rows;
+
+    private HeapFile table, small;
+    private TransactionId tid;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchUtil.resetDatabase(BufferPool.DEFAULT_PAGES);
+        table = BenchUtil.createTable(4, rows, 1000);
+        small = BenchUtil.createTable(2, rows / 100, 1000);
+        Database.resetBufferPool(BenchUtil.pagesOf(table, small) + 1);
+        tid = new TransactionId();
+    }
+
+    private SeqScan scan() {
+        return new SeqScan(tid, table.getId(), "t");
+    }
+
+    @Benchmark
+    public int seqScan(Blackhole bh) throws Exception {
+        return BenchUtil.drain(scan(), bh);
+    }
+
+    /** A filter that passes about a tenth of the tuples. */
+    @Benchmark
+    public int filter(Blackhole bh) throws Exception {
+        Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100));
+        return BenchUtil.drain(new Filter(p, scan()), bh);
+    }
+
+    /** The same filter, evaluated by the scan itself. */
+    @Benchmark
+    public int pushedFilter(Blackhole bh) throws Exception {
+        Predicate p = new Predicate(1, Predicate.Op.LESS_THAN, new IntField(100));
+        return BenchUtil.drain(new SeqScan(tid, table.getId(), "t", null, new Predicate[] { p }), bh);
+    }
+
+    @Benchmark
+    public int join(Blackhole bh) throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        return BenchUtil.drain(new Join(p, new SeqScan(tid, small.getId(), "s"), scan()), bh);
+    }
+
+    @Benchmark
+    public int aggregate(Blackhole bh) throws Exception {
+        return BenchUtil.drain(new Aggregate(scan(), 1, Aggregator.NO_GROUPING, Aggregator.Op.SUM), bh);
+    }
+
+    @Benchmark
+    public int groupedAggregate(Blackhole bh) throws Exception {
+        return BenchUtil.drain(new Aggregate(scan(), 1, 0, Aggregator.Op.AVG), bh);
+    }
+
+    @Benchmark
+    public int orderBy(Blackhole bh) throws Exception {
+        return BenchUtil.drain(new OrderBy(1, true, scan()), bh);
+    }
+}
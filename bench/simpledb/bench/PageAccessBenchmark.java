@@ -0,0 +1,72 @@
+package simpledb.bench;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import simpledb.*;
+
+/**
+ * Reading pages of a HeapFile from the file, and requesting them from a
+ * BufferPool that caches the whole table (hits) or a single page of it
+ * (misses, each of which evicts a page).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PageAccessBenchmark {
+
+    @Param({ "100", "1000" })
+    public int pages;
+
+    private HeapFile hf;
+    private BufferPool hitPool, missPool;
+    private TransactionId tid;
+    private Random random = new Random(0);
+    private int next = 0;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchUtil.resetDatabase(BufferPool.DEFAULT_PAGES);
+        int tuplesPerPage = (BufferPool.PAGE_SIZE * 8) / (2 * Type.INT_TYPE.getLen() * 8 + 1);
+        hf = BenchUtil.createTable(2, pages * tuplesPerPage, 1 << 16);
+        hitPool = new BufferPool(pages + 1);
+        missPool = new BufferPool(1);
+        tid = new TransactionId();
+        for (int i = 0; i < pages; i++)
+            hitPool.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+    }
+
+    private HeapPageId nextPage() {
+        next = (next + 1) % pages;
+        return new HeapPageId(hf.getId(), next);
+    }
+
+    private HeapPageId randomPage() {
+        return new HeapPageId(hf.getId(), random.nextInt(pages));
+    }
+
+    @Benchmark
+    public Page readPageSequential() {
+        return hf.readPage(nextPage());
+    }
+
+    @Benchmark
+    public Page readPageRandom() {
+        return hf.readPage(randomPage());
+    }
+
+    @Benchmark
+    public Page getPageHit() throws Exception {
+        return hitPool.getPage(tid, randomPage(), Permissions.READ_ONLY);
+    }
+
+    @Benchmark
+    public Page getPageMiss() throws Exception {
+        return missPool.getPage(tid, nextPage(), Permissions.READ_ONLY);
+    }
+}
@@ -59,12 +59,7 @@ public class Aggregate extends Operator {
     		fieldType = fieldTypeDesc.getFieldType(gField);
     	}
     	aggFieldType = fieldTypeDesc.getFieldType(aField);
-    	
-    	if (fieldType == Type.STRING_TYPE) {
-    		agg = new StringAggregator(gField, fieldType, aField, aop);
-    	} else {
-    		agg = new IntegerAggregator(gField, fieldType, aField, aop);
-    	}
+    	agg = newAggregator();
     	
     	aggHash = new Hashtable<Field, Integer>();
     	countHash = new Hashtable<Field, Integer>();
@@ -89,7 +84,7 @@ public class Aggregate extends Operator {
      * */
     public String groupFieldName() {
 	// some code goes here
-	return null;
+	return gField > -1 ? fieldTypeDesc.getFieldName(gField) : null;
     }
 
     /**
@@ -106,7 +101,7 @@ public class Aggregate extends Operator {
      * */
     public String aggregateFieldName() {
 	// some code goes here
-	return null;
+	return fieldTypeDesc.getFieldName(aField);
     }
 
     /**
@@ -169,19 +164,28 @@ public class Aggregate extends Operator {
      */
     public TupleDesc getTupleDesc() {
 	// some code goes here
-	return childIter.getTupleDesc(); //pretty sure its wrong right now
+    	// the aggregate column keeps the name of the aggregated field, which
+    	// is what the select list and order by refer to it by
+    	if (gField > -1) {
+    		return new TupleDesc(new Type[] { fieldType, Type.INT_TYPE },
+    				new String[] { groupFieldName(), aggregateFieldName() });
+    	}
+    	return new TupleDesc(new Type[] { Type.INT_TYPE }, new String[] { aggregateFieldName() });
     }
 
     public void close() {
 	// some code goes here
     	childIter.close();
     	endIter.close();
-    	if (fieldType == Type.INT_TYPE) {
-    		agg = new IntegerAggregator(gField, fieldType, aField, agOperator);
-    	} else {
-    		agg = new StringAggregator(gField, fieldType, aField, agOperator);
+    	agg = newAggregator();
+    }
+
+    /** @return an empty aggregator for the group by field's type */
+    private Aggregator newAggregator() {
+    	if (fieldType == Type.STRING_TYPE) {
+    		return new StringAggregator(gField, fieldType, aField, agOperator);
     	}
-    	
+    	return new IntegerAggregator(gField, fieldType, aField, agOperator);
     }
 
     @Override
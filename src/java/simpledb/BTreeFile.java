@@ -0,0 +1,485 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * BTreeFile is an implementation of a DbFile that stores the tuples of a
+ * table in a B+ tree sorted by one of their fields, the key field. The
+ * tuples are kept on leaf pages, which are chained in key order so that
+ * range searches read only the leaves they need; internal pages route
+ * searches to the right leaf.
+ * <p>
+ * The first page of the file is a {@link BTreeRootPtrPage} locating the root
+ * of the tree. Leaves that overflow are split in two and leaves that fall
+ * below half full borrow tuples from a sibling or are merged with it, and
+ * internal pages are split and merged the same way, so the tree stays
+ * balanced. Pages freed by merges are recorded on {@link BTreeHeaderPage}s
+ * and reused. All pages are read through the BufferPool.
+ * <p>
+ * Pages do not point at their parents; inserts and deletes remember the
+ * path from the root to the leaf they change instead, so splitting a page
+ * never has to touch the children it moves.
+ *
+ * @see BTreeLeafPage
+ * @see BTreeInternalPage
+ */
+public class BTreeFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    File file;
+    TupleDesc tupleDesc;
+    int keyField;
+
+    /**
+     * Constructs a B+ tree file backed by the specified file. The file is
+     * created if it does not exist.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this
+     *            file.
+     * @param key
+     *            the index of the field the tuples are sorted by
+     * @param td
+     *            the schema of the table
+     */
+    public BTreeFile(File f, int key, TupleDesc td) {
+        file = f;
+        keyField = key;
+        tupleDesc = td;
+    }
+
+    /**
+     * Returns the File backing this BTreeFile on disk.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this BTreeFile, the hash of the
+     * absolute name of its file.
+     */
+    public int getId() {
+        return file.getAbsoluteFile().hashCode();
+    }
+
+    /**
+     * Returns the TupleDesc of the table stored in this DbFile.
+     */
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    /** @return the index of the field the tuples are sorted by */
+    public int keyField() {
+        return keyField;
+    }
+
+    /** @return the type of the field the tuples are sorted by */
+    public Type getKeyType() {
+        return tupleDesc.getFieldType(keyField);
+    }
+
+    /**
+     * Returns the number of pages in this BTreeFile, including the root
+     * pointer page and free pages.
+     */
+    public int numPages() {
+        return (int) (file.length() / BufferPool.PAGE_SIZE);
+    }
+
+    private void writePageData(int pgNo, byte[] data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek((long) BufferPool.PAGE_SIZE * pgNo);
+        raf.write(data, 0, BufferPool.PAGE_SIZE);
+        raf.close();
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        BTreePageId id = (BTreePageId) pid;
+        try {
+            if (id.pageNumber() == 0 && file.length() == 0) {
+                // a new file, make it an empty tree
+                writePageData(0, BTreePage.createEmptyPageData());
+            }
+            if (id.pageNumber() >= numPages())
+                throw new IllegalArgumentException("page " + pid + " does not exist");
+            byte[] data = new byte[BufferPool.PAGE_SIZE];
+            RandomAccessFile raf = new RandomAccessFile(file, "r");
+            try {
+                raf.seek((long) BufferPool.PAGE_SIZE * id.pageNumber());
+                raf.readFully(data);
+            } finally {
+                raf.close();
+            }
+            switch (id.pgcateg()) {
+            case BTreePageId.ROOT_PTR:
+                return new BTreeRootPtrPage(id, data);
+            case BTreePageId.INTERNAL:
+                return new BTreeInternalPage(id, data, getKeyType());
+            case BTreePageId.LEAF:
+                return new BTreeLeafPage(id, data, tupleDesc, keyField);
+            default:
+                return new BTreeHeaderPage(id, data);
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("unable to read page " + pid, e);
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        page.markDirty(false, null);
+        writePageData(page.getId().pageNumber(), page.getPageData());
+    }
+
+    private Page getPage(TransactionId tid, HashMap<PageId, Page> dirtypages, BTreePageId pid,
+            Permissions perm) throws DbException, TransactionAbortedException {
+        Page p = Database.getBufferPool().getPage(tid, pid, perm);
+        if (p == null)
+            throw new DbException("page " + pid + " of " + file.getName() + " does not exist");
+        if (perm == Permissions.READ_WRITE) {
+            p.markDirty(true, tid);
+            dirtypages.put(pid, p);
+        }
+        return p;
+    }
+
+    private BTreeRootPtrPage getRootPtrPage(TransactionId tid, HashMap<PageId, Page> dirtypages,
+            Permissions perm) throws DbException, TransactionAbortedException {
+        return (BTreeRootPtrPage) getPage(tid, dirtypages, new BTreePageId(getId(), 0, BTreePageId.ROOT_PTR), perm);
+    }
+
+    /**
+     * @return the id of the root page of the tree, or null if the tree is
+     *         empty
+     */
+    BTreePageId getRootId(TransactionId tid) throws DbException, TransactionAbortedException {
+        return getRootPtrPage(tid, new HashMap<PageId, Page>(), Permissions.READ_ONLY).getRootId();
+    }
+
+    /**
+     * Finds the leftmost leaf that may hold tuples with the specified key,
+     * or the leftmost leaf of the tree if key is null.
+     *
+     * @param path if not null, the internal pages on the way from the root
+     *            to the leaf are added to it
+     * @return the leaf, or null if the tree is empty
+     */
+    BTreeLeafPage findLeafPage(TransactionId tid, HashMap<PageId, Page> dirtypages, Field key,
+            Permissions perm, ArrayList<BTreeInternalPage> path)
+            throws DbException, TransactionAbortedException {
+        BTreePageId pid = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY).getRootId();
+        if (pid == null)
+            return null;
+        while (pid.pgcateg() == BTreePageId.INTERNAL) {
+            BTreeInternalPage page = (BTreeInternalPage) getPage(tid, dirtypages, pid, perm);
+            if (path != null)
+                path.add(page);
+            pid = page.getChildId(page.findChild(key));
+        }
+        return (BTreeLeafPage) getPage(tid, dirtypages, pid, perm);
+    }
+
+    /**
+     * Finds the path from the root to the specified leaf, which holds a
+     * tuple with the specified key. Several subtrees may hold tuples with
+     * the key, so each of them is searched in turn.
+     *
+     * @return true if the leaf was found, in which case path holds the
+     *         internal pages above it
+     */
+    private boolean findPath(TransactionId tid, HashMap<PageId, Page> dirtypages, BTreePageId pid,
+            Field key, int leaf, ArrayList<BTreeInternalPage> path)
+            throws DbException, TransactionAbortedException {
+        if (pid.pgcateg() == BTreePageId.LEAF)
+            return pid.pageNumber() == leaf;
+        BTreeInternalPage page = (BTreeInternalPage) getPage(tid, dirtypages, pid, Permissions.READ_WRITE);
+        path.add(page);
+        for (int i = page.findChild(key); i < page.getNumChildren(); i++) {
+            if (findPath(tid, dirtypages, page.getChildId(i), key, leaf, path))
+                return true;
+            if (i < page.getNumKeys() && key.compare(Predicate.Op.LESS_THAN, page.getKey(i)))
+                break;
+        }
+        path.remove(path.size() - 1);
+        return false;
+    }
+
+    /**
+     * Returns an empty page of the specified kind, reusing a free page if
+     * there is one and appending a page to the file otherwise.
+     */
+    private BTreePage getEmptyPage(TransactionId tid, HashMap<PageId, Page> dirtypages, int pgcateg)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeRootPtrPage rootPtr = getRootPtrPage(tid, dirtypages, Permissions.READ_ONLY);
+        int pgNo = -1;
+        BTreePageId hid = rootPtr.getHeaderId();
+        for (int i = 0; hid != null && pgNo < 0; i++) {
+            BTreeHeaderPage header = (BTreeHeaderPage) getPage(tid, dirtypages, hid, Permissions.READ_ONLY);
+            int slot = header.getFirstFreeSlot();
+            if (slot >= 0) {
+                header = (BTreeHeaderPage) getPage(tid, dirtypages, hid, Permissions.READ_WRITE);
+                header.setFree(slot, false);
+                pgNo = i * BTreeHeaderPage.getNumSlots() + slot;
+            }
+            hid = header.getNextId();
+        }
+        if (pgNo < 0)
+            pgNo = numPages();
+
+        // start from an empty page, and forget anything cached for the page
+        // when it was last used
+        writePageData(pgNo, BTreePage.createEmptyPageData());
+        for (int c = BTreePageId.ROOT_PTR; c <= BTreePageId.HEADER; c++) {
+            BTreePageId pid = new BTreePageId(getId(), pgNo, c);
+            Database.getBufferPool().discardPage(pid);
+            dirtypages.remove(pid);
+        }
+        return (BTreePage) getPage(tid, dirtypages, new BTreePageId(getId(), pgNo, pgcateg), Permissions.READ_WRITE);
+    }
+
+    /**
+     * Records that the specified page is no longer used by the tree.
+     */
+    private void freePage(TransactionId tid, HashMap<PageId, Page> dirtypages, BTreePageId pid)
+            throws DbException, IOException, TransactionAbortedException {
+        dirtypages.remove(pid);
+        Database.getBufferPool().discardPage(pid);
+
+        int index = pid.pageNumber() / BTreeHeaderPage.getNumSlots();
+        BTreePage prev = getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE);
+        BTreePageId hid = ((BTreeRootPtrPage) prev).getHeaderId();
+        for (int i = 0; i <= index; i++) {
+            if (hid == null) {
+                // extend the chain of header pages
+                hid = new BTreePageId(getId(), numPages(), BTreePageId.HEADER);
+                writePageData(hid.pageNumber(), BTreePage.createEmptyPageData());
+                if (prev instanceof BTreeRootPtrPage)
+                    ((BTreeRootPtrPage) prev).setHeaderId(hid);
+                else
+                    ((BTreeHeaderPage) prev).setNextId(hid);
+            }
+            prev = (BTreeHeaderPage) getPage(tid, dirtypages, hid, Permissions.READ_WRITE);
+            hid = ((BTreeHeaderPage) prev).getNextId();
+        }
+        ((BTreeHeaderPage) prev).setFree(pid.pageNumber() % BTreeHeaderPage.getNumSlots(), true);
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(tupleDesc))
+            throw new DbException("tuple does not match the schema of the table");
+
+        HashMap<PageId, Page> dirtypages = new HashMap<PageId, Page>();
+        Field key = t.getField(keyField);
+        ArrayList<BTreeInternalPage> path = new ArrayList<BTreeInternalPage>();
+        BTreeLeafPage leaf = findLeafPage(tid, dirtypages, key, Permissions.READ_WRITE, path);
+        if (leaf == null) {
+            // the first tuple, make a leaf the root
+            leaf = (BTreeLeafPage) getEmptyPage(tid, dirtypages, BTreePageId.LEAF);
+            getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE).setRootId(leaf.getId());
+        }
+        leaf.insertTuple(t);
+        if (leaf.getNumTuples() > leaf.getMaxTuples())
+            splitLeafPage(tid, dirtypages, leaf, path);
+        return new ArrayList<Page>(dirtypages.values());
+    }
+
+    /**
+     * Moves the upper half of the tuples of the specified leaf, which has
+     * one tuple too many, to a new leaf to its right, and adds the first key
+     * of the new leaf to the parent.
+     */
+    private void splitLeafPage(TransactionId tid, HashMap<PageId, Page> dirtypages, BTreeLeafPage page,
+            ArrayList<BTreeInternalPage> path) throws DbException, IOException, TransactionAbortedException {
+        BTreeLeafPage right = (BTreeLeafPage) getEmptyPage(tid, dirtypages, BTreePageId.LEAF);
+        int mid = page.getNumTuples() / 2;
+        List<Tuple> moved = page.tuples.subList(mid, page.getNumTuples());
+        right.tuples.addAll(moved);
+        moved.clear();
+        right.renumber(0);
+        right.setRightSiblingId(page.getRightSiblingId());
+        page.setRightSiblingId(right.getId());
+        insertEntry(tid, dirtypages, path, right.getKey(0), page.getId(), right.getId());
+    }
+
+    /**
+     * Adds a key and the page to its right just after the specified left
+     * page in the last page of path, the parent of left, splitting pages up
+     * the path as needed. If left is the root, a new root is made above it.
+     */
+    private void insertEntry(TransactionId tid, HashMap<PageId, Page> dirtypages,
+            ArrayList<BTreeInternalPage> path, Field key, BTreePageId left, BTreePageId right)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeInternalPage parent;
+        if (path.isEmpty()) {
+            parent = (BTreeInternalPage) getEmptyPage(tid, dirtypages, BTreePageId.INTERNAL);
+            getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE).setRootId(parent.getId());
+        } else {
+            parent = path.remove(path.size() - 1);
+        }
+        parent.insertEntry(key, left, right);
+        if (parent.getNumKeys() > parent.getMaxKeys())
+            splitInternalPage(tid, dirtypages, parent, path);
+    }
+
+    /**
+     * Moves the upper half of the entries of the specified internal page,
+     * which has one key too many, to a new page to its right, and pushes the
+     * middle key up to the parent.
+     */
+    private void splitInternalPage(TransactionId tid, HashMap<PageId, Page> dirtypages,
+            BTreeInternalPage page, ArrayList<BTreeInternalPage> path)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeInternalPage right = (BTreeInternalPage) getEmptyPage(tid, dirtypages, BTreePageId.INTERNAL);
+        int mid = page.getNumKeys() / 2;
+        Field pushUp = page.keys.get(mid);
+        List<Field> movedKeys = page.keys.subList(mid + 1, page.getNumKeys());
+        List<Integer> movedChildren = page.children.subList(mid + 1, page.getNumChildren());
+        right.childCategory = page.childCategory;
+        right.keys.addAll(movedKeys);
+        right.children.addAll(movedChildren);
+        movedKeys.clear();
+        movedChildren.clear();
+        page.keys.remove(mid);
+        insertEntry(tid, dirtypages, path, pushUp, page.getId(), right.getId());
+    }
+
+    // see DbFile.java for javadocs
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        RecordId rid = t.getRecordId();
+        if (rid == null || !(rid.getPageId() instanceof BTreePageId) || rid.getPageId().getTableId() != getId())
+            throw new DbException("tuple is not stored in this table");
+
+        HashMap<PageId, Page> dirtypages = new HashMap<PageId, Page>();
+        ArrayList<BTreeInternalPage> path = new ArrayList<BTreeInternalPage>();
+        BTreePageId root = getRootId(tid);
+        BTreePageId leafId = (BTreePageId) rid.getPageId();
+        if (root == null || !findPath(tid, dirtypages, root, t.getField(keyField), leafId.pageNumber(), path))
+            throw new DbException("tuple is not stored in this table");
+
+        BTreeLeafPage leaf = (BTreeLeafPage) getPage(tid, dirtypages, leafId, Permissions.READ_WRITE);
+        leaf.deleteTuple(t);
+        try {
+            if (!path.isEmpty() && leaf.getNumTuples() < leaf.getMaxTuples() / 2)
+                handleMinOccupancyLeaf(tid, dirtypages, leaf, path);
+        } catch (IOException e) {
+            throw new DbException("unable to free page: " + e.getMessage());
+        }
+        return leaf;
+    }
+
+    /**
+     * Refills a leaf that is less than half full with tuples from a sibling,
+     * or merges it with the sibling if both fit on one page.
+     */
+    private void handleMinOccupancyLeaf(TransactionId tid, HashMap<PageId, Page> dirtypages,
+            BTreeLeafPage page, ArrayList<BTreeInternalPage> path)
+            throws DbException, IOException, TransactionAbortedException {
+        BTreeInternalPage parent = path.get(path.size() - 1);
+        int i = parent.indexOfChild(page.getId().pageNumber());
+        // the separator between left and right is key sep of the parent
+        int sep = i > 0 ? i - 1 : i;
+        BTreeLeafPage left = (BTreeLeafPage) getPage(tid, dirtypages, parent.getChildId(sep), Permissions.READ_WRITE);
+        BTreeLeafPage right = (BTreeLeafPage) getPage(tid, dirtypages, parent.getChildId(sep + 1), Permissions.READ_WRITE);
+
+        if (left.getNumTuples() + right.getNumTuples() > left.getMaxTuples()) {
+            // redistribute the tuples evenly
+            ArrayList<Tuple> all = new ArrayList<Tuple>(left.tuples);
+            all.addAll(right.tuples);
+            int half = all.size() / 2;
+            left.tuples.clear();
+            left.tuples.addAll(all.subList(0, half));
+            right.tuples.clear();
+            right.tuples.addAll(all.subList(half, all.size()));
+            left.renumber(0);
+            right.renumber(0);
+            parent.keys.set(sep, right.getKey(0));
+            return;
+        }
+
+        left.tuples.addAll(right.tuples);
+        left.renumber(0);
+        left.setRightSiblingId(right.getRightSiblingId());
+        parent.deleteKeyAndRightChild(sep);
+        freePage(tid, dirtypages, right.getId());
+        handleMinOccupancyInternal(tid, dirtypages, path);
+    }
+
+    /**
+     * Handles the last page of path after one of its entries was removed by
+     * a merge: a root with no keys is replaced by its only child, and other
+     * pages that are less than half full are refilled from a sibling or
+     * merged with it.
+     */
+    private void handleMinOccupancyInternal(TransactionId tid, HashMap<PageId, Page> dirtypages,
+            ArrayList<BTreeInternalPage> path) throws DbException, IOException, TransactionAbortedException {
+        BTreeInternalPage page = path.remove(path.size() - 1);
+        if (path.isEmpty()) {
+            if (page.getNumKeys() == 0) {
+                getRootPtrPage(tid, dirtypages, Permissions.READ_WRITE).setRootId(page.getChildId(0));
+                freePage(tid, dirtypages, page.getId());
+            }
+            return;
+        }
+        if (page.getNumKeys() >= page.getMaxKeys() / 2)
+            return;
+
+        BTreeInternalPage parent = path.get(path.size() - 1);
+        int i = parent.indexOfChild(page.getId().pageNumber());
+        int sep = i > 0 ? i - 1 : i;
+        BTreeInternalPage left = (BTreeInternalPage) getPage(tid, dirtypages, parent.getChildId(sep), Permissions.READ_WRITE);
+        BTreeInternalPage right = (BTreeInternalPage) getPage(tid, dirtypages, parent.getChildId(sep + 1), Permissions.READ_WRITE);
+
+        // pull the separator down between the keys of the two pages
+        ArrayList<Field> keys = new ArrayList<Field>(left.keys);
+        keys.add(parent.getKey(sep));
+        keys.addAll(right.keys);
+        ArrayList<Integer> children = new ArrayList<Integer>(left.children);
+        children.addAll(right.children);
+
+        if (keys.size() > left.getMaxKeys()) {
+            // redistribute the entries evenly, pushing the middle key up
+            int half = keys.size() / 2;
+            left.keys.clear();
+            left.keys.addAll(keys.subList(0, half));
+            left.children.clear();
+            left.children.addAll(children.subList(0, half + 1));
+            right.keys.clear();
+            right.keys.addAll(keys.subList(half + 1, keys.size()));
+            right.children.clear();
+            right.children.addAll(children.subList(half + 1, children.size()));
+            parent.keys.set(sep, keys.get(half));
+            return;
+        }
+
+        left.keys.clear();
+        left.keys.addAll(keys);
+        left.children.clear();
+        left.children.addAll(children);
+        parent.deleteKeyAndRightChild(sep);
+        freePage(tid, dirtypages, right.getId());
+        handleMinOccupancyInternal(tid, dirtypages, path);
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new BTreeFileIterator(this, tid, null);
+    }
+
+    /**
+     * Returns an iterator over the tuples of this file whose keys satisfy
+     * the specified predicate, in key order. Only the leaves that may hold
+     * such tuples are read, except for NOT_EQUALS and LIKE predicates,
+     * which have to look at every key.
+     */
+    public DbFileIterator indexIterator(TransactionId tid, IndexPredicate ipred) {
+        return new BTreeFileIterator(this, tid, ipred);
+    }
+}
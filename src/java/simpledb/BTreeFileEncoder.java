@@ -0,0 +1,160 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * BTreeFileEncoder reads a comma delimited text file or accepts an array of
+ * tuples and bulk loads them into a new BTreeFile: the tuples are sorted by
+ * the key field and packed onto full leaves, and the internal levels of the
+ * tree are built bottom up above them. This is much faster than inserting
+ * the tuples one at a time.
+ */
+public class BTreeFileEncoder {
+
+    /** Convert the specified tuple list (with only integer fields) into a
+     * BTreeFile.
+     *
+     * @param tuples the tuples - a list of tuples, each represented by a list of integers that are
+     *        the field values for that tuple.
+     * @param outFile The output file to write data to
+     * @param numFields the number of fields in each input tuple
+     * @param keyField the index of the field the tree is sorted by
+     * @throws IOException if the output file can't be written
+     */
+    public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int numFields,
+            int keyField) throws IOException {
+        TupleDesc td = new TupleDesc(Utility.getTypes(numFields));
+        ArrayList<Tuple> ts = new ArrayList<Tuple>();
+        for (ArrayList<Integer> tuple : tuples) {
+            if (tuple.size() != numFields) {
+                throw new RuntimeException("Tuple does not have " + numFields + " fields: (" +
+                        Utility.listToString(tuple) + ")");
+            }
+            Tuple t = new Tuple(td);
+            for (int i = 0; i < numFields; i++)
+                t.setField(i, new IntField(tuple.get(i)));
+            ts.add(t);
+        }
+        write(ts, outFile, td, keyField);
+    }
+
+    /** Convert the specified input text file into a BTreeFile. The input
+     * file has the same format as the input to
+     * {@link HeapFileEncoder#convert(File, File, int, int, Type[], char)}.
+     *
+     * @param inFile The input file to read data from
+     * @param outFile The output file to write data to
+     * @param typeAr the types of the fields of each input line
+     * @param fieldSeparator the character separating fields on a line
+     * @param keyField the index of the field the tree is sorted by
+     * @throws IOException if the input/output file can't be opened
+     */
+    public static void convert(File inFile, File outFile, Type[] typeAr, char fieldSeparator,
+            int keyField) throws IOException {
+        TupleDesc td = new TupleDesc(typeAr);
+        ArrayList<Tuple> ts = new ArrayList<Tuple>();
+        BufferedReader br = new BufferedReader(new FileReader(inFile));
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.trim().length() == 0)
+                continue;
+            String[] els = line.split(java.util.regex.Pattern.quote(String.valueOf(fieldSeparator)), -1);
+            if (els.length != typeAr.length) {
+                System.out.println("BAD LINE : " + line);
+                continue;
+            }
+            Tuple t = new Tuple(td);
+            try {
+                for (int i = 0; i < typeAr.length; i++) {
+                    String s = els[i].trim();
+                    if (typeAr[i] == Type.INT_TYPE)
+                        t.setField(i, new IntField(Integer.parseInt(s)));
+                    else
+                        t.setField(i, new StringField(s, Type.STRING_LEN));
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("BAD LINE : " + line);
+                continue;
+            }
+            ts.add(t);
+        }
+        br.close();
+        write(ts, outFile, td, keyField);
+    }
+
+    /**
+     * Writes the specified tuples to a new BTreeFile. Page 0 is the root
+     * pointer page, followed by the leaves in key order and then the
+     * internal pages, one level at a time.
+     */
+    static void write(ArrayList<Tuple> tuples, File outFile, TupleDesc td, final int keyField)
+            throws IOException {
+        Collections.sort(tuples, new Comparator<Tuple>() {
+            public int compare(Tuple a, Tuple b) {
+                Field x = a.getField(keyField);
+                Field y = b.getField(keyField);
+                if (x.compare(Predicate.Op.LESS_THAN, y))
+                    return -1;
+                return x.compare(Predicate.Op.GREATER_THAN, y) ? 1 : 0;
+            }
+        });
+
+        // start from an empty file
+        new FileOutputStream(outFile).close();
+        BTreeFile file = new BTreeFile(outFile, keyField, td);
+        int nextPage = 1;
+
+        // the pages of the level being built, and the smallest key of each
+        ArrayList<BTreePageId> level = new ArrayList<BTreePageId>();
+        ArrayList<Field> minKeys = new ArrayList<Field>();
+        int perLeaf = BTreeLeafPage.getMaxTuples(td);
+        BTreeLeafPage prev = null;
+        for (int start = 0; start < tuples.size(); start += perLeaf) {
+            BTreePageId id = new BTreePageId(0, nextPage++, BTreePageId.LEAF);
+            BTreeLeafPage leaf = new BTreeLeafPage(id, BTreePage.createEmptyPageData(), td, keyField);
+            leaf.tuples.addAll(tuples.subList(start, Math.min(tuples.size(), start + perLeaf)));
+            if (prev != null) {
+                prev.setRightSiblingId(id);
+                file.writePage(prev);
+            }
+            prev = leaf;
+            level.add(id);
+            minKeys.add(leaf.getKey(0));
+        }
+        if (prev != null)
+            file.writePage(prev);
+
+        int perInternal = BTreeInternalPage.getMaxKeys(td.getFieldType(keyField)) + 1;
+        while (level.size() > 1) {
+            ArrayList<BTreePageId> parents = new ArrayList<BTreePageId>();
+            ArrayList<Field> parentKeys = new ArrayList<Field>();
+            int numParents = (level.size() + perInternal - 1) / perInternal;
+            for (int p = 0; p < numParents; p++) {
+                // spread the children evenly so no page is less than half full
+                int from = (int) ((long) level.size() * p / numParents);
+                int to = (int) ((long) level.size() * (p + 1) / numParents);
+                BTreePageId id = new BTreePageId(0, nextPage++, BTreePageId.INTERNAL);
+                BTreeInternalPage page = new BTreeInternalPage(id, BTreePage.createEmptyPageData(),
+                        td.getFieldType(keyField));
+                page.childCategory = level.get(from).pgcateg();
+                for (int c = from; c < to; c++) {
+                    page.children.add(level.get(c).pageNumber());
+                    if (c > from)
+                        page.keys.add(minKeys.get(c));
+                }
+                file.writePage(page);
+                parents.add(id);
+                parentKeys.add(minKeys.get(from));
+            }
+            level = parents;
+            minKeys = parentKeys;
+        }
+
+        BTreeRootPtrPage rootPtr = new BTreeRootPtrPage(new BTreePageId(0, 0, BTreePageId.ROOT_PTR),
+                BTreePage.createEmptyPageData());
+        if (!level.isEmpty())
+            rootPtr.setRootId(level.get(0));
+        file.writePage(rootPtr);
+    }
+}
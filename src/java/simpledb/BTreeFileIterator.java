@@ -0,0 +1,118 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * BTreeFileIterator returns the tuples of a BTreeFile in key order by
+ * following the chain of leaves. If it is given an IndexPredicate, it starts
+ * at the first leaf that may hold a matching key and stops as soon as no
+ * later key can match, so equality and range searches only read the leaves
+ * they return tuples from.
+ *
+ * @see BTreeFile#indexIterator(TransactionId, IndexPredicate)
+ */
+public class BTreeFileIterator implements DbFileIterator {
+
+    BTreeFile file;
+    TransactionId transId;
+    IndexPredicate ipred;
+    BTreePageId nextLeaf;
+    Iterator<Tuple> pgTups;
+    Tuple nextTuple;
+    boolean done;
+
+    /**
+     * @param f the file to scan
+     * @param tid the transaction reading the file
+     * @param pred the predicate the keys of returned tuples must satisfy, or
+     *            null to return every tuple
+     */
+    public BTreeFileIterator(BTreeFile f, TransactionId tid, IndexPredicate pred) {
+        file = f;
+        transId = tid;
+        ipred = pred;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        Field start = null;
+        if (ipred != null && (ipred.getOp() == Predicate.Op.EQUALS
+                || ipred.getOp() == Predicate.Op.GREATER_THAN
+                || ipred.getOp() == Predicate.Op.GREATER_THAN_OR_EQ)) {
+            start = ipred.getField();
+        }
+        BTreeLeafPage leaf = file.findLeafPage(transId, new HashMap<PageId, Page>(), start,
+                Permissions.READ_ONLY, null);
+        done = false;
+        nextTuple = null;
+        if (leaf == null) {
+            nextLeaf = null;
+            pgTups = Collections.<Tuple>emptyList().iterator();
+        } else {
+            nextLeaf = leaf.getRightSiblingId();
+            pgTups = leaf.iterator();
+        }
+    }
+
+    /**
+     * @return true if no tuple after one with the specified key can satisfy
+     *         the predicate
+     */
+    private boolean pastEnd(Field key) {
+        switch (ipred.getOp()) {
+        case EQUALS:
+            return key.compare(Predicate.Op.GREATER_THAN, ipred.getField());
+        case LESS_THAN:
+            return key.compare(Predicate.Op.GREATER_THAN_OR_EQ, ipred.getField());
+        case LESS_THAN_OR_EQ:
+            return key.compare(Predicate.Op.GREATER_THAN, ipred.getField());
+        default:
+            return false;
+        }
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (pgTups == null)
+            return false;
+        while (nextTuple == null && !done) {
+            if (!pgTups.hasNext()) {
+                if (nextLeaf == null)
+                    return false;
+                BTreeLeafPage leaf = (BTreeLeafPage) Database.getBufferPool().getPage(transId, nextLeaf,
+                        Permissions.READ_ONLY);
+                nextLeaf = leaf.getRightSiblingId();
+                pgTups = leaf.iterator();
+                continue;
+            }
+            Tuple t = pgTups.next();
+            if (ipred == null) {
+                nextTuple = t;
+            } else {
+                Field key = t.getField(file.keyField());
+                if (pastEnd(key))
+                    done = true;
+                else if (ipred.matches(key))
+                    nextTuple = t;
+            }
+        }
+        return nextTuple != null;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (!hasNext())
+            throw new NoSuchElementException("");
+        Tuple t = nextTuple;
+        nextTuple = null;
+        return t;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        open();
+    }
+
+    public void close() {
+        pgTups = null;
+        nextTuple = null;
+        nextLeaf = null;
+    }
+}
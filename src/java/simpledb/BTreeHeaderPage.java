@@ -0,0 +1,96 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * BTreeHeaderPage is a page of the bitmap of free pages of a BTreeFile. The
+ * header pages form a chain starting at the page named by the root pointer
+ * page; the i-th page of the chain covers the pages numbered
+ * i * {@link #getNumSlots()} to (i + 1) * getNumSlots() - 1 of the file.
+ * Pages freed by merges are marked in the bitmap and reused before the file
+ * is extended.
+ *
+ * @see BTreeFile
+ */
+public class BTreeHeaderPage extends BTreePage {
+
+    private static final int HEADER_SIZE = 4;
+
+    int next;
+    byte[] bitmap;
+
+    /**
+     * Create a BTreeHeaderPage from a set of bytes of data read from disk.
+     * The page holds the int page number of the next header page (0 if this
+     * is the last) followed by a bitmap with a set bit for each free page.
+     */
+    public BTreeHeaderPage(BTreePageId id, byte[] data) throws IOException {
+        super(id);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        next = dis.readInt();
+        bitmap = new byte[BufferPool.PAGE_SIZE - HEADER_SIZE];
+        dis.readFully(bitmap);
+        setBeforeImage();
+    }
+
+    /** @return the number of pages each header page keeps track of */
+    public static int getNumSlots() {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE) * 8;
+    }
+
+    /** @return the id of the next header page, or null if this is the last */
+    public BTreePageId getNextId() {
+        if (next == 0)
+            return null;
+        return new BTreePageId(pid.getTableId(), next, BTreePageId.HEADER);
+    }
+
+    public void setNextId(BTreePageId id) {
+        next = id == null ? 0 : id.pageNumber();
+    }
+
+    public boolean isFree(int slot) {
+        return (bitmap[slot / 8] & (1 << (slot % 8))) != 0;
+    }
+
+    public void setFree(int slot, boolean free) {
+        if (free)
+            bitmap[slot / 8] |= (1 << (slot % 8));
+        else
+            bitmap[slot / 8] &= ~(1 << (slot % 8));
+    }
+
+    /** @return the first free slot of this header page, or -1 if none is */
+    public int getFirstFreeSlot() {
+        for (int i = 0; i < bitmap.length; i++) {
+            if (bitmap[i] == 0)
+                continue;
+            for (int b = 0; b < 8; b++) {
+                if ((bitmap[i] & (1 << b)) != 0)
+                    return i * 8 + b;
+            }
+        }
+        return -1;
+    }
+
+    public byte[] getPageData() {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[0] = (byte) (next >>> 24);
+        data[1] = (byte) (next >>> 16);
+        data[2] = (byte) (next >>> 8);
+        data[3] = (byte) next;
+        System.arraycopy(bitmap, 0, data, HEADER_SIZE, bitmap.length);
+        return data;
+    }
+
+    public BTreeHeaderPage getBeforeImage() {
+        try {
+            return new BTreeHeaderPage(pid, oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,153 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * BTreeInternalPage is an internal node of a BTreeFile: a sorted list of
+ * keys and the page numbers of the children between them. All keys in the
+ * subtree of child i are at least key i - 1 and at most key i, so that
+ * tuples with equal keys may be spread over neighbouring leaves.
+ * <p>
+ * The lists may briefly hold one entry more than fits on the page while
+ * BTreeFile inserts an entry and splits the page.
+ *
+ * @see BTreeFile
+ */
+public class BTreeInternalPage extends BTreePage {
+
+    private static final int HEADER_SIZE = 3;
+
+    Type keyType;
+    int childCategory;
+    ArrayList<Field> keys = new ArrayList<Field>();
+    ArrayList<Integer> children = new ArrayList<Integer>();
+
+    /**
+     * Create a BTreeInternalPage from a set of bytes of data read from disk.
+     * The key type is looked up in the catalog.
+     *
+     * @see #BTreeInternalPage(BTreePageId, byte[], Type)
+     */
+    public BTreeInternalPage(BTreePageId id, byte[] data) throws IOException {
+        this(id, data, ((BTreeFile) Database.getCatalog().getDbFile(id.getTableId())).getKeyType());
+    }
+
+    /**
+     * Create a BTreeInternalPage from a set of bytes of data read from disk.
+     * The page holds a byte kind of its children (LEAF or INTERNAL), an
+     * unsigned short number of children n, the n int page numbers of the
+     * children and the n - 1 keys between them.
+     *
+     * @param keyType the type of the key field of the tree
+     */
+    public BTreeInternalPage(BTreePageId id, byte[] data, Type keyType) throws IOException {
+        super(id);
+        this.keyType = keyType;
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        childCategory = dis.readByte();
+        int n = dis.readUnsignedShort();
+        for (int i = 0; i < n; i++)
+            children.add(dis.readInt());
+        for (int i = 0; i < n - 1; i++)
+            keys.add(Utility.readField(dis, keyType));
+        setBeforeImage();
+    }
+
+    /** @return the number of keys that fit on an internal page */
+    public static int getMaxKeys(Type keyType) {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE - 4) / (keyType.getLen() + 4);
+    }
+
+    public int getMaxKeys() {
+        return getMaxKeys(keyType);
+    }
+
+    public int getNumKeys() {
+        return keys.size();
+    }
+
+    public Field getKey(int i) {
+        return keys.get(i);
+    }
+
+    public int getNumChildren() {
+        return children.size();
+    }
+
+    public BTreePageId getChildId(int i) {
+        return new BTreePageId(pid.getTableId(), children.get(i), childCategory);
+    }
+
+    /** @return the position of the specified child page on this page, or -1 */
+    public int indexOfChild(int pgNo) {
+        return children.indexOf(pgNo);
+    }
+
+    /**
+     * @return the position of the first child whose subtree may hold the
+     *         specified key, or of the first child if key is null
+     */
+    public int findChild(Field key) {
+        if (key == null)
+            return 0;
+        for (int i = 0; i < keys.size(); i++) {
+            if (key.compare(Predicate.Op.LESS_THAN_OR_EQ, keys.get(i)))
+                return i;
+        }
+        return keys.size();
+    }
+
+    /**
+     * Adds the specified key and right child just after the specified left
+     * child. If the page has no children yet, both children are added.
+     */
+    public void insertEntry(Field key, BTreePageId left, BTreePageId right) {
+        childCategory = left.pgcateg();
+        if (children.isEmpty()) {
+            children.add(left.pageNumber());
+            children.add(right.pageNumber());
+            keys.add(key);
+            return;
+        }
+        int i = children.indexOf(left.pageNumber());
+        keys.add(i, key);
+        children.add(i + 1, right.pageNumber());
+    }
+
+    /**
+     * Removes key i and the child to its right.
+     */
+    public void deleteKeyAndRightChild(int i) {
+        keys.remove(i);
+        children.remove(i + 1);
+    }
+
+    public byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeByte(childCategory);
+            dos.writeShort(children.size());
+            for (int c : children)
+                dos.writeInt(c);
+            for (Field k : keys)
+                Utility.writeField(dos, k);
+            dos.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return Utility.pad(baos);
+    }
+
+    public BTreeInternalPage getBeforeImage() {
+        try {
+            return new BTreeInternalPage(pid, oldData, keyType);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+}
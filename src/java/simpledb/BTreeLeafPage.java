@@ -0,0 +1,179 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * BTreeLeafPage is a leaf of a BTreeFile: the tuples whose keys fall in the
+ * range of the leaf, sorted by key, and the page number of the next leaf, so
+ * that range scans can read the leaves in key order.
+ * <p>
+ * The list of tuples may briefly hold one tuple more than fits on the page
+ * while BTreeFile inserts a tuple and splits the page.
+ *
+ * @see BTreeFile
+ */
+public class BTreeLeafPage extends BTreePage {
+
+    private static final int HEADER_SIZE = 6;
+
+    TupleDesc td;
+    int keyField;
+    int rightSibling;
+    ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+
+    /**
+     * Create a BTreeLeafPage from a set of bytes of data read from disk. The
+     * schema and key field are looked up in the catalog.
+     *
+     * @see #BTreeLeafPage(BTreePageId, byte[], TupleDesc, int)
+     */
+    public BTreeLeafPage(BTreePageId id, byte[] data) throws IOException {
+        this(id, data, Database.getCatalog().getTupleDesc(id.getTableId()),
+                ((BTreeFile) Database.getCatalog().getDbFile(id.getTableId())).keyField());
+    }
+
+    /**
+     * Create a BTreeLeafPage from a set of bytes of data read from disk. The
+     * page holds the int page number of the next leaf (0 if this is the last
+     * leaf), an unsigned short number of tuples, and the tuples in key order,
+     * each in the same fixed size format as on a HeapPage.
+     *
+     * @param td the schema of the tuples
+     * @param keyField the index of the field the tuples are sorted by
+     */
+    public BTreeLeafPage(BTreePageId id, byte[] data, TupleDesc td, int keyField) throws IOException {
+        super(id);
+        this.td = td;
+        this.keyField = keyField;
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        rightSibling = dis.readInt();
+        int n = dis.readUnsignedShort();
+        for (int i = 0; i < n; i++) {
+            Tuple t = new Tuple(td);
+            for (int j = 0; j < td.numFields(); j++)
+                t.setField(j, Utility.readField(dis, td.getFieldType(j)));
+            tuples.add(t);
+        }
+        renumber(0);
+        setBeforeImage();
+    }
+
+    /** @return the number of tuples with the specified schema that fit on a leaf */
+    public static int getMaxTuples(TupleDesc td) {
+        return (BufferPool.PAGE_SIZE - HEADER_SIZE) / td.getSize();
+    }
+
+    public int getMaxTuples() {
+        return getMaxTuples(td);
+    }
+
+    public int getNumTuples() {
+        return tuples.size();
+    }
+
+    /** @return the id of the next leaf, or null if this is the last leaf */
+    public BTreePageId getRightSiblingId() {
+        if (rightSibling == 0)
+            return null;
+        return new BTreePageId(pid.getTableId(), rightSibling, BTreePageId.LEAF);
+    }
+
+    public void setRightSiblingId(BTreePageId id) {
+        rightSibling = id == null ? 0 : id.pageNumber();
+    }
+
+    /** @return the key of the i-th tuple of the page */
+    public Field getKey(int i) {
+        return tuples.get(i).getField(keyField);
+    }
+
+    /** Points the record ids of the tuples from position i on at their slots. */
+    void renumber(int from) {
+        for (int i = from; i < tuples.size(); i++)
+            tuples.get(i).setRecordId(new RecordId(pid, i));
+    }
+
+    /**
+     * Adds the specified tuple to the page after any tuples with the same
+     * key, and sets its RecordId.
+     */
+    public void insertTuple(Tuple t) {
+        Field key = t.getField(keyField);
+        int i = tuples.size();
+        while (i > 0 && key.compare(Predicate.Op.LESS_THAN, getKey(i - 1)))
+            i--;
+        tuples.add(i, t);
+        renumber(i);
+    }
+
+    /**
+     * Removes the specified tuple from the page. The tuple is looked up by
+     * its RecordId, which may be stale if the page changed after the tuple
+     * was read, so a tuple with the same fields is removed instead if the
+     * slot holds a different one.
+     *
+     * @throws DbException if the page holds no such tuple
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        int slot = t.getRecordId() == null ? -1 : t.getRecordId().tupleno();
+        if (slot < 0 || slot >= tuples.size() || !sameFields(tuples.get(slot), t)) {
+            slot = -1;
+            for (int i = 0; i < tuples.size(); i++) {
+                if (sameFields(tuples.get(i), t)) {
+                    slot = i;
+                    break;
+                }
+            }
+        }
+        if (slot < 0)
+            throw new DbException("tuple is not on page " + pid);
+        tuples.remove(slot);
+        renumber(slot);
+        t.setRecordId(null);
+    }
+
+    private boolean sameFields(Tuple a, Tuple b) {
+        for (int j = 0; j < td.numFields(); j++) {
+            if (!a.getField(j).equals(b.getField(j)))
+                return false;
+        }
+        return true;
+    }
+
+    public byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(rightSibling);
+            dos.writeShort(tuples.size());
+            for (Tuple t : tuples) {
+                for (int j = 0; j < td.numFields(); j++)
+                    Utility.writeField(dos, t.getField(j));
+            }
+            dos.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return Utility.pad(baos);
+    }
+
+    public BTreeLeafPage getBeforeImage() {
+        try {
+            return new BTreeLeafPage(pid, oldData, td, keyField);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    /**
+     * @return an iterator over the tuples of this page in key order (calling
+     * remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        return Collections.unmodifiableList(new ArrayList<Tuple>(tuples)).iterator();
+    }
+}
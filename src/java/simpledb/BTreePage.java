@@ -0,0 +1,56 @@
+package simpledb;
+
+/**
+ * BTreePage holds what the pages of a BTreeFile have in common: their id,
+ * dirty state and before image. Fields are encoded with
+ * {@link Utility#writeField}.
+ *
+ * @see BTreeFile
+ */
+public abstract class BTreePage implements Page {
+
+    BTreePageId pid;
+    boolean dirty = false;
+    TransactionId lastTrans = null;
+
+    byte[] oldData;
+
+    BTreePage(BTreePageId id) {
+        pid = id;
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public BTreePageId getId() {
+        return pid;
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        lastTrans = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return dirty ? lastTrans : null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData().clone();
+    }
+
+    /** Static method to generate a byte array corresponding to an empty
+        page of a BTreeFile. Every kind of page is empty when all its bytes
+        are zero.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.PAGE_SIZE];
+    }
+}
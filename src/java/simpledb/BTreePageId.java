@@ -0,0 +1,93 @@
+package simpledb;
+
+/**
+ * Unique identifier for the pages of a BTreeFile. Besides the table and page
+ * number, the id records what kind of page it refers to, so that the file
+ * knows how to parse the page when the BufferPool asks for it.
+ */
+public class BTreePageId implements PageId {
+
+    /** The page at the start of the file that locates the root. */
+    public static final int ROOT_PTR = 0;
+    /** A page of keys and child pointers. */
+    public static final int INTERNAL = 1;
+    /** A page of tuples. */
+    public static final int LEAF = 2;
+    /** A page of the free page bitmap. */
+    public static final int HEADER = 3;
+
+    int tableId;
+    int pgNo;
+    int pgcateg;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific table.
+     *
+     * @param tId The table that is being referenced
+     * @param pNo The page number in that table.
+     * @param categ The kind of page: ROOT_PTR, INTERNAL, LEAF or HEADER
+     */
+    public BTreePageId(int tId, int pNo, int categ) {
+        tableId = tId;
+        pgNo = pNo;
+        pgcateg = categ;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the page number in the table getTableId() */
+    public int pageNumber() {
+        return pgNo;
+    }
+
+    /** @return the kind of page, one of ROOT_PTR, INTERNAL, LEAF or HEADER */
+    public int pgcateg() {
+        return pgcateg;
+    }
+
+    /**
+     * @return a hash code for this page, built from the table and page
+     *   numbers and the kind of page.
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return (tableId * 31 + pgNo) * 4 + pgcateg;
+    }
+
+    /**
+     * Compares one PageId to another.
+     *
+     * @param o The object to compare against (must be a BTreePageId)
+     * @return true if the table and page numbers and the kind of page are
+     *   the same
+     */
+    public boolean equals(Object o) {
+        if (!(o instanceof BTreePageId)) {
+            return false;
+        }
+        BTreePageId other = (BTreePageId) o;
+        return other.tableId == tableId && other.pgNo == pgNo && other.pgcateg == pgcateg;
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.
+     */
+    public int[] serialize() {
+        int data[] = new int[3];
+
+        data[0] = getTableId();
+        data[1] = pageNumber();
+        data[2] = pgcateg();
+
+        return data;
+    }
+
+    public String toString() {
+        return tableId + "(" + pgNo + "/" + pgcateg + ")";
+    }
+}
@@ -0,0 +1,82 @@
+package simpledb;
+
+import java.io.*;
+
+/**
+ * BTreeRootPtrPage is the first page of every BTreeFile. It records which
+ * page is the root of the tree and which is the first header page, so that
+ * the root can move as the tree grows and shrinks.
+ *
+ * @see BTreeFile
+ */
+public class BTreeRootPtrPage extends BTreePage {
+
+    int root;
+    int rootCategory;
+    int header;
+
+    /**
+     * Create a BTreeRootPtrPage from a set of bytes of data read from disk.
+     * The page holds the int page number of the root (0 if the tree is
+     * empty), a byte kind of the root page (LEAF or INTERNAL), and the int
+     * page number of the first header page (0 if there is none).
+     *
+     * @see BTreePageId
+     */
+    public BTreeRootPtrPage(BTreePageId id, byte[] data) throws IOException {
+        super(id);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        root = dis.readInt();
+        rootCategory = dis.readByte();
+        header = dis.readInt();
+        setBeforeImage();
+    }
+
+    /** @return the id of the root page, or null if the tree is empty */
+    public BTreePageId getRootId() {
+        if (root == 0)
+            return null;
+        return new BTreePageId(pid.getTableId(), root, rootCategory);
+    }
+
+    public void setRootId(BTreePageId id) {
+        root = id == null ? 0 : id.pageNumber();
+        rootCategory = id == null ? 0 : id.pgcateg();
+    }
+
+    /** @return the id of the first header page, or null if there is none */
+    public BTreePageId getHeaderId() {
+        if (header == 0)
+            return null;
+        return new BTreePageId(pid.getTableId(), header, BTreePageId.HEADER);
+    }
+
+    public void setHeaderId(BTreePageId id) {
+        header = id == null ? 0 : id.pageNumber();
+    }
+
+    public byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        try {
+            dos.writeInt(root);
+            dos.writeByte(rootCategory);
+            dos.writeInt(header);
+            dos.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return Utility.pad(baos);
+    }
+
+    public BTreeRootPtrPage getBeforeImage() {
+        try {
+            return new BTreeRootPtrPage(pid, oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+}
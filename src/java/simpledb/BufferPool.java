@@ -29,7 +29,22 @@ public class BufferPool {
     private HashMap<PageId, Page> pages;
     private HashMap<TransactionId, ArrayList<PageId>> tIdtopId = new HashMap<TransactionId, ArrayList<PageId>>();
     int maxPageCount;
-    
+
+    // pages each thread has requested, which profiled operators charge
+    // to themselves
+    private static final ThreadLocal<long[]> threadPageRequests = new ThreadLocal<long[]>() {
+        protected long[] initialValue() {
+            return new long[1];
+        }
+    };
+
+    /**
+     * @return the number of pages the calling thread has requested from
+     *         buffer pools with {@link #getPage}
+     */
+    public static long threadPageRequests() {
+        return threadPageRequests.get()[0];
+    }
 
     /**
      * Creates a BufferPool that caches up to numPages pages.
@@ -56,13 +71,17 @@ public class BufferPool {
      * @param pid the ID of the requested page
      * @param perm the requested permissions on the page
      */
-    public Page getPage(TransactionId tid, PageId pid, Permissions perm)
+    public synchronized Page getPage(TransactionId tid, PageId pid, Permissions perm)
         throws TransactionAbortedException, DbException {
+        threadPageRequests.get()[0]++;
+        TableIoStats stats = BufferPoolMetrics.forTable(pid.getTableId());
         if(pages.containsKey(pid)) {
+        	stats.hits.increment();
         	orderUsed.remove(pid);
         	orderUsed.add(pid);
         	return pages.get(pid);
         }
+        stats.misses.increment();
         while(pages.size() > maxPageCount) {
     		evictPage();
     	}
@@ -86,6 +105,16 @@ public class BufferPool {
     	return page;
     }
 
+    /** @return the number of pages the pool caches */
+    public int getCapacity() {
+        return maxPageCount;
+    }
+
+    /** @return the number of pages the pool currently holds */
+    public synchronized int numPagesCached() {
+        return pages.size();
+    }
+
     /**
      * Releases the lock on a page.
      * Calling this is very risky, and may result in wrong behavior. Think hard
@@ -138,7 +167,8 @@ public class BufferPool {
      * 
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit, and updates cached versions of any pages that have 
-     * been dirtied so that future requests see up-to-date pages. 
+     * been dirtied so that future requests see up-to-date pages. The
+     * statistics of the table are updated for the tuple.
      *
      * @param tid the transaction adding the tuple
      * @param tableId the table to add the tuple to
@@ -147,8 +177,9 @@ public class BufferPool {
     public void insertTuple(TransactionId tid, int tableId, Tuple t)
         throws DbException, IOException, TransactionAbortedException {
         // some code goes here
-    	HeapFile heapFile = (HeapFile) Database.getCatalog().getDbFile(tableId);
-    	heapFile.insertTuple(tid, t); //dirtiness marker delegated to heapFile insert
+    	DbFile file = Database.getCatalog().getDbFile(tableId);
+    	file.insertTuple(tid, t); //dirtiness marker delegated to the file's insert
+    	TableStats.tupleInserted(tableId, t);
         // not necessary for proj1
     }
 
@@ -160,7 +191,8 @@ public class BufferPool {
      * Marks any pages that were dirtied by the operation as dirty by calling
      * their markDirty bit.  Does not need to update cached versions of any pages that have 
      * been dirtied, as it is not possible that a new page was created during the deletion
-     * (note difference from addTuple).
+     * (note difference from addTuple). The statistics of the table are updated
+     * for the tuple.
      *
      * @param tid the transaction adding the tuple.
      * @param t the tuple to add
@@ -168,8 +200,10 @@ public class BufferPool {
     public  void deleteTuple(TransactionId tid, Tuple t)
         throws DbException, TransactionAbortedException {
         // some code goes here
-    	DbFile file = Database.getCatalog().getDbFile(t.getRecordId().getPageId().getTableId());
+    	int tableId = t.getRecordId().getPageId().getTableId();
+    	DbFile file = Database.getCatalog().getDbFile(tableId);
     	file.deleteTuple(tid, t); //dirtiness marker delegated to heapFile insert
+    	TableStats.tupleDeleted(tableId, t);
         // not necessary for proj1
     }
 
@@ -202,13 +236,17 @@ public class BufferPool {
     }
 
     /**
-     * Flushes a certain page to disk
+     * Flushes a certain page to disk, if it is dirty
      * @param pid an ID indicating the page to flush
      */
     private synchronized  void flushPage(PageId pid) throws IOException {
         // some code goes here
+    	Page page = pages.get(pid);
+    	if (page == null || page.isDirty() == null)
+    		return;
     	DbFile file = Database.getCatalog().getDbFile(pid.getTableId());
-    	file.writePage(pages.get(pid));
+    	file.writePage(page);
+    	BufferPoolMetrics.forTable(pid.getTableId()).dirtyFlushes.increment();
         // not necessary for proj1
     }
 
@@ -217,14 +255,14 @@ public class BufferPool {
     public synchronized  void flushPages(TransactionId tid) throws IOException {
         // some code goes here
         // not necessary for proj1
-    	if (tIdtopId.containsKey(tid)) {
-    		ArrayList<PageId> pIds = tIdtopId.get(tid);
+    	// the pages stay cached, so they stay in the eviction order too;
+    	// dropping them from it left pages that could never be evicted
+    	ArrayList<PageId> pIds = tIdtopId.remove(tid);
+    	if (pIds != null) {
     		for(PageId pId: pIds) {
     			flushPage(pId);
-    			orderUsed.remove(pId);
     		}
     	}
-    		
     }
 
     /**
@@ -235,7 +273,16 @@ public class BufferPool {
         // some code goes here
         // not necessary for proj1
     	PageId pid = orderUsed.poll();
+    	if (pid == null)
+    		return;
+    	// write the page back rather than lose its changes
+    	try {
+    		flushPage(pid);
+    	} catch (IOException e) {
+    		throw new DbException("could not flush page " + pid + ": " + e.getMessage());
+    	}
     	pages.remove(pid);
+    	BufferPoolMetrics.forTable(pid.getTableId()).evictions.increment();
     }
 
 }
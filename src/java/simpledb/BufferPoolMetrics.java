@@ -0,0 +1,154 @@
+package simpledb;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.management.*;
+
+/**
+ * BufferPoolMetrics keeps the {@link TableIoStats} of every table, which
+ * the BufferPool and HeapFile record page accesses in, and sums them up for
+ * the whole database. The counters are always kept, and are cheap enough to
+ * be; {@link #registerMBeans} also exports them through JMX, as the
+ * simpledb:type=BufferPool bean and a simpledb:type=Table,id=... bean for
+ * each table.
+ */
+public class BufferPoolMetrics implements BufferPoolMetricsMBean {
+
+    private static final ConcurrentHashMap<Integer, TableIoStats> tables = new ConcurrentHashMap<Integer, TableIoStats>();
+    private static final BufferPoolMetrics instance = new BufferPoolMetrics();
+    private static volatile boolean jmx = false;
+
+    /** @return the metrics of the whole database */
+    public static BufferPoolMetrics getInstance() {
+        return instance;
+    }
+
+    /** @return the statistics of the specified table, which are created if needed */
+    public static TableIoStats forTable(int tableId) {
+        TableIoStats s = tables.get(tableId);
+        if (s == null) {
+            TableIoStats created = new TableIoStats(tableId);
+            s = tables.putIfAbsent(tableId, created);
+            if (s == null) {
+                s = created;
+                if (jmx)
+                    register(s, tableObjectName(tableId));
+            }
+        }
+        return s;
+    }
+
+    /** @return the statistics of every table whose pages were accessed */
+    public static Collection<TableIoStats> getTables() {
+        return Collections.unmodifiableCollection(tables.values());
+    }
+
+    /**
+     * Exports the metrics of the database and of each table through the
+     * platform MBean server, including those of tables accessed later.
+     */
+    public static synchronized void registerMBeans() {
+        if (jmx)
+            return;
+        jmx = true;
+        register(instance, objectName("simpledb:type=BufferPool"));
+        for (TableIoStats s : tables.values())
+            register(s, tableObjectName(s.getTableId()));
+    }
+
+    static ObjectName tableObjectName(int tableId) {
+        return objectName("simpledb:type=Table,id=" + tableId);
+    }
+
+    private static ObjectName objectName(String name) {
+        try {
+            return new ObjectName(name);
+        } catch (MalformedObjectNameException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void register(Object bean, ObjectName name) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            if (!server.isRegistered(name))
+                server.registerMBean(bean, name);
+        } catch (JMException e) {
+            // metrics are not worth failing for
+            e.printStackTrace();
+        }
+    }
+
+    public int getCapacity() {
+        return Database.getBufferPool().getCapacity();
+    }
+
+    public int getPagesCached() {
+        return Database.getBufferPool().numPagesCached();
+    }
+
+    public long getHits() {
+        long n = 0;
+        for (TableIoStats s : tables.values())
+            n += s.getHits();
+        return n;
+    }
+
+    public long getMisses() {
+        long n = 0;
+        for (TableIoStats s : tables.values())
+            n += s.getMisses();
+        return n;
+    }
+
+    /** @return the fraction of page requests answered from memory, or 0 if there were none */
+    public double getHitRatio() {
+        long h = getHits(), m = getMisses();
+        return h + m == 0 ? 0 : (double) h / (h + m);
+    }
+
+    public long getEvictions() {
+        long n = 0;
+        for (TableIoStats s : tables.values())
+            n += s.getEvictions();
+        return n;
+    }
+
+    public long getDirtyFlushes() {
+        long n = 0;
+        for (TableIoStats s : tables.values())
+            n += s.getDirtyFlushes();
+        return n;
+    }
+
+    public long getBytesRead() {
+        long n = 0;
+        for (TableIoStats s : tables.values())
+            n += s.getBytesRead();
+        return n;
+    }
+
+    public long getBytesWritten() {
+        long n = 0;
+        for (TableIoStats s : tables.values())
+            n += s.getBytesWritten();
+        return n;
+    }
+
+    /** Resets the statistics of every table. */
+    public void reset() {
+        for (TableIoStats s : tables.values())
+            s.reset();
+    }
+
+    public String toString() {
+        StringBuilder sb = new StringBuilder(String.format(
+                "Buffer pool: %d of %d pages cached, %d hits, %d misses (%.1f%% hit),"
+                + " %d evictions, %d dirty flushes", getPagesCached(), getCapacity(),
+                getHits(), getMisses(), 100 * getHitRatio(), getEvictions(), getDirtyFlushes()));
+        for (TableIoStats s : tables.values())
+            sb.append("\n  ").append(s);
+        return sb.toString();
+    }
+}
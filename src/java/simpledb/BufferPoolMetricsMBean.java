@@ -0,0 +1,29 @@
+package simpledb;
+
+/**
+ * The attributes of the buffer pool that are exported through JMX.
+ *
+ * @see BufferPoolMetrics
+ */
+public interface BufferPoolMetricsMBean {
+
+    public int getCapacity();
+
+    public int getPagesCached();
+
+    public long getHits();
+
+    public long getMisses();
+
+    public double getHitRatio();
+
+    public long getEvictions();
+
+    public long getDirtyFlushes();
+
+    public long getBytesRead();
+
+    public long getBytesWritten();
+
+    public void reset();
+}
@@ -42,6 +42,8 @@ public class Catalog {
 	
 	public HashMap<Integer, Table> idTable;
 	public HashMap<String, Table> nameTable;
+	// incremented whenever tables or indexes change
+	private volatile long version = 0;
 	
     /**
      * Constructor.
@@ -63,8 +65,11 @@ public class Catalog {
      */
     public void addTable(DbFile file, String name, String pkeyField) {
         Table newTable = new Table(file, name, pkeyField);
-        idTable.put(file.getId(), newTable);
+        Table old = idTable.put(file.getId(), newTable);
+        if (old != null && old.getDbFile() != file)
+            closeFile(old.getDbFile());
         nameTable.put(name, newTable);
+        schemaChanged();
     }
 
     public void addTable(DbFile file, String name) {
@@ -128,14 +133,68 @@ public class Catalog {
     	return idTable.get(id).getName();
     }
     
+    /**
+     * Delete the specified table from the catalog; nothing happens if it is
+     * not in the catalog.
+     * @param tableid The id of the table, as specified by the DbFile.getId()
+     *     function passed to addTable
+     */
+    public void removeTable(int tableid) {
+        Table t = idTable.remove(tableid);
+        if (t == null)
+            return;
+        if (nameTable.get(t.getName()) == t)
+            nameTable.remove(t.getName());
+        closeFile(t.getDbFile());
+        schemaChanged();
+    }
+
     /** Delete all tables from the catalog */
     public void clear() {
+        for (Table t : idTable.values())
+            closeFile(t.getDbFile());
         idTable.clear();
         nameTable.clear();
+        schemaChanged();
+    }
+
+    /** Releases what the specified file of a dropped table holds open. */
+    private static void closeFile(DbFile file) {
+        if (file instanceof HeapFile)
+            ((HeapFile) file).close();
+    }
+
+    /**
+     * @return a number that changes whenever a table is added or removed,
+     *         or an index is added to a table, so that plans made for an
+     *         earlier version can be recognized
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    /** Records that the tables or indexes of the database changed. */
+    void schemaChanged() {
+        version++;
     }
     
     /**
      * Reads the schema from a file and creates the appropriate tables in the database.
+     * Each line is of the form
+     * <pre>
+     *     name (field type [pk] [index], field type [pk] [index], ...) [storage]
+     * </pre>
+     * where the optional storage annotation selects how the table is stored:
+     * tables without one are {@link HeapFile}s read from name.dat,
+     * <tt>columnar</tt> tables are {@link ColumnFile}s whose columns are read
+     * from name.col.0, name.col.1, ... ; <tt>columnar compressed</tt> tables
+     * are ColumnFiles that also compress the pages they write,
+     * <tt>slotted</tt> tables are {@link SlottedFile}s read from name.slt, and
+     * <tt>btree</tt> tables are {@link BTreeFile}s read from name.bt, sorted
+     * by the primary key (or the first field if there is none). Fields of
+     * heap files annotated with <tt>index</tt> get a {@link HashIndex}, which
+     * is opened from its side file, or rebuilt if it is missing or out of
+     * date.
      * @param catalogFile
      */
     public void loadSchema(String catalogFile) {
@@ -153,6 +212,7 @@ public class Catalog {
                 ArrayList<String> names = new ArrayList<String>();
                 ArrayList<Type> types = new ArrayList<Type>();
                 String primaryKey = "";
+                ArrayList<Integer> indexed = new ArrayList<Integer>();
                 for (String e : els) {
                     String[] els2 = e.trim().split(" ");
                     names.add(els2[0].trim());
@@ -164,11 +224,13 @@ public class Catalog {
                         System.out.println("Unknown type " + els2[1]);
                         System.exit(0);
                     }
-                    if (els2.length == 3) {
-                        if (els2[2].trim().equals("pk"))
+                    for (int a = 2; a < els2.length; a++) {
+                        if (els2[a].trim().equals("pk"))
                             primaryKey = els2[0].trim();
+                        else if (els2[a].trim().equals("index"))
+                            indexed.add(names.size() - 1);
                         else {
-                            System.out.println("Unknown annotation " + els2[2]);
+                            System.out.println("Unknown annotation " + els2[a]);
                             System.exit(0);
                         }
                     }
@@ -176,8 +238,38 @@ public class Catalog {
                 Type[] typeAr = types.toArray(new Type[0]);
                 String[] namesAr = names.toArray(new String[0]);
                 TupleDesc t = new TupleDesc(typeAr, namesAr);
-                HeapFile tabHf = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
-                addTable(tabHf,name,primaryKey);
+                //anything after the field list selects the storage format
+                String storage = line.substring(line.indexOf(")") + 1).trim().toLowerCase();
+                DbFile tabFile;
+                if (storage.equals(""))
+                    tabFile = new HeapFile(new File(baseFolder+"/"+name + ".dat"), t);
+                else if (storage.equals("columnar"))
+                    tabFile = new ColumnFile(new File(baseFolder+"/"+name + ".col"), t);
+                else if (storage.matches("columnar\\s+compressed"))
+                    tabFile = new ColumnFile(new File(baseFolder+"/"+name + ".col"), t, true);
+                else if (storage.equals("slotted"))
+                    tabFile = new SlottedFile(new File(baseFolder+"/"+name + ".slt"), t);
+                else if (storage.equals("btree"))
+                    tabFile = new BTreeFile(new File(baseFolder+"/"+name + ".bt"),
+                            Math.max(0, names.indexOf(primaryKey)), t);
+                else {
+                    System.out.println("Unknown storage annotation " + storage);
+                    System.exit(0);
+                    return;
+                }
+                addTable(tabFile,name,primaryKey);
+                for (int field : indexed) {
+                    if (!(tabFile instanceof HeapFile)) {
+                        System.out.println("Indexes are only supported on heap files: " + name);
+                        System.exit(0);
+                    }
+                    try {
+                        ((HeapFile) tabFile).addIndex(field);
+                    } catch (DbException e) {
+                        System.out.println(e.getMessage());
+                        System.exit(0);
+                    }
+                }
                 System.out.println("Added table : " + name + " with schema " + t);
             }
         } catch (IOException e) {
@@ -0,0 +1,222 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * ColumnFile is an implementation of a DbFile that stores each column of a
+ * table in its own sequence of pages, so that a scan which only references a
+ * few columns of a wide table reads only the pages of those columns. Column
+ * i of a table backed by the file <tt>f</tt> is stored in the file
+ * <tt>f.i</tt>; the i-th value of every column belongs to the i-th row of the
+ * table. The format of the pages is described in the ColumnPage constructor.
+ * <p>
+ * ColumnFiles are append-only: tuples are added to the end of the table and
+ * cannot be deleted.
+ *
+ * @see simpledb.ColumnPage#ColumnPage
+ */
+public class ColumnFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    File file;
+    TupleDesc tupleDesc;
+    boolean compressed;
+
+    /**
+     * Constructs a column file whose column files are named after the
+     * specified file.
+     *
+     * @param f
+     *            the base name of the files that store the columns of this
+     *            table on disk.
+     * @param td
+     *            the schema of the table
+     */
+    public ColumnFile(File f, TupleDesc td) {
+        this(f, td, false);
+    }
+
+    /**
+     * Constructs a column file whose column files are named after the
+     * specified file.
+     *
+     * @param f
+     *            the base name of the files that store the columns of this
+     *            table on disk.
+     * @param td
+     *            the schema of the table
+     * @param compressed
+     *            whether pages are written with the smallest of the
+     *            lightweight encodings supported by ColumnPage. Compressed
+     *            pages can always be read, whatever this is set to.
+     */
+    public ColumnFile(File f, TupleDesc td, boolean compressed) {
+        file = f;
+        tupleDesc = td;
+        this.compressed = compressed;
+    }
+
+    /**
+     * @return true if this file compresses the pages it writes
+     */
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    /**
+     * Returns the base File of this ColumnFile; the columns are stored in
+     * files named after it.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the File on disk holding the pages of the specified column.
+     */
+    public File getColumnFile(int column) {
+        return new File(file.getPath() + "." + column);
+    }
+
+    /**
+     * Returns an ID uniquely identifying this ColumnFile, the hash of the
+     * absolute name of its base file.
+     */
+    public int getId() {
+        return file.getAbsoluteFile().hashCode();
+    }
+
+    /**
+     * Returns the TupleDesc of the table stored in this DbFile.
+     */
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    /**
+     * Returns the number of pages in the page sequence of the specified column.
+     */
+    public int numPages(int column) {
+        return (int) ((getColumnFile(column).length() + BufferPool.PAGE_SIZE - 1) / BufferPool.PAGE_SIZE);
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        ColumnPageId cpid = (ColumnPageId) pid;
+        if (cpid.pageNumber() >= numPages(cpid.getColumn()))
+            throw new IllegalArgumentException("page " + pid + " does not exist");
+
+        byte[] bytes = new byte[BufferPool.PAGE_SIZE];
+        try {
+            RandomAccessFile raf = new RandomAccessFile(getColumnFile(cpid.getColumn()), "r");
+            try {
+                raf.seek((long) BufferPool.PAGE_SIZE * cpid.pageNumber());
+                raf.readFully(bytes);
+            } finally {
+                raf.close();
+            }
+            return new ColumnPage(cpid, tupleDesc.getFieldType(cpid.getColumn()), compressed, bytes);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("unable to read page " + pid, e);
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        ColumnPageId cpid = (ColumnPageId) page.getId();
+        RandomAccessFile raf = new RandomAccessFile(getColumnFile(cpid.getColumn()), "rw");
+        page.markDirty(false, null);
+        raf.seek((long) BufferPool.PAGE_SIZE * cpid.pageNumber());
+        raf.write(page.getPageData(), 0, BufferPool.PAGE_SIZE);
+        raf.close();
+    }
+
+    /**
+     * Appends the specified tuple to the end of every column of this file.
+     * The RecordId of the tuple refers to its position on the page of the
+     * first column.
+     *
+     * @see DbFile#insertTuple
+     */
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(tupleDesc))
+            throw new DbException("tuple does not match the schema of the table");
+
+        ArrayList<Page> effectedPages = new ArrayList<Page>();
+        BufferPool bp = Database.getBufferPool();
+        RecordId rid = null;
+        for (int col = 0; col < tupleDesc.numFields(); col++) {
+            Field f = t.getField(col);
+            int n = numPages(col);
+            ColumnPage page = null;
+            if (n > 0)
+                page = (ColumnPage) bp.getPage(tid, new ColumnPageId(getId(), col, n - 1), Permissions.READ_WRITE);
+
+            if (page != null && page.hasRoomFor(f)) {
+                page.appendValue(f);
+                page.markDirty(true, tid);
+            } else {
+                // last page of the column is full, start a new one
+                int firstRow = page == null ? 0 : page.getFirstRow() + page.getNumValues();
+                page = new ColumnPage(new ColumnPageId(getId(), col, n), tupleDesc.getFieldType(col),
+                        compressed, ColumnPage.createEmptyPageData(firstRow));
+                page.appendValue(f);
+                writePage(page);
+            }
+            effectedPages.add(page);
+            if (col == 0)
+                rid = new RecordId(page.getId(), page.getNumValues() - 1);
+        }
+        t.setRecordId(rid);
+        return effectedPages;
+    }
+
+    /**
+     * ColumnFiles are append-only.
+     *
+     * @throws DbException always
+     */
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        throw new DbException("cannot delete from column table " + file.getName());
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return iterator(tid, null);
+    }
+
+    /**
+     * Returns an iterator over the specified columns of the tuples stored in
+     * this file. Only the pages of those columns, and of the first column,
+     * which the RecordIds of the tuples refer to, are read.
+     *
+     * @param fields
+     *            the indexes of the columns to return, in output order, or
+     *            null for all of them
+     * @return an iterator whose tuples contain only the requested columns
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] fields) {
+        return new ColumnFileIterator(this, fields, tid);
+    }
+
+    /**
+     * Returns an iterator over the specified columns of the tuples stored in
+     * this file that satisfy all of the specified predicates. Only the pages
+     * of those columns, of the columns the predicates test and of the first
+     * column are read.
+     *
+     * @param fields
+     *            the indexes of the columns to return, in output order, or
+     *            null for all of them
+     * @param preds
+     *            the predicates, with field numbers referring to this file's
+     *            TupleDesc
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] fields, Predicate[] preds) {
+        return new ColumnFileIterator(this, fields, preds, tid);
+    }
+}
@@ -0,0 +1,156 @@
+package simpledb;
+
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+ * ColumnFileEncoder reads a comma delimited text file or accepts an array of
+ * tuples and converts it to the page files of a ColumnFile, one per column.
+ */
+public class ColumnFileEncoder {
+
+    /** Convert the specified tuple list (with only integer fields) into the
+     * column files of a ColumnFile.
+     *
+     * @see ColumnFile
+     * @param tuples the tuples - a list of tuples, each represented by a list of integers that are
+     *        the field values for that tuple.
+     * @param outFile The base name of the column files to write
+     * @param numFields the number of fields in each input tuple
+     * @throws IOException if the output files can't be written
+     */
+    public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int numFields) throws IOException {
+        convert(tuples, outFile, numFields, false);
+    }
+
+    /** Convert the specified tuple list (with only integer fields) into the
+     * column files of a ColumnFile, compressing the pages if requested.
+     *
+     * @see #convert(ArrayList, File, int)
+     * @param compress whether to write compressed pages
+     */
+    public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int numFields,
+            boolean compress) throws IOException {
+        Type[] typeAr = Utility.getTypes(numFields);
+        ColumnWriter writer = new ColumnWriter(outFile, typeAr, compress);
+        for (ArrayList<Integer> tuple : tuples) {
+            if (tuple.size() != numFields) {
+                throw new RuntimeException("Tuple does not have " + numFields + " fields: (" +
+                        Utility.listToString(tuple) + ")");
+            }
+            Field[] row = new Field[numFields];
+            for (int i = 0; i < numFields; i++)
+                row[i] = new IntField(tuple.get(i));
+            writer.append(row);
+        }
+        writer.close();
+    }
+
+    /** Convert the specified input text file into the column files of a
+     * ColumnFile. The input file has the same format as the input to
+     * {@link HeapFileEncoder#convert(File, File, int, int, Type[], char)}.
+     *
+     * @param inFile The input file to read data from
+     * @param outFile The base name of the column files to write
+     * @param typeAr the types of the fields of each input line
+     * @param fieldSeparator the character separating fields on a line
+     * @throws IOException if the input/output file can't be opened
+     */
+    public static void convert(File inFile, File outFile, Type[] typeAr, char fieldSeparator)
+            throws IOException {
+        convert(inFile, outFile, typeAr, fieldSeparator, false);
+    }
+
+    /** Convert the specified input text file into the column files of a
+     * ColumnFile, compressing the pages if requested.
+     *
+     * @see #convert(File, File, Type[], char)
+     * @param compress whether to write compressed pages
+     */
+    public static void convert(File inFile, File outFile, Type[] typeAr, char fieldSeparator,
+            boolean compress) throws IOException {
+        ColumnWriter writer = new ColumnWriter(outFile, typeAr, compress);
+        BufferedReader br = new BufferedReader(new FileReader(inFile));
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.trim().length() == 0)
+                continue;
+            String[] els = line.split(java.util.regex.Pattern.quote(String.valueOf(fieldSeparator)), -1);
+            if (els.length != typeAr.length) {
+                System.out.println("BAD LINE : " + line);
+                continue;
+            }
+            Field[] row = new Field[typeAr.length];
+            try {
+                for (int i = 0; i < typeAr.length; i++) {
+                    if (typeAr[i] == Type.INT_TYPE)
+                        row[i] = new IntField(Integer.parseInt(els[i].trim()));
+                    else
+                        row[i] = new StringField(els[i].trim(), Type.STRING_LEN);
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("BAD LINE : " + line);
+                continue;
+            }
+            writer.append(row);
+        }
+        br.close();
+        writer.close();
+    }
+
+    /**
+     * Appends rows to the column files of a ColumnFile, writing each page of
+     * a column as soon as it fills up.
+     */
+    static class ColumnWriter {
+        private final Type[] types;
+        private final boolean compress;
+        private final OutputStream[] outs;
+        private final ColumnPage[] pages;
+        private final int[] pageCounts;
+        private int rows = 0;
+
+        ColumnWriter(File outFile, Type[] typeAr, boolean compress) throws IOException {
+            ColumnFile cf = new ColumnFile(outFile, new TupleDesc(typeAr), compress);
+            types = typeAr;
+            this.compress = compress;
+            outs = new OutputStream[typeAr.length];
+            pages = new ColumnPage[typeAr.length];
+            pageCounts = new int[typeAr.length];
+            for (int i = 0; i < typeAr.length; i++) {
+                outs[i] = new BufferedOutputStream(new FileOutputStream(cf.getColumnFile(i)));
+                pages[i] = newPage(i);
+            }
+        }
+
+        private ColumnPage newPage(int col) throws IOException {
+            return new ColumnPage(new ColumnPageId(0, col, pageCounts[col]), types[col],
+                    compress, ColumnPage.createEmptyPageData(rows));
+        }
+
+        void append(Field[] row) throws IOException {
+            try {
+                for (int i = 0; i < row.length; i++) {
+                    if (!pages[i].hasRoomFor(row[i])) {
+                        outs[i].write(pages[i].getPageData());
+                        pageCounts[i]++;
+                        pages[i] = newPage(i);
+                    }
+                    pages[i].appendValue(row[i]);
+                }
+            } catch (DbException e) {
+                throw new IOException(e.getMessage());
+            }
+            rows++;
+        }
+
+        void close() throws IOException {
+            for (int i = 0; i < types.length; i++) {
+                // like HeapFileEncoder, an empty table still gets one page
+                if (pages[i].getNumValues() > 0 || pageCounts[i] == 0)
+                    outs[i].write(pages[i].getPageData());
+                outs[i].close();
+            }
+        }
+    }
+}
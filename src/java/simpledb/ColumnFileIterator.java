@@ -0,0 +1,198 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * ColumnFileIterator reassembles tuples from the page sequences of a subset
+ * of the columns of a ColumnFile, fetching pages through the BufferPool. If it
+ * is given predicates, the columns they reference are read as well and only
+ * rows that satisfy all of them are returned. The pages of the first column
+ * of the file are always fetched and decoded, since the RecordIds of the
+ * tuples refer to their positions in that column; its values are only
+ * materialized as fields of the tuples if they are projected or tested.
+ */
+public class ColumnFileIterator implements DbFileIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    ColumnFile file;
+    int[] fields;
+    // the output columns followed by any other columns the predicates use,
+    // and by column 0 if none of those is
+    int[] readFields;
+    // number of leading readFields whose values are used
+    int valueFields;
+    // position in readFields of column 0
+    int ridPosition;
+    Predicate[] preds;
+    // position in readFields of the column each predicate tests
+    int[] predPositions;
+    TupleDesc td;
+    Tuple nextTuple;
+    TransactionId transId;
+
+    // per read column cursors
+    int[] pageCounts;
+    int[] pageNums;
+    int[] positions;
+    ColumnPage[] pages;
+
+    /**
+     * @param f the file to read
+     * @param fieldList the columns of f to return, in output order, or null
+     *            for all columns
+     * @param tid the transaction reading the file
+     */
+    public ColumnFileIterator(ColumnFile f, int[] fieldList, TransactionId tid) {
+        this(f, fieldList, null, tid);
+    }
+
+    /**
+     * @param f the file to read
+     * @param fieldList the columns of f to return, in output order, or null
+     *            for all columns
+     * @param predicates the predicates returned rows must satisfy, with field
+     *            numbers referring to the columns of f, or null
+     * @param tid the transaction reading the file
+     */
+    public ColumnFileIterator(ColumnFile f, int[] fieldList, Predicate[] predicates, TransactionId tid) {
+        file = f;
+        transId = tid;
+        TupleDesc fileTd = f.getTupleDesc();
+        if (fieldList == null) {
+            fieldList = new int[fileTd.numFields()];
+            for (int i = 0; i < fieldList.length; i++)
+                fieldList[i] = i;
+        }
+        if (fieldList.length == 0)
+            throw new IllegalArgumentException("must read at least one column");
+        fields = fieldList;
+
+        Type[] types = new Type[fields.length];
+        String[] names = new String[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            types[i] = fileTd.getFieldType(fields[i]);
+            names[i] = fileTd.getFieldName(fields[i]);
+        }
+        td = new TupleDesc(types, names);
+
+        preds = predicates == null ? new Predicate[0] : predicates;
+        ArrayList<Integer> read = new ArrayList<Integer>();
+        for (int field : fields)
+            read.add(field);
+        predPositions = new int[preds.length];
+        for (int i = 0; i < preds.length; i++) {
+            int pos = read.indexOf(preds[i].getField());
+            if (pos < 0) {
+                pos = read.size();
+                read.add(preds[i].getField());
+            }
+            predPositions[i] = pos;
+        }
+        valueFields = read.size();
+        if (!read.contains(0))
+            read.add(0);
+        ridPosition = read.indexOf(0);
+        readFields = new int[read.size()];
+        for (int i = 0; i < readFields.length; i++)
+            readFields[i] = read.get(i);
+    }
+
+    /**
+     * Opens the iterator
+     * @throws DbException when there are problems opening/accessing the database.
+     */
+    public void open() throws DbException, TransactionAbortedException {
+        pageCounts = new int[readFields.length];
+        pageNums = new int[readFields.length];
+        positions = new int[readFields.length];
+        pages = new ColumnPage[readFields.length];
+        nextTuple = null;
+        for (int k = 0; k < readFields.length; k++) {
+            pageCounts[k] = file.numPages(readFields[k]);
+            pageNums[k] = -1;
+            advance(k);
+        }
+    }
+
+    /** Moves the cursor of read column k to the start of its next page. */
+    private void advance(int k) throws DbException, TransactionAbortedException {
+        pageNums[k]++;
+        positions[k] = 0;
+        if (pageNums[k] < pageCounts[k]) {
+            ColumnPageId pid = new ColumnPageId(file.getId(), readFields[k], pageNums[k]);
+            pages[k] = (ColumnPage) Database.getBufferPool().getPage(transId, pid, Permissions.READ_ONLY);
+        } else {
+            pages[k] = null;
+        }
+    }
+
+    /** @return true if there are more tuples available. */
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (pages == null)
+            return false;
+        while (nextTuple == null) {
+            while (pages[0] != null && positions[0] >= pages[0].getNumValues())
+                advance(0);
+            if (pages[0] == null)
+                return false;
+            nextTuple = readRow();
+        }
+        return true;
+    }
+
+    /**
+     * Reads the values of the current row and moves every cursor past it.
+     * @return the row, or null if it does not satisfy the predicates
+     */
+    private Tuple readRow() throws DbException, TransactionAbortedException {
+        Field[] values = new Field[readFields.length];
+        for (int k = 0; k < readFields.length; k++) {
+            while (positions[k] >= pages[k].getNumValues())
+                advance(k);
+            if (k < valueFields)
+                values[k] = pages[k].getValue(positions[k]);
+            positions[k]++;
+        }
+        for (int i = 0; i < preds.length; i++) {
+            if (!values[predPositions[i]].compare(preds[i].getOp(), preds[i].getOperand()))
+                return null;
+        }
+        Tuple t = new Tuple(td);
+        for (int k = 0; k < fields.length; k++)
+            t.setField(k, values[k]);
+        t.setRecordId(new RecordId(pages[ridPosition].getId(), positions[ridPosition] - 1));
+        return t;
+    }
+
+    /**
+     * Gets the next tuple from the file.
+     *
+     * @return The next tuple in the iterator.
+     * @throws NoSuchElementException if there are no more tuples
+     */
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (!hasNext())
+            throw new NoSuchElementException("");
+        Tuple t = nextTuple;
+        nextTuple = null;
+        return t;
+    }
+
+    /**
+     * Resets the iterator to the start.
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    /**
+     * Closes the iterator.
+     */
+    public void close() {
+        pages = null;
+        nextTuple = null;
+    }
+}
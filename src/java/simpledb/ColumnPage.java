@@ -0,0 +1,491 @@
+package simpledb;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Each instance of ColumnPage stores the values of one column for a run of
+ * consecutive rows of a ColumnFile, and implements the Page interface that is
+ * used by BufferPool.
+ * <p>
+ * Pages of compressed tables are written with whichever lightweight encoding
+ * makes the values smallest: run-length or frame-of-reference bit packing for
+ * int columns, and dictionary encoding for string columns. Pages are decoded
+ * when they are read, and repeated values share a single Field object, so a
+ * compressed page also takes less space in the buffer pool.
+ *
+ * @see ColumnFile
+ * @see BufferPool
+ */
+public class ColumnPage implements Page {
+
+    /** Number of leading characters of a string kept in the page min/max. */
+    public static final int ZONE_PREFIX_LEN = 8;
+
+    /** Values are stored one after another at their natural size. */
+    public static final byte PLAIN = 0;
+    /** Int values are stored as (value, run length) pairs. */
+    public static final byte RLE = 1;
+    /** Int values are stored as bit packed offsets from the page minimum. */
+    public static final byte FRAME_OF_REFERENCE = 2;
+    /** String values are stored as bit packed codes into a page dictionary. */
+    public static final byte DICTIONARY = 3;
+
+    ColumnPageId pid;
+    Type type;
+    boolean compressed;
+    ArrayList<Field> values;
+    int firstRow;
+    Field min;
+    Field max;
+    boolean dirty = false;
+    TransactionId lastTrans = null;
+
+    // running sizes of the page under each encoding
+    int plainBytes;
+    int runs;
+    HashMap<Field, Field> dictionary = new HashMap<Field, Field>();
+    int dictionaryBytes;
+
+    byte[] oldData;
+
+    /**
+     * Create a ColumnPage from a set of bytes of data read from disk. The
+     * column type and whether the table is compressed are looked up in the
+     * catalog.
+     *
+     * @see #ColumnPage(ColumnPageId, Type, boolean, byte[])
+     */
+    public ColumnPage(ColumnPageId id, byte[] data) throws IOException {
+        this(id, Database.getCatalog().getTupleDesc(id.getTableId()).getFieldType(id.getColumn()),
+                ((ColumnFile) Database.getCatalog().getDbFile(id.getTableId())).isCompressed(), data);
+    }
+
+    /**
+     * Create a ColumnPage holding values of the specified type from a set of
+     * bytes of data read from disk. The format of a ColumnPage is a header
+     * followed by the values of the column:
+     * <p>
+     *     int numValues, int firstRow, byte encoding, min, max, values
+     * <p>
+     * where firstRow is the row number (within the table) of the first value
+     * on the page. For INT_TYPE columns min and max are 4 byte ints; for
+     * STRING_TYPE columns they hold the first {@link #ZONE_PREFIX_LEN}
+     * characters of the smallest and largest value. The values are laid out
+     * according to the encoding byte:
+     * <ul>
+     * <li>PLAIN: ints take 4 bytes each; strings are a 4 byte length followed
+     * by exactly that many bytes, rather than being padded to
+     * {@link Type#STRING_LEN}.
+     * <li>RLE: an int count of runs, followed by an int value and an int
+     * length for each run.
+     * <li>FRAME_OF_REFERENCE: an int base, the smallest value on the page,
+     * and a byte bit width w, followed by each value minus the base packed
+     * into w bits.
+     * <li>DICTIONARY: a short count of distinct strings, each stored as in
+     * PLAIN, a byte bit width w, and a w bit dictionary code per value.
+     * </ul>
+     *
+     * @param compressed whether the page should be re-encoded with the
+     *            smallest encoding when it is written out
+     */
+    public ColumnPage(ColumnPageId id, Type type, boolean compressed, byte[] data) throws IOException {
+        this.pid = id;
+        this.type = type;
+        this.compressed = compressed;
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+
+        int numValues = dis.readInt();
+        firstRow = dis.readInt();
+        byte encoding = dis.readByte();
+        // the stored bounds are only for readers that don't decode the page;
+        // exact ones are recomputed below
+        dis.skipBytes(getHeaderSize(type) - 9);
+
+        values = new ArrayList<Field>(numValues);
+        plainBytes = getHeaderSize(type);
+        try {
+            switch (encoding) {
+            case PLAIN:
+                for (int i = 0; i < numValues; i++)
+                    append(readValue(dis));
+                break;
+            case RLE:
+                int numRuns = dis.readInt();
+                for (int r = 0; r < numRuns; r++) {
+                    Field f = type.parse(dis);
+                    int len = dis.readInt();
+                    for (int i = 0; i < len; i++)
+                        append(f);
+                }
+                break;
+            case FRAME_OF_REFERENCE:
+                int base = dis.readInt();
+                int width = dis.readByte();
+                long[] offsets = unpack(dis, numValues, width);
+                Field prev = null;
+                for (int i = 0; i < numValues; i++) {
+                    int v = (int) (base + offsets[i]);
+                    if (prev == null || ((IntField) prev).getValue() != v)
+                        prev = new IntField(v);
+                    append(prev);
+                }
+                break;
+            case DICTIONARY:
+                int numEntries = dis.readShort() & 0xffff;
+                Field[] entries = new Field[numEntries];
+                for (int i = 0; i < numEntries; i++)
+                    entries[i] = readValue(dis);
+                long[] codes = unpack(dis, numValues, dis.readByte());
+                for (int i = 0; i < numValues; i++)
+                    append(entries[(int) codes[i]]);
+                break;
+            default:
+                throw new java.text.ParseException("unknown encoding " + encoding, 0);
+            }
+        } catch (java.text.ParseException e) {
+            e.printStackTrace();
+            throw new NoSuchElementException("parsing error!");
+        }
+        dis.close();
+
+        setBeforeImage();
+    }
+
+    /** @return the number of bytes of header at the start of a page of the given type */
+    static int getHeaderSize(Type type) {
+        if (type == Type.INT_TYPE)
+            return 17;
+        return 9 + 2 * (4 + ZONE_PREFIX_LEN);
+    }
+
+    /** @return the number of bytes the specified value occupies on a PLAIN page */
+    static int getValueSize(Field f) {
+        if (f.getType() == Type.INT_TYPE)
+            return 4;
+        return 4 + ((StringField) f).getValue().length();
+    }
+
+    /** @return the number of bits needed to represent values from 0 to range */
+    static int bitWidth(long range) {
+        return 64 - Long.numberOfLeadingZeros(range);
+    }
+
+    /** @return the number of bytes needed to pack n values of width bits each */
+    static int packedSize(int n, int width) {
+        return (int) (((long) n * width + 7) / 8);
+    }
+
+    private Field readValue(DataInputStream dis) throws java.text.ParseException {
+        if (type == Type.INT_TYPE)
+            return type.parse(dis);
+        try {
+            int strLen = dis.readInt();
+            byte bs[] = new byte[strLen];
+            dis.readFully(bs);
+            return new StringField(new String(bs), Type.STRING_LEN);
+        } catch (IOException e) {
+            throw new java.text.ParseException("couldn't parse", 0);
+        }
+    }
+
+    private void writeValue(DataOutputStream dos, Field f) throws IOException {
+        if (type == Type.INT_TYPE) {
+            f.serialize(dos);
+        } else {
+            String s = ((StringField) f).getValue();
+            dos.writeInt(s.length());
+            dos.writeBytes(s);
+        }
+    }
+
+    private void writeBound(DataOutputStream dos, Field f) throws IOException {
+        if (type == Type.INT_TYPE) {
+            dos.writeInt(f == null ? 0 : ((IntField) f).getValue());
+            return;
+        }
+        String s = f == null ? "" : ((StringField) f).getValue();
+        if (s.length() > ZONE_PREFIX_LEN)
+            s = s.substring(0, ZONE_PREFIX_LEN);
+        dos.writeInt(s.length());
+        dos.writeBytes(s);
+        for (int i = s.length(); i < ZONE_PREFIX_LEN; i++)
+            dos.writeByte(0);
+    }
+
+    /** Writes each of the values packed into width bits, least significant bit first. */
+    static void pack(DataOutputStream dos, long[] vals, int width) throws IOException {
+        byte[] out = new byte[packedSize(vals.length, width)];
+        long bit = 0;
+        for (long v : vals) {
+            for (int b = 0; b < width; b++, bit++) {
+                if (((v >>> b) & 1) != 0)
+                    out[(int) (bit >>> 3)] |= 1 << (bit & 7);
+            }
+        }
+        dos.write(out);
+    }
+
+    /** Reads n values packed into width bits each by {@link #pack}. */
+    static long[] unpack(DataInputStream dis, int n, int width) throws java.text.ParseException {
+        byte[] in = new byte[packedSize(n, width)];
+        try {
+            dis.readFully(in);
+        } catch (IOException e) {
+            throw new java.text.ParseException("couldn't parse", 0);
+        }
+        long[] vals = new long[n];
+        long bit = 0;
+        for (int i = 0; i < n; i++) {
+            long v = 0;
+            for (int b = 0; b < width; b++, bit++) {
+                if ((in[(int) (bit >>> 3)] & (1 << (bit & 7))) != 0)
+                    v |= 1L << b;
+            }
+            vals[i] = v;
+        }
+        return vals;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public ColumnPage getBeforeImage() {
+        try {
+            return new ColumnPage(pid, type, compressed, oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData().clone();
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public ColumnPageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return the encoding getPageData will use for the current contents of
+     *         this page: PLAIN for uncompressed pages, otherwise the smallest
+     *         encoding for the values.
+     */
+    public byte getEncoding() {
+        byte best = PLAIN;
+        if (!compressed || values.isEmpty())
+            return best;
+        int bestSize = plainBytes;
+        if (type == Type.INT_TYPE) {
+            if (rleSize(runs) < bestSize) {
+                best = RLE;
+                bestSize = rleSize(runs);
+            }
+            if (forSize(values.size(), min, max) < bestSize)
+                best = FRAME_OF_REFERENCE;
+        } else if (dictionarySize(values.size(), dictionary.size(), dictionaryBytes) < bestSize) {
+            best = DICTIONARY;
+        }
+        return best;
+    }
+
+    private int rleSize(int numRuns) {
+        return getHeaderSize(type) + 4 + 8 * numRuns;
+    }
+
+    private int forSize(int n, Field lo, Field hi) {
+        long range = (long) ((IntField) hi).getValue() - ((IntField) lo).getValue();
+        return getHeaderSize(type) + 5 + packedSize(n, bitWidth(range));
+    }
+
+    private int dictionarySize(int n, int numEntries, int entryBytes) {
+        if (numEntries > 0xffff)
+            return Integer.MAX_VALUE;
+        return getHeaderSize(type) + 2 + entryBytes + 1 + packedSize(n, bitWidth(numEntries - 1));
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk.
+     *
+     * @see #ColumnPage
+     * @return A byte array correspond to the bytes of this page.
+     */
+    public byte[] getPageData() {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        byte encoding = getEncoding();
+        try {
+            dos.writeInt(values.size());
+            dos.writeInt(firstRow);
+            dos.writeByte(encoding);
+            writeBound(dos, min);
+            writeBound(dos, max);
+            switch (encoding) {
+            case PLAIN:
+                for (Field f : values)
+                    writeValue(dos, f);
+                break;
+            case RLE:
+                dos.writeInt(runs);
+                int i = 0;
+                while (i < values.size()) {
+                    int j = i;
+                    while (j < values.size() && values.get(j).equals(values.get(i)))
+                        j++;
+                    writeValue(dos, values.get(i));
+                    dos.writeInt(j - i);
+                    i = j;
+                }
+                break;
+            case FRAME_OF_REFERENCE:
+                int base = ((IntField) min).getValue();
+                dos.writeInt(base);
+                int width = bitWidth((long) ((IntField) max).getValue() - base);
+                dos.writeByte(width);
+                long[] offsets = new long[values.size()];
+                for (int k = 0; k < offsets.length; k++)
+                    offsets[k] = (long) ((IntField) values.get(k)).getValue() - base;
+                pack(dos, offsets, width);
+                break;
+            case DICTIONARY:
+                HashMap<Field, Integer> codeOf = new HashMap<Field, Integer>();
+                dos.writeShort(dictionary.size());
+                for (Field f : values) {
+                    if (!codeOf.containsKey(f)) {
+                        codeOf.put(f, codeOf.size());
+                        writeValue(dos, f);
+                    }
+                }
+                dos.writeByte(bitWidth(codeOf.size() - 1));
+                long[] codes = new long[values.size()];
+                for (int k = 0; k < codes.length; k++)
+                    codes[k] = codeOf.get(values.get(k));
+                pack(dos, codes, bitWidth(codeOf.size() - 1));
+                break;
+            }
+            dos.write(new byte[BufferPool.PAGE_SIZE - dos.size()]);
+            dos.flush();
+        } catch (IOException e) {
+            // this really shouldn't happen
+            e.printStackTrace();
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * ColumnPage whose first value will be row firstRow of the table.
+     */
+    public static byte[] createEmptyPageData(int firstRow) {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[4] = (byte) (firstRow >>> 24);
+        data[5] = (byte) (firstRow >>> 16);
+        data[6] = (byte) (firstRow >>> 8);
+        data[7] = (byte) firstRow;
+        return data;
+    }
+
+    /**
+     * @return true if the specified value fits in the free space of this
+     *         page, under the encoding the page would use once it was added
+     */
+    public boolean hasRoomFor(Field f) {
+        int n = values.size() + 1;
+        int size = plainBytes + getValueSize(f);
+        if (!compressed)
+            return size <= BufferPool.PAGE_SIZE;
+
+        if (type == Type.INT_TYPE) {
+            Field lo = min == null || f.compare(Predicate.Op.LESS_THAN, min) ? f : min;
+            Field hi = max == null || f.compare(Predicate.Op.GREATER_THAN, max) ? f : max;
+            boolean newRun = values.isEmpty() || !values.get(values.size() - 1).equals(f);
+            size = Math.min(size, rleSize(newRun ? runs + 1 : runs));
+            size = Math.min(size, forSize(n, lo, hi));
+        } else {
+            boolean newEntry = !dictionary.containsKey(f);
+            size = Math.min(size, dictionarySize(n, newEntry ? dictionary.size() + 1 : dictionary.size(),
+                    newEntry ? dictionaryBytes + getValueSize(f) : dictionaryBytes));
+        }
+        return size <= BufferPool.PAGE_SIZE;
+    }
+
+    /**
+     * Appends the specified value to the end of this page.
+     * @throws DbException if the value is of the wrong type or the page is full
+     */
+    public void appendValue(Field f) throws DbException {
+        if (f.getType() != type)
+            throw new DbException("type mismatch appending to column page " + pid);
+        if (!hasRoomFor(f))
+            throw new DbException("column page " + pid + " is full");
+        append(f);
+    }
+
+    private void append(Field f) {
+        if (values.isEmpty() || !values.get(values.size() - 1).equals(f))
+            runs++;
+        if (compressed) {
+            // share one Field object between equal values
+            Field shared = dictionary.get(f);
+            if (shared == null) {
+                dictionary.put(f, f);
+                dictionaryBytes += getValueSize(f);
+            } else {
+                f = shared;
+            }
+        }
+        values.add(f);
+        plainBytes += getValueSize(f);
+        if (min == null || f.compare(Predicate.Op.LESS_THAN, min))
+            min = f;
+        if (max == null || f.compare(Predicate.Op.GREATER_THAN, max))
+            max = f;
+    }
+
+    /** @return the number of values stored on this page */
+    public int getNumValues() {
+        return values.size();
+    }
+
+    /** @return the row number within the table of the first value on this page */
+    public int getFirstRow() {
+        return firstRow;
+    }
+
+    /** @return the i-th value on this page */
+    public Field getValue(int i) {
+        return values.get(i);
+    }
+
+    /** @return the smallest value on this page, or null if the page is empty */
+    public Field getMin() {
+        return min;
+    }
+
+    /** @return the largest value on this page, or null if the page is empty */
+    public Field getMax() {
+        return max;
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        lastTrans = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return dirty ? lastTrans : null;
+    }
+}
@@ -0,0 +1,82 @@
+package simpledb;
+
+/** Unique identifier for ColumnPage objects. */
+public class ColumnPageId implements PageId {
+
+    int tableId;
+    int column;
+    int pgNo;
+
+    /**
+     * Constructor. Create a page id structure for a specific page of a
+     * specific column of a specific table.
+     *
+     * @param tId The table that is being referenced
+     * @param col The index of the column in the table's TupleDesc
+     * @param pNo The page number in that column's page sequence.
+     */
+    public ColumnPageId(int tId, int col, int pNo) {
+        tableId = tId;
+        column = col;
+        pgNo = pNo;
+    }
+
+    /** @return the table associated with this PageId */
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the column of the table this page stores values for */
+    public int getColumn() {
+        return column;
+    }
+
+    /**
+     * @return the page number in the page sequence of column getColumn()
+     *   of table getTableId()
+     */
+    public int pageNumber() {
+        return pgNo;
+    }
+
+    /**
+     * @return a hash code for this page, built from the table, column and
+     *   page numbers.
+     * @see BufferPool
+     */
+    public int hashCode() {
+        return (tableId * 31 + column) * 31 + pgNo;
+    }
+
+    /**
+     * Compares one PageId to another.
+     *
+     * @param o The object to compare against (must be a ColumnPageId)
+     * @return true if the table, column and page numbers are the same
+     */
+    public boolean equals(Object o) {
+        if (!(o instanceof ColumnPageId)) {
+            return false;
+        }
+        ColumnPageId other = (ColumnPageId) o;
+        return other.tableId == tableId && other.column == column && other.pgNo == pgNo;
+    }
+
+    /**
+     *  Return a representation of this object as an array of
+     *  integers, for writing to disk.
+     */
+    public int[] serialize() {
+        int data[] = new int[3];
+
+        data[0] = getTableId();
+        data[1] = getColumn();
+        data[2] = pageNumber();
+
+        return data;
+    }
+
+    public String toString() {
+        return tableId + "." + column + "(" + pgNo + ")";
+    }
+}
@@ -0,0 +1,233 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * CostCalibrator measures the costs the optimizer's cost model is made of on
+ * this machine, and stores them so that later runs can use them. Costs are
+ * in units of the time it takes to evaluate a predicate on one tuple, which
+ * is what the optimizer charges for every tuple a join compares; a page
+ * read costs as many tuple evaluations as the time it took to read a page
+ * through a HeapFile. Until costs are measured or loaded, every page read
+ * costs {@link TableStats#IOCOSTPERPAGE}.
+ */
+public class CostCalibrator {
+
+    /** Number of pages of the file page reads are measured on. */
+    static final int DEFAULT_PAGES = 2048;
+
+    private static double seqPageCost = TableStats.IOCOSTPERPAGE;
+    private static double randomPageCost = TableStats.IOCOSTPERPAGE;
+    private static double hashProbeCost = 1.0;
+
+    /** @return the cost of reading the next page of a file */
+    public static double seqPageCost() {
+        return seqPageCost;
+    }
+
+    /** @return the cost of reading a page at a random place in a file */
+    public static double randomPageCost() {
+        return randomPageCost;
+    }
+
+    /** @return the cost of looking up a field in an in-memory hash table */
+    public static double hashProbeCost() {
+        return hashProbeCost;
+    }
+
+    /** @return the cost of reading the next page of a file, as TableStats takes it */
+    public static int ioCostPerPage() {
+        return (int) Math.max(1, Math.round(seqPageCost));
+    }
+
+    /** Sets the costs the optimizer uses. */
+    public static void setCosts(double seqPage, double randomPage, double hashProbe) {
+        seqPageCost = seqPage;
+        randomPageCost = randomPage;
+        hashProbeCost = hashProbe;
+    }
+
+    /** @return the file the costs measured for the specified catalog are kept in */
+    public static File getCostsFile(File catalogFile) {
+        return new File(catalogFile.getPath() + ".costs");
+    }
+
+    /** Loads costs saved by {@link #save}. */
+    public static void load(File f) throws IOException {
+        Properties props = new Properties();
+        InputStream in = new FileInputStream(f);
+        try {
+            props.load(in);
+        } finally {
+            in.close();
+        }
+        try {
+            setCosts(Double.parseDouble(props.getProperty("seqPageCost")),
+                    Double.parseDouble(props.getProperty("randomPageCost")),
+                    Double.parseDouble(props.getProperty("hashProbeCost")));
+        } catch (RuntimeException e) {
+            throw new IOException("Invalid costs file " + f);
+        }
+    }
+
+    /** Saves the current costs to the specified file. */
+    public static void save(File f) throws IOException {
+        Properties props = new Properties();
+        props.setProperty("seqPageCost", Double.toString(seqPageCost));
+        props.setProperty("randomPageCost", Double.toString(randomPageCost));
+        props.setProperty("hashProbeCost", Double.toString(hashProbeCost));
+        OutputStream out = new FileOutputStream(f);
+        try {
+            props.store(out, "SimpleDb cost model, in tuple evaluations");
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Measures the costs and uses them from now on. Page reads are measured
+     * on a scratch table of the specified number of pages, which is in the
+     * catalog only while it is measured; reads are timed through HeapFile
+     * rather than the BufferPool, so that every read goes to the file.
+     */
+    public static void calibrate(int pages) throws IOException {
+        File f = File.createTempFile("calibrate", ".dat");
+        f.deleteOnExit();
+        HeapFile hf = Utility.openHeapFile(2, f);
+        try {
+            writePages(hf, pages);
+            double tupleNanos = timePredicate(hf);
+            // take the fastest of a few alternating runs, so that neither
+            // order pays for warming up
+            double seqNanos = Double.MAX_VALUE, randomNanos = Double.MAX_VALUE;
+            for (int i = 0; i < 3; i++) {
+                seqNanos = Math.min(seqNanos, timeReads(hf, false));
+                randomNanos = Math.min(randomNanos, timeReads(hf, true));
+            }
+            // a file the OS caches reads as fast in any order; timing noise
+            // should not make random reads look cheaper
+            randomNanos = Math.max(randomNanos, seqNanos);
+            double hashNanos = timeHashProbes(hf);
+            setCosts(seqNanos / tupleNanos, randomNanos / tupleNanos, hashNanos / tupleNanos);
+        } finally {
+            Database.getCatalog().removeTable(hf.getId());
+            f.delete();
+        }
+    }
+
+    /**
+     * Fills the file of the specified scratch table with full pages of
+     * tuples of a unique id and a random number, one page at a time.
+     */
+    private static void writePages(HeapFile hf, int pages) throws IOException {
+        Random rand = new Random(0);
+        int id = 0;
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(hf.getFile()));
+        try {
+            for (int i = 0; i < pages; i++) {
+                HeapPage page = new HeapPage(new HeapPageId(hf.getId(), i),
+                        HeapPage.createEmptyPageData());
+                while (page.getNumEmptySlots() > 0) {
+                    Tuple t = new Tuple(hf.getTupleDesc());
+                    t.setField(0, new IntField(id++));
+                    t.setField(1, new IntField(rand.nextInt()));
+                    page.insertTuple(t);
+                }
+                out.write(page.getPageData());
+            }
+        } catch (DbException e) {
+            throw new RuntimeException(e);
+        } finally {
+            out.close();
+        }
+    }
+
+    /** @return the time in nanoseconds to read a page of the file */
+    private static double timeReads(HeapFile hf, boolean random) {
+        int pages = hf.numPages();
+        ArrayList<Integer> order = new ArrayList<Integer>();
+        for (int i = 0; i < pages; i++)
+            order.add(i);
+        if (random)
+            Collections.shuffle(order, new Random(1));
+        long start = System.nanoTime();
+        for (int i : order)
+            hf.readPage(new HeapPageId(hf.getId(), i));
+        return (double) (System.nanoTime() - start) / pages;
+    }
+
+    /** @return the time in nanoseconds to evaluate a predicate on a tuple */
+    private static double timePredicate(HeapFile hf) {
+        ArrayList<Tuple> tuples = readTuples(hf);
+        Predicate p = new Predicate(1, Predicate.Op.GREATER_THAN, new IntField(0));
+        int matches = 0;
+        long start = 0;
+        int rounds = 20;
+        for (int r = -rounds; r < rounds; r++) {
+            // the first half of the rounds warm up
+            if (r == 0)
+                start = System.nanoTime();
+            for (Tuple t : tuples) {
+                if (p.filter(t))
+                    matches++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        if (matches < 0)
+            throw new IllegalStateException();
+        return Math.max(1.0, (double) time / ((long) rounds * tuples.size()));
+    }
+
+    /** @return the time in nanoseconds to look a field up in a hash table */
+    private static double timeHashProbes(HeapFile hf) {
+        ArrayList<Tuple> tuples = readTuples(hf);
+        HashMap<Field, Tuple> table = new HashMap<Field, Tuple>();
+        for (Tuple t : tuples)
+            table.put(t.getField(0), t);
+        int found = 0;
+        long start = 0;
+        int rounds = 20;
+        for (int r = -rounds; r < rounds; r++) {
+            if (r == 0)
+                start = System.nanoTime();
+            for (Tuple t : tuples) {
+                if (table.get(t.getField(1)) != null)
+                    found++;
+            }
+        }
+        long time = System.nanoTime() - start;
+        if (found < 0)
+            throw new IllegalStateException();
+        return (double) time / ((long) rounds * tuples.size());
+    }
+
+    private static ArrayList<Tuple> readTuples(HeapFile hf) {
+        ArrayList<Tuple> tuples = new ArrayList<Tuple>();
+        for (int i = 0; i < hf.numPages(); i++) {
+            Iterator<Tuple> it = ((HeapPage) hf.readPage(new HeapPageId(hf.getId(), i))).iterator();
+            while (it.hasNext())
+                tuples.add(it.next());
+        }
+        return tuples;
+    }
+
+    /**
+     * Measures the costs and saves them next to the specified catalog,
+     * where the parser loads them from.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1 || args.length > 2) {
+            System.out.println("Usage: calibrate catalogFile [pages]");
+            System.exit(0);
+        }
+        int pages = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_PAGES;
+        calibrate(pages);
+        File costsFile = getCostsFile(new File(args[0]));
+        save(costsFile);
+        System.out.println("Sequential page read: " + seqPageCost);
+        System.out.println("Random page read: " + randomPageCost);
+        System.out.println("Hash probe: " + hashProbeCost);
+        System.out.println("Saved costs to " + costsFile);
+    }
+}
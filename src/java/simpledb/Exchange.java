@@ -0,0 +1,369 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * Exchange moves tuples between the pipelines of a parallel plan. Each of
+ * its children is run to completion on a thread of the {@link WorkerPool},
+ * and its tuples are handed over in batches through bounded queues, one per
+ * output, so a child that gets ahead of the consumers waits rather than
+ * buffering its whole output. An exchange has one of three modes:
+ * <ul>
+ * <li>{@link Mode#GATHER} merges the tuples of all children into one stream,
+ * read by the single Exchange created by {@link #Exchange(DbIterator[])}.
+ * <li>{@link Mode#REPARTITION} sends every tuple to one of several outputs
+ * by the hash of one of its fields, so that tuples with equal values of the
+ * field end up in the same output; see {@link #repartition}.
+ * <li>{@link Mode#BROADCAST} sends every tuple to each of several outputs;
+ * see {@link #broadcast}.
+ * </ul>
+ * The outputs of a repartition or broadcast are Exchanges of their own,
+ * which share the children and are each read by a different pipeline. The
+ * children start when the first output is opened and stop once every
+ * output has been closed; an output closed before the others are drained
+ * just stops receiving tuples. Since a child waits while the queue of any
+ * output is full, the outputs must be read at the same time, each by a
+ * thread of its own. The order of the tuples of different children is not
+ * preserved.
+ * <p>
+ * An error in a child stops the others, and is thrown by the next call to
+ * hasNext or next of every output.
+ */
+public class Exchange extends Operator {
+
+    private static final long serialVersionUID = 1L;
+
+    /** How an exchange distributes the tuples of its children. */
+    public enum Mode {
+        GATHER, REPARTITION, BROADCAST
+    }
+
+    /** Number of tuples a child hands over at a time. */
+    public static final int BATCH_SIZE = 256;
+
+    /** Number of batches each output's queue holds per child before children wait. */
+    public static final int BATCHES_PER_CHILD = 4;
+
+    // marks the end of a child's tuples in a queue
+    private static final List<Tuple> END = Collections.emptyList();
+
+    private final Router router;
+    private final int output;
+    private transient Iterator<Tuple> batch;
+    private transient int ended;
+
+    /**
+     * Creates an exchange that gathers the tuples of its children.
+     *
+     * @param children
+     *            the iterators whose tuples to gather, which must all have
+     *            the same TupleDesc
+     */
+    public Exchange(DbIterator[] children) {
+        this(new Router(children, Mode.GATHER, -1, 1), 0);
+    }
+
+    private Exchange(Router router, int output) {
+        this.router = router;
+        this.output = output;
+    }
+
+    /**
+     * Creates an exchange that splits the tuples of its children among
+     * several outputs by the hash of one of their fields.
+     *
+     * @param children
+     *            the iterators whose tuples to split, which must all have
+     *            the same TupleDesc
+     * @param field
+     *            the index of the field to split the tuples by
+     * @param outputs
+     *            the number of outputs
+     * @return the outputs of the exchange
+     */
+    public static Exchange[] repartition(DbIterator[] children, int field, int outputs) {
+        return outputs(new Router(children, Mode.REPARTITION, field, outputs));
+    }
+
+    /**
+     * Creates an exchange that sends each tuple of its children to every
+     * one of several outputs.
+     *
+     * @param children
+     *            the iterators whose tuples to send, which must all have the
+     *            same TupleDesc
+     * @param outputs
+     *            the number of outputs
+     * @return the outputs of the exchange
+     */
+    public static Exchange[] broadcast(DbIterator[] children, int outputs) {
+        return outputs(new Router(children, Mode.BROADCAST, -1, outputs));
+    }
+
+    private static Exchange[] outputs(Router router) {
+        Exchange[] outputs = new Exchange[router.outputs];
+        for (int i = 0; i < outputs.length; i++)
+            outputs[i] = new Exchange(router, i);
+        return outputs;
+    }
+
+    public Mode getMode() {
+        return router.mode;
+    }
+
+    /** @return the field tuples are repartitioned by, or -1 if they are not */
+    public int getPartitionField() {
+        return router.field;
+    }
+
+    /** @return which of the outputs of its exchange this is */
+    public int getOutput() {
+        return output;
+    }
+
+    /** @return the number of outputs of the exchange */
+    public int getOutputs() {
+        return router.outputs;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        router.open(output);
+        batch = null;
+        ended = 0;
+        super.open();
+    }
+
+    protected Tuple fetchNext() throws DbException, TransactionAbortedException {
+        while (batch == null || !batch.hasNext()) {
+            if (ended == router.children.length)
+                return null;
+            List<Tuple> tuples = router.take(output);
+            if (tuples == END)
+                ended++;
+            router.checkFailure();
+            batch = tuples.iterator();
+        }
+        return batch.next();
+    }
+
+    /**
+     * Restarts the children of a gather. The outputs of a repartition or
+     * broadcast cannot be rewound on their own.
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        if (router.outputs > 1)
+            throw new DbException("the outputs of a " + router.mode + " exchange cannot be rewound");
+        close();
+        open();
+    }
+
+    public void close() {
+        router.close(output);
+        batch = null;
+        super.close();
+    }
+
+    public TupleDesc getTupleDesc() {
+        return router.children[0].getTupleDesc();
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return router.children;
+    }
+
+    /** Sets the children of every output of the exchange. */
+    @Override
+    public void setChildren(DbIterator[] children) {
+        router.children = children;
+    }
+
+    /**
+     * The children of an exchange and the queues of its outputs, shared by
+     * all of the outputs.
+     */
+    private static class Router implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        // states of an output
+        private static final int NEW = 0, OPEN = 1, CLOSED = 2;
+
+        // how long a child waits for room in a queue before checking
+        // whether the output has been closed
+        private static final long WAIT_MILLIS = 10;
+
+        DbIterator[] children;
+        final Mode mode;
+        final int field;
+        final int outputs;
+
+        private transient ArrayList<BlockingQueue<List<Tuple>>> queues;
+        private transient AtomicIntegerArray state;
+        private transient CountDownLatch running;
+        private transient boolean started;
+        private transient volatile boolean stopped;
+        private transient volatile Exception failure;
+
+        Router(DbIterator[] children, Mode mode, int field, int outputs) {
+            if (children.length == 0)
+                throw new IllegalArgumentException("exchange needs at least one child");
+            if (outputs < 1)
+                throw new IllegalArgumentException("exchange needs at least one output");
+            this.children = children;
+            this.mode = mode;
+            this.field = field;
+            this.outputs = outputs;
+        }
+
+        /** Opens an output, starting the children if it is the first. */
+        synchronized void open(int o) throws DbException {
+            if (!started)
+                start();
+            if (!state.compareAndSet(o, NEW, OPEN))
+                throw new DbException("output " + o + " of the exchange was opened twice"
+                        + " without closing the others");
+        }
+
+        private void start() {
+            queues = new ArrayList<BlockingQueue<List<Tuple>>>(outputs);
+            for (int i = 0; i < outputs; i++)
+                queues.add(new ArrayBlockingQueue<List<Tuple>>(children.length * BATCHES_PER_CHILD));
+            state = new AtomicIntegerArray(outputs);
+            running = new CountDownLatch(children.length);
+            stopped = false;
+            failure = null;
+            started = true;
+            for (final DbIterator child : children) {
+                WorkerPool.execute(new Runnable() {
+                    public void run() {
+                        produce(child);
+                    }
+                });
+            }
+        }
+
+        /** Runs a child, putting its tuples on the queues; runs on a worker. */
+        private void produce(DbIterator child) {
+            try {
+                child.open();
+                try {
+                    int n = mode == Mode.REPARTITION ? outputs : 1;
+                    ArrayList<List<Tuple>> pending = new ArrayList<List<Tuple>>(n);
+                    for (int i = 0; i < n; i++)
+                        pending.add(new ArrayList<Tuple>(BATCH_SIZE));
+                    while (!stopped && child.hasNext()) {
+                        Tuple t = child.next();
+                        int o = mode == Mode.REPARTITION
+                                ? (t.getField(field).hashCode() & Integer.MAX_VALUE) % outputs : 0;
+                        List<Tuple> tuples = pending.get(o);
+                        tuples.add(t);
+                        if (tuples.size() == BATCH_SIZE) {
+                            send(o, tuples);
+                            pending.set(o, new ArrayList<Tuple>(BATCH_SIZE));
+                        }
+                    }
+                    for (int o = 0; o < n && !stopped; o++) {
+                        if (!pending.get(o).isEmpty())
+                            send(o, pending.get(o));
+                    }
+                } finally {
+                    child.close();
+                }
+            } catch (Exception e) {
+                if (failure == null)
+                    failure = e;
+                stopped = true;
+            } finally {
+                for (int o = 0; o < outputs; o++)
+                    putEnd(o);
+                running.countDown();
+            }
+        }
+
+        /** Sends a batch to an output, or to every output unless repartitioning. */
+        private void send(int o, List<Tuple> tuples) throws InterruptedException {
+            if (mode == Mode.REPARTITION) {
+                put(o, tuples);
+            } else {
+                for (int i = 0; i < outputs; i++)
+                    put(i, tuples);
+            }
+        }
+
+        /**
+         * Puts a batch on the queue of an output, waiting for room unless the
+         * output is or gets closed.
+         */
+        private void put(int o, List<Tuple> tuples) throws InterruptedException {
+            BlockingQueue<List<Tuple>> queue = queues.get(o);
+            while (state.get(o) != CLOSED) {
+                if (queue.offer(tuples, WAIT_MILLIS, TimeUnit.MILLISECONDS))
+                    return;
+            }
+        }
+
+        private void putEnd(int o) {
+            while (true) {
+                try {
+                    put(o, END);
+                    return;
+                } catch (InterruptedException e) {
+                    // the consumer waits for this marker; keep trying
+                }
+            }
+        }
+
+        /** @return the next batch of an output, waiting for one if needed */
+        List<Tuple> take(int o) throws DbException {
+            try {
+                return queues.get(o).take();
+            } catch (InterruptedException e) {
+                throw new DbException("interrupted while waiting for tuples");
+            }
+        }
+
+        /** Throws the error of a child, if one failed. */
+        void checkFailure() throws DbException, TransactionAbortedException {
+            Exception e = failure;
+            if (e == null)
+                return;
+            if (e instanceof DbException)
+                throw (DbException) e;
+            if (e instanceof TransactionAbortedException)
+                throw (TransactionAbortedException) e;
+            DbException d = new DbException("exchange worker failed: " + e);
+            d.initCause(e);
+            throw d;
+        }
+
+        /**
+         * Closes an output. Closing the last one stops the children and waits
+         * for them to close.
+         */
+        void close(int o) {
+            CountDownLatch children;
+            synchronized (this) {
+                if (!started || state.getAndSet(o, CLOSED) == CLOSED)
+                    return;
+                // let children waiting for room in the queue move on
+                queues.get(o).clear();
+                for (int i = 0; i < outputs; i++) {
+                    if (state.get(i) != CLOSED)
+                        return;
+                }
+                stopped = true;
+                started = false;
+                children = running;
+            }
+            try {
+                children.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * FilteredFileIterator returns the tuples of another DbFileIterator that
+ * satisfy all of a set of predicates. It is used to scan files that cannot
+ * evaluate predicates themselves.
+ */
+public class FilteredFileIterator implements DbFileIterator {
+
+    DbFileIterator child;
+    Predicate[] preds;
+    Tuple nextTuple;
+
+    /**
+     * @param it the iterator to filter
+     * @param predicates the predicates returned tuples must satisfy, with
+     *            field numbers referring to the tuples of it
+     */
+    public FilteredFileIterator(DbFileIterator it, Predicate[] predicates) {
+        child = it;
+        preds = predicates;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        nextTuple = null;
+        child.open();
+    }
+
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        while (nextTuple == null && child.hasNext()) {
+            Tuple t = child.next();
+            boolean match = true;
+            for (Predicate p : preds) {
+                if (!p.filter(t)) {
+                    match = false;
+                    break;
+                }
+            }
+            if (match)
+                nextTuple = t;
+        }
+        return nextTuple != null;
+    }
+
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (!hasNext())
+            throw new NoSuchElementException("");
+        Tuple t = nextTuple;
+        nextTuple = null;
+        return t;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        nextTuple = null;
+        child.rewind();
+    }
+
+    public void close() {
+        nextTuple = null;
+        child.close();
+    }
+}
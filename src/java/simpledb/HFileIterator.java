@@ -5,56 +5,134 @@ import java.util.*;
 /**
  * DbFileIterator is the iterator interface that all SimpleDB Dbfile should
  * implement.
+ * <p>
+ * HFileIterator iterates over the tuples of a HeapFile. If it is given
+ * predicates, it only returns tuples that satisfy all of them, and does not
+ * read the pages that the file's {@link ZoneMap} rules out. The predicates
+ * are evaluated by the pages against their raw bytes, and if the iterator is
+ * given a list of fields, only those fields of each tuple are decoded.
+ *
+ * @see HeapPage#iterator(Predicate[], int[], TupleDesc)
  */
 public class HFileIterator implements DbFileIterator {
-	
+
 	int tableId;
 	int pageCount;
+	// the iterator reads pages firstPage up to pageCount
+	int firstPage = 0;
 	TransactionId transId;
 	HeapPage page;
 	Iterator<Tuple> pgTups;
 	int curPageNum=0;
-	
+	HeapFile file;
+	Predicate[] preds;
+	int[] fields;
+	TupleDesc projectedTd;
+	ZoneMap zoneMap;
+	Tuple nextTuple;
+
 	public HFileIterator(int tId, int noPgs, TransactionId trId) {
 		tableId = tId;
 		pageCount = noPgs;
 		transId = trId;
 	}
-	
+
+	/**
+	 * @param f the file to scan
+	 * @param trId the transaction reading the file
+	 * @param predicates the predicates returned tuples must satisfy, with
+	 *            field numbers referring to the file's TupleDesc
+	 */
+	public HFileIterator(HeapFile f, TransactionId trId, Predicate[] predicates) {
+		this(f, trId, null, predicates);
+	}
+
+	/**
+	 * @param f the file to scan
+	 * @param trId the transaction reading the file
+	 * @param fieldList the fields of f to return, in output order, or null
+	 *            for all of them; the other fields are never decoded
+	 * @param predicates the predicates returned tuples must satisfy, with
+	 *            field numbers referring to the file's TupleDesc, or null
+	 */
+	public HFileIterator(HeapFile f, TransactionId trId, int[] fieldList, Predicate[] predicates) {
+		this(f.getId(), f.numPages(), trId);
+		file = f;
+		preds = predicates;
+		fields = fieldList;
+		if (fields != null) {
+			TupleDesc td = f.getTupleDesc();
+			Type[] types = new Type[fields.length];
+			String[] names = new String[fields.length];
+			for (int i = 0; i < fields.length; i++) {
+				types[i] = td.getFieldType(fields[i]);
+				names[i] = td.getFieldName(fields[i]);
+			}
+			projectedTd = new TupleDesc(types, names);
+		}
+	}
+
+	/**
+	 * Restricts the iterator to the pages of the file from first up to (but
+	 * not including) end, so that several iterators can each scan a part
+	 * of one file.
+	 */
+	public void setPageRange(int first, int end) {
+		firstPage = first;
+		pageCount = Math.min(end, pageCount);
+	}
+
     /**
      * Opens the iterator
      * @throws DbException when there are problems opening/accessing the database.
      */
     public void open()
         throws DbException, TransactionAbortedException {
-    	HeapPageId pageId = new HeapPageId(tableId, curPageNum);
-    	page = (HeapPage) Database.getBufferPool().getPage(transId, pageId, Permissions.READ_WRITE);
-    	pgTups=page.iterator();
-    	
+    	if (preds != null) {
+    		zoneMap = file.getZoneMap();
+    	}
+    	curPageNum = firstPage - 1;
+    	nextTuple = null;
+    	pgTups = Collections.<Tuple>emptyList().iterator();
+    	page = null;
+    }
+
+    /**
+     * Moves to the next page that may contain matching tuples.
+     * @return false if there are no more pages
+     */
+    private boolean advancePage() throws DbException, TransactionAbortedException {
+    	while (curPageNum < pageCount-1) {
+    		curPageNum += 1;
+    		if (zoneMap != null && !zoneMap.mayMatch(curPageNum, preds)) {
+    			file.pagesSkipped.increment();
+    			continue;
+    		}
+    		HeapPageId pageId = new HeapPageId(tableId, curPageNum);
+    		page = (HeapPage) Database.getBufferPool().getPage(transId, pageId, Permissions.READ_ONLY);
+    		if (file != null) {
+    			file.pagesRead.increment();
+    		}
+    		pgTups = page.iterator(preds, fields, projectedTd);
+    		return true;
+    	}
+    	return false;
     }
 
     /** @return true if there are more tuples available. */
     public boolean hasNext()
         throws DbException, TransactionAbortedException {
-    	if (page == null || pgTups == null) {
+    	if (pgTups == null) {
     		return false;
     	}
-    	if (pgTups.hasNext()) {
-    		return true;
-    	} else {
-    		while (curPageNum < pageCount-1) {
-    			if (!pgTups.hasNext()) {
-        			HeapPageId pageId = new HeapPageId(tableId, curPageNum+1);  
-        			page = (HeapPage) Database.getBufferPool().getPage(transId,pageId, Permissions.READ_ONLY);
-        			pgTups = page.iterator();
-        			curPageNum += 1;
-        			if(pgTups.hasNext()) {
-        				return true;
-        			}
-    			}
+    	while (nextTuple == null) {
+    		if (pgTups.hasNext()) {
+    			nextTuple = pgTups.next();
+    		} else if (!advancePage()) {
+    			return false;
     		}
-    	}	
-    	return false;
+    	}
+    	return true;
     }
 
     /**
@@ -67,7 +145,9 @@ public class HFileIterator implements DbFileIterator {
     public Tuple next()
         throws DbException, TransactionAbortedException, NoSuchElementException {
     	if (hasNext()) {
-    		return pgTups.next();
+    		Tuple t = nextTuple;
+    		nextTuple = null;
+    		return t;
     	} else {
     		throw new NoSuchElementException("");
     	}
@@ -87,7 +167,7 @@ public class HFileIterator implements DbFileIterator {
     public void close() {
     	page=null;
     	pgTups=null;
-    	pageCount=0;
+    	nextTuple=null;
     	curPageNum=0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,418 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * HashIndex is an extendible hashing index on one field of a HeapFile,
+ * mapping each value of the field to the RecordIds of the tuples that hold
+ * it, so that equality lookups do not have to scan the table.
+ * <p>
+ * The index of field i of a file <tt>f</tt> is stored in the side file
+ * <tt>f.i.hx</tt>. Its first page holds the directory, which maps the low
+ * bits of the hash of a value to a bucket page; buckets that fill up are
+ * split and the directory doubled as needed, up to {@link #MAX_DEPTH} bits.
+ * Beyond that, and for values that fill a bucket by themselves, buckets
+ * grow chains of overflow pages. Deleted entries are removed from their
+ * bucket, but buckets are never merged.
+ * <p>
+ * Like the {@link ZoneMap}, the index is rebuilt from the heap file when it
+ * is opened if the heap file changed since the index was last written.
+ * <p>
+ * The side file stays open until the index is {@link #close closed}, and
+ * the most recently used pages of it are cached. Changed pages are written back, followed by the
+ * directory, when the heap file is written or when more than
+ * {@link #CACHE_PAGES} of them are waiting.
+ *
+ * @see HeapFile#addIndex(int)
+ * @see IndexLookup
+ */
+public class HashIndex {
+
+    /** Largest number of hash bits used to pick a bucket. */
+    public static final int MAX_DEPTH = 9;
+
+    /** Number of pages of the side file kept in memory. */
+    public static final int CACHE_PAGES = 64;
+
+    private static final int MAGIC = 0x48494458;
+    // local depth, next overflow page, entry count
+    private static final int BUCKET_HEADER_SIZE = 10;
+
+    HeapFile heapFile;
+    int field;
+    Type keyType;
+    File indexFile;
+    int globalDepth;
+    // page number of the bucket of each directory entry
+    int[] directory;
+    int entrySize;
+    int bucketCapacity;
+    // the open side file, or null if the index was closed
+    RandomAccessFile raf;
+    // pages of the side file, including those not written yet
+    int numPages;
+    // cached pages, least recently used first
+    LinkedHashMap<Integer, byte[]> cache = new LinkedHashMap<Integer, byte[]>(16, 0.75f, true);
+    // cached pages changed since they were last written
+    TreeSet<Integer> dirty = new TreeSet<Integer>();
+
+    /**
+     * Opens the index of the specified field of the specified file, and
+     * loads it from its side file or builds it from the pages of the file.
+     */
+    public HashIndex(HeapFile f, int field) throws IOException {
+        heapFile = f;
+        this.field = field;
+        keyType = f.getTupleDesc().getFieldType(field);
+        indexFile = getIndexFile(f.getFile(), field);
+        // key, then the page number and slot of the RecordId
+        entrySize = keyType.getLen() + 8;
+        bucketCapacity = (BufferPool.PAGE_SIZE - BUCKET_HEADER_SIZE) / entrySize;
+        raf = new RandomAccessFile(indexFile, "rw");
+        try {
+            if (!load())
+                rebuild();
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /** @return the side file, opening it again if the index was closed */
+    private RandomAccessFile file() throws IOException {
+        if (raf == null)
+            raf = new RandomAccessFile(indexFile, "rw");
+        return raf;
+    }
+
+    /**
+     * Closes the side file. Changes not written yet stay in memory, and the
+     * side file is opened again if the index is used afterwards.
+     */
+    public synchronized void close() throws IOException {
+        if (raf != null) {
+            raf.close();
+            raf = null;
+        }
+    }
+
+    /** @return the side file holding the index of the specified field */
+    public static File getIndexFile(File dataFile, int field) {
+        return new File(dataFile.getPath() + "." + field + ".hx");
+    }
+
+    /** @return the field of the heap file this index is on */
+    public int getField() {
+        return field;
+    }
+
+    private static int hash(Field key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        h *= 0x85ebca6b;
+        h ^= (h >>> 13);
+        return h;
+    }
+
+    private int bucketOf(Field key) {
+        return directory[hash(key) & ((1 << globalDepth) - 1)];
+    }
+
+    /**
+     * Reads the directory from the side file.
+     * @return false if the side file is missing or out of date
+     */
+    private boolean load() throws IOException {
+        if (file().length() < BufferPool.PAGE_SIZE)
+            return false;
+        numPages = (int) (file().length() / BufferPool.PAGE_SIZE);
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(readPage(0)));
+        if (dis.readInt() != MAGIC || dis.readInt() != field)
+            return false;
+        globalDepth = dis.readInt();
+        if (dis.readLong() != heapFile.getFile().length()
+                || dis.readLong() != heapFile.getFile().lastModified())
+            return false;
+        directory = new int[1 << globalDepth];
+        for (int i = 0; i < directory.length; i++)
+            directory[i] = dis.readInt();
+        return true;
+    }
+
+    /**
+     * Recomputes the index from the pages of the heap file on disk and
+     * writes it to the side file.
+     */
+    public synchronized void rebuild() throws IOException {
+        file().setLength(0);
+        cache.clear();
+        dirty.clear();
+        numPages = 2;
+        globalDepth = 0;
+        directory = new int[] { 1 };
+        writePage(1, new Bucket(0).getData());
+        for (int p = 0; p < heapFile.numPages(); p++) {
+            HeapPage page = (HeapPage) heapFile.readPage(new HeapPageId(heapFile.getId(), p));
+            Iterator<Tuple> it = page.iterator();
+            while (it.hasNext()) {
+                Tuple t = it.next();
+                insert(t.getField(field), t.getRecordId());
+            }
+        }
+        flush();
+    }
+
+    /**
+     * Writes the first page of the side file: the magic number, the field,
+     * the global depth, the length and modification time of the heap file,
+     * and the directory.
+     */
+    private void writeDirectory() throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+        DataOutputStream dos = new DataOutputStream(baos);
+        dos.writeInt(MAGIC);
+        dos.writeInt(field);
+        dos.writeInt(globalDepth);
+        dos.writeLong(heapFile.getFile().length());
+        dos.writeLong(heapFile.getFile().lastModified());
+        for (int b : directory)
+            dos.writeInt(b);
+        dos.flush();
+        file().seek(0);
+        file().write(Utility.pad(baos), 0, BufferPool.PAGE_SIZE);
+    }
+
+    /**
+     * Writes the changed pages of the index, then the directory, to the side
+     * file.
+     */
+    private void flush() throws IOException {
+        for (int pgNo : dirty) {
+            file().seek((long) BufferPool.PAGE_SIZE * pgNo);
+            file().write(cache.get(pgNo), 0, BufferPool.PAGE_SIZE);
+        }
+        dirty.clear();
+        writeDirectory();
+    }
+
+    /**
+     * Records that the heap file was written, writing the changes to the
+     * index so that the side file is still considered up to date the next
+     * time it is opened.
+     */
+    public synchronized void fileWritten() throws IOException {
+        flush();
+    }
+
+    private byte[] readPage(int pgNo) throws IOException {
+        byte[] data = cache.get(pgNo);
+        if (data != null)
+            return data;
+        data = new byte[BufferPool.PAGE_SIZE];
+        file().seek((long) BufferPool.PAGE_SIZE * pgNo);
+        file().readFully(data);
+        cache.put(pgNo, data);
+        evict();
+        return data;
+    }
+
+    private void writePage(int pgNo, byte[] data) throws IOException {
+        cache.put(pgNo, data);
+        dirty.add(pgNo);
+        if (dirty.size() > CACHE_PAGES)
+            flush();
+        evict();
+    }
+
+    /** Drops the least recently used unchanged pages beyond CACHE_PAGES. */
+    private void evict() {
+        Iterator<Integer> it = cache.keySet().iterator();
+        while (cache.size() > CACHE_PAGES && it.hasNext()) {
+            if (!dirty.contains(it.next()))
+                it.remove();
+        }
+    }
+
+    /**
+     * One page of a bucket: the local depth of the bucket, the page number
+     * of the next overflow page of the bucket (0 if none) and its entries.
+     */
+    private class Bucket {
+        int pgNo;
+        int localDepth;
+        int next;
+        ArrayList<Field> keys = new ArrayList<Field>();
+        ArrayList<RecordId> rids = new ArrayList<RecordId>();
+
+        Bucket(int depth) {
+            localDepth = depth;
+        }
+
+        Bucket(int pgNo, byte[] data) throws IOException {
+            this.pgNo = pgNo;
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+            localDepth = dis.readInt();
+            next = dis.readInt();
+            int n = dis.readUnsignedShort();
+            for (int i = 0; i < n; i++) {
+                keys.add(Utility.readField(dis, keyType));
+                rids.add(new RecordId(new HeapPageId(heapFile.getId(), dis.readInt()), dis.readInt()));
+            }
+        }
+
+        byte[] getData() throws IOException {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream(BufferPool.PAGE_SIZE);
+            DataOutputStream dos = new DataOutputStream(baos);
+            dos.writeInt(localDepth);
+            dos.writeInt(next);
+            dos.writeShort(keys.size());
+            for (int i = 0; i < keys.size(); i++) {
+                Utility.writeField(dos, keys.get(i));
+                dos.writeInt(rids.get(i).getPageId().pageNumber());
+                dos.writeInt(rids.get(i).tupleno());
+            }
+            dos.flush();
+            return Utility.pad(baos);
+        }
+
+        void write() throws IOException {
+            writePage(pgNo, getData());
+        }
+    }
+
+    private Bucket readBucket(int pgNo) throws IOException {
+        return new Bucket(pgNo, readPage(pgNo));
+    }
+
+    /**
+     * @return the RecordIds of the tuples whose indexed field equals the
+     *         specified value
+     */
+    public synchronized ArrayList<RecordId> lookup(Field key) throws IOException {
+        ArrayList<RecordId> result = new ArrayList<RecordId>();
+        int pgNo = bucketOf(key);
+        while (pgNo != 0) {
+            Bucket b = readBucket(pgNo);
+            for (int i = 0; i < b.keys.size(); i++) {
+                if (b.keys.get(i).equals(key))
+                    result.add(b.rids.get(i));
+            }
+            pgNo = b.next;
+        }
+        return result;
+    }
+
+    /**
+     * Adds an entry for a tuple with the specified value in the indexed
+     * field, stored at the specified RecordId.
+     */
+    public synchronized void insert(Field key, RecordId rid) throws IOException {
+        while (true) {
+            Bucket b = readBucket(bucketOf(key));
+            if (b.keys.size() < bucketCapacity) {
+                b.keys.add(key);
+                b.rids.add(rid);
+                b.write();
+                return;
+            }
+            if (b.next == 0 && canSplit(b)) {
+                split(b);
+                continue;
+            }
+            // add the entry to the first overflow page with room
+            while (b.keys.size() >= bucketCapacity && b.next != 0)
+                b = readBucket(b.next);
+            if (b.keys.size() >= bucketCapacity) {
+                Bucket overflow = new Bucket(b.localDepth);
+                overflow.pgNo = numPages++;
+                b.next = overflow.pgNo;
+                b.write();
+                b = overflow;
+            }
+            b.keys.add(key);
+            b.rids.add(rid);
+            b.write();
+            return;
+        }
+    }
+
+    /**
+     * @return true if splitting the specified full bucket would spread its
+     *         entries over two buckets
+     */
+    private boolean canSplit(Bucket b) {
+        if (b.localDepth >= MAX_DEPTH)
+            return false;
+        int bit = 1 << b.localDepth;
+        int first = hash(b.keys.get(0)) & bit;
+        for (Field k : b.keys) {
+            if ((hash(k) & bit) != first)
+                return true;
+        }
+        // all entries would stay together; splitting on more bits may help
+        // unless they all have the same value
+        for (Field k : b.keys) {
+            if (!k.equals(b.keys.get(0)))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Splits the specified bucket in two on its next hash bit, doubling the
+     * directory if the bucket already uses as many bits as it has.
+     */
+    private void split(Bucket b) throws IOException {
+        if (b.localDepth == globalDepth) {
+            int[] doubled = new int[directory.length * 2];
+            System.arraycopy(directory, 0, doubled, 0, directory.length);
+            System.arraycopy(directory, 0, doubled, directory.length, directory.length);
+            directory = doubled;
+            globalDepth++;
+        }
+        int bit = 1 << b.localDepth;
+        Bucket hi = new Bucket(b.localDepth + 1);
+        hi.pgNo = numPages++;
+        b.localDepth++;
+        ArrayList<Field> keys = new ArrayList<Field>(b.keys);
+        ArrayList<RecordId> rids = new ArrayList<RecordId>(b.rids);
+        b.keys.clear();
+        b.rids.clear();
+        for (int i = 0; i < keys.size(); i++) {
+            Bucket to = (hash(keys.get(i)) & bit) != 0 ? hi : b;
+            to.keys.add(keys.get(i));
+            to.rids.add(rids.get(i));
+        }
+        hi.write();
+        b.write();
+        for (int i = 0; i < directory.length; i++) {
+            if (directory[i] == b.pgNo && (i & bit) != 0)
+                directory[i] = hi.pgNo;
+        }
+    }
+
+    /**
+     * Removes the entry for the tuple stored at the specified RecordId with
+     * the specified value in the indexed field.
+     * @return false if there was no such entry
+     */
+    public synchronized boolean delete(Field key, RecordId rid) throws IOException {
+        int pgNo = bucketOf(key);
+        while (pgNo != 0) {
+            Bucket b = readBucket(pgNo);
+            for (int i = 0; i < b.keys.size(); i++) {
+                RecordId r = b.rids.get(i);
+                if (b.keys.get(i).equals(key) && r.tupleno() == rid.tupleno()
+                        && r.getPageId().pageNumber() == rid.getPageId().pageNumber()) {
+                    b.keys.remove(i);
+                    b.rids.remove(i);
+                    b.write();
+                    return true;
+                }
+            }
+            pgNo = b.next;
+        }
+        return false;
+    }
+}
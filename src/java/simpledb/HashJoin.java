@@ -0,0 +1,175 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * HashJoin joins its children on the equality of a field of each. When
+ * opened, it reads one of them, the build child, into a hash table on the
+ * join field; it then looks each tuple of the other, the probe child, up in
+ * the table. Unlike a {@link Join}, it reads each child only once, but it
+ * holds all of the tuples of the build child in memory.
+ * <p>
+ * The result is the same as that of a Join with the same predicate and
+ * children: the concatenation of each left tuple with each matching right
+ * tuple. When the right child is built, it is also in the same order.
+ */
+public class HashJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private JoinPredicate joinP;
+    private DbIterator child1;
+    private DbIterator child2;
+    private boolean buildLeft;
+    private TupleDesc td;
+    private transient HashMap<Field, ArrayList<Tuple>> table;
+    private transient Tuple probeTuple;
+    private transient Iterator<Tuple> matches;
+
+    /**
+     * Creates a join that builds the hash table of its right child.
+     *
+     * @param p
+     *            The predicate to use to join the children, whose operator
+     *            must be {@link Predicate.Op#EQUALS}
+     * @param child1
+     *            Iterator for the left (probe) relation to join
+     * @param child2
+     *            Iterator for the right (build) relation to join
+     */
+    public HashJoin(JoinPredicate p, DbIterator child1, DbIterator child2) {
+        this(p, child1, child2, false);
+    }
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children, whose operator
+     *            must be {@link Predicate.Op#EQUALS}
+     * @param child1
+     *            Iterator for the left relation to join
+     * @param child2
+     *            Iterator for the right relation to join
+     * @param buildLeft
+     *            whether to build the hash table of the left child rather
+     *            than of the right one
+     */
+    public HashJoin(JoinPredicate p, DbIterator child1, DbIterator child2, boolean buildLeft) {
+        if (p.getOperator() != Predicate.Op.EQUALS)
+            throw new IllegalArgumentException("hash joins need an equality predicate");
+        joinP = p;
+        this.child1 = child1;
+        this.child2 = child2;
+        this.buildLeft = buildLeft;
+        td = TupleDesc.merge(child1.getTupleDesc(), child2.getTupleDesc());
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return joinP;
+    }
+
+    /** @return the name of the join field of the left child */
+    public String getJoinField1Name() {
+        return child1.getTupleDesc().getFieldName(joinP.getField1());
+    }
+
+    /** @return the name of the join field of the right child */
+    public String getJoinField2Name() {
+        return child2.getTupleDesc().getFieldName(joinP.getField2());
+    }
+
+    /** @return true if the hash table is built of the left child */
+    public boolean buildsLeft() {
+        return buildLeft;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child1.open();
+        child2.open();
+        DbIterator build = buildLeft ? child1 : child2;
+        int field = buildLeft ? joinP.getField1() : joinP.getField2();
+        table = new HashMap<Field, ArrayList<Tuple>>();
+        while (build.hasNext()) {
+            Tuple t = build.next();
+            Field f = t.getField(field);
+            ArrayList<Tuple> tuples = table.get(f);
+            if (tuples == null) {
+                tuples = new ArrayList<Tuple>(1);
+                table.put(f, tuples);
+            }
+            tuples.add(t);
+        }
+        probeTuple = null;
+        matches = null;
+        super.open();
+    }
+
+    public void close() {
+        child1.close();
+        child2.close();
+        table = null;
+        probeTuple = null;
+        matches = null;
+        super.close();
+    }
+
+    /**
+     * Rewinds the probe child; the hash table of the build one is kept.
+     * <p>
+     * The outputs of a repartition or broadcast {@link Exchange} cannot be
+     * rewound on their own, so neither can a join that probes with one. The
+     * parallel plans of {@link LogicalPlan} never rewind such joins: the
+     * gather Exchange above their pipelines restarts them instead, which
+     * closes and reopens the joins and reruns the exchanges below them.
+     *
+     * @throws DbException if the probe child is an output of a repartition
+     *             or broadcast exchange
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        DbIterator probe = buildLeft ? child2 : child1;
+        if (probe instanceof Exchange && ((Exchange) probe).getOutputs() > 1)
+            throw new DbException("a hash join reading one output of a " + ((Exchange) probe).getMode()
+                    + " exchange cannot be rewound; restart the gather exchange above it instead");
+        probe.rewind();
+        probeTuple = null;
+        matches = null;
+    }
+
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        DbIterator probe = buildLeft ? child2 : child1;
+        while (matches == null || !matches.hasNext()) {
+            if (!probe.hasNext())
+                return null;
+            probeTuple = probe.next();
+            ArrayList<Tuple> tuples = table.get(probeTuple.getField(
+                    buildLeft ? joinP.getField2() : joinP.getField1()));
+            matches = tuples == null ? null : tuples.iterator();
+        }
+        Tuple buildTuple = matches.next();
+        Tuple left = buildLeft ? buildTuple : probeTuple;
+        Tuple right = buildLeft ? probeTuple : buildTuple;
+        Tuple result = new Tuple(td);
+        int n = left.getTupleDesc().numFields();
+        for (int i = 0; i < n; i++)
+            result.setField(i, left.getField(i));
+        for (int i = 0; i < td.numFields() - n; i++)
+            result.setField(n + i, right.getField(i));
+        return result;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { child1, child2 };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        child1 = children[0];
+        child2 = children[1];
+    }
+}
@@ -9,6 +9,10 @@ import java.util.*;
  * size, and the file is simply a collection of those pages. HeapFile works
  * closely with HeapPage. The format of HeapPages is described in the HeapPage
  * constructor.
+ * <p>
+ * Inserts and deletes are synchronized on the file, so that concurrent
+ * transactions neither fill the same free slot nor append the same page;
+ * pages, zone maps and indexes synchronize their own state.
  * 
  * @see simpledb.HeapPage#HeapPage
  * @author Sam Madden
@@ -17,6 +21,14 @@ public class HeapFile implements DbFile {
 	
 	File file;
 	TupleDesc tupleDesc;
+	ZoneMap zoneMap;
+	// pages changed while the zone map was not loaded
+	HashSet<Integer> unsummarizedPages = new HashSet<Integer>();
+	// scans of several threads count pages at once, see ParallelSeqScan
+	final StripedCounter pagesRead = new StripedCounter();
+	final StripedCounter pagesSkipped = new StripedCounter();
+	// secondary indexes, by the field they are on
+	HashMap<Integer, HashIndex> indexes = new HashMap<Integer, HashIndex>();
 
     /**
      * Constructs a heap file backed by the specified file.
@@ -80,8 +92,10 @@ public class HeapFile implements DbFile {
     	}
     	byte[] bytes = new byte[BufferPool.PAGE_SIZE];
     	try {
+    		long start = System.nanoTime();
     		raFile.seek(shift);
     		raFile.read(bytes, 0, BufferPool.PAGE_SIZE);
+    		BufferPoolMetrics.forTable(getId()).recordRead(System.nanoTime() - start, BufferPool.PAGE_SIZE);
     		returnPage = new HeapPage((HeapPageId) pid, bytes);
     	} catch (IOException e) {
     		return null;
@@ -98,12 +112,123 @@ public class HeapFile implements DbFile {
         // some code goes here
     	RandomAccessFile raf = new RandomAccessFile(file, "rw");
     	page.markDirty(false, null);
+    	long start = System.nanoTime();
     	raf.seek(page.getId().pageNumber() *BufferPool.PAGE_SIZE);
     	raf.write(page.getPageData(), 0, BufferPool.PAGE_SIZE);
         raf.close();
+        BufferPoolMetrics.forTable(getId()).recordWrite(System.nanoTime() - start, BufferPool.PAGE_SIZE);
+        if (zoneMap != null) {
+        	zoneMap.fileWritten();
+        }
+        for (HashIndex index : indexes.values()) {
+        	index.fileWritten();
+        }
         // not necessary for proj1
     }
 
+    /**
+     * Returns the zone map summarizing the pages of this file, loading it
+     * the first time it is needed.
+     *
+     * @throws DbException if the zone map cannot be read or built
+     */
+    public synchronized ZoneMap getZoneMap() throws DbException {
+    	if (zoneMap == null) {
+    		try {
+    			zoneMap = new ZoneMap(this);
+    			for (int pgNo : unsummarizedPages) {
+    				zoneMap.invalidate(pgNo);
+    			}
+    			unsummarizedPages.clear();
+    		} catch (IOException e) {
+    			zoneMap = null;
+    			throw new DbException("unable to load zone map of " + file.getName() + ": " + e.getMessage());
+    		}
+    	}
+    	return zoneMap;
+    }
+
+    /**
+     * Adds a hash index on the specified field of this file, opening it from
+     * its side file or building it from the tuples of the file. The index is
+     * kept up to date as tuples are inserted and deleted.
+     *
+     * @throws DbException if the index cannot be read or built
+     * @see HashIndex
+     */
+    public synchronized HashIndex addIndex(int field) throws DbException {
+    	HashIndex index = indexes.get(field);
+    	if (index == null) {
+    		try {
+    			index = new HashIndex(this, field);
+    		} catch (IOException e) {
+    			throw new DbException("unable to open index on field " + field + " of " + file.getName()
+    					+ ": " + e.getMessage());
+    		}
+    		indexes.put(field, index);
+    		// plans made without the index may no longer be the best
+    		Database.getCatalog().schemaChanged();
+    	}
+    	return index;
+    }
+
+    /**
+     * Closes the side files of the indexes of this file, which the Catalog
+     * does when it drops the file; they are opened again if the file is used
+     * afterwards.
+     */
+    public synchronized void close() {
+    	for (HashIndex index : indexes.values()) {
+    		try {
+    			index.close();
+    		} catch (IOException e) {
+    			e.printStackTrace();
+    		}
+    	}
+    }
+
+    /**
+     * @return the hash index on the specified field, or null if the field is
+     *         not indexed
+     */
+    public HashIndex getIndex(int field) {
+    	return indexes.get(field);
+    }
+
+    /**
+     * Records that the specified tuple was added to the specified page, so
+     * the zone map still covers it.
+     */
+    private void summarize(int pgNo, Tuple t) {
+    	if (zoneMap != null) {
+    		zoneMap.widen(pgNo, t);
+    	} else {
+    		unsummarizedPages.add(pgNo);
+    	}
+    }
+
+    /**
+     * @return the number of pages read by scans of this file with
+     *         predicates
+     */
+    public long getPagesRead() {
+    	return pagesRead.get();
+    }
+
+    /**
+     * @return the number of pages that scans of this file with predicates
+     *         skipped because the zone map showed no tuple could match
+     */
+    public long getPagesSkipped() {
+    	return pagesSkipped.get();
+    }
+
+    /** Resets the counters of pages read and skipped. */
+    public void resetScanCounters() {
+    	pagesRead.reset();
+    	pagesSkipped.reset();
+    }
+
     /**
      * Returns the number of pages in this HeapFile.
      */
@@ -114,7 +239,7 @@ public class HeapFile implements DbFile {
     }
 
     // see DbFile.java for javadocs
-    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+    public synchronized ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
             throws DbException, IOException, TransactionAbortedException {
         // some code goes here
     	ArrayList<Page> effectedPages = new ArrayList<Page>();
@@ -131,6 +256,8 @@ public class HeapFile implements DbFile {
     			//if insert successful
     			//no need to set recordId, page.insertTuple does already
     			page.markDirty(true, tid);
+    			summarize(i, t);
+    			addToIndexes(t);
     			effectedPages.add(page);
     			return effectedPages;
     		}
@@ -139,6 +266,8 @@ public class HeapFile implements DbFile {
     	HeapPageId newPageId = new HeapPageId(getId(), numPages());
     	HeapPage insertPage = new HeapPage(newPageId, new byte[BufferPool.PAGE_SIZE]);
     	insertPage.insertTuple(t);
+    	addToIndexes(t);
+    	summarize(newPageId.pageNumber(), t);
     	writePage(insertPage);
     	effectedPages.add(insertPage);
     	return effectedPages;
@@ -146,22 +275,91 @@ public class HeapFile implements DbFile {
     }
 
     // see DbFile.java for javadocs
-    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+    public synchronized Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
             TransactionAbortedException {
         // some code goes here
     	BufferPool bp = Database.getBufferPool();
     	HeapPage page = (HeapPage) bp.getPage(tid, t.getRecordId().getPageId(), Permissions.READ_WRITE);
+    	RecordId rid = t.getRecordId();
     	page.deleteTuple(t);
     	page.markDirty(true, tid);
+    	try {
+    		for (HashIndex index : indexes.values()) {
+    			index.delete(t.getField(index.getField()), rid);
+    		}
+    	} catch (IOException e) {
+    		throw new DbException("unable to update index of " + file.getName() + ": " + e.getMessage());
+    	}
         return page;
         // not necessary for proj1
     }
 
+    /** Adds an entry for the specified tuple, which was just stored, to each index. */
+    private void addToIndexes(Tuple t) throws IOException {
+    	for (HashIndex index : indexes.values()) {
+    		index.insert(t.getField(index.getField()), t.getRecordId());
+    	}
+    }
+
     // see DbFile.java for javadocs
     public DbFileIterator iterator(TransactionId tid) {
         // some code goes here
     	return new HFileIterator(getId(), numPages(), tid);
     }
 
+    /**
+     * Returns an iterator over the tuples of this file that satisfy all of
+     * the specified predicates. Pages that the zone map of the file shows
+     * cannot hold a matching tuple are not read.
+     *
+     * @param preds
+     *            the predicates, with field numbers referring to this file's
+     *            TupleDesc
+     * @see ZoneMap
+     */
+    public DbFileIterator iterator(TransactionId tid, Predicate[] preds) {
+    	return iterator(tid, null, preds);
+    }
+
+    /**
+     * Returns an iterator over the specified fields of the tuples of this
+     * file that satisfy all of the specified predicates. Only the requested
+     * fields of the matching tuples are decoded.
+     *
+     * @param fields
+     *            the indexes of the fields to return, in output order, or
+     *            null for all of them
+     * @param preds
+     *            the predicates, with field numbers referring to this file's
+     *            TupleDesc, or null
+     * @see #iterator(TransactionId, Predicate[])
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] fields, Predicate[] preds) {
+    	if (preds != null && preds.length == 0) {
+    		preds = null;
+    	}
+    	if (preds == null && fields == null) {
+    		return iterator(tid);
+    	}
+    	return new HFileIterator(this, tid, fields, preds);
+    }
+
+    /**
+     * Returns an iterator like {@link #iterator(TransactionId, int[], Predicate[])}
+     * that only reads the pages from firstPage up to (but not including)
+     * endPage, so that a scan can be split among several threads.
+     *
+     * @see ParallelSeqScan
+     */
+    public DbFileIterator iterator(TransactionId tid, int[] fields, Predicate[] preds,
+            int firstPage, int endPage) {
+    	if (preds != null && preds.length == 0) {
+    		preds = null;
+    	}
+    	HFileIterator it = new HFileIterator(this, tid, fields, preds);
+    	it.setPageRange(firstPage, endPage);
+    	return it;
+    }
+
 }
 
@@ -20,6 +20,9 @@ public class HeapPage implements Page {
     int numSlots;
     boolean dirty=false;
     TransactionId lastTrans=null;
+    // the page as read from disk; tuples are only decoded from it when needed
+    byte[] data;
+    int[] fieldOffsets;
 
     byte[] oldData;
 
@@ -35,6 +38,9 @@ public class HeapPage implements Page {
      * <p>
      *      ceiling(no. tuple slots / 8)
      * <p>
+     * Tuples are decoded from the data lazily, the first time they are
+     * needed, so predicates can be evaluated against the bytes of a slot
+     * without building a Tuple for it.
      * @see Database#getCatalog
      * @see Catalog#getTupleDesc
      * @see BufferPool#PAGE_SIZE
@@ -43,22 +49,16 @@ public class HeapPage implements Page {
         this.pid = id;
         this.td = Database.getCatalog().getTupleDesc(id.getTableId());
         this.numSlots = getNumTuples();
-        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        this.data = data;
 
         // allocate and read the header slots of this page
         header = new byte[getHeaderSize()];
-        for (int i=0; i<header.length; i++)
-            header[i] = dis.readByte();
-
-        try{
-            // allocate and read the actual records of this page
-            tuples = new Tuple[numSlots];
-            for (int i=0; i<tuples.length; i++)
-                tuples[i] = readNextTuple(dis,i);
-        }catch(NoSuchElementException e){
-            e.printStackTrace();
-        }
-        dis.close();
+        System.arraycopy(data, 0, header, 0, header.length);
+        tuples = new Tuple[numSlots];
+
+        fieldOffsets = new int[td.numFields()];
+        for (int j=1; j<fieldOffsets.length; j++)
+            fieldOffsets[j] = fieldOffsets[j-1] + td.getFieldType(j-1).getLen();
 
         setBeforeImage();
     }
@@ -104,40 +104,142 @@ public class HeapPage implements Page {
      return pid;
     }
 
+    /** @return the offset in the page data of the specified slot */
+    private int slotOffset(int slotId) {
+        return header.length + slotId * td.getSize();
+    }
+
     /**
-     * Suck up tuples from the source file.
+     * Returns the tuple in the specified slot, decoding it from the page
+     * data if this has not been done yet.
+     * @return the tuple, or null if the slot is empty or does not exist
      */
-    private Tuple readNextTuple(DataInputStream dis, int slotId) throws NoSuchElementException {
-        // if associated bit is not set, read forward to the next tuple, and
-        // return null.
-        if (!isSlotUsed(slotId)) {
-            for (int i=0; i<td.getSize(); i++) {
-                try {
-                    dis.readByte();
-                } catch (IOException e) {
-                    throw new NoSuchElementException("error reading empty tuple");
-                }
-            }
+    synchronized Tuple getTuple(int slotId) throws NoSuchElementException {
+        if (slotId < 0 || slotId >= numSlots || !isSlotUsed(slotId))
             return null;
-        }
+        if (tuples[slotId] == null)
+            tuples[slotId] = decodeTuple(slotId);
+        return tuples[slotId];
+    }
 
-        // read fields in the tuple
+    /**
+     * Builds a tuple from the bytes of the specified slot.
+     */
+    private Tuple decodeTuple(int slotId) throws NoSuchElementException {
         Tuple t = new Tuple(td);
         RecordId rid = new RecordId(pid, slotId);
         t.setRecordId(rid);
-        try {
-            for (int j=0; j<td.numFields(); j++) {
-                Field f = td.getFieldType(j).parse(dis);
-                t.setField(j, f);
-            }
-        } catch (java.text.ParseException e) {
-            e.printStackTrace();
-            throw new NoSuchElementException("parsing error!");
+        for (int j=0; j<td.numFields(); j++) {
+            t.setField(j, decodeField(slotId, j));
         }
+        return t;
+    }
 
+    /**
+     * Builds a tuple holding only the specified fields of the specified slot,
+     * without decoding the others.
+     */
+    private Tuple decodeTuple(int slotId, int[] fields, TupleDesc projectedTd) throws NoSuchElementException {
+        Tuple t = new Tuple(projectedTd);
+        t.setRecordId(new RecordId(pid, slotId));
+        for (int k=0; k<fields.length; k++) {
+            if (tuples[slotId] != null)
+                t.setField(k, tuples[slotId].getField(fields[k]));
+            else
+                t.setField(k, decodeField(slotId, fields[k]));
+        }
         return t;
     }
 
+    /**
+     * Reads the specified field of the specified slot from the page data, in
+     * the format written by {@link Field#serialize}.
+     */
+    private Field decodeField(int slotId, int field) throws NoSuchElementException {
+        int off = slotOffset(slotId) + fieldOffsets[field];
+        if (td.getFieldType(field) == Type.INT_TYPE)
+            return new IntField(readInt(off));
+        int len = readInt(off);
+        if (len < 0 || len > Type.STRING_LEN)
+            throw new NoSuchElementException("parsing error!");
+        return new StringField(new String(data, off + 4, len), Type.STRING_LEN);
+    }
+
+    private int readInt(int off) {
+        return ((data[off] & 0xff) << 24) | ((data[off+1] & 0xff) << 16)
+            | ((data[off+2] & 0xff) << 8) | (data[off+3] & 0xff);
+    }
+
+    /**
+     * Evaluates the predicate against the bytes of the specified slot, so
+     * that no Tuple has to be built for slots that don't match. Strings are
+     * compared byte by byte, the way {@link StringField#serialize} writes
+     * them.
+     */
+    private boolean matches(int slotId, Predicate p) {
+        if (tuples[slotId] != null)
+            return p.filter(tuples[slotId]);
+        int off = slotOffset(slotId) + fieldOffsets[p.getField()];
+        Field operand = p.getOperand();
+        Predicate.Op op = p.getOp();
+
+        if (operand.getType() == Type.INT_TYPE) {
+            int v = readInt(off);
+            int c = ((IntField) operand).getValue();
+            if (op == Predicate.Op.LIKE)
+                op = Predicate.Op.EQUALS;
+            return test(v < c ? -1 : (v == c ? 0 : 1), op);
+        }
+
+        String c = ((StringField) operand).getValue();
+        for (int i=0; i<c.length(); i++) {
+            // non-ASCII characters are not stored as single bytes
+            if (c.charAt(i) > 127)
+                return p.filter(getTuple(slotId));
+        }
+        int len = readInt(off);
+        off += 4;
+        if (op == Predicate.Op.LIKE) {
+            for (int start=0; start + c.length() <= len; start++) {
+                int i = 0;
+                while (i < c.length() && (data[off + start + i] & 0xff) == c.charAt(i))
+                    i++;
+                if (i == c.length())
+                    return true;
+            }
+            return false;
+        }
+        int cmp = len - c.length();
+        for (int i=0; i<Math.min(len, c.length()); i++) {
+            int diff = (data[off + i] & 0xff) - c.charAt(i);
+            if (diff != 0) {
+                cmp = diff;
+                break;
+            }
+        }
+        return test(cmp, op);
+    }
+
+    /** @return whether a comparison with result cmp satisfies op */
+    private static boolean test(int cmp, Predicate.Op op) {
+        switch (op) {
+        case EQUALS:
+            return cmp == 0;
+        case NOT_EQUALS:
+            return cmp != 0;
+        case GREATER_THAN:
+            return cmp > 0;
+        case GREATER_THAN_OR_EQ:
+            return cmp >= 0;
+        case LESS_THAN:
+            return cmp < 0;
+        case LESS_THAN_OR_EQ:
+            return cmp <= 0;
+        default:
+            return false;
+        }
+    }
+
     /**
      * Generates a byte array representing the contents of this page.
      * Used to serialize this page to disk.
@@ -149,7 +251,7 @@ public class HeapPage implements Page {
      * @see #HeapPage
      * @return A byte array correspond to the bytes of this page.
      */
-    public byte[] getPageData() {
+    public synchronized byte[] getPageData() {
         int len = BufferPool.PAGE_SIZE;
         ByteArrayOutputStream baos = new ByteArrayOutputStream(len);
         DataOutputStream dos = new DataOutputStream(baos);
@@ -180,6 +282,16 @@ public class HeapPage implements Page {
                 continue;
             }
 
+            // non-empty slot that was never decoded
+            if (tuples[i] == null) {
+                try {
+                    dos.write(data, slotOffset(i), td.getSize());
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+                continue;
+            }
+
             // non-empty slot
             for (int j=0; j<td.numFields(); j++) {
                 Field f = tuples[i].getField(j);
@@ -231,7 +343,7 @@ public class HeapPage implements Page {
      *         already empty.
      * @param t The tuple to delete
      */
-    public void deleteTuple(Tuple t) throws DbException {
+    public synchronized void deleteTuple(Tuple t) throws DbException {
         // some code goes here
     	int index = t.getRecordId().tupleno();
     	if (t == null || !t.getRecordId().getPageId().equals(pid)) {
@@ -251,14 +363,14 @@ public class HeapPage implements Page {
      *         is mismatch.
      * @param t The tuple to add.
      */
-    public void insertTuple(Tuple t) throws DbException {
+    public synchronized void insertTuple(Tuple t) throws DbException {
     	if (getNumEmptySlots() == 0 || (!t.getTupleDesc().equals(td))) {
     		throw new DbException("");
     	}
-    	for(int i=0; i<header.length*8; i++) {
+    	for(int i=0; i<numSlots; i++) {
     		if (! isSlotUsed(i)) {
     			markSlotUsed(i, true);
-    			t.setRecordId(new RecordId(pid, (int) Math.floor(new Double(i) / 8)));
+    			t.setRecordId(new RecordId(pid, i));
     			tuples[i] = t;
     			break;
     		}
@@ -287,9 +399,9 @@ public class HeapPage implements Page {
     /**
      * Returns the number of empty slots on this page.
      */
-    public int getNumEmptySlots() {
+    public synchronized int getNumEmptySlots() {
     	int numEmpty = 0;
-        for (int i = 0; i < header.length * 8; i++) {
+        for (int i = 0; i < numSlots; i++) {
             if (!isSlotUsed(i)) {
             	numEmpty ++;
             }
@@ -325,10 +437,43 @@ public class HeapPage implements Page {
      * (note that this iterator shouldn't return tuples in empty slots!)
      */
     public Iterator<Tuple> iterator() {
+    	return iterator(null, null, null);
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that satisfy all of
+     * the specified predicates.
+     * @see #iterator(Predicate[], int[], TupleDesc)
+     */
+    public Iterator<Tuple> iterator(Predicate[] preds) {
+    	return iterator(preds, null, null);
+    }
+
+    /**
+     * @return an iterator over the tuples on this page that satisfy all of
+     * the specified predicates, holding only the specified fields. The
+     * predicates are evaluated against the bytes of each slot, so no Tuple
+     * is built for slots that don't match, and only the requested fields of
+     * the matching slots are decoded.
+     * @param preds the predicates, with field numbers referring to the
+     *        tuples of this page, or null to return every tuple
+     * @param fields the fields to return, in output order, or null for all
+     *        of them
+     * @param projectedTd the TupleDesc of the returned tuples if fields is
+     *        not null
+     */
+    public synchronized Iterator<Tuple> iterator(Predicate[] preds, int[] fields, TupleDesc projectedTd) {
     	ArrayList<Tuple> tupleArray = new ArrayList<Tuple>();
         for (int i = 0; i < tuples.length; i++) {
-            if (tuples[i] != null) {
-                tupleArray.add(tuples[i]);
+            if (!isSlotUsed(i)) {
+                continue;
+            }
+            boolean match = true;
+            for (int k = 0; preds != null && k < preds.length && match; k++) {
+                match = matches(i, preds[k]);
+            }
+            if (match) {
+                tupleArray.add(fields == null ? getTuple(i) : decodeTuple(i, fields, projectedTd));
             }
         }
         return tupleArray.iterator();
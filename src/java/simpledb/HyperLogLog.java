@@ -0,0 +1,67 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * A HyperLogLog sketch, which estimates the number of distinct values in a
+ * column in a fixed amount of memory. Each value is hashed; the first
+ * {@link #PRECISION} bits of the hash pick one of the registers, which keeps
+ * the longest run of leading zeros seen in the rest of the hash. The
+ * standard error of the estimate is about 1.04 / sqrt(number of registers).
+ */
+public class HyperLogLog implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of hash bits used to pick a register. */
+    public static final int PRECISION = 12;
+
+    private static final int M = 1 << PRECISION;
+    private static final double ALPHA = 0.7213 / (1 + 1.079 / M);
+
+    byte[] registers = new byte[M];
+
+    /** @return a well mixed 64 bit hash of the specified field */
+    private static long hash(Field f) {
+        long h = f.hashCode();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * Adds a value to the sketch.
+     * @return true if the estimate of the sketch changed
+     */
+    public boolean add(Field f) {
+        long h = hash(f);
+        int register = (int) (h >>> (64 - PRECISION));
+        // position of the first set bit after the register bits, with a
+        // sentinel bit so that an all zero remainder is counted as maximal
+        long rest = (h << PRECISION) | (1L << (PRECISION - 1));
+        byte rank = (byte) (Long.numberOfLeadingZeros(rest) + 1);
+        if (rank <= registers[register])
+            return false;
+        registers[register] = rank;
+        return true;
+    }
+
+    /** @return the estimated number of distinct values added to the sketch */
+    public double estimate() {
+        double sum = 0;
+        int zeros = 0;
+        for (byte r : registers) {
+            sum += 1.0 / (1L << r);
+            if (r == 0)
+                zeros++;
+        }
+        double e = ALPHA * M * M / sum;
+        // few values: count the empty registers instead
+        if (e <= 2.5 * M && zeros > 0)
+            e = M * Math.log((double) M / zeros);
+        return e;
+    }
+}
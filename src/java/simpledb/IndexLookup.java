@@ -0,0 +1,211 @@
+package simpledb;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * IndexLookup is an access method that finds the tuples of a HeapFile whose
+ * value in an indexed field equals a constant, by looking up their
+ * RecordIds in the field's {@link HashIndex} and fetching them through the
+ * BufferPool. Each tuple is checked against the value again when it is
+ * fetched, so stale index entries are never returned.
+ */
+public class IndexLookup implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    TransactionId transId;
+    int tableId;
+    String tAlias;
+    HeapFile dbFile;
+    int field;
+    // the predicate on the indexed field, whose operand is looked up
+    Predicate key;
+    Field value;
+    int[] fields;
+    Predicate[] preds;
+    TupleDesc projectedTd;
+    private Iterator<RecordId> rids;
+    private Tuple nextTuple;
+
+    /**
+     * Creates a lookup of the tuples of the specified table whose specified
+     * field equals the specified value.
+     *
+     * @param tid
+     *            The transaction this lookup is running as a part of.
+     * @param tableid
+     *            the table to read, which must be a HeapFile with an index on
+     *            field
+     * @param tableAlias
+     *            the alias of this table (needed by the parser); the returned
+     *            tupleDesc should have fields with name tableAlias.fieldName
+     * @param field
+     *            the indexed field
+     * @param value
+     *            the value to look up
+     */
+    public IndexLookup(TransactionId tid, int tableid, String tableAlias, int field, Field value) {
+        this(tid, tableid, tableAlias, field, value, null, null);
+    }
+
+    /**
+     * Creates a lookup of the tuples of the specified table whose specified
+     * field equals the specified value and which satisfy all of the other
+     * predicates, returning only some of their fields.
+     *
+     * @param fieldList
+     *            the indexes (in the table's TupleDesc) of the fields to
+     *            return, in output order, or null to return all fields
+     * @param predicates
+     *            further predicates returned tuples must satisfy, with field
+     *            numbers referring to the table's TupleDesc, or null
+     * @see #IndexLookup(TransactionId, int, String, int, Field)
+     */
+    public IndexLookup(TransactionId tid, int tableid, String tableAlias, int field, Field value,
+            int[] fieldList, Predicate[] predicates) {
+        this(tid, tableid, tableAlias, new Predicate(field, Predicate.Op.EQUALS, value),
+                fieldList, predicates);
+    }
+
+    /**
+     * Creates a lookup of the tuples of the specified table that satisfy
+     * the specified equality predicate on an indexed field, looking up the
+     * operand the predicate has when the lookup is opened.
+     *
+     * @param key
+     *            an EQUALS predicate on an indexed field of the table
+     * @see #IndexLookup(TransactionId, int, String, int, Field, int[], Predicate[])
+     */
+    public IndexLookup(TransactionId tid, int tableid, String tableAlias, Predicate key,
+            int[] fieldList, Predicate[] predicates) {
+        transId = tid;
+        tableId = tableid;
+        tAlias = tableAlias;
+        this.key = key;
+        this.field = key.getField();
+        this.value = key.getOperand();
+        fields = fieldList;
+        preds = predicates == null || predicates.length == 0 ? null : predicates;
+        DbFile f = Database.getCatalog().getDbFile(tableId);
+        if (!(f instanceof HeapFile) || ((HeapFile) f).getIndex(field) == null)
+            throw new IllegalArgumentException("field " + field + " of table " + tableid + " is not indexed");
+        dbFile = (HeapFile) f;
+    }
+
+    /** @return the indexed field this operator looks up */
+    public int getField() {
+        return field;
+    }
+
+    /** @return the value this operator looks up */
+    public Field getValue() {
+        return value;
+    }
+
+    /**
+     * @return the other predicates tuples returned by this lookup satisfy,
+     *         or null if there are none
+     */
+    public Predicate[] getPredicates() {
+        return preds;
+    }
+
+    /**
+     * @return the alias of the table this operator reads.
+     */
+    public String getAlias() {
+        return tAlias;
+    }
+
+    /**
+     * Returns the TupleDesc with field names from the underlying HeapFile,
+     * prefixed with the tableAlias string from the constructor.
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc td = dbFile.getTupleDesc();
+        String prefix = tAlias == null ? "null" : tAlias;
+        int width = fields == null ? td.numFields() : fields.length;
+        Type[] typeArray = new Type[width];
+        String[] nameArray = new String[width];
+        for (int i = 0; i < width; i++) {
+            int f = fields == null ? i : fields[i];
+            typeArray[i] = td.getFieldType(f);
+            nameArray[i] = prefix + "." + td.getFieldName(f);
+        }
+        return new TupleDesc(typeArray, nameArray);
+    }
+
+    /**
+     * Sets the transaction later lookups run as a part of.
+     */
+    public void setTransactionId(TransactionId tid) {
+        transId = tid;
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        value = key.getOperand();
+        try {
+            rids = dbFile.getIndex(field).lookup(value).iterator();
+        } catch (IOException e) {
+            throw new DbException("unable to read index: " + e.getMessage());
+        }
+        nextTuple = null;
+    }
+
+    /** @return the tuple stored at the specified RecordId, or null if there is none */
+    private Tuple fetch(RecordId rid) throws DbException, TransactionAbortedException {
+        HeapPage page = (HeapPage) Database.getBufferPool().getPage(transId, rid.getPageId(),
+                Permissions.READ_ONLY);
+        return page == null ? null : page.getTuple(rid.tupleno());
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        if (rids == null)
+            return false;
+        while (nextTuple == null && rids.hasNext()) {
+            Tuple t = fetch(rids.next());
+            if (t == null || !t.getField(field).equals(value))
+                continue;
+            boolean match = true;
+            if (preds != null) {
+                for (Predicate p : preds) {
+                    if (!p.filter(t)) {
+                        match = false;
+                        break;
+                    }
+                }
+            }
+            if (match)
+                nextTuple = t;
+        }
+        return nextTuple != null;
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (!hasNext())
+            throw new NoSuchElementException("");
+        Tuple t = nextTuple;
+        nextTuple = null;
+        if (fields == null)
+            return t;
+        if (projectedTd == null)
+            projectedTd = getTupleDesc();
+        Tuple projected = new Tuple(projectedTd);
+        projected.setRecordId(t.getRecordId());
+        for (int i = 0; i < fields.length; i++)
+            projected.setField(i, t.getField(fields[i]));
+        return projected;
+    }
+
+    public void close() {
+        rids = null;
+        nextTuple = null;
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        open();
+    }
+}
@@ -0,0 +1,233 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexNestedLoopJoin joins its outer child with a table that has an index
+ * on its join field. Instead of scanning the whole inner table for every
+ * outer tuple, it probes the index with the outer tuple's join value: a
+ * {@link HashIndex} on a HeapFile field for equality joins, or the key of a
+ * {@link BTreeFile} for equality and range joins.
+ * <p>
+ * The inner table is given as the SeqScan the plan would otherwise have
+ * joined with, or as the {@link IndexLookup} or {@link IndexScan} that
+ * replaced it when the table has a filter on an indexed field; its
+ * projection and filters, including the one the lookup or scan searches its
+ * index with, are applied to every probe. The inner iterator may be wrapped
+ * in a {@link Profile}, which is then charged with the probes.
+ */
+public class IndexNestedLoopJoin extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private JoinPredicate joinP;
+    private DbIterator outer;
+    private DbIterator inner;
+    // the inner table's scan, whose projection and filters probes apply
+    private SeqScan scan;
+    private int indexField;
+    private Predicate.Op probeOp;
+    private TupleDesc td;
+    private Tuple outerTuple;
+    private DbIterator probe;
+
+    /**
+     * Constructor.
+     *
+     * @param p
+     *            The predicate to use to join the children; its second field
+     *            refers to the TupleDesc of inner
+     * @param child1
+     *            Iterator for the left(outer) relation to join
+     * @param inner
+     *            the SeqScan, IndexLookup or IndexScan of the right(inner)
+     *            relation, whose table must have an index on the join field
+     *            usable with the join operator
+     * @see #canProbe(JoinPredicate, DbIterator)
+     */
+    public IndexNestedLoopJoin(JoinPredicate p, DbIterator child1, DbIterator inner) {
+        if (!canProbe(p, inner))
+            throw new IllegalArgumentException("join field of the inner table is not indexed");
+        joinP = p;
+        outer = child1;
+        this.inner = inner;
+        scan = asScan(inner);
+        indexField = tableField(p, scan);
+        probeOp = reverse(p.getOperator());
+        td = TupleDesc.merge(outer.getTupleDesc(), inner.getTupleDesc());
+    }
+
+    /**
+     * @return a scan of the table read by the specified iterator that
+     *         returns the same tuples, with the predicate an index lookup or
+     *         scan searches its index with added to its filters, or null if
+     *         the iterator does not read a base table
+     */
+    private static SeqScan asScan(DbIterator inner) {
+        while (inner instanceof Profile)
+            inner = ((Profile) inner).getProfiled();
+        if (inner instanceof SeqScan)
+            return (SeqScan) inner;
+        if (inner instanceof IndexLookup) {
+            IndexLookup l = (IndexLookup) inner;
+            return new SeqScan(l.transId, l.tableId, l.getAlias(), l.fields, withKey(l.preds, l.key));
+        }
+        if (inner instanceof IndexScan) {
+            IndexScan s = (IndexScan) inner;
+            Predicate key = s.key;
+            if (key == null)
+                key = new Predicate(s.dbFile.keyField(), s.ipred.getOp(), s.ipred.getField());
+            return new SeqScan(s.transId, s.tableId, s.getAlias(), s.fields, withKey(s.preds, key));
+        }
+        return null;
+    }
+
+    private static Predicate[] withKey(Predicate[] preds, Predicate key) {
+        int n = preds == null ? 0 : preds.length;
+        Predicate[] all = new Predicate[n + 1];
+        for (int i = 0; i < n; i++)
+            all[i] = preds[i];
+        all[n] = key;
+        return all;
+    }
+
+    /** @return the field of the inner table's TupleDesc the join probes */
+    private static int tableField(JoinPredicate p, SeqScan inner) {
+        int[] fields = inner.getFields();
+        return fields == null ? p.getField2() : fields[p.getField2()];
+    }
+
+    /**
+     * @return true if the specified file has an index on the specified field
+     *         that can find the tuples joining with an outer tuple under the
+     *         specified join operator
+     */
+    public static boolean isIndexed(DbFile file, int field, Predicate.Op op) {
+        if (file instanceof HeapFile)
+            return op == Predicate.Op.EQUALS && ((HeapFile) file).getIndex(field) != null;
+        return file instanceof BTreeFile && ((BTreeFile) file).keyField() == field
+                && IndexPredicate.isSearchable(op);
+    }
+
+    /**
+     * @return true if the join with the specified predicate can probe an
+     *         index of the table read by the specified SeqScan, IndexLookup
+     *         or IndexScan, or by the one the specified Profile wraps
+     */
+    public static boolean canProbe(JoinPredicate p, DbIterator inner) {
+        SeqScan scan = asScan(inner);
+        return scan != null && isIndexed(scan.dbFile, tableField(p, scan), p.getOperator());
+    }
+
+    /**
+     * @return the operator that holds between an inner and an outer value
+     *         when op holds between the outer and the inner one
+     */
+    private static Predicate.Op reverse(Predicate.Op op) {
+        switch (op) {
+        case LESS_THAN:
+            return Predicate.Op.GREATER_THAN;
+        case LESS_THAN_OR_EQ:
+            return Predicate.Op.GREATER_THAN_OR_EQ;
+        case GREATER_THAN:
+            return Predicate.Op.LESS_THAN;
+        case GREATER_THAN_OR_EQ:
+            return Predicate.Op.LESS_THAN_OR_EQ;
+        default:
+            return op;
+        }
+    }
+
+    public JoinPredicate getJoinPredicate() {
+        return joinP;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return td;
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        outer.open();
+        outerTuple = null;
+        probe = null;
+        super.open();
+    }
+
+    public void close() {
+        outer.close();
+        if (probe != null)
+            probe.close();
+        probe = null;
+        outerTuple = null;
+        super.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        outer.rewind();
+        if (probe != null)
+            probe.close();
+        probe = null;
+        outerTuple = null;
+    }
+
+    /**
+     * @return an iterator over the tuples of the inner table that join with
+     *         the specified outer tuple
+     */
+    private DbIterator probe(Tuple t) {
+        Field value = t.getField(joinP.getField1());
+        DbIterator probe;
+        if (scan.dbFile instanceof HeapFile)
+            probe = new IndexLookup(scan.transId, scan.tableId, scan.getAlias(), indexField,
+                    value, scan.getFields(), scan.getPredicates());
+        else
+            probe = new IndexScan(scan.transId, scan.tableId, scan.getAlias(),
+                    new IndexPredicate(probeOp, value), scan.getFields(), scan.getPredicates());
+        if (inner instanceof Profile)
+            return new Profile(probe, ((Profile) inner).getStats());
+        return probe;
+    }
+
+    /**
+     * Returns the next tuple generated by the join, or null if there are no
+     * more tuples. As with {@link Join}, the result is the concatenation of
+     * the outer tuple and a matching inner tuple.
+     */
+    protected Tuple fetchNext() throws TransactionAbortedException, DbException {
+        while (probe == null || !probe.hasNext()) {
+            if (probe != null)
+                probe.close();
+            probe = null;
+            if (!outer.hasNext())
+                return null;
+            outerTuple = outer.next();
+            probe = probe(outerTuple);
+            probe.open();
+        }
+        Tuple innerTuple = probe.next();
+        Tuple result = new Tuple(td);
+        int n = outerTuple.getTupleDesc().numFields();
+        for (int i = 0; i < n; i++)
+            result.setField(i, outerTuple.getField(i));
+        for (int i = 0; i < td.numFields() - n; i++)
+            result.setField(n + i, innerTuple.getField(i));
+        return result;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { outer, inner };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        if (children.length > 1 && children[1] != inner) {
+            if (!canProbe(joinP, children[1]))
+                throw new IllegalArgumentException("join field of the inner table is not indexed");
+            inner = children[1];
+            scan = asScan(inner);
+            indexField = tableField(joinP, scan);
+        }
+        outer = children[0];
+    }
+}
@@ -0,0 +1,66 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * IndexPredicate compares the key field of the tuples of an index to a
+ * constant. It is used to search a {@link BTreeFile}, where the field the
+ * predicate applies to is implied by the index.
+ */
+public class IndexPredicate implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private Predicate.Op op;
+    private Field fieldvalue;
+
+    /**
+     * Constructor.
+     *
+     * @param op the operation to apply (as defined in Predicate.Op); the
+     *        key is the left operand
+     * @param fvalue the value that the key field should be compared to
+     */
+    public IndexPredicate(Predicate.Op op, Field fvalue) {
+        this.op = op;
+        this.fieldvalue = fvalue;
+    }
+
+    public Field getField() {
+        return fieldvalue;
+    }
+
+    public Predicate.Op getOp() {
+        return op;
+    }
+
+    /**
+     * @return true if the specified key satisfies this predicate
+     */
+    public boolean matches(Field key) {
+        return key.compare(op, fieldvalue);
+    }
+
+    /**
+     * @return true if an index can find the keys satisfying a predicate with
+     *         the specified operation without reading every leaf
+     */
+    public static boolean isSearchable(Predicate.Op op) {
+        return op != Predicate.Op.NOT_EQUALS && op != Predicate.Op.LIKE;
+    }
+
+    public boolean equals(Object o) {
+        if (!(o instanceof IndexPredicate))
+            return false;
+        IndexPredicate p = (IndexPredicate) o;
+        return op == p.op && fieldvalue.equals(p.fieldvalue);
+    }
+
+    public int hashCode() {
+        return op.hashCode() * 31 + fieldvalue.hashCode();
+    }
+
+    public String toString() {
+        return "key " + op + " " + fieldvalue;
+    }
+}
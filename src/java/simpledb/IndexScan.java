@@ -0,0 +1,182 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * IndexScan is an access method that reads the tuples of a table stored in
+ * a {@link BTreeFile} whose keys satisfy an IndexPredicate, in key order,
+ * reading only the leaves of the tree that may hold them.
+ */
+public class IndexScan implements DbIterator {
+
+    private static final long serialVersionUID = 1L;
+
+    TransactionId transId;
+    int tableId;
+    String tAlias;
+    BTreeFile dbFile;
+    IndexPredicate ipred;
+    // the predicate ipred is made from when it follows one, or null
+    Predicate key;
+    int[] fields;
+    Predicate[] preds;
+    private DbFileIterator fileIter;
+    TupleDesc projectedTd;
+
+    /**
+     * Creates a scan over the tuples of the specified table whose keys
+     * satisfy the specified predicate.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan, which must be stored in a BTreeFile
+     * @param tableAlias
+     *            the alias of this table (needed by the parser); the returned
+     *            tupleDesc should have fields with name tableAlias.fieldName
+     * @param ipred
+     *            the predicate on the key field of the table
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, IndexPredicate ipred) {
+        this(tid, tableid, tableAlias, ipred, null, null);
+    }
+
+    /**
+     * Creates a scan over the tuples of the specified table whose keys
+     * satisfy the specified index predicate and which satisfy all of the
+     * other predicates, returning only some of their fields.
+     *
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan, which must be stored in a BTreeFile
+     * @param tableAlias
+     *            the alias of this table (needed by the parser)
+     * @param ipred
+     *            the predicate on the key field of the table
+     * @param fieldList
+     *            the indexes (in the table's TupleDesc) of the fields to
+     *            return, in output order, or null to return all fields
+     * @param predicates
+     *            further predicates returned tuples must satisfy, with field
+     *            numbers referring to the table's TupleDesc, or null
+     * @see SeqScan#SeqScan(TransactionId, int, String, int[], Predicate[])
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, IndexPredicate ipred,
+            int[] fieldList, Predicate[] predicates) {
+        transId = tid;
+        tableId = tableid;
+        tAlias = tableAlias;
+        this.ipred = ipred;
+        fields = fieldList;
+        preds = predicates == null || predicates.length == 0 ? null : predicates;
+        DbFile f = Database.getCatalog().getDbFile(tableId);
+        if (!(f instanceof BTreeFile))
+            throw new IllegalArgumentException("table " + tableid + " is not stored in a B+ tree");
+        dbFile = (BTreeFile) f;
+        openFileIterator();
+    }
+
+    /**
+     * Creates a scan over the tuples of the specified table that satisfy a
+     * predicate on its key field, searching for the operand the predicate
+     * has when the scan is opened.
+     *
+     * @param key
+     *            a predicate on the key field of the table
+     * @see #IndexScan(TransactionId, int, String, IndexPredicate, int[], Predicate[])
+     */
+    public IndexScan(TransactionId tid, int tableid, String tableAlias, Predicate key,
+            int[] fieldList, Predicate[] predicates) {
+        this(tid, tableid, tableAlias, new IndexPredicate(key.getOp(), key.getOperand()),
+                fieldList, predicates);
+        this.key = key;
+    }
+
+    private void openFileIterator() {
+        fileIter = dbFile.indexIterator(transId, ipred);
+        if (preds != null)
+            fileIter = new FilteredFileIterator(fileIter, preds);
+    }
+
+    /**
+     * Sets the transaction later scans run as a part of.
+     */
+    public void setTransactionId(TransactionId tid) {
+        transId = tid;
+        openFileIterator();
+    }
+
+    /** @return the predicate this scan searches the index with */
+    public IndexPredicate getIndexPredicate() {
+        return ipred;
+    }
+
+    /**
+     * @return the other predicates tuples returned by this scan satisfy, or
+     *         null if there are none
+     */
+    public Predicate[] getPredicates() {
+        return preds;
+    }
+
+    /**
+     * @return the alias of the table this operator scans.
+     */
+    public String getAlias() {
+        return tAlias;
+    }
+
+    /**
+     * Returns the TupleDesc with field names from the underlying BTreeFile,
+     * prefixed with the tableAlias string from the constructor.
+     */
+    public TupleDesc getTupleDesc() {
+        TupleDesc td = dbFile.getTupleDesc();
+        String prefix = tAlias == null ? "null" : tAlias;
+        int width = fields == null ? td.numFields() : fields.length;
+        Type[] typeArray = new Type[width];
+        String[] nameArray = new String[width];
+        for (int i = 0; i < width; i++) {
+            int f = fields == null ? i : fields[i];
+            typeArray[i] = td.getFieldType(f);
+            nameArray[i] = prefix + "." + td.getFieldName(f);
+        }
+        return new TupleDesc(typeArray, nameArray);
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        if (key != null && !key.getOperand().equals(ipred.getField())) {
+            ipred = new IndexPredicate(key.getOp(), key.getOperand());
+            openFileIterator();
+        }
+        fileIter.open();
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return fileIter.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        Tuple t = fileIter.next();
+        if (fields == null)
+            return t;
+        if (projectedTd == null)
+            projectedTd = getTupleDesc();
+        Tuple projected = new Tuple(projectedTd);
+        projected.setRecordId(t.getRecordId());
+        for (int i = 0; i < fields.length; i++)
+            projected.setField(i, t.getField(fields[i]));
+        return projected;
+    }
+
+    public void close() {
+        fileIter.close();
+    }
+
+    public void rewind() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        fileIter.rewind();
+    }
+}
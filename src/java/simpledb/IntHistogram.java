@@ -0,0 +1,213 @@
+package simpledb;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * An equi-depth histogram over the values of one integer column. Every
+ * bucket holds about the same number of values, so buckets are narrow where
+ * values are dense; all occurrences of a value fall in the same bucket, so a
+ * value that is very frequent gets a bucket of its own. Within a bucket,
+ * values are assumed to be spread evenly over its range, and each of its
+ * distinct values to occur equally often.
+ */
+public class IntHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    // inclusive bounds of each bucket, in increasing order
+    int[] lower;
+    int[] upper;
+    int[] counts;
+    int[] distinct;
+    int ntups;
+    // number of values each bucket was built with
+    int depth;
+
+    /**
+     * Creates a histogram of the first n values of the specified array,
+     * which is sorted in place.
+     *
+     * @param buckets
+     *            the largest number of buckets to use
+     * @param values
+     *            the values of the column
+     * @param n
+     *            the number of values in the array that are used
+     */
+    public IntHistogram(int buckets, int[] values, int n) {
+        Arrays.sort(values, 0, n);
+        ntups = n;
+        depth = Math.max(1, (n + buckets - 1) / buckets);
+        int[] lo = new int[buckets + 1], hi = new int[buckets + 1];
+        int[] cnt = new int[buckets + 1], dis = new int[buckets + 1];
+        int b = 0;
+        int i = 0;
+        while (i < n) {
+            int end = Math.min(n, i + depth);
+            // keep all copies of the last value in this bucket
+            while (end < n && values[end] == values[end - 1])
+                end++;
+            lo[b] = values[i];
+            hi[b] = values[end - 1];
+            cnt[b] = end - i;
+            dis[b] = 1;
+            for (int j = i + 1; j < end; j++) {
+                if (values[j] != values[j - 1])
+                    dis[b]++;
+            }
+            b++;
+            i = end;
+        }
+        lower = Arrays.copyOf(lo, b);
+        upper = Arrays.copyOf(hi, b);
+        counts = Arrays.copyOf(cnt, b);
+        distinct = Arrays.copyOf(dis, b);
+    }
+
+    /** @return the bucket whose range holds v, or -1 if there is none */
+    private int bucketOf(int v) {
+        int b = Arrays.binarySearch(upper, v);
+        if (b < 0)
+            b = -b - 1;
+        return b < upper.length && lower[b] <= v ? b : -1;
+    }
+
+    /** @return the estimated number of values equal to v */
+    private double countEqual(int v) {
+        int b = bucketOf(v);
+        return b < 0 ? 0 : (double) counts[b] / distinct[b];
+    }
+
+    /** @return the estimated number of values less than v */
+    private double countLess(int v) {
+        double result = 0;
+        for (int b = 0; b < upper.length && lower[b] < v; b++) {
+            if (upper[b] < v)
+                result += counts[b];
+            else
+                result += counts[b] * ((double) v - lower[b]) / ((double) upper[b] - lower[b] + 1);
+        }
+        return result;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this
+     * column.
+     *
+     * @param op
+     *            Operator
+     * @param v
+     *            Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, int v) {
+        if (ntups == 0)
+            return 0.0;
+        double count;
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            count = countEqual(v);
+            break;
+        case NOT_EQUALS:
+            count = ntups - countEqual(v);
+            break;
+        case LESS_THAN:
+            count = countLess(v);
+            break;
+        case LESS_THAN_OR_EQ:
+            count = countLess(v) + countEqual(v);
+            break;
+        case GREATER_THAN:
+            count = ntups - countLess(v) - countEqual(v);
+            break;
+        default:
+            count = ntups - countLess(v);
+            break;
+        }
+        return Math.min(1.0, Math.max(0.0, count / ntups));
+    }
+
+    /**
+     * Records that v was added to the column. A value outside the range of
+     * every bucket widens the nearest bucket, so the histogram always spans
+     * the smallest and largest value of the column. Beyond either end of the
+     * histogram, a value starts a new bucket instead if the last bucket
+     * already holds as many values as buckets were built with, or if
+     * widening it would more than double its range, so that values appended
+     * in order keep buckets of about the same depth.
+     */
+    public void addValue(int v) {
+        ntups++;
+        int b = bucketOf(v);
+        if (b < 0) {
+            // a value that is not in any bucket is new
+            b = -Arrays.binarySearch(upper, v) - 1;
+            if (b == upper.length) {
+                if (b > 0 && counts[b - 1] < depth
+                        && (long) v - upper[b - 1] <= (long) upper[b - 1] - lower[b - 1] + 1)
+                    upper[--b] = v;
+                else
+                    insertBucket(b, v);
+            } else if (b == 0) {
+                if (counts[0] < depth && (long) lower[0] - v <= (long) upper[0] - lower[0] + 1)
+                    lower[0] = v;
+                else
+                    insertBucket(0, v);
+            } else {
+                lower[b] = v;
+            }
+            distinct[b]++;
+        }
+        counts[b]++;
+    }
+
+    /** Adds an empty bucket holding just v before bucket b. */
+    private void insertBucket(int b, int v) {
+        lower = insert(lower, b, v);
+        upper = insert(upper, b, v);
+        counts = insert(counts, b, 0);
+        distinct = insert(distinct, b, 0);
+    }
+
+    private static int[] insert(int[] a, int i, int v) {
+        int[] result = new int[a.length + 1];
+        System.arraycopy(a, 0, result, 0, i);
+        result[i] = v;
+        System.arraycopy(a, i, result, i + 1, a.length - i);
+        return result;
+    }
+
+    /** Records that v was removed from the column. */
+    public void removeValue(int v) {
+        int b = bucketOf(v);
+        if (b >= 0 && counts[b] > 0) {
+            counts[b]--;
+            ntups--;
+        }
+    }
+
+    /** @return the number of distinct values in the column */
+    public int numDistinct() {
+        int result = 0;
+        for (int d : distinct)
+            result += d;
+        return result;
+    }
+
+    /** @return the number of values in the column */
+    public int numValues() {
+        return ntups;
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        for (int b = 0; b < upper.length; b++)
+            sb.append("[" + lower[b] + ", " + upper[b] + "]: " + counts[b] + " (" + distinct[b] + ")\n");
+        return sb.toString();
+    }
+}
@@ -58,7 +58,6 @@ public class IntegerAggregator implements Aggregator {
      */
     public void mergeTupleIntoGroup(Tuple tup) {
         // some code goes here
-    	tupleList = new ArrayList<Tuple>();
     	if (gbField > -1) {
 			int key = ((IntField) tup.getField(gbField)).getValue();
 			int value = 0;
@@ -87,74 +86,22 @@ public class IntegerAggregator implements Aggregator {
 				fieldHash.put(key, value);
 				countHash.put(key, 1);
 			}
-	    	Object[] keyArray = (Object[]) fieldHash.keySet().toArray();
-	    	for(int i=0; i<keyArray.length; i++) {
-	    		Integer keyItem = (Integer) keyArray[i];
-	    		
-	    		Type[] typeArray = new Type[2];
-	    		typeArray[gbField] = gbFieldType;
-	    		typeArray[aField] = Type.INT_TYPE;
-	    		TupleDesc td = new TupleDesc(typeArray);
-	    		
-	    		IntField k = new IntField(keyItem);
-	    		
-	    		Tuple tuple = new Tuple(td);
-	    		tuple.setField(gbField, k);
-	    		IntField intField = null;
-	    		if (agOperator == Op.AVG) {
-	    			int val = fieldHash.get(k.getValue());
-	    			int divisor = countHash.get(k.getValue());
-	    			val = val/divisor;
-	
-	        		intField = new IntField(val);
-	    		} else if (agOperator == Op.COUNT) {
-	    			intField = new IntField(countHash.get(k.getValue()));
-	    		} else {
-	    			intField = new IntField(fieldHash.get(k.getValue()));
-	    		}
-	    		tuple.setField(aField, intField);
-	    		tupleList.add(tuple);
-	    	}
     	} else { //if no_group
-    		for(int i=0; i<tup.getTupleDesc().numFields(); i++) {
-	    		int field = ((IntField)tup.getField(i)).getValue();
-	    		if (agOperator == Op.AVG) {
-	    			noGroupNum += field;
-	    			numInput++;
-	    		}
-	    		if (agOperator == Op.MIN) {
-	    			if (field < noGroupNum) {
-	    				noGroupNum = field;
-	    			}
-	    		}
-	    		if (agOperator == Op.MAX) {
-	    			if (field > noGroupNum) {
-	    				noGroupNum = field;
-	    			}
-	    		}
-	    		if (agOperator == Op.COUNT) {
-	    			numInput++;
-	    		}
-	    		if (agOperator == Op.SUM) {
-	    			noGroupNum += field;
-	    		}
-	    		Type[] intType = {Type.INT_TYPE};
-	    		TupleDesc td = new TupleDesc(intType);
-	    		Tuple tuple = new Tuple(td);
-	    		if (agOperator == Op.AVG) {
-	    			int val = noGroupNum/numInput;
-	    			IntField f = new IntField(val);
-	    			tuple.setField(0, f);
-	    		} else if (agOperator == Op.COUNT) {
-	    			IntField f = new IntField(numInput);
-	    			tuple.setField(0, f);
-	    		} else {
-	    			IntField f = new IntField(noGroupNum);
-	    			tuple.setField(0, f);
-	    		}
-	    		tupleList = new ArrayList<Tuple>();
-	    		tupleList.add(tuple);
+    		int field = ((IntField)tup.getField(aField)).getValue();
+    		if (numInput == 0) {
+    			noGroupNum = field;
+    		} else if (agOperator == Op.AVG || agOperator == Op.SUM) {
+    			noGroupNum += field;
+    		} else if (agOperator == Op.MIN) {
+    			if (field < noGroupNum) {
+    				noGroupNum = field;
+    			}
+    		} else if (agOperator == Op.MAX) {
+    			if (field > noGroupNum) {
+    				noGroupNum = field;
+    			}
     		}
+    		numInput++;
     	}
     }
 
@@ -168,15 +115,41 @@ public class IntegerAggregator implements Aggregator {
      */
     public DbIterator iterator() {
         // some code goes here
+    	// the results are only built here, so that merging a tuple takes
+    	// constant time however many groups there are
+    	tupleList = new ArrayList<Tuple>();
     	if (gbField > -1) {
-    		Type[] tpArray = {Type.INT_TYPE, Type.INT_TYPE};
+    		Type[] tpArray = {gbFieldType, Type.INT_TYPE};
     		TupleDesc td = new TupleDesc(tpArray);
-    		return new TupleIterator(td, tupleList); //hold that thought
+    		for (Integer key : fieldHash.keySet()) {
+    			Tuple tuple = new Tuple(td);
+    			tuple.setField(0, new IntField(key));
+    			tuple.setField(1, new IntField(aggregateValue(fieldHash.get(key), countHash.get(key))));
+    			tupleList.add(tuple);
+    		}
+    		return new TupleIterator(td, tupleList);
     	} else {
     		Type[] t = {Type.INT_TYPE};
     		TupleDesc td = new TupleDesc(t);
+    		// an empty input has a count but no other aggregate
+    		if (numInput > 0 || agOperator == Op.COUNT) {
+    			Tuple tuple = new Tuple(td);
+    			tuple.setField(0, new IntField(aggregateValue(noGroupNum, numInput)));
+    			tupleList.add(tuple);
+    		}
     		return new TupleIterator(td, tupleList);
     	}
     }
 
+    /** @return the aggregate of a group whose values combine to value */
+    private int aggregateValue(int value, int count) {
+    	if (agOperator == Op.AVG) {
+    		return value/count;
+    	} else if (agOperator == Op.COUNT) {
+    		return count;
+    	} else {
+    		return value;
+    	}
+    }
+
 }
@@ -52,7 +52,7 @@ public class Join extends Operator {
      * */
     public String getJoinField2Name() {
         // some code goes here
-        return firstChildIter.getTupleDesc().getFieldName(joinP.getField2());
+        return secondChildIter.getTupleDesc().getFieldName(joinP.getField2());
     }
 
     /**
@@ -166,7 +166,7 @@ public class Join extends Operator {
     public void setChildren(DbIterator[] children) {
         // some code goes here
     	firstChildIter = children[0];
-    	secondChildIter = children[0];
+    	secondChildIter = children[1];
     }
 
 }
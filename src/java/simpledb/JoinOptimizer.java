@@ -1,5 +1,6 @@
 package simpledb;
 
+import java.awt.GraphicsEnvironment;
 import java.util.*;
 
 import javax.swing.*;
@@ -11,8 +12,21 @@ import javax.swing.tree.*;
  * logical plan.
  */
 public class JoinOptimizer {
+    /**
+     * Largest number of joins whose every split into two subplans is
+     * enumerated, to find bushy plans.
+     */
+    private static final int MAX_BUSHY_JOINS = 12;
+
+    private static int maxDpTables = 12;
+    private static long optimizationBudget = 1000;
+
     LogicalPlan p;
     Vector<LogicalJoinNode> joins;
+    // how the last call to orderJoins ordered the joins, and the cost of
+    // the plan it chose
+    String strategy;
+    double planCost;
 
     /**
      * Constructor
@@ -27,6 +41,23 @@ public class JoinOptimizer {
         this.joins = joins;
     }
 
+    /**
+     * Sets the largest number of tables whose joins are ordered by
+     * enumerating every plan; joins of more tables, or more joins than that
+     * of fewer tables, are ordered heuristically.
+     */
+    public static void setMaxDpTables(int tables) {
+        maxDpTables = tables;
+    }
+
+    /**
+     * Sets the time in milliseconds the heuristic ordering of joins of many
+     * tables may take to improve its plan.
+     */
+    public static void setOptimizationBudget(long millis) {
+        optimizationBudget = millis;
+    }
+
     /**
      * Return best iterator for computing a given logical join, given the
      * specified statistics, and the provided left and right subplans. Note that
@@ -68,7 +99,13 @@ public class JoinOptimizer {
 
         JoinPredicate p = new JoinPredicate(t1id, lj.p, t2id);
 
-        j = new Join(p,plan1,plan2);
+        // probe the inner table's index instead of scanning it for every
+        // outer tuple when it is a base table indexed on the join field,
+        // even if a filter on another index already replaced its scan
+        if (!(lj instanceof LogicalSubplanJoinNode) && IndexNestedLoopJoin.canProbe(p, plan2))
+            j = new IndexNestedLoopJoin(p, plan1, plan2);
+        else
+            j = new Join(p,plan1,plan2);
 
         return j;
 
@@ -77,11 +114,14 @@ public class JoinOptimizer {
     /**
      * Estimate the cost of a join.
      * 
-     * The cost of the join should be calculated based on the join algorithm (or
-     * algorithms) that you implemented for Lab 2. It should be a function of
-     * the amount of data that must be read over the course of the query, as
-     * well as the number of CPU opertions performed by your join. Assume that
-     * the cost of a single predicate application is roughly 1.
+     * The cost of the join is a function of the amount of data that must be
+     * read over the course of the query, as well as the number of CPU
+     * operations performed by the join, assuming that the cost of a single
+     * predicate application is roughly 1. A nested-loops join scans the
+     * inner relation once for every outer tuple; if the inner relation is a
+     * base table with an index on its join field, the join is instead
+     * costed as an {@link IndexNestedLoopJoin}, which probes the index once
+     * for every outer tuple.
      * 
      * 
      * @param j
@@ -102,17 +142,93 @@ public class JoinOptimizer {
      */
     public double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
             double cost1, double cost2) {
+        return estimateJoinCost(j, card1, card2, cost1, cost2, true);
+    }
+
+    /**
+     * Estimate the cost of a join whose right-hand side may be the result of
+     * other joins rather than a base table, in which case it has no index
+     * and is {@link Materialize materialized}: it is computed once and
+     * kept in memory, and then read once for every outer tuple.
+     * 
+     * @param innerIsTable
+     *            Is the right-hand side of the join the table j.t2Alias?
+     * @see #estimateJoinCost(LogicalJoinNode, int, int, double, double)
+     */
+    private double estimateJoinCost(LogicalJoinNode j, int card1, int card2,
+            double cost1, double cost2, boolean innerIsTable) {
         if (j instanceof LogicalSubplanJoinNode) {
             // A LogicalSubplanJoinNode represents a subquery.
             // You do not need to implement proper support for these for Lab 4.
             return card1 + cost1 + cost2;
-        } else {
-            // Insert your code here.
-            // HINT: You may need to use the variable "j" if you implemented
-            // a join algorithm that's more complicated than a basic
-            // nested-loops join.
+        }
+        if (!innerIsTable)
+            return cost1 + cost2 + card2 + (double) card1 * card2;
+        double cost = estimateIndexJoinCost(j, card1, card2, cost1, cost2);
+        if (cost >= 0)
+            return cost;
+        return cost1 + (double) card1 * cost2 + (double) card1 * card2;
+    }
+
+    /**
+     * Estimate the cost of an index nested-loops join of the specified
+     * outer relation with the table j.t2Alias. Every probe of a hash index
+     * reads a bucket and then the heap page of each matching tuple; every
+     * probe of a B+ tree descends from the root and reads the leaves holding
+     * the matching keys, which are stored together. Pages read by probes
+     * cost a {@link CostCalibrator#randomPageCost random read} each.
+     * 
+     * @return the estimated cost, or -1 if the table has no index on its
+     *         join field that the join operator can use
+     */
+    private double estimateIndexJoinCost(LogicalJoinNode j, int card1,
+            int card2, double cost1, double cost2) {
+        Integer tableId = p.getTableId(j.t2Alias);
+        if (tableId == null)
+            return -1.0;
+        DbFile file = Database.getCatalog().getDbFile(tableId);
+        int field;
+        try {
+            field = file.getTupleDesc().fieldNameToIndex(j.f2PureName);
+        } catch (NoSuchElementException e) {
             return -1.0;
         }
+        if (!IndexNestedLoopJoin.isIndexed(file, field, j.p))
+            return -1.0;
+
+        int pages = file instanceof HeapFile ? ((HeapFile) file).numPages()
+                : ((BTreeFile) file).numPages();
+        pages = Math.max(pages, 1);
+        // probes read pages at random places in the file
+        double ioCostPerPage = cost2 / pages * CostCalibrator.randomPageCost()
+                / CostCalibrator.seqPageCost();
+
+        // number of inner tuples the index finds for each outer tuple;
+        // probes fetch them all before the filters over the inner table
+        // apply, so they are found among all of its tuples, not just the
+        // card2 tuples passing its filters
+        TableStats s = TableStats.getTableStats(Database.getCatalog()
+                .getTableName(tableId));
+        int total = s == null ? card2 : Math.max(s.totalTuples(), card2);
+        double matches;
+        if (j.p == Predicate.Op.EQUALS && isPkey(j.t2Alias, j.f2PureName))
+            matches = Math.min(1.0, total);
+        else
+            matches = total * (s == null ? 1.0 : s.avgSelectivity(field, j.p));
+
+        double pagesPerProbe;
+        double probeCost = 0;
+        if (file instanceof BTreeFile) {
+            int fanout = BTreeInternalPage.getMaxKeys(file.getTupleDesc()
+                    .getFieldType(field)) + 1;
+            double height = Math.ceil(Math.log(pages) / Math.log(fanout));
+            pagesPerProbe = Math.max(height, 1.0)
+                    + Math.ceil(pages * matches / Math.max(total, 1));
+        } else {
+            pagesPerProbe = 1.0 + Math.min(matches, pages);
+            probeCost = CostCalibrator.hashProbeCost();
+        }
+        return cost1 + card1 * (pagesPerProbe * ioCostPerPage + probeCost + matches);
     }
 
     /**
@@ -148,16 +264,72 @@ public class JoinOptimizer {
     }
 
     /**
-     * Estimate the join cardinality of two tables.
+     * Estimate the join cardinality of two tables. An equality join with a
+     * primary key produces at most one tuple for each tuple of the other
+     * table; other equality joins match each tuple with the tuples sharing
+     * its value, assuming the values of the field with fewer distinct
+     * values all occur in the other. Range joins keep the fraction of pairs
+     * a random pair of values satisfies.
      * */
     public static int estimateTableJoinCardinality(Predicate.Op joinOp,
             String table1Alias, String table2Alias, String field1PureName,
             String field2PureName, int card1, int card2, boolean t1pkey,
             boolean t2pkey, Map<String, TableStats> stats,
             Map<String, Integer> tableAliasToId) {
-        int card = 1;
-        // some code goes here
-        return card <= 0 ? 1 : card;
+        double pairs = (double) card1 * card2;
+        double d = Math.max(
+                numDistinct(table1Alias, field1PureName, card1, stats, tableAliasToId),
+                numDistinct(table2Alias, field2PureName, card2, stats, tableAliasToId));
+        double equal;
+        if (t1pkey && t2pkey)
+            equal = Math.min(card1, card2);
+        else if (t1pkey)
+            equal = card2;
+        else if (t2pkey)
+            equal = card1;
+        else
+            equal = pairs / d;
+
+        double card;
+        switch (joinOp) {
+        case EQUALS:
+        case LIKE:
+            card = equal;
+            break;
+        case NOT_EQUALS:
+            card = pairs - equal;
+            break;
+        case LESS_THAN:
+        case GREATER_THAN:
+            card = pairs * (1.0 - 1.0 / d) / 2;
+            break;
+        default:
+            card = pairs * (1.0 - 1.0 / d) / 2 + equal;
+            break;
+        }
+        card = Math.min(card, Integer.MAX_VALUE);
+        return card < 1 ? 1 : (int) Math.round(card);
+    }
+
+    /**
+     * @return the estimated number of distinct values of the specified field
+     *         among card tuples of the specified table, or card if there are
+     *         no statistics for it
+     */
+    private static double numDistinct(String tableAlias, String fieldPureName,
+            int card, Map<String, TableStats> stats,
+            Map<String, Integer> tableAliasToId) {
+        double d = card;
+        Integer tableId = tableAlias == null ? null : tableAliasToId.get(tableAlias);
+        TableStats s = tableId == null ? null : stats.get(Database.getCatalog().getTableName(tableId));
+        if (s != null) {
+            try {
+                d = Math.min(d, s.numDistinct(Database.getCatalog().getTupleDesc(tableId)
+                        .fieldNameToIndex(fieldPureName)));
+            } catch (NoSuchElementException e) {
+            }
+        }
+        return Math.max(d, 1.0);
     }
 
     /**
@@ -195,7 +367,12 @@ public class JoinOptimizer {
 
     /**
      * Compute a logical, reasonably efficient join on the specified tables. See
-     * PS4 for hints on how this should be implemented.
+     * PS4 for hints on how this should be implemented. Joins of up to
+     * {@link #setMaxDpTables} tables, with at most as many joins, get the
+     * cheapest plan, which is bushy if joining the results of two smaller
+     * plans is cheaper; other joins get a left-deep plan ordered
+     * heuristically within
+     * {@link #setOptimizationBudget the optimization time budget}.
      * 
      * @param stats
      *            Statistics for each table involved in the join, referenced by
@@ -207,8 +384,11 @@ public class JoinOptimizer {
      * @param explain
      *            Indicates whether your code should explain its query plan or
      *            simply execute it
-     * @return A Vector<LogicalJoinNode> that stores joins in the left-deep
-     *         order in which they should be executed.
+     * @return A Vector<LogicalJoinNode> that stores joins in the order in
+     *         which they should be executed. Each join joins the plans
+     *         built so far that contain its two tables, so the plan may be
+     *         bushy: a join can join two plans that are both the result of
+     *         joins.
      * @throws ParsingException
      *             when stats or filter selectivities is missing a table in the
      *             join, or or when another internal error occurs
@@ -217,11 +397,189 @@ public class JoinOptimizer {
             HashMap<String, TableStats> stats,
             HashMap<String, Double> filterSelectivities, boolean explain)
             throws ParsingException {
-        //Not necessary for projs 1--3
+        int n = joins.size();
+        if (n == 0)
+            return joins;
+
+        HashSet<String> tables = new HashSet<String>();
+        for (LogicalJoinNode j : joins) {
+            tables.add(j.t1Alias);
+            if (j.t2Alias != null)
+                tables.add(j.t2Alias);
+        }
+        // every subset of the joins is enumerated, so queries with cycles
+        // can have too many joins even if they have few tables
+        if (tables.size() > maxDpTables || n > maxDpTables)
+            return orderJoinsHeuristically(stats, filterSelectivities, explain);
+
+        // the tables on either side of each join, and the tables each set
+        // of joins joins, as bitmasks over the tables
+        long[] t1Tables = new long[n], t2Tables = new long[n];
+        long[] setTables = null;
+        if (n <= MAX_BUSHY_JOINS && tables.size() < 64) {
+            Vector<String> aliases = new Vector<String>(tables);
+            for (int i = 0; i < n; i++) {
+                LogicalJoinNode j = joins.get(i);
+                t1Tables[i] = 1L << aliases.indexOf(j.t1Alias);
+                t2Tables[i] = j.t2Alias == null ? 0 : 1L << aliases.indexOf(j.t2Alias);
+            }
+            setTables = new long[1 << n];
+            for (int s = 1; s < setTables.length; s++) {
+                int i = Integer.numberOfTrailingZeros(s);
+                setTables[s] = setTables[s & (s - 1)] | t1Tables[i] | t2Tables[i];
+            }
+        }
+
+        // the best plan of every set of joins, found from the best plans of
+        // its subsets; sets are bitmasks over joins, and the subsets of a
+        // set are smaller numbers than the set, so are visited first
+        PlanCache pc = new PlanCache();
+        long all = (1L << n) - 1;
+        for (long s = 1; s <= all; s++) {
+            CostCard best = null;
+            double bestCost = Double.MAX_VALUE;
+            for (int i = 0; i < n; i++) {
+                if ((s & (1L << i)) == 0)
+                    continue;
+                CostCard cc = computeCostAndCardOfSubplan(stats,
+                        filterSelectivities, i, s, bestCost, pc);
+                if (cc != null) {
+                    best = cc;
+                    bestCost = cc.cost;
+                }
+                if (setTables == null || joins.get(i) instanceof LogicalSubplanJoinNode)
+                    continue;
+                // join i joining the plans of two table-disjoint sets that
+                // make up the rest of s; each split is considered once, with
+                // the table j.t1Alias in s1
+                long rest = s & ~(1L << i);
+                for (long s1 = (rest - 1) & rest; s1 > 0; s1 = (s1 - 1) & rest) {
+                    long s2 = rest ^ s1;
+                    if ((setTables[(int) s1] & setTables[(int) s2]) != 0
+                            || (setTables[(int) s1] & t1Tables[i]) == 0
+                            || (setTables[(int) s2] & t2Tables[i]) == 0)
+                        continue;
+                    cc = joinSubplans(stats, i, s1, s2, bestCost, pc);
+                    if (cc != null) {
+                        best = cc;
+                        bestCost = cc.cost;
+                    }
+                }
+            }
+            if (best != null)
+                pc.addPlan(s, best.cost, best.card, best.plan);
+        }
+
+        Vector<LogicalJoinNode> order = pc.getOrder(all);
+        // every order needs a cross product; keep the order of the query
+        if (order == null) {
+            strategy = "query order";
+            if (explain)
+                System.out.println("Join order (" + strategy + "): " + joins);
+            return joins;
+        }
+        strategy = "dynamic programming";
+        planCost = pc.getCost(all);
+        if (explain) {
+            System.out.println("Join order (" + strategy + "): " + order
+                    + " (cost = " + planCost + ", card = " + pc.getCard(all)
+                    + ")");
+            if (!GraphicsEnvironment.isHeadless())
+                printJoins(order, pc, stats, filterSelectivities);
+        }
+        return order;
+    }
+
+    /**
+     * Orders joins over too many tables to enumerate every plan. A greedy
+     * pass builds a left-deep plan by adding the join that gives the
+     * cheapest plan at each step; iterative improvement then moves single
+     * joins to other positions in the order and keeps the moves that lower
+     * the cost, until no move has helped for a while or the optimization
+     * time budget is spent.
+     * 
+     * @see #orderJoins
+     */
+    private Vector<LogicalJoinNode> orderJoinsHeuristically(
+            HashMap<String, TableStats> stats,
+            HashMap<String, Double> filterSelectivities, boolean explain)
+            throws ParsingException {
+        long deadline = System.currentTimeMillis() + optimizationBudget;
+        int n = joins.size();
+
+        Vector<LogicalJoinNode> order = new Vector<LogicalJoinNode>();
+        Vector<LogicalJoinNode> remaining = new Vector<LogicalJoinNode>(joins);
+        CostCard plan = null;
+        while (!remaining.isEmpty()) {
+            CostCard best = null;
+            LogicalJoinNode bestJoin = null;
+            for (LogicalJoinNode j : remaining) {
+                CostCard cc = joinToPlan(stats, filterSelectivities, j,
+                        plan == null ? null : plan.plan,
+                        plan == null ? 0 : plan.cost,
+                        plan == null ? 0 : plan.card,
+                        best == null ? Double.MAX_VALUE : best.cost);
+                if (cc != null) {
+                    best = cc;
+                    bestJoin = j;
+                }
+            }
+            // the join graph is not connected
+            if (best == null) {
+                strategy = "query order";
+                if (explain)
+                    System.out.println("Join order (" + strategy + "): " + joins);
+                return joins;
+            }
+            plan = best;
+            order.add(bestJoin);
+            remaining.remove(bestJoin);
+        }
+
+        // the same query gets the same plan
+        Random rand = new Random(n);
+        int moves = 0, sinceImprovement = 0;
+        while (n > 1 && sinceImprovement < n * n
+                && System.currentTimeMillis() < deadline) {
+            Vector<LogicalJoinNode> next = new Vector<LogicalJoinNode>(order);
+            next.add(rand.nextInt(n), next.remove(rand.nextInt(n)));
+            CostCard cc = costOfOrder(stats, filterSelectivities, next, plan.cost);
+            moves++;
+            sinceImprovement++;
+            if (cc != null) {
+                plan = cc;
+                order = next;
+                sinceImprovement = 0;
+            }
+        }
 
-        // some code goes here
-        //Replace the following
-        return joins;
+        strategy = "greedy + iterative improvement, " + moves + " moves";
+        planCost = plan.cost;
+        if (explain)
+            System.out.println("Join order (" + strategy + "): " + plan.plan
+                    + " (cost = " + plan.cost + ", card = " + plan.card + ")");
+        return plan.plan;
+    }
+
+    /**
+     * @return the cost and cardinality of joining in the specified order,
+     *         or null if the order needs a cross product or costs at least
+     *         bestCostSoFar
+     */
+    private CostCard costOfOrder(HashMap<String, TableStats> stats,
+            HashMap<String, Double> filterSelectivities,
+            Vector<LogicalJoinNode> order, double bestCostSoFar)
+            throws ParsingException {
+        CostCard plan = null;
+        for (LogicalJoinNode j : order) {
+            plan = joinToPlan(stats, filterSelectivities, j,
+                    plan == null ? null : plan.plan,
+                    plan == null ? 0 : plan.cost,
+                    plan == null ? 0 : plan.card, bestCostSoFar);
+            if (plan == null)
+                return null;
+        }
+        return plan;
     }
 
     // ===================== Private Methods =================================
@@ -229,8 +587,8 @@ public class JoinOptimizer {
     /**
      * This is a helper method that computes the cost and cardinality of joining
      * joinToRemove to joinSet (joinSet should contain joinToRemove), given that
-     * all of the subsets of size joinSet.size() - 1 have already been computed
-     * and stored in PlanCache pc.
+     * all of the subsets of joinSet have already been computed and stored in
+     * PlanCache pc.
      * 
      * @param stats
      *            table stats for all of the tables, referenced by table names
@@ -240,54 +598,130 @@ public class JoinOptimizer {
      *            (where tables are indentified by their alias or name if no
      *            alias is given)
      * @param joinToRemove
-     *            the join to remove from joinSet
+     *            the index in joins of the join to remove from joinSet
      * @param joinSet
-     *            the set of joins being considered
+     *            the bitmask of the set of joins being considered
      * @param bestCostSoFar
      *            the best way to join joinSet so far (minimum of previous
      *            invocations of computeCostAndCardOfSubplan for this joinSet,
      *            from returned CostCard)
      * @param pc
      *            the PlanCache for this join; should have subplans for all
-     *            plans of size joinSet.size()-1
+     *            subsets of joinSet
      * @return A {@link CostCard} objects desribing the cost, cardinality,
-     *         optimal subplan
+     *         optimal subplan, or null if it is no better than bestCostSoFar
+     *         or needs a cross product
      * @throws ParsingException
      *             when stats, filterSelectivities, or pc object is missing
      *             tables involved in join
      */
-    @SuppressWarnings("unchecked")
     private CostCard computeCostAndCardOfSubplan(
             HashMap<String, TableStats> stats,
             HashMap<String, Double> filterSelectivities,
-            LogicalJoinNode joinToRemove, Set<LogicalJoinNode> joinSet,
+            int joinToRemove, long joinSet,
             double bestCostSoFar, PlanCache pc) throws ParsingException {
 
-        LogicalJoinNode j = joinToRemove;
+        LogicalJoinNode j = joins.get(joinToRemove);
+        long news = joinSet & ~(1L << joinToRemove);
+        if (news == 0)
+            return joinToPlan(stats, filterSelectivities, j, null, 0, 0,
+                    bestCostSoFar);
+
+        Vector<LogicalJoinNode> prevBest = pc.getOrder(news);
+        // possible that we have not cached an answer, if subset
+        // includes a cross product
+        if (prevBest == null)
+            return null;
+        return joinToPlan(stats, filterSelectivities, j, prevBest,
+                pc.getCost(news), pc.getCard(news), bestCostSoFar);
+    }
+
+    /**
+     * Computes the cost and cardinality of joining the best plans of two
+     * sets of joins over disjoint tables with the specified join, which
+     * joins a table of s1 with a table of s2. The inner plan is
+     * materialized; the cheaper of the two plans as the outer is taken.
+     * 
+     * @return A {@link CostCard} describing the plan, or null if s1 or s2
+     *         has no plan or it is no better than bestCostSoFar
+     */
+    @SuppressWarnings("unchecked")
+    private CostCard joinSubplans(HashMap<String, TableStats> stats,
+            int joinIndex, long s1, long s2, double bestCostSoFar,
+            PlanCache pc) {
+        Vector<LogicalJoinNode> plan1 = pc.getOrder(s1);
+        Vector<LogicalJoinNode> plan2 = pc.getOrder(s2);
+        if (plan1 == null || plan2 == null)
+            return null;
+        double cost1 = pc.getCost(s1), cost2 = pc.getCost(s2);
+        int card1 = pc.getCard(s1), card2 = pc.getCard(s2);
+
+        LogicalJoinNode j = joins.get(joinIndex);
+        double cost = estimateJoinCost(j, card1, card2, cost1, cost2, false);
+        LogicalJoinNode j2 = j.swapInnerOuter();
+        double swappedCost = estimateJoinCost(j2, card2, card1, cost2,
+                cost1, false);
+        if (swappedCost < cost) {
+            j = j2;
+            cost = swappedCost;
+        }
+        if (cost >= bestCostSoFar)
+            return null;
+
+        CostCard cc = new CostCard();
+        cc.card = estimateJoinCardinality(joins.get(joinIndex), card1, card2,
+                hasPkey(plan1), hasPkey(plan2), stats);
+        cc.cost = cost;
+        cc.plan = (Vector<LogicalJoinNode>) plan1.clone();
+        cc.plan.addAll(plan2);
+        cc.plan.addElement(j);
+        return cc;
+    }
 
-        Vector<LogicalJoinNode> prevBest;
+    /**
+     * Computes the cost and cardinality of adding join j to the end of the
+     * left-deep plan prevBest, taking whichever of its sides is cheaper as
+     * the outer.
+     * 
+     * @param j
+     *            the join to add
+     * @param prevBest
+     *            the plan to add j to, or null if j is the first join
+     * @param prevBestCost
+     *            the cost of prevBest
+     * @param bestCard
+     *            the cardinality of prevBest
+     * @param bestCostSoFar
+     *            the cost above which the result is not of interest
+     * @return A {@link CostCard} describing the plan, or null if it is no
+     *         better than bestCostSoFar or is a cross product
+     */
+    @SuppressWarnings("unchecked")
+    private CostCard joinToPlan(HashMap<String, TableStats> stats,
+            HashMap<String, Double> filterSelectivities, LogicalJoinNode j,
+            Vector<LogicalJoinNode> prevBest, double prevBestCost,
+            int bestCard, double bestCostSoFar) throws ParsingException {
 
         if (this.p.getTableId(j.t1Alias) == null)
             throw new ParsingException("Unknown table " + j.t1Alias);
-        if (this.p.getTableId(j.t2Alias) == null)
+        // the inner of a subquery join is not a table
+        if (j.t2Alias != null && this.p.getTableId(j.t2Alias) == null)
             throw new ParsingException("Unknown table " + j.t2Alias);
 
         String table1Name = Database.getCatalog().getTableName(
                 this.p.getTableId(j.t1Alias));
-        String table2Name = Database.getCatalog().getTableName(
-                this.p.getTableId(j.t2Alias));
+        String table2Name = j.t2Alias == null ? null : Database.getCatalog()
+                .getTableName(this.p.getTableId(j.t2Alias));
         String table1Alias = j.t1Alias;
         String table2Alias = j.t2Alias;
 
-        Set<LogicalJoinNode> news = (Set<LogicalJoinNode>) ((HashSet<LogicalJoinNode>) joinSet)
-                .clone();
-        news.remove(j);
-
         double t1cost, t2cost;
         int t1card, t2card;
         boolean leftPkey, rightPkey;
+        // whether each side is a base table, which may have an index
+        boolean t1IsTable = true, t2IsTable = true;
 
-        if (news.isEmpty()) { // base case -- both are base relations
+        if (prevBest == null) { // base case -- both are base relations
             prevBest = new Vector<LogicalJoinNode>();
             t1cost = stats.get(table1Name).estimateScanCost();
             t1card = stats.get(table1Name).estimateTableCardinality(
@@ -302,18 +736,6 @@ public class JoinOptimizer {
             rightPkey = table2Alias == null ? false : isPkey(table2Alias,
                     j.f2PureName);
         } else {
-            // news is not empty -- figure best way to join j to news
-            prevBest = pc.getOrder(news);
-
-            // possible that we have not cached an answer, if subset
-            // includes a cross product
-            if (prevBest == null) {
-                return null;
-            }
-
-            double prevBestCost = pc.getCost(news);
-            int bestCard = pc.getCard(news);
-
             // estimate cost of right subtree
             if (doesJoin(prevBest, table1Alias)) { // j.t1 is in prevBest
                 t1cost = prevBestCost; // left side just has cost of whatever
@@ -321,6 +743,7 @@ public class JoinOptimizer {
                 // subtree is
                 t1card = bestCard;
                 leftPkey = hasPkey(prevBest);
+                t1IsTable = false;
 
                 t2cost = j.t2Alias == null ? 0 : stats.get(table2Name)
                         .estimateScanCost();
@@ -337,6 +760,7 @@ public class JoinOptimizer {
                 // subtree is
                 t2card = bestCard;
                 rightPkey = hasPkey(prevBest);
+                t2IsTable = false;
 
                 t1cost = stats.get(table1Name).estimateScanCost();
                 t1card = stats.get(table1Name).estimateTableCardinality(
@@ -351,11 +775,14 @@ public class JoinOptimizer {
         }
 
         // case where prevbest is left
-        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost);
-
-        LogicalJoinNode j2 = j.swapInnerOuter();
-        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost);
-        if (cost2 < cost1) {
+        double cost1 = estimateJoinCost(j, t1card, t2card, t1cost, t2cost,
+                t2IsTable);
+
+        // subquery joins cannot be swapped; their inner is not a table
+        LogicalJoinNode j2 = j instanceof LogicalSubplanJoinNode ? j : j.swapInnerOuter();
+        double cost2 = estimateJoinCost(j2, t2card, t1card, t2cost, t1cost,
+                t1IsTable);
+        if (cost2 < cost1 && j2 != j) {
             boolean tmp;
             j = j2;
             cost1 = cost2;
@@ -419,6 +846,64 @@ public class JoinOptimizer {
 
     }
 
+    /**
+     * Finds the set of joins of the subplan each join of an order produces,
+     * as the bitmask over {@link #joins} its plan is kept under in the
+     * {@link PlanCache}. Each join joins the subplans that hold its two
+     * tables, which need not be the joins before it in a bushy plan.
+     *
+     * @param order
+     *            joins ordered by {@link #orderJoins}, whose sides may be
+     *            swapped
+     * @return the mask of the subplan of each join of order
+     */
+    long[] subplanMasks(Vector<LogicalJoinNode> order) {
+        long[] masks = new long[order.size()];
+        // the mask of the subplan each table is in so far
+        HashMap<String, Long> tableMasks = new HashMap<String, Long>();
+        long used = 0;
+        for (int k = 0; k < order.size(); k++) {
+            LogicalJoinNode j = order.get(k);
+            int i = indexOfJoin(j, used);
+            used |= 1L << i;
+            long mask = 1L << i;
+            Long m1 = tableMasks.get(j.t1Alias);
+            Long m2 = j.t2Alias == null ? null : tableMasks.get(j.t2Alias);
+            if (m1 != null)
+                mask |= m1;
+            if (m2 != null)
+                mask |= m2;
+            masks[k] = mask;
+            for (Map.Entry<String, Long> e : tableMasks.entrySet()) {
+                if (e.getValue().equals(m1) || e.getValue().equals(m2))
+                    e.setValue(mask);
+            }
+            tableMasks.put(j.t1Alias, mask);
+            if (j.t2Alias != null)
+                tableMasks.put(j.t2Alias, mask);
+        }
+        return masks;
+    }
+
+    /**
+     * @return the position in {@link #joins} of the specified join, which
+     *         may have its sides swapped, among those not in the specified
+     *         mask
+     */
+    private int indexOfJoin(LogicalJoinNode j, long used) {
+        for (int i = 0; i < joins.size(); i++) {
+            LogicalJoinNode k = joins.get(i);
+            if ((used & (1L << i)) != 0)
+                continue;
+            if (k == j || (k.t1Alias.equals(j.t1Alias) && k.f1PureName.equals(j.f1PureName)
+                    && k.t2Alias != null && k.t2Alias.equals(j.t2Alias) && k.f2PureName.equals(j.f2PureName))
+                    || (k.t2Alias != null && k.t1Alias.equals(j.t2Alias) && k.f1PureName.equals(j.f2PureName)
+                    && k.t2Alias.equals(j.t1Alias) && k.f2PureName.equals(j.f1PureName)))
+                return i;
+        }
+        throw new IllegalArgumentException("join " + j + " is not one of the joins being ordered");
+    }
+
     /**
      * Helper function to display a Swing window with a tree representation of
      * the specified list of joins. See {@link #orderJoins}, which may want to
@@ -456,11 +941,15 @@ public class JoinOptimizer {
         // int k;
         DefaultMutableTreeNode root = null, treetop = null;
         HashSet<LogicalJoinNode> pathSoFar = new HashSet<LogicalJoinNode>();
+        long[] masks = subplanMasks(js);
+        long pathMask;
         boolean neither;
 
         System.out.println(js);
-        for (LogicalJoinNode j : js) {
+        for (int k = 0; k < js.size(); k++) {
+            LogicalJoinNode j = js.get(k);
             pathSoFar.add(j);
+            pathMask = masks[k];
             System.out.println("PATH SO FAR = " + pathSoFar);
 
             String table1Name = Database.getCatalog().getTableName(
@@ -472,8 +961,8 @@ public class JoinOptimizer {
             neither = true;
 
             root = new DefaultMutableTreeNode("Join " + j + " (Cost ="
-                    + pc.getCost(pathSoFar) + ", card = "
-                    + pc.getCard(pathSoFar) + ")");
+                    + pc.getCost(pathMask) + ", card = "
+                    + pc.getCard(pathMask) + ")");
             DefaultMutableTreeNode n = m.get(j.t1Alias);
             if (n == null) { // never seen this table before
                 n = new DefaultMutableTreeNode(j.t1Alias
@@ -0,0 +1,101 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * LatencyHistogram counts how long operations took, in buckets whose bounds
+ * are powers of two nanoseconds: bucket i counts the operations that took
+ * from 2^i up to 2^(i+1) nanoseconds. Like {@link StripedCounter}, each
+ * thread records into cells of its own.
+ */
+public class LatencyHistogram {
+
+    /** Number of buckets; the last one counts everything from 2^39 ns up. */
+    public static final int BUCKETS = 40;
+
+    // each stripe has the counts of its buckets followed by its total time
+    private static final int STRIDE = BUCKETS + 1;
+
+    private final AtomicLongArray cells = new AtomicLongArray(StripedCounter.STRIPES * STRIDE);
+
+    /** @return the bucket that counts operations of the specified duration */
+    static int bucket(long nanos) {
+        if (nanos < 1)
+            return 0;
+        return Math.min(BUCKETS - 1, 63 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /** Records an operation that took the specified number of nanoseconds. */
+    public void record(long nanos) {
+        int base = StripedCounter.stripe() * STRIDE;
+        cells.incrementAndGet(base + bucket(nanos));
+        cells.addAndGet(base + BUCKETS, nanos);
+    }
+
+    /** @return the number of operations in each bucket */
+    public long[] getBucketCounts() {
+        long[] counts = new long[BUCKETS];
+        for (int s = 0; s < StripedCounter.STRIPES; s++) {
+            for (int i = 0; i < BUCKETS; i++)
+                counts[i] += cells.get(s * STRIDE + i);
+        }
+        return counts;
+    }
+
+    /** @return the number of operations recorded */
+    public long getCount() {
+        long n = 0;
+        for (long c : getBucketCounts())
+            n += c;
+        return n;
+    }
+
+    /** @return the time all recorded operations took, in nanoseconds */
+    public long getTotalNanos() {
+        long sum = 0;
+        for (int s = 0; s < StripedCounter.STRIPES; s++)
+            sum += cells.get(s * STRIDE + BUCKETS);
+        return sum;
+    }
+
+    /** @return the mean duration of an operation, in nanoseconds, or 0 if none were recorded */
+    public double getMeanNanos() {
+        long n = getCount();
+        return n == 0 ? 0 : (double) getTotalNanos() / n;
+    }
+
+    /**
+     * @param fraction
+     *            a fraction between 0 and 1, such as 0.99
+     * @return the upper bound of the bucket the operation at the specified
+     *         fraction of the recorded operations, ordered by duration,
+     *         falls in, in nanoseconds, or 0 if none were recorded
+     */
+    public long getPercentileNanos(double fraction) {
+        long[] counts = getBucketCounts();
+        long n = 0;
+        for (long c : counts)
+            n += c;
+        if (n == 0)
+            return 0;
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return 1L << (i + 1);
+        }
+        return 1L << BUCKETS;
+    }
+
+    /** Forgets every recorded operation. */
+    public void reset() {
+        for (int i = 0; i < cells.length(); i++)
+            cells.set(i, 0);
+    }
+
+    public String toString() {
+        return String.format("%d ops, mean %.1f us, p99 %.1f us", getCount(),
+                getMeanNanos() / 1000, getPercentileNanos(0.99) / 1000.0);
+    }
+}
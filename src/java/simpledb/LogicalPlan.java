@@ -1,7 +1,9 @@
 package simpledb;
+import java.util.List;
 import java.util.Map;
 import java.util.Vector;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
 import java.io.File;
 import java.util.ArrayList;
@@ -36,6 +38,18 @@ public class LogicalPlan {
     private boolean oByAsc, hasOrderBy = false;
     private String oByField;
     private String query;
+    // whether joins are already in the order physicalPlan should use
+    private boolean joinsOrdered = false;
+    // the predicate the last physical plan evaluates for each filter
+    private Vector<Predicate> filterPredicates = new Vector<Predicate>();
+    // the number of pipelines physical plans are split into
+    private int parallelism = 1;
+
+    /**
+     * Build sides of parallel hash joins estimated to have at most this many
+     * tuples are sent whole to every pipeline rather than repartitioned.
+     */
+    public static final int BROADCAST_CARDINALITY = 10000;
 //    private Query owner;
 
     /** Constructor -- generate an empty logical plan */
@@ -66,6 +80,97 @@ public class LogicalPlan {
         return query;
     }
 
+    /**
+     * Sets the number of pipelines physical plans are split into. With more
+     * than one, {@link #physicalPlan} scans each table in page ranges, runs
+     * equality joins as {@link HashJoin}s and aggregates partially in every
+     * pipeline, with {@link Exchange}s moving tuples between the pipelines
+     * of the worker threads; queries with other joins are planned serially.
+     *
+     * @param parallelism the number of pipelines, 1 for serial plans
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.parallelism = parallelism;
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /** @return true if every join of the plan can be run as a parallel hash join */
+    private boolean canRunInParallel() {
+        for (LogicalJoinNode lj : joins) {
+            if (lj instanceof LogicalSubplanJoinNode || lj.p != Predicate.Op.EQUALS)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Joins two relations that are each read by several pipelines with a
+     * {@link HashJoin} per pipeline. A relation estimated to be small is
+     * broadcast to the pipelines of the other one, which probe its hash
+     * table; otherwise both are repartitioned on their join fields.
+     *
+     * @param leftCardinality
+     *            the estimated number of tuples of the left relation, or -1
+     *            if it is not known
+     * @param rightCardinality
+     *            the same for the right relation
+     * @return the pipelines of the join
+     */
+    private DbIterator[] parallelJoin(LogicalJoinNode lj, DbIterator[] left, DbIterator[] right,
+            int leftCardinality, int rightCardinality, boolean explain) throws ParsingException {
+        int f1, f2;
+        try {
+            f1 = left[0].getTupleDesc().fieldNameToIndex(lj.f1QuantifiedName);
+        } catch (NoSuchElementException e) {
+            throw new ParsingException("Unknown field " + lj.f1QuantifiedName);
+        }
+        try {
+            f2 = right[0].getTupleDesc().fieldNameToIndex(lj.f2QuantifiedName);
+        } catch (NoSuchElementException e) {
+            throw new ParsingException("Unknown field " + lj.f2QuantifiedName);
+        }
+        JoinPredicate p = new JoinPredicate(f1, lj.p, f2);
+
+        boolean buildLeft = false;
+        if (rightCardinality >= 0 && rightCardinality <= BROADCAST_CARDINALITY) {
+            right = Exchange.broadcast(right, left.length);
+            if (explain)
+                System.out.println("Broadcasting " + lj.t2Alias + " to " + left.length + " pipelines");
+        } else if (leftCardinality >= 0 && leftCardinality <= BROADCAST_CARDINALITY) {
+            left = Exchange.broadcast(left, right.length);
+            buildLeft = true;
+            if (explain)
+                System.out.println("Broadcasting " + lj.t1Alias + " to " + right.length + " pipelines");
+        } else {
+            left = Exchange.repartition(left, f1, parallelism);
+            right = Exchange.repartition(right, f2, parallelism);
+            if (explain)
+                System.out.println("Repartitioning " + lj.t1Alias + " and " + lj.t2Alias
+                        + " into " + parallelism + " pipelines");
+        }
+        DbIterator[] joined = new DbIterator[left.length];
+        for (int i = 0; i < joined.length; i++)
+            joined[i] = new HashJoin(p, left[i], right[i], buildLeft);
+        return joined;
+    }
+
+    /**
+     * @return the estimated number of tuples of the filtered table of the
+     *         specified alias, or -1 if other tables have been joined to it
+     */
+    private int baseCardinality(String alias, HashMap<String,String> equivMap,
+            HashMap<String,TableStats> statsMap, HashMap<String,Double> filterSelectivities) {
+        if (equivMap.containsValue(alias))
+            return -1;
+        TableStats s = statsMap.get(Database.getCatalog().getTableName(getTableId(alias)));
+        return s.estimateTableCardinality(filterSelectivities.get(alias));
+    }
+
     /** Given a table alias, return id of the table object (this id can be supplied to {@link Catalog#getDbFile(int)}).
         Aliases are added as base tables are added via {@link #addScan}.
 
@@ -216,6 +321,67 @@ public class LogicalPlan {
         hasOrderBy = true;
     }
 
+    /** @return the filters of the plan, in the order they were added */
+    Vector<LogicalFilterNode> getFilters() {
+        return filters;
+    }
+
+    /**
+     * @return the predicate the physical plan last made by
+     *         {@link #physicalPlan} evaluates for each filter, in the order
+     *         of {@link #getFilters}
+     */
+    Vector<Predicate> getFilterPredicates() {
+        return filterPredicates;
+    }
+
+    /** @return true if the plan joins with a subquery */
+    boolean hasSubqueries() {
+        for (LogicalJoinNode j : joins) {
+            if (j instanceof LogicalSubplanJoinNode)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a copy of this plan with the constants of its filters replaced
+     * by the specified ones, in order, whose joins are done in the order
+     * of this plan rather than ordered again. Called on a plan that has
+     * been through {@link #physicalPlan}, the copy keeps the join order
+     * the optimizer chose. Plans that join with subqueries cannot be
+     * copied. The copy has no query text, since the text of this plan
+     * holds its old constants; see {@link #setQuery}.
+     *
+     * @param constants the new filter constants, one for each filter
+     * @throws ParsingException if there is not one constant for each filter
+     */
+    public LogicalPlan bind(List<String> constants) throws ParsingException {
+        if (constants.size() != filters.size())
+            throw new ParsingException("Expected " + filters.size() + " constants, got " + constants.size());
+        if (hasSubqueries())
+            throw new ParsingException("Plans with subqueries cannot be bound");
+        LogicalPlan lp = new LogicalPlan();
+        lp.tables.addAll(tables);
+        lp.tableMap.putAll(tableMap);
+        for (int i = 0; i < filters.size(); i++) {
+            LogicalFilterNode lf = filters.get(i);
+            lp.filters.add(new LogicalFilterNode(lf.tableAlias, lf.fieldPureName, lf.p, constants.get(i)));
+        }
+        lp.joins.addAll(joins);
+        lp.joinsOrdered = true;
+        lp.selectList.addAll(selectList);
+        lp.groupByField = groupByField;
+        lp.hasAgg = hasAgg;
+        lp.aggOp = aggOp;
+        lp.aggField = aggField;
+        lp.hasOrderBy = hasOrderBy;
+        lp.oByField = oByField;
+        lp.oByAsc = oByAsc;
+        lp.parallelism = parallelism;
+        return lp;
+    }
+
     /** Given a name of a field, try to figure out what table it belongs to by looking
      *   through all of the tables added via {@link #addScan}. 
      *  @return A fully qualified name of the form tableAlias.name.  If the name parameter is already qualified
@@ -271,6 +437,79 @@ public class LogicalPlan {
         throw new ParsingException("Unknown predicate " + s);
     }
 
+    /**
+     * @return the qualified names of the fields that the joins, select list,
+     *   aggregate and ORDER BY of this plan refer to, or null if the select
+     *   list contains *. Filters are not included, since they are evaluated
+     *   by the scans.
+     */
+    private HashSet<String> getRequiredFields() {
+        HashSet<String> required = new HashSet<String>();
+        for (LogicalSelectListNode si : selectList) {
+            if (si.fname.endsWith("*"))
+                return null;
+            required.add(si.fname);
+        }
+        for (LogicalJoinNode lj : joins) {
+            required.add(lj.f1QuantifiedName);
+            if (!(lj instanceof LogicalSubplanJoinNode))
+                required.add(lj.f2QuantifiedName);
+        }
+        if (aggField != null)
+            required.add(aggField);
+        if (groupByField != null)
+            required.add(groupByField);
+        if (hasOrderBy)
+            required.add(oByField);
+        return required;
+    }
+
+    /**
+     * @return the indexes of the fields of the specified table that are
+     *   among the required fields, or null if the scan should return all of
+     *   them
+     */
+    private int[] getScanFields(LogicalScanNode table, HashSet<String> required) {
+        if (required == null)
+            return null;
+        TupleDesc td = Database.getCatalog().getTupleDesc(table.t);
+        ArrayList<Integer> fields = new ArrayList<Integer>();
+        for (int i = 0; i < td.numFields(); i++) {
+            if (required.contains(table.alias + "." + td.getFieldName(i)))
+                fields.add(i);
+        }
+        if (fields.isEmpty() || fields.size() == td.numFields())
+            return null;
+        int[] result = new int[fields.size()];
+        for (int i = 0; i < result.length; i++)
+            result[i] = fields.get(i);
+        return result;
+    }
+
+    /**
+     * @return the position of the predicate the specified file can answer
+     *   with an index, preferring equality predicates, or -1 if the file has
+     *   no index any of the predicates can use
+     */
+    private int getIndexPredicate(DbFile file, ArrayList<Predicate> preds) {
+        int best = -1;
+        for (int i = 0; i < preds.size(); i++) {
+            Predicate p = preds.get(i);
+            if (file instanceof HeapFile) {
+                // hash indexes only answer equality lookups
+                if (p.getOp() == Predicate.Op.EQUALS && ((HeapFile) file).getIndex(p.getField()) != null)
+                    return i;
+                continue;
+            }
+            if (!(file instanceof BTreeFile) || p.getField() != ((BTreeFile) file).keyField()
+                    || !IndexPredicate.isSearchable(p.getOp()))
+                continue;
+            if (best < 0 || p.getOp() == Predicate.Op.EQUALS)
+                best = i;
+        }
+        return best;
+    }
+
     /** Convert this LogicalPlan into a physicalPlan represented by a {@link DbIterator}.  Attempts to
      *   find the optimal plan by using {@link JoinOptimizer#orderJoins} to order the joins in the plan.
      *  @param t The transaction that the returned DbIterator will run as a part of
@@ -289,6 +528,8 @@ public class LogicalPlan {
         HashMap<String,String> equivMap = new HashMap<String,String>();
         HashMap<String,Double> filterSelectivities = new HashMap<String, Double>();
         HashMap<String,TableStats> statsMap = new HashMap<String,TableStats>();
+        HashMap<String,ArrayList<Predicate>> scanPredicates = new HashMap<String,ArrayList<Predicate>>();
+        filterPredicates = new Vector<Predicate>();
 
         while (tableIt.hasNext()) {
             LogicalScanNode table = tableIt.next();
@@ -303,6 +544,7 @@ public class LogicalPlan {
             String baseTableName = Database.getCatalog().getTableName(table.t);
             statsMap.put(baseTableName, baseTableStats.get(baseTableName));
             filterSelectivities.put(table.alias, 1.0);
+            scanPredicates.put(table.alias, new ArrayList<Predicate>());
 
         }
 
@@ -334,7 +576,9 @@ public class LogicalPlan {
             } catch (NoSuchElementException e) {
                 throw new ParsingException("Unknown field " + lf.fieldQuantifiedName);
             }
-            subplanMap.put(lf.tableAlias, new Filter(p, subplan));
+            // evaluated by the scan itself, see below
+            scanPredicates.get(lf.tableAlias).add(p);
+            filterPredicates.add(p);
 
             TableStats s = statsMap.get(Database.getCatalog().getTableName(this.getTableId(lf.tableAlias)));
             
@@ -343,10 +587,58 @@ public class LogicalPlan {
 
             //s.addSelectivityFactor(estimateFilterSelectivity(lf,statsMap));
         }
+
+        // push the filters of each table into its scan, which can skip pages
+        // and evaluate them before building tuples, and have it decode only
+        // the columns the rest of the plan uses; tables with an index on a
+        // filtered field are searched with the index instead
+        HashSet<String> required = getRequiredFields();
+        for (LogicalScanNode table : tables) {
+            ArrayList<Predicate> preds = scanPredicates.get(table.alias);
+            int[] fields = getScanFields(table, required);
+            DbFile file = Database.getCatalog().getDbFile(table.t);
+            int ip = getIndexPredicate(file, preds);
+            if (ip >= 0) {
+                Predicate p = preds.remove(ip);
+                // the operators follow the predicate, so that a prepared
+                // plan can be run with other constants
+                if (file instanceof HeapFile)
+                    subplanMap.put(table.alias, new IndexLookup(t, file.getId(), table.alias,
+                            p, fields, preds.toArray(new Predicate[0])));
+                else
+                    subplanMap.put(table.alias, new IndexScan(t, file.getId(), table.alias,
+                            p, fields, preds.toArray(new Predicate[0])));
+                if (explain)
+                    System.out.println("Using index on " + table.alias + " for " + p);
+            } else if (!preds.isEmpty() || fields != null) {
+                subplanMap.put(table.alias, new SeqScan(t, file.getId(),
+                        table.alias, fields, preds.toArray(new Predicate[0])));
+            }
+        }
+
+        // in parallel mode each table is read by scans of ranges of its
+        // pages, each of which starts a pipeline; the pipelines of each
+        // subplan are kept with a gather of them in subplanMap
+        HashMap<String,DbIterator[]> pipelines = null;
+        if (parallelism > 1 && canRunInParallel()) {
+            pipelines = new HashMap<String,DbIterator[]>();
+            for (LogicalScanNode table : tables) {
+                DbIterator scan = subplanMap.get(table.alias);
+                DbIterator[] parts = new DbIterator[] { scan };
+                if (scan instanceof SeqScan)
+                    parts = ParallelSeqScan.split((SeqScan) scan, parallelism);
+                pipelines.put(table.alias, parts);
+                if (parts.length > 1)
+                    subplanMap.put(table.alias, new Exchange(parts));
+            }
+        }
         
         JoinOptimizer jo = new JoinOptimizer(this,joins);
 
-        joins = jo.orderJoins(statsMap,filterSelectivities,explain);
+        if (!joinsOrdered)
+            joins = jo.orderJoins(statsMap,filterSelectivities,explain);
+        else if (explain)
+            System.out.println("Join order (cached): " + joins);
 
         Iterator<LogicalJoinNode> joinIt = joins.iterator();
         while (joinIt.hasNext()) {
@@ -380,9 +672,21 @@ public class LogicalPlan {
                 throw new ParsingException("Unknown table in WHERE clause " + lj.t1Alias);
             if (plan2 == null)
                 throw new ParsingException("Unknown table in WHERE clause " + lj.t2Alias);
-            
+
             DbIterator j;
-            j = jo.instantiateJoin(lj,plan1,plan2);
+            if (pipelines != null) {
+                DbIterator[] joined = parallelJoin(lj, pipelines.get(t1name), pipelines.remove(t2name),
+                        baseCardinality(t1name, equivMap, statsMap, filterSelectivities),
+                        baseCardinality(t2name, equivMap, statsMap, filterSelectivities), explain);
+                pipelines.put(t1name, joined);
+                j = joined.length == 1 ? joined[0] : new Exchange(joined);
+            } else {
+                // an inner that is the result of other joins is computed
+                // once, rather than once for every outer tuple
+                if (!isSubqueryJoin && equivMap.containsValue(t2name))
+                    plan2 = new Materialize(plan2);
+                j = jo.instantiateJoin(lj,plan1,plan2);
+            }
             subplanMap.put(t1name, j);
 
             if (!isSubqueryJoin) {
@@ -407,6 +711,7 @@ public class LogicalPlan {
         }
         
         DbIterator node =  (DbIterator)(subplanMap.entrySet().iterator().next().getValue());
+        DbIterator[] nodePipelines = pipelines == null ? null : pipelines.values().iterator().next();
 
         //walk the select list, to determine order in which to project output fields
         ArrayList<Integer> outFields = new ArrayList<Integer>();
@@ -462,10 +767,23 @@ public class LogicalPlan {
             TupleDesc td = node.getTupleDesc();
             Aggregate aggNode;
             try {
-                aggNode = new Aggregate(node,
-                                        td.fieldNameToIndex(aggField),
-                                        groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField),
-                                getAggOp(aggOp));
+                int afield = td.fieldNameToIndex(aggField);
+                int gfield = groupByField == null?Aggregator.NO_GROUPING:td.fieldNameToIndex(groupByField);
+                Aggregator.Op op = getAggOp(aggOp);
+                if (nodePipelines != null && nodePipelines.length > 1 && op != Aggregator.Op.AVG) {
+                    // every pipeline aggregates its own tuples, and the
+                    // partial aggregates are combined: counts are summed,
+                    // the others aggregated again the same way
+                    DbIterator[] partial = new DbIterator[nodePipelines.length];
+                    for (int i = 0; i < partial.length; i++)
+                        partial[i] = new Aggregate(nodePipelines[i], afield, gfield, op);
+                    boolean grouped = gfield != Aggregator.NO_GROUPING;
+                    aggNode = new Aggregate(new Exchange(partial), grouped ? 1 : 0,
+                            grouped ? 0 : Aggregator.NO_GROUPING,
+                            op == Aggregator.Op.COUNT ? Aggregator.Op.SUM : op);
+                } else {
+                    aggNode = new Aggregate(node, afield, gfield, op);
+                }
             } catch (NoSuchElementException e) {
                 throw new simpledb.ParsingException(e);
             } catch (IllegalArgumentException e) {
@@ -0,0 +1,77 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * Materialize is an operator that computes its child once, when it is
+ * opened, and keeps its tuples in memory, so that rewinding it does not
+ * compute the child again. Joins use it for an inner relation that is
+ * itself the result of joins, which they would otherwise recompute for
+ * every outer tuple.
+ */
+public class Materialize extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private DbIterator child;
+    private ArrayList<Tuple> childTups = new ArrayList<Tuple>();
+    private Iterator<Tuple> it;
+
+    /**
+     * Constructor.
+     *
+     * @param child
+     *            the tuples to materialize
+     */
+    public Materialize(DbIterator child) {
+        this.child = child;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        child.open();
+        childTups.clear();
+        while (child.hasNext())
+            childTups.add(child.next());
+        child.close();
+        it = childTups.iterator();
+        super.open();
+    }
+
+    public void close() {
+        super.close();
+        childTups.clear();
+        it = null;
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        it = childTups.iterator();
+    }
+
+    /**
+     * Operator.fetchNext implementation. Returns the tuples of the child, in
+     * the order it returned them.
+     *
+     * @return The next tuple, or null if there are no more tuples
+     */
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        if (it != null && it.hasNext())
+            return it.next();
+        return null;
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child = children[0];
+    }
+
+}
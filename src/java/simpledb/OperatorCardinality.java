@@ -0,0 +1,157 @@
+package simpledb;
+
+import java.util.Map;
+
+/**
+ * OperatorCardinality estimates how many tuples each operator of a physical
+ * plan returns, from the statistics of the tables the plan reads, and
+ * records the estimates with {@link Operator#setEstimatedCardinality}, so
+ * that plans can be shown with them and compared with what the operators
+ * actually returned.
+ */
+public class OperatorCardinality {
+
+    /**
+     * Estimates the cardinality of a plan and of each of its operators.
+     *
+     * @param it
+     *            the root of the plan
+     * @param tableAliasToId
+     *            the table id of each alias of the plan
+     * @param tableStats
+     *            the statistics of each table, by name
+     * @return the estimated number of tuples the plan returns
+     */
+    public static int updateOperatorCardinality(DbIterator it,
+            Map<String, Integer> tableAliasToId, Map<String, TableStats> tableStats) {
+        if (it instanceof SeqScan) {
+            SeqScan s = (SeqScan) it;
+            int card = scanCardinality(s.getAlias(), s.getPredicates(), null, tableAliasToId, tableStats);
+            // a scan of a range of pages of a parallel plan reads its share
+            if (s.endPage >= 0 && s.dbFile instanceof HeapFile) {
+                int pages = ((HeapFile) s.dbFile).numPages();
+                if (pages > 0)
+                    card = (int) ((long) card * (Math.min(s.endPage, pages) - s.firstPage) / pages);
+            }
+            return card;
+        }
+        if (it instanceof IndexLookup) {
+            IndexLookup s = (IndexLookup) it;
+            return scanCardinality(s.getAlias(), s.getPredicates(), s.key, tableAliasToId, tableStats);
+        }
+        if (it instanceof IndexScan) {
+            IndexScan s = (IndexScan) it;
+            return scanCardinality(s.getAlias(), s.getPredicates(), s.key, tableAliasToId, tableStats);
+        }
+        if (!(it instanceof Operator))
+            return 0;
+
+        Operator o = (Operator) it;
+        DbIterator[] children = o.getChildren();
+        int[] childCards = new int[children.length];
+        for (int i = 0; i < children.length; i++) {
+            if (children[i] != null)
+                childCards[i] = updateOperatorCardinality(children[i], tableAliasToId, tableStats);
+        }
+
+        int card;
+        if (o instanceof Filter) {
+            Predicate p = ((Filter) o).getPredicate();
+            String name = children[0].getTupleDesc().getFieldName(p.getField());
+            double sel = selectivity(name, p.getOp(), p.getOperand(), tableAliasToId, tableStats);
+            card = (int) Math.max(1, childCards[0] * sel);
+        } else if (o instanceof Join || o instanceof IndexNestedLoopJoin || o instanceof HashJoin) {
+            JoinPredicate jp = o instanceof Join ? ((Join) o).getJoinPredicate()
+                    : o instanceof HashJoin ? ((HashJoin) o).getJoinPredicate()
+                    : ((IndexNestedLoopJoin) o).getJoinPredicate();
+            String[] f1 = splitName(children[0].getTupleDesc().getFieldName(jp.getField1()));
+            String[] f2 = splitName(children[1].getTupleDesc().getFieldName(jp.getField2()));
+            card = JoinOptimizer.estimateTableJoinCardinality(jp.getOperator(), f1[0], f2[0],
+                    f1[1], f2[1], childCards[0], childCards[1], false, false,
+                    tableStats, tableAliasToId);
+        } else if (o instanceof Aggregate) {
+            Aggregate a = (Aggregate) o;
+            if (a.groupField() == Aggregator.NO_GROUPING) {
+                card = 1;
+            } else {
+                card = childCards[0];
+                String name = children[0].getTupleDesc().getFieldName(a.groupField());
+                TableStats s = statsOf(splitName(name)[0], tableAliasToId, tableStats);
+                int field = fieldOf(name, tableAliasToId);
+                if (s != null && field >= 0)
+                    card = (int) Math.max(1, Math.min(card, s.numDistinct(field)));
+            }
+        } else if (o instanceof Exchange) {
+            // each output of a repartition gets its share of the tuples of
+            // all of the children
+            Exchange e = (Exchange) o;
+            long sum = 0;
+            for (int c : childCards)
+                sum += c;
+            if (e.getMode() == Exchange.Mode.REPARTITION)
+                sum /= e.getOutputs();
+            card = (int) Math.min(Integer.MAX_VALUE, sum);
+        } else if (o instanceof Insert || o instanceof Delete) {
+            card = 1;
+        } else {
+            // project, order by, materialize and the like return the tuples
+            // of their child
+            card = childCards.length > 0 ? childCards[0] : 0;
+        }
+        o.setEstimatedCardinality(card);
+        return card;
+    }
+
+    private static int scanCardinality(String alias, Predicate[] preds, Predicate key,
+            Map<String, Integer> tableAliasToId, Map<String, TableStats> tableStats) {
+        TableStats s = statsOf(alias, tableAliasToId, tableStats);
+        if (s == null)
+            return 0;
+        double sel = 1.0;
+        if (preds != null) {
+            for (Predicate p : preds)
+                sel *= s.estimateSelectivity(p.getField(), p.getOp(), p.getOperand());
+        }
+        if (key != null)
+            sel *= s.estimateSelectivity(key.getField(), key.getOp(), key.getOperand());
+        return s.estimateTableCardinality(sel);
+    }
+
+    private static double selectivity(String name, Predicate.Op op, Field operand,
+            Map<String, Integer> tableAliasToId, Map<String, TableStats> tableStats) {
+        TableStats s = statsOf(splitName(name)[0], tableAliasToId, tableStats);
+        int field = fieldOf(name, tableAliasToId);
+        if (s == null || field < 0)
+            return 1.0;
+        return s.estimateSelectivity(field, op, operand);
+    }
+
+    /** @return the alias and field of a name of the form alias.field */
+    private static String[] splitName(String name) {
+        int dot = name == null ? -1 : name.lastIndexOf('.');
+        if (dot < 0)
+            return new String[] { null, name };
+        return new String[] { name.substring(0, dot), name.substring(dot + 1) };
+    }
+
+    private static TableStats statsOf(String alias, Map<String, Integer> tableAliasToId,
+            Map<String, TableStats> tableStats) {
+        Integer id = alias == null ? null : tableAliasToId.get(alias);
+        if (id == null)
+            return null;
+        return tableStats.get(Database.getCatalog().getTableName(id));
+    }
+
+    /** @return the index in its table of the field of the specified name, or -1 */
+    private static int fieldOf(String name, Map<String, Integer> tableAliasToId) {
+        String[] an = splitName(name);
+        Integer id = an[0] == null ? null : tableAliasToId.get(an[0]);
+        if (id == null)
+            return -1;
+        try {
+            return Database.getCatalog().getTupleDesc(id).fieldNameToIndex(an[1]);
+        } catch (java.util.NoSuchElementException e) {
+            return -1;
+        }
+    }
+}
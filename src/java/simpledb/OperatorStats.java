@@ -0,0 +1,206 @@
+package simpledb;
+
+import java.io.PrintStream;
+
+/**
+ * OperatorStats holds what was recorded about an operator while a profiled
+ * plan ran: the tuples it returned, how often it was opened and rewound,
+ * and the time spent and pages requested in it. Time and pages are
+ * inclusive of the operator's children; the exclusive figures are what is
+ * left after those of the children are subtracted.
+ * <p>
+ * Plans are profiled by {@link #instrument instrumenting} them before they
+ * are run, and shown with {@link #print} afterwards; this is what EXPLAIN
+ * ANALYZE does.
+ */
+public class OperatorStats {
+
+    long rows;
+    long opens;
+    long rewinds;
+    long nanos;
+    long pageRequests;
+
+    /** @return the number of tuples the operator returned */
+    public long getRows() {
+        return rows;
+    }
+
+    /** @return the number of times the operator was opened */
+    public long getOpens() {
+        return opens;
+    }
+
+    /** @return the number of times the operator was rewound */
+    public long getRewinds() {
+        return rewinds;
+    }
+
+    /** @return the time spent in the operator and its children, in nanoseconds */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /** @return the number of pages the operator and its children requested */
+    public long getPageRequests() {
+        return pageRequests;
+    }
+
+    /** Charges the time and pages since the specified ones to the operator. */
+    void charge(long startNanos, long startPageRequests) {
+        nanos += System.nanoTime() - startNanos;
+        pageRequests += BufferPool.threadPageRequests() - startPageRequests;
+    }
+
+    /** Forgets everything recorded. */
+    public void reset() {
+        rows = opens = rewinds = nanos = pageRequests = 0;
+    }
+
+    /**
+     * Puts a {@link Profile} above every operator of a plan that does not
+     * have one yet, and forgets what the existing ones recorded.
+     *
+     * @param root
+     *            the root of the plan
+     * @return the new root of the plan
+     */
+    public static DbIterator instrument(DbIterator root) {
+        if (root instanceof Profile) {
+            ((Profile) root).getStats().reset();
+            instrumentChildren(((Profile) root).getProfiled());
+            return root;
+        }
+        instrumentChildren(root);
+        return new Profile(root);
+    }
+
+    private static void instrumentChildren(DbIterator it) {
+        if (!(it instanceof Operator))
+            return;
+        Operator o = (Operator) it;
+        DbIterator[] children = o.getChildren();
+        DbIterator[] profiled = new DbIterator[children.length];
+        for (int i = 0; i < children.length; i++)
+            profiled[i] = children[i] == null ? null : instrument(children[i]);
+        o.setChildren(profiled);
+    }
+
+    /**
+     * Prints a plan, one operator per line with its children indented below
+     * it, with the estimated cardinality of each operator and, for profiled
+     * ones, what was recorded about them.
+     */
+    public static void print(DbIterator root, PrintStream out) {
+        print(root, "", out);
+    }
+
+    private static void print(DbIterator it, String indent, PrintStream out) {
+        Profile profile = null;
+        if (it instanceof Profile) {
+            profile = (Profile) it;
+            it = profile.getProfiled();
+        }
+        StringBuilder sb = new StringBuilder(indent);
+        if (indent.length() > 0)
+            sb.append("-> ");
+        sb.append(describe(it));
+        sb.append("  (estimated ");
+        if (profile != null)
+            sb.append(profile.getEstimatedCardinality());
+        else if (it instanceof Operator)
+            sb.append(((Operator) it).getEstimatedCardinality());
+        else
+            sb.append('?');
+        if (profile != null) {
+            OperatorStats s = profile.getStats();
+            long childNanos = 0, childPages = 0;
+            // the children of an exchange run on other threads, at the
+            // same time as it waits for them
+            for (DbIterator child : it instanceof Exchange ? new DbIterator[0] : children(it)) {
+                if (child instanceof Profile) {
+                    childNanos += ((Profile) child).getStats().nanos;
+                    childPages += ((Profile) child).getStats().pageRequests;
+                }
+            }
+            sb.append(String.format(", actual %d rows, %d opens, %d rewinds,"
+                    + " %.3f ms (%.3f ms self), %d pages (%d self)",
+                    s.rows, s.opens, s.rewinds, s.nanos / 1e6,
+                    (s.nanos - childNanos) / 1e6, s.pageRequests,
+                    s.pageRequests - childPages));
+        }
+        sb.append(')');
+        out.println(sb);
+        // the outputs of a repartition or broadcast share their children,
+        // which are printed below the first one
+        if (it instanceof Exchange && ((Exchange) it).getOutput() > 0)
+            return;
+        for (DbIterator child : children(it))
+            print(child, indent + "  ", out);
+    }
+
+    private static DbIterator[] children(DbIterator it) {
+        if (!(it instanceof Operator))
+            return new DbIterator[0];
+        DbIterator[] children = ((Operator) it).getChildren();
+        int n = 0;
+        for (DbIterator child : children) {
+            if (child != null)
+                n++;
+        }
+        DbIterator[] result = new DbIterator[n];
+        n = 0;
+        for (DbIterator child : children) {
+            if (child != null)
+                result[n++] = child;
+        }
+        return result;
+    }
+
+    /** @return a short description of an operator */
+    private static String describe(DbIterator it) {
+        if (it instanceof SeqScan && ((SeqScan) it).endPage >= 0) {
+            SeqScan s = (SeqScan) it;
+            return "SeqScan(" + s.getTableName() + " " + s.getAlias() + " from page " + s.firstPage + ")";
+        }
+        if (it instanceof SeqScan)
+            return "SeqScan(" + ((SeqScan) it).getTableName() + " " + ((SeqScan) it).getAlias() + ")";
+        if (it instanceof IndexLookup)
+            return "IndexLookup(" + ((IndexLookup) it).getAlias() + ")";
+        if (it instanceof IndexScan)
+            return "IndexScan(" + ((IndexScan) it).getAlias() + ")";
+        if (it instanceof Join) {
+            Join j = (Join) it;
+            return "Join(" + j.getJoinField1Name() + " " + j.getJoinPredicate().getOperator()
+                    + " " + j.getJoinField2Name() + ")";
+        }
+        if (it instanceof HashJoin) {
+            HashJoin j = (HashJoin) it;
+            return "HashJoin(" + j.getJoinField1Name() + " = " + j.getJoinField2Name()
+                    + (j.buildsLeft() ? ", build left" : "") + ")";
+        }
+        if (it instanceof Exchange) {
+            Exchange e = (Exchange) it;
+            if (e.getMode() == Exchange.Mode.GATHER)
+                return "Exchange(gather)";
+            String s = "Exchange(" + e.getMode().name().toLowerCase();
+            if (e.getMode() == Exchange.Mode.REPARTITION)
+                s += " by " + e.getTupleDesc().getFieldName(e.getPartitionField());
+            return s + ", output " + (e.getOutput() + 1) + " of " + e.getOutputs() + ")";
+        }
+        if (it instanceof Filter) {
+            Filter f = (Filter) it;
+            return "Filter(" + f.getTupleDesc().getFieldName(f.getPredicate().getField()) + " "
+                    + f.getPredicate().getOp() + " " + f.getPredicate().getOperand() + ")";
+        }
+        if (it instanceof Aggregate) {
+            Aggregate a = (Aggregate) it;
+            String s = "Aggregate(" + Aggregate.nameOfAggregatorOp(a.aggregateOp()) + "("
+                    + a.aggregateFieldName() + ")";
+            if (a.groupField() != Aggregator.NO_GROUPING)
+                s += " group by " + a.groupFieldName();
+            return s + ")";
+        }
+        return it.getClass().getSimpleName();
+    }
+}
@@ -57,6 +57,7 @@ public class OrderBy extends Operator {
             TransactionAbortedException {
         child.open();
         // load all the tuples in a collection, and sort it
+        childTups.clear();
         while (child.hasNext())
             childTups.add((Tuple) child.next());
         Collections.sort(childTups, new TupleComparator(orderByField, asc));
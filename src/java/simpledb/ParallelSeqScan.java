@@ -0,0 +1,137 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * ParallelSeqScan is a sequential scan that splits the pages of a HeapFile
+ * into contiguous ranges and scans each range on a thread of its own, and
+ * gathers the tuples with an {@link Exchange}. Every range still gets its
+ * pages through the BufferPool. Like a SeqScan, it returns the tuples in no
+ * particular order, but unlike one the order may differ between scans.
+ * <p>
+ * Tables that are not HeapFiles, and HeapFiles of a single page, are
+ * scanned on the calling thread.
+ */
+public class ParallelSeqScan extends SeqScan {
+
+    private static final long serialVersionUID = 1L;
+
+    /** The number of threads scans use unless told otherwise. */
+    public static final int DEFAULT_PARALLELISM = WorkerPool.DEFAULT_PARALLELISM;
+
+    private int parallelism;
+    private SeqScan[] partitions;
+    private Exchange exchange;
+
+    /**
+     * Creates a scan of the specified table with {@link #DEFAULT_PARALLELISM}
+     * threads.
+     *
+     * @see SeqScan#SeqScan(TransactionId, int, String)
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias) {
+        this(tid, tableid, tableAlias, null, null, DEFAULT_PARALLELISM);
+    }
+
+    /**
+     * Creates a scan of the specified table that returns only some of its
+     * fields, and only the tuples that satisfy all of the specified
+     * predicates.
+     *
+     * @param parallelism
+     *            the number of threads to scan the table with; the table is
+     *            split into at most this many page ranges
+     * @see SeqScan#SeqScan(TransactionId, int, String, int[], Predicate[])
+     */
+    public ParallelSeqScan(TransactionId tid, int tableid, String tableAlias, int[] fieldList,
+            Predicate[] predicates, int parallelism) {
+        super(tid, tableid, tableAlias, fieldList, predicates);
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        this.parallelism = parallelism;
+        partition();
+    }
+
+    /** Splits the file into page ranges, one per partition scan. */
+    private void partition() {
+        partitions = split(this, parallelism);
+        if (partitions.length == 1) {
+            partitions = null;
+            exchange = null;
+        } else {
+            exchange = new Exchange(partitions);
+        }
+    }
+
+    /**
+     * Splits a scan of a HeapFile into scans of at most the specified number
+     * of contiguous page ranges, with the projection and predicates of the
+     * scan. The last range reaches the end of the file, so that it includes
+     * pages appended after the split.
+     *
+     * @return the scans of the ranges, or just the specified scan if its
+     *         table is not a HeapFile or has a single page
+     */
+    static SeqScan[] split(SeqScan scan, int parallelism) {
+        int pages = scan.dbFile instanceof HeapFile ? ((HeapFile) scan.dbFile).numPages() : 1;
+        int n = Math.max(1, Math.min(parallelism, pages));
+        if (n == 1)
+            return new SeqScan[] { scan };
+        SeqScan[] partitions = new SeqScan[n];
+        for (int i = 0; i < n; i++) {
+            partitions[i] = new SeqScan(scan.transId, scan.tableId, scan.tAlias, scan.fields, scan.preds);
+            // the first pages % n ranges get one more page than the others
+            int first = i * (pages / n) + Math.min(i, pages % n);
+            int end = first + pages / n + (i < pages % n ? 1 : 0);
+            partitions[i].setPageRange(first, i == n - 1 ? Integer.MAX_VALUE : end);
+        }
+        return partitions;
+    }
+
+    /** @return the number of threads the scan uses */
+    public int getParallelism() {
+        return partitions == null ? 1 : partitions.length;
+    }
+
+    public void reset(int tableid, String tableAlias) {
+        super.reset(tableid, tableAlias);
+        partition();
+    }
+
+    public void setTransactionId(TransactionId tid) {
+        super.setTransactionId(tid);
+        if (partitions != null) {
+            for (SeqScan p : partitions)
+                p.setTransactionId(tid);
+        }
+    }
+
+    public void open() throws DbException, TransactionAbortedException {
+        if (exchange == null)
+            super.open();
+        else
+            exchange.open();
+    }
+
+    public boolean hasNext() throws TransactionAbortedException, DbException {
+        return exchange == null ? super.hasNext() : exchange.hasNext();
+    }
+
+    public Tuple next() throws NoSuchElementException, TransactionAbortedException, DbException {
+        return exchange == null ? super.next() : exchange.next();
+    }
+
+    public void rewind() throws DbException, NoSuchElementException, TransactionAbortedException {
+        if (exchange == null)
+            super.rewind();
+        else
+            exchange.rewind();
+    }
+
+    public void close() {
+        if (exchange == null)
+            super.close();
+        else
+            exchange.close();
+    }
+}
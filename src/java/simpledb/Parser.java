@@ -2,8 +2,9 @@ package simpledb;
 
 import Zql.*;
 import java.io.*;
-import java.lang.reflect.InvocationTargetException;
 import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 import jline.ArgumentCompletor;
 import jline.ConsoleReader;
@@ -11,6 +12,23 @@ import jline.SimpleCompletor;
 
 public class Parser {
     static boolean explain = false;
+    // whether to profile every query, as if it were an EXPLAIN ANALYZE
+    static boolean analyze = false;
+    // the number of pipelines queries are split into, 1 for serial plans
+    static int parallelism = 1;
+
+    // plans of recent queries
+    final StatementCache statementCache = new StatementCache(
+            StatementCache.DEFAULT_CAPACITY);
+
+    // statements prepared with PREPARE name AS ..., by name
+    private final HashMap<String, PreparedStatement> preparedStatements = new HashMap<String, PreparedStatement>();
+    private static final Pattern PREPARE = Pattern.compile(
+            "\\s*prepare\\s+(\\w+)\\s+as\\s+(.*)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern EXPLAIN_ANALYZE = Pattern.compile(
+            "\\s*explain\\s+analyze\\s+(.*)", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+    private static final Pattern EXECUTE = Pattern.compile(
+            "\\s*execute\\s+(\\w+)\\s*(?:\\((.*)\\))?\\s*;?\\s*", Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
 
     public static Predicate.Op getOp(String s) throws simpledb.ParsingException {
         if (s.equals("="))
@@ -138,6 +156,7 @@ public class Parser {
         Vector<ZFromItem> from = q.getFrom();
         LogicalPlan lp = new LogicalPlan();
         lp.setQuery(q.toString());
+        lp.setParallelism(parallelism);
         // walk through tables in the FROM clause
         for (int i = 0; i < from.size(); i++) {
             ZFromItem fromIt = from.elementAt(i);
@@ -276,44 +295,27 @@ public class Parser {
     public Query handleQueryStatement(ZQuery s, TransactionId tId)
             throws TransactionAbortedException, DbException, IOException,
             simpledb.ParsingException, Zql.ParseException {
+        return handleQueryPlan(parseQueryLogicalPlan(tId, s), tId);
+    }
+
+    /**
+     * Makes the physical plan of a parsed query.
+     */
+    public Query handleQueryPlan(LogicalPlan lp, TransactionId tId)
+            throws simpledb.ParsingException {
         Query query = new Query(tId);
 
-        LogicalPlan lp = parseQueryLogicalPlan(tId, s);
         DbIterator physicalPlan = lp.physicalPlan(tId,
                 TableStats.getStatsMap(), explain);
         query.setPhysicalPlan(physicalPlan);
         query.setLogicalPlan(lp);
 
         if (physicalPlan != null) {
-            Class<?> c;
-            try {
-                c = Class.forName("simpledb.OperatorCardinality");
-
-                Class<?> p = Operator.class;
-                Class<?> h = Map.class;
-
-                java.lang.reflect.Method m = c.getMethod(
-                        "updateOperatorCardinality", p, h, h);
-
+            OperatorCardinality.updateOperatorCardinality(physicalPlan,
+                    lp.getTableAliasToIdMapping(), TableStats.getStatsMap());
+            if (explain) {
                 System.out.println("The query plan is:");
-                m.invoke(null, (Operator) physicalPlan,
-                        lp.getTableAliasToIdMapping(), TableStats.getStatsMap());
-                c = Class.forName("simpledb.QueryPlanVisualizer");
-                m = c.getMethod(
-                        "printQueryPlanTree", DbIterator.class, System.out.getClass());
-                m.invoke(c.newInstance(), physicalPlan,System.out);
-            } catch (ClassNotFoundException e) {
-            } catch (SecurityException e) {
-            } catch (NoSuchMethodException e) {
-                e.printStackTrace();
-            } catch (IllegalArgumentException e) {
-                e.printStackTrace();
-            } catch (IllegalAccessException e) {
-                e.printStackTrace();
-            } catch (InvocationTargetException e) {
-                e.printStackTrace();
-            } catch (InstantiationException e) {
-                e.printStackTrace();
+                OperatorStats.print(physicalPlan, System.out);
             }
         }
 
@@ -484,6 +486,53 @@ public class Parser {
                 "Cannot generate logical plan for expression : " + s);
     }
 
+    /**
+     * Prepares a SELECT statement to be run many times, with ? in place of
+     * the constants of its WHERE clause that change between runs.
+     *
+     * @see PreparedStatement
+     */
+    public PreparedStatement prepare(String sql) throws simpledb.ParsingException {
+        return new PreparedStatement(sql, this, new TransactionId());
+    }
+
+    /**
+     * Sets the parameters of a statement prepared with PREPARE from the
+     * comma separated values of an EXECUTE statement.
+     */
+    private PreparedStatement bindPrepared(String name, String values)
+            throws simpledb.ParsingException {
+        PreparedStatement ps = preparedStatements.get(name.toLowerCase());
+        if (ps == null)
+            throw new simpledb.ParsingException("Unknown prepared statement " + name);
+        ArrayList<String> literals = new ArrayList<String>();
+        String[] forms = new String[0];
+        if (values != null && values.trim().length() > 0)
+            forms = StatementCache.normalize(values, literals).split(",");
+        if (forms.length != literals.size() || forms.length != ps.numParameters())
+            throw new simpledb.ParsingException("Statement " + name + " takes "
+                    + ps.numParameters() + " parameters");
+        for (int i = 0; i < forms.length; i++) {
+            String v = literals.get(i);
+            if (forms[i].trim().startsWith("-"))
+                v = "-" + v;
+            ps.setParameter(i, v);
+        }
+        return ps;
+    }
+
+    /**
+     * Has a query profile its operators while it runs, so that
+     * {@link OperatorStats#print} can show what each of them did.
+     */
+    private void profile(Query query) {
+        DbIterator plan = OperatorStats.instrument(query.getPhysicalPlan());
+        query.setPhysicalPlan(plan);
+        Map<String, Integer> aliases = query.getLogicalPlan() == null ? new HashMap<String, Integer>()
+                : query.getLogicalPlan().getTableAliasToIdMapping();
+        OperatorCardinality.updateOperatorCardinality(plan, aliases, TableStats.getStatsMap());
+    }
+
     public void setTransaction(Transaction t) {
         curtrans = t;
     }
@@ -492,19 +541,53 @@ public class Parser {
         return curtrans;
     }
 
-    public void processNextStatement(String s) {
+    public void processNextStatement(InputStream is) {
         try {
-            processNextStatement(new ByteArrayInputStream(s.getBytes("UTF-8")));
-        } catch (UnsupportedEncodingException e) {
+            ByteArrayOutputStream text = new ByteArrayOutputStream();
+            byte[] buf = new byte[4096];
+            int n;
+            while ((n = is.read(buf)) > 0)
+                text.write(buf, 0, n);
+            processNextStatement(text.toString("UTF-8"));
+        } catch (IOException e) {
             e.printStackTrace();
-            throw new RuntimeException(e);
         }
     }
 
-    public void processNextStatement(InputStream is) {
+    public void processNextStatement(String statement) {
         try {
-            ZqlParser p = new ZqlParser(is);
-            ZStatement s = p.readStatement();
+            // EXPLAIN ANALYZE runs the statement, and then shows what each
+            // operator of its plan did
+            boolean analyze = Parser.analyze;
+            Matcher m = EXPLAIN_ANALYZE.matcher(statement);
+            if (m.matches()) {
+                statement = m.group(1);
+                analyze = true;
+            }
+            m = PREPARE.matcher(statement);
+            if (m.matches()) {
+                PreparedStatement ps = prepare(m.group(2));
+                preparedStatements.put(m.group(1).toLowerCase(), ps);
+                System.out.println("Prepared statement " + m.group(1) + " with "
+                        + ps.numParameters() + " parameters.");
+                return;
+            }
+            m = EXECUTE.matcher(statement);
+            PreparedStatement prepared = m.matches() ? bindPrepared(m.group(1), m.group(2)) : null;
+
+            // queries that differ from an earlier one only in constants
+            // reuse its plan, without being parsed again
+            ArrayList<String> literals = new ArrayList<String>();
+            String key = StatementCache.normalize(statement, literals);
+            boolean isSelect = key.regionMatches(true, 0, "select", 0, 6);
+            LogicalPlan cached = isSelect ? statementCache.get(key, literals) : null;
+
+            ZStatement s = null;
+            if (cached == null && prepared == null) {
+                ZqlParser p = new ZqlParser(new ByteArrayInputStream(
+                        statement.getBytes("UTF-8")));
+                s = p.readStatement();
+            }
 
             Query query = null;
             if (s instanceof ZTransactStmt)
@@ -517,23 +600,38 @@ public class Parser {
                             + curtrans.getId().getId());
                 }
                 try {
-                    if (s instanceof ZInsert)
+                    if (prepared != null)
+                        query = prepared.execute(curtrans.getId());
+                    else if (cached != null) {
+                        cached.setQuery(statement);
+                        query = handleQueryPlan(cached, curtrans.getId());
+                    }
+                    else if (s instanceof ZInsert)
                         query = handleInsertStatement((ZInsert) s,
                                 curtrans.getId());
                     else if (s instanceof ZDelete)
                         query = handleDeleteStatement((ZDelete) s,
                                 curtrans.getId());
-                    else if (s instanceof ZQuery)
+                    else if (s instanceof ZQuery) {
                         query = handleQueryStatement((ZQuery) s,
                                 curtrans.getId());
-                    else {
+                        if (isSelect)
+                            statementCache.put(key, literals,
+                                    query.getLogicalPlan());
+                    } else {
                         System.out
                                 .println("Can't parse "
                                         + s
                                         + "\n -- parser only handles SQL transactions, insert, delete, and select statements");
                     }
+                    if (query != null && analyze && query.getPhysicalPlan() != null)
+                        profile(query);
                     if (query != null)
                         query.execute();
+                    if (query != null && analyze && query.getPhysicalPlan() != null) {
+                        System.out.println("\nThe query plan was:");
+                        OperatorStats.print(query.getPhysicalPlan(), System.out);
+                    }
 
                     if (!inUserTrans && curtrans != null) {
                         curtrans.commit();
@@ -581,11 +679,11 @@ public class Parser {
     // Basic SQL completions
     public static final String[] SQL_COMMANDS = { "select", "from", "where",
             "group by", "max(", "min(", "avg(", "count", "rollback", "commit",
-            "insert", "delete", "values", "into" };
+            "insert", "delete", "values", "into", "prepare", "execute", "explain analyze" };
 
     public static void main(String argv[]) throws IOException {
 
-        if (argv.length < 1 || argv.length > 4) {
+        if (argv.length < 1 || argv.length > 9) {
             System.out.println("Invalid number of arguments.\n" + usage);
             System.exit(0);
         }
@@ -595,7 +693,7 @@ public class Parser {
         p.start(argv);
     }
 
-    static final String usage = "Usage: parser catalogFile [-explain] [-f queryFile]";
+    static final String usage = "Usage: parser catalogFile [-explain] [-analyze] [-f queryFile] [-sample rate] [-parallel n]";
 
     protected void shutdown() {
         System.out.println("Bye");
@@ -606,15 +704,18 @@ public class Parser {
     protected void start(String[] argv) throws IOException {
         // first add tables to database
         Database.getCatalog().loadSchema(argv[0]);
-        TableStats.computeStatistics();
 
         String queryFile = null;
+        double sampleRate = 1.0;
 
         if (argv.length > 1) {
             for (int i = 1; i < argv.length; i++) {
                 if (argv[i].equals("-explain")) {
                     explain = true;
                     System.out.println("Explain mode enabled.");
+                } else if (argv[i].equals("-analyze")) {
+                    analyze = true;
+                    System.out.println("Explain analyze mode enabled.");
                 } else if (argv[i].equals("-f")) {
                     interactive = false;
                     if (i++ == argv.length) {
@@ -624,12 +725,34 @@ public class Parser {
                     }
                     queryFile = argv[i];
 
+                } else if (argv[i].equals("-sample")) {
+                    if (++i == argv.length) {
+                        System.out.println("Expected sample rate after -sample\n"
+                                + usage);
+                        System.exit(0);
+                    }
+                    sampleRate = Double.parseDouble(argv[i]);
+                } else if (argv[i].equals("-parallel")) {
+                    if (++i == argv.length) {
+                        System.out.println("Expected number of pipelines after -parallel\n"
+                                + usage);
+                        System.exit(0);
+                    }
+                    parallelism = Integer.parseInt(argv[i]);
+                    System.out.println("Parallel plans with " + parallelism + " pipelines enabled.");
                 } else {
                     System.out.println("Unknown argument " + argv[i] + "\n "
                             + usage);
                 }
             }
         }
+        // costs measured by CostCalibrator for this database, if any
+        File costsFile = CostCalibrator.getCostsFile(new File(argv[0]));
+        if (costsFile.exists())
+            CostCalibrator.load(costsFile);
+        TableStats.computeStatistics(TableStats.getStatsFile(new File(argv[0])), sampleRate);
+        BufferPoolMetrics.registerMBeans();
+
         if (!interactive) {
             try {
                 // curtrans = new Transaction();
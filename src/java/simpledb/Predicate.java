@@ -101,6 +101,17 @@ public class Predicate implements Serializable {
         // some code goes here
         return operand;
     }
+
+    /**
+     * Sets the operand tuples are compared to. Operators that were given
+     * this predicate compare tuples to the new operand from then on, which
+     * lets a prepared plan run again with other constants.
+     *
+     * @see PreparedStatement
+     */
+    public void setOperand(Field oper) {
+        operand = oper;
+    }
     
     /**
      * Compares the field number of t specified in the constructor to the
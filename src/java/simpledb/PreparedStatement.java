@@ -0,0 +1,233 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * PreparedStatement is a query that is parsed and planned once and run many
+ * times with different constants. Constants of its WHERE clause may be
+ * written as parameters, ?, which are given values with
+ * {@link #setParameter} before each execution:
+ *
+ * <pre>
+ * PreparedStatement ps = parser.prepare(&quot;select * from t where t.a = ?;&quot;);
+ * ps.setParameter(0, new IntField(42));
+ * Query q = ps.execute(tid);
+ * </pre>
+ *
+ * The first execution builds the physical plan, choosing joins and indexes
+ * for the values of that execution; later executions set the new values on
+ * the predicates of the same operators, and run them again.
+ */
+public class PreparedStatement {
+
+    private final String sql;
+    private final LogicalPlan lp;
+    // the index of the filter each parameter is the constant of
+    private final int[] paramFilters;
+    private final Type[] paramTypes;
+    private final Field[] params;
+
+    // the plan built by the first execution, and the predicate it
+    // evaluates for each filter
+    private DbIterator root;
+    private Vector<Predicate> predicates;
+
+    /**
+     * Prepares a statement.
+     *
+     * @param sql
+     *            a SELECT statement, with ? in place of the constants of the
+     *            WHERE clause that are parameters
+     * @param parser
+     *            the parser to parse the statement with
+     * @param tid
+     *            the transaction to parse the statement as a part of
+     * @throws ParsingException
+     *             if the statement is not a valid query, or has a parameter
+     *             anywhere else than as the constant of a filter
+     */
+    PreparedStatement(String sql, Parser parser, TransactionId tid) throws ParsingException {
+        this.sql = sql;
+        // parse the statement with 0 in place of each parameter, and note
+        // which of its constants are parameters
+        StringBuilder sb = new StringBuilder();
+        ArrayList<Integer> positions = new ArrayList<Integer>();
+        int constants = 0;
+        int n = sql.length();
+        for (int i = 0; i < n; i++) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                int end = sql.indexOf('\'', i + 1);
+                // a doubled quote stands for a quote
+                while (end >= 0 && end + 1 < n && sql.charAt(end + 1) == '\'')
+                    end = sql.indexOf('\'', end + 2);
+                if (end < 0)
+                    throw new ParsingException("Unterminated string in " + sql);
+                sb.append(sql, i, end + 1);
+                i = end;
+                constants++;
+            } else if (Character.isDigit(c) && !StatementCache.continuesName(sb)) {
+                while (i + 1 < n && (Character.isDigit(sql.charAt(i + 1)) || sql.charAt(i + 1) == '.'))
+                    sb.append(sql.charAt(i++));
+                sb.append(sql.charAt(i));
+                constants++;
+            } else if (c == '?') {
+                positions.add(constants++);
+                sb.append('0');
+            } else {
+                sb.append(c);
+            }
+        }
+        String text = sb.toString();
+        if (!text.trim().endsWith(";"))
+            text = text + ";";
+
+        try {
+            Zql.ZqlParser p = new Zql.ZqlParser(new java.io.ByteArrayInputStream(
+                    text.getBytes("UTF-8")));
+            Zql.ZStatement s = p.readStatement();
+            if (!(s instanceof Zql.ZQuery))
+                throw new ParsingException("Only SELECT statements can be prepared: " + sql);
+            lp = parser.parseQueryLogicalPlan(tid, (Zql.ZQuery) s);
+            // the parsed text has 0 for each parameter
+            lp.setQuery(sql);
+        } catch (java.io.IOException e) {
+            throw new ParsingException(e);
+        } catch (Zql.ParseException e) {
+            throw new ParsingException(e);
+        } catch (Zql.TokenMgrError e) {
+            throw new ParsingException("Invalid SQL expression " + sql);
+        }
+
+        // each constant of the statement must be the constant of the filter
+        // of the same position, so that the parameters are known by position
+        ArrayList<String> literals = new ArrayList<String>();
+        StatementCache.normalize(text, literals);
+        Vector<LogicalFilterNode> filters = lp.getFilters();
+        if (lp.hasSubqueries())
+            throw new ParsingException("Statements with subqueries cannot be prepared: " + sql);
+        if (literals.size() != constants || filters.size() != constants)
+            throw new ParsingException("Parameters may only be the constants of filters: " + sql);
+        for (int i = 0; i < filters.size(); i++) {
+            if (!filters.get(i).c.equals(literals.get(i)))
+                throw new ParsingException("Parameters may only be the constants of filters: " + sql);
+        }
+
+        paramFilters = new int[positions.size()];
+        paramTypes = new Type[positions.size()];
+        params = new Field[positions.size()];
+        for (int i = 0; i < paramFilters.length; i++) {
+            paramFilters[i] = positions.get(i);
+            LogicalFilterNode lf = filters.get(paramFilters[i]);
+            int tableid = lp.getTableId(lf.tableAlias);
+            TupleDesc td = Database.getCatalog().getTupleDesc(tableid);
+            try {
+                paramTypes[i] = td.getFieldType(td.fieldNameToIndex(lf.fieldPureName));
+            } catch (NoSuchElementException e) {
+                throw new ParsingException("Unknown field in filter expression " + lf.fieldQuantifiedName);
+            }
+        }
+    }
+
+    /** @return the text of the statement */
+    public String getSql() {
+        return sql;
+    }
+
+    /** @return the number of parameters of the statement */
+    public int numParameters() {
+        return params.length;
+    }
+
+    /** @return the type of the i-th parameter, counting from 0 */
+    public Type getParameterType(int i) {
+        return paramTypes[i];
+    }
+
+    /**
+     * Sets the value of a parameter for the following executions.
+     *
+     * @param i
+     *            the index of the parameter, counting from 0
+     * @param value
+     *            the value, of the type of the field the parameter is
+     *            compared to
+     * @throws ParsingException
+     *             if there is no such parameter, or the value is of another
+     *             type
+     */
+    public void setParameter(int i, Field value) throws ParsingException {
+        if (i < 0 || i >= params.length)
+            throw new ParsingException("Statement has no parameter " + i + ": " + sql);
+        if (value == null || value.getType() != paramTypes[i])
+            throw new ParsingException("Parameter " + i + " must be of type " + paramTypes[i]);
+        params[i] = value;
+    }
+
+    /**
+     * Sets the value of a parameter from its text.
+     *
+     * @see #setParameter(int, Field)
+     */
+    public void setParameter(int i, String value) throws ParsingException {
+        if (i < 0 || i >= params.length)
+            throw new ParsingException("Statement has no parameter " + i + ": " + sql);
+        if (paramTypes[i] == Type.INT_TYPE) {
+            try {
+                setParameter(i, new IntField(Integer.parseInt(value.trim())));
+            } catch (NumberFormatException e) {
+                throw new ParsingException("Parameter " + i + " must be an integer, got " + value);
+            }
+        } else {
+            setParameter(i, new StringField(value, Type.STRING_LEN));
+        }
+    }
+
+    /**
+     * Makes a query that runs the statement with the current values of its
+     * parameters. The query uses the same operators as the queries of earlier
+     * executions, so those must be done before it is started.
+     *
+     * @param tid
+     *            the transaction to run the query as a part of
+     * @throws ParsingException
+     *             if a parameter has no value
+     */
+    public Query execute(TransactionId tid) throws ParsingException {
+        for (int i = 0; i < params.length; i++) {
+            if (params[i] == null)
+                throw new ParsingException("Parameter " + i + " is not set");
+        }
+        if (root == null) {
+            Vector<LogicalFilterNode> filters = lp.getFilters();
+            for (int i = 0; i < params.length; i++) {
+                Field f = params[i];
+                filters.get(paramFilters[i]).c = f.getType() == Type.INT_TYPE
+                        ? f.toString() : ((StringField) f).getValue();
+            }
+            root = lp.physicalPlan(tid, TableStats.getStatsMap(), Parser.explain);
+            predicates = new Vector<Predicate>(lp.getFilterPredicates());
+        } else {
+            for (int i = 0; i < params.length; i++)
+                predicates.get(paramFilters[i]).setOperand(params[i]);
+            setTransactionId(root, tid);
+        }
+        Query query = new Query(root, tid);
+        query.setLogicalPlan(lp);
+        return query;
+    }
+
+    /** Has the scans of a plan run as a part of the specified transaction. */
+    private static void setTransactionId(DbIterator it, TransactionId tid) {
+        if (it instanceof SeqScan)
+            ((SeqScan) it).setTransactionId(tid);
+        else if (it instanceof IndexLookup)
+            ((IndexLookup) it).setTransactionId(tid);
+        else if (it instanceof IndexScan)
+            ((IndexScan) it).setTransactionId(tid);
+        else if (it instanceof Operator) {
+            for (DbIterator child : ((Operator) it).getChildren())
+                setTransactionId(child, tid);
+        }
+    }
+}
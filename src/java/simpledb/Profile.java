@@ -0,0 +1,113 @@
+package simpledb;
+
+import java.util.NoSuchElementException;
+
+/**
+ * Profile is an operator that returns the tuples of its child unchanged and
+ * records in an {@link OperatorStats} how many it returned, how often the
+ * child was opened and rewound, and the time spent and pages requested in
+ * the child. {@link OperatorStats#instrument} puts one above every operator
+ * of a plan.
+ */
+public class Profile extends Operator {
+
+    private static final long serialVersionUID = 1L;
+    private DbIterator child;
+    private final OperatorStats stats;
+
+    /**
+     * Constructor.
+     *
+     * @param child
+     *            the operator to profile
+     */
+    public Profile(DbIterator child) {
+        this(child, new OperatorStats());
+    }
+
+    /**
+     * Constructor for a profile that adds to what another one recorded,
+     * such as the probes of an {@link IndexNestedLoopJoin}, which stand in
+     * for its profiled inner child.
+     *
+     * @param child
+     *            the operator to profile
+     * @param stats
+     *            where to record it
+     */
+    Profile(DbIterator child, OperatorStats stats) {
+        this.child = child;
+        this.stats = stats;
+    }
+
+    /** @return the operator this profiles */
+    public DbIterator getProfiled() {
+        return child;
+    }
+
+    /** @return what was recorded about the operator */
+    public OperatorStats getStats() {
+        return stats;
+    }
+
+    public TupleDesc getTupleDesc() {
+        return child.getTupleDesc();
+    }
+
+    public void open() throws DbException, NoSuchElementException,
+            TransactionAbortedException {
+        long start = System.nanoTime();
+        long pages = BufferPool.threadPageRequests();
+        try {
+            child.open();
+        } finally {
+            stats.opens++;
+            stats.charge(start, pages);
+        }
+        super.open();
+    }
+
+    public void close() {
+        long start = System.nanoTime();
+        long pages = BufferPool.threadPageRequests();
+        child.close();
+        stats.charge(start, pages);
+        super.close();
+    }
+
+    public void rewind() throws DbException, TransactionAbortedException {
+        long start = System.nanoTime();
+        long pages = BufferPool.threadPageRequests();
+        try {
+            child.rewind();
+        } finally {
+            stats.rewinds++;
+            stats.charge(start, pages);
+        }
+    }
+
+    protected Tuple fetchNext() throws NoSuchElementException,
+            TransactionAbortedException, DbException {
+        long start = System.nanoTime();
+        long pages = BufferPool.threadPageRequests();
+        try {
+            if (!child.hasNext())
+                return null;
+            stats.rows++;
+            return child.next();
+        } finally {
+            stats.charge(start, pages);
+        }
+    }
+
+    @Override
+    public DbIterator[] getChildren() {
+        return new DbIterator[] { this.child };
+    }
+
+    @Override
+    public void setChildren(DbIterator[] children) {
+        this.child = children[0];
+    }
+
+}
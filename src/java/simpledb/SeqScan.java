@@ -15,6 +15,12 @@ public class SeqScan implements DbIterator {
 	DbFile dbFile;
 	private DbFileIterator fileIter;
 	Catalog catalog;
+	int[] fields;
+	Predicate[] preds;
+	TupleDesc projectedTd;
+	// the pages of a HeapFile the scan reads, if not all of them
+	int firstPage = 0;
+	int endPage = -1;
 	
     private static final long serialVersionUID = 1L;
 
@@ -35,13 +41,95 @@ public class SeqScan implements DbIterator {
      *            tableAlias.null, or null.null).
      */
     public SeqScan(TransactionId tid, int tableid, String tableAlias) {
-        // some code goes here
+        this(tid, tableid, tableAlias, null);
+    }
+
+    /**
+     * Creates a sequential scan that only returns some of the fields of the
+     * specified table. Files that store their columns separately (see
+     * {@link ColumnFile}) only read the requested columns, and HeapFiles only
+     * decode them.
+     * 
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan.
+     * @param tableAlias
+     *            the alias of this table (needed by the parser)
+     * @param fieldList
+     *            the indexes (in the table's TupleDesc) of the fields to
+     *            return, in output order, or null to return all fields
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] fieldList) {
+        this(tid, tableid, tableAlias, fieldList, null);
+    }
+
+    /**
+     * Creates a sequential scan that only returns the tuples of the specified
+     * table that satisfy all of the specified predicates. HeapFiles use their
+     * {@link ZoneMap} to skip pages that cannot hold a matching tuple.
+     * 
+     * @param tid
+     *            The transaction this scan is running as a part of.
+     * @param tableid
+     *            the table to scan.
+     * @param tableAlias
+     *            the alias of this table (needed by the parser)
+     * @param fieldList
+     *            the indexes (in the table's TupleDesc) of the fields to
+     *            return, in output order, or null to return all fields
+     * @param predicates
+     *            the predicates returned tuples must satisfy, with field
+     *            numbers referring to the table's TupleDesc (not to the
+     *            returned fields), or null
+     */
+    public SeqScan(TransactionId tid, int tableid, String tableAlias, int[] fieldList,
+            Predicate[] predicates) {
     	transId = tid;
     	tableId = tableid;
     	tAlias = tableAlias;
+    	fields = fieldList;
+    	preds = predicates == null || predicates.length == 0 ? null : predicates;
     	catalog = Database.getCatalog();
     	dbFile = catalog.getDbFile(tableId);
-    	fileIter = dbFile.iterator(transId);
+    	fileIter = openFileIterator();
+    }
+
+    /**
+     * @return an iterator over dbFile; pushes the projection into files
+     *         that can skip reading unused columns, and the predicates into
+     *         files that can skip reading pages.
+     */
+    private DbFileIterator openFileIterator() {
+    	if (dbFile instanceof ColumnFile) {
+    		return ((ColumnFile) dbFile).iterator(transId, fields, preds);
+    	}
+    	if (dbFile instanceof HeapFile) {
+    		if (endPage >= 0) {
+    			return ((HeapFile) dbFile).iterator(transId, fields, preds, firstPage, endPage);
+    		}
+    		return ((HeapFile) dbFile).iterator(transId, fields, preds);
+    	}
+    	if (preds == null) {
+    		return dbFile.iterator(transId);
+    	}
+    	return new FilteredFileIterator(dbFile.iterator(transId), preds);
+    }
+
+    /**
+     * @return the indexes of the fields of the table returned by this scan, or
+     *         null if it returns all of them
+     */
+    public int[] getFields() {
+    	return fields;
+    }
+
+    /**
+     * @return the predicates tuples returned by this scan satisfy, or null
+     *         if it returns every tuple
+     */
+    public Predicate[] getPredicates() {
+    	return preds;
     }
 
     /**
@@ -77,12 +165,37 @@ public class SeqScan implements DbIterator {
     public void reset(int tableid, String tableAlias) {
     	tableId = tableid;
     	tAlias = tableAlias;
+    	fields = null;
+    	preds = null;
+    	projectedTd = null;
+    	firstPage = 0;
+    	endPage = -1;
     	catalog = Database.getCatalog();
     	dbFile = catalog.getDbFile(tableId);
-    	fileIter = dbFile.iterator(transId);
+    	fileIter = openFileIterator();
     	//this = new SeqScan(transId, tableid, tableAlias);
     }
 
+    /**
+     * Restricts the scan of a HeapFile to its pages from first up to (but
+     * not including) end.
+     *
+     * @see ParallelSeqScan
+     */
+    void setPageRange(int first, int end) {
+    	firstPage = first;
+    	endPage = end;
+    	fileIter = openFileIterator();
+    }
+
+    /**
+     * Sets the transaction later scans run as a part of.
+     */
+    public void setTransactionId(TransactionId tid) {
+    	transId = tid;
+    	fileIter = openFileIterator();
+    }
+
     public SeqScan(TransactionId tid, int tableid) {
         this(tid, tableid, Database.getCatalog().getTableName(tableid));
     }
@@ -108,11 +221,13 @@ public class SeqScan implements DbIterator {
     	if (tAlias==null){
     		prefix = "null";
     	}
-    	Type[] typeArray = new Type[td.itemList.size()];
-    	String[] nameArray = new String[td.itemList.size()];
-    	for(int i=0; i<td.itemList.size(); i++) {
-    		typeArray[i] = td.getFieldType(i);
-    		nameArray[i] = prefix + "." + td.getFieldName(i);
+    	int width = fields == null ? td.itemList.size() : fields.length;
+    	Type[] typeArray = new Type[width];
+    	String[] nameArray = new String[width];
+    	for(int i=0; i<width; i++) {
+    		int f = fields == null ? i : fields[i];
+    		typeArray[i] = td.getFieldType(f);
+    		nameArray[i] = prefix + "." + td.getFieldName(f);
     	}
     	return new TupleDesc(typeArray, nameArray);
     }
@@ -125,7 +240,20 @@ public class SeqScan implements DbIterator {
     public Tuple next() throws NoSuchElementException,
             TransactionAbortedException, DbException {
         // some code goes here
-        return fileIter.next();
+    	Tuple t = fileIter.next();
+    	if (fields == null || dbFile instanceof ColumnFile || dbFile instanceof HeapFile) {
+    		return t;
+    	}
+    	// the file returned the whole tuple; project it here
+    	if (projectedTd == null) {
+    		projectedTd = getTupleDesc();
+    	}
+    	Tuple projected = new Tuple(projectedTd);
+    	projected.setRecordId(t.getRecordId());
+    	for (int i = 0; i < fields.length; i++) {
+    		projected.setField(i, t.getField(fields[i]));
+    	}
+        return projected;
     }
 
     public void close() {
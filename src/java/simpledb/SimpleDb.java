@@ -6,9 +6,13 @@ public class SimpleDb {
     public static void main (String args[])
             throws DbException, TransactionAbortedException, IOException {
         // convert a file
-        if(args[0].equals("convert")) {
+        if(args[0].equals("convert") || args[0].equals("convertcolumnar")
+                || args[0].equals("convertcompressed") || args[0].equals("convertslotted")
+                || args[0].equals("convertbtree")) {
         try {
-            if (args.length<3 || args.length>5){
+            // convertbtree takes the index of the key field as an extra argument
+            int maxArgs = args[0].equals("convertbtree") ? 6 : 5;
+            if (args.length<3 || args.length>maxArgs){
                 System.err.println("Unexpected number of arguments to convert ");
                 return;
             }
@@ -40,11 +44,23 @@ public class SimpleDb {
                                 return;
                             }
                 }
-                if (args.length==5)
+                if (args.length>=5)
                     fieldSeparator=args[4].charAt(0);
             }
 
-            HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
+            if (args[0].equals("convertcolumnar") || args[0].equals("convertcompressed"))
+                ColumnFileEncoder.convert(sourceTxtFile,
+                        new File(args[1].replaceAll(".txt", ".col")),ts,fieldSeparator,
+                        args[0].equals("convertcompressed"));
+            else if (args[0].equals("convertslotted"))
+                SlottedFileEncoder.convert(sourceTxtFile,
+                        new File(args[1].replaceAll(".txt", ".slt")),ts,fieldSeparator);
+            else if (args[0].equals("convertbtree"))
+                BTreeFileEncoder.convert(sourceTxtFile,
+                        new File(args[1].replaceAll(".txt", ".bt")),ts,fieldSeparator,
+                        args.length==6 ? Integer.parseInt(args[5]) : 0);
+            else
+                HeapFileEncoder.convert(sourceTxtFile,targetDatFile,
                         BufferPool.PAGE_SIZE,numOfAttributes,ts,fieldSeparator);
 
         } catch (IOException e) {
@@ -91,6 +107,29 @@ public class SimpleDb {
             }
 
         }
+        else if (args[0].equals("calibrate")) {
+            CostCalibrator.main(Arrays.copyOfRange(args, 1, args.length));
+        }
+        else if (args[0].equals("ssb")) {
+            try {
+                StarSchemaBenchmark.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                System.out.println("Error in benchmark.");
+                e.printStackTrace();
+            }
+        }
+        else if (args[0].equals("workload")) {
+            try {
+                WorkloadDriver.main(Arrays.copyOfRange(args, 1, args.length));
+            } catch (IOException e) {
+                throw e;
+            } catch (Exception e) {
+                System.out.println("Error in workload.");
+                e.printStackTrace();
+            }
+        }
         else {
             System.err.println("Unknown command: " + args[0]);
             System.exit(1);
@@ -0,0 +1,261 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * SlottedFile is an implementation of a DbFile that stores a collection of
+ * tuples in no particular order, like HeapFile, but on SlottedPages whose
+ * records are variable length. Strings are stored at their actual length, so
+ * text-heavy tables fit many more rows on a page than with HeapFile's fixed
+ * size slots, and strings longer than {@link Type#STRING_LEN} can be stored
+ * on overflow pages. The format of the pages is described in the SlottedPage
+ * constructor.
+ * <p>
+ * Overflow pages are appended to the file when a tuple with a long string is
+ * inserted and are never modified afterwards; the space they take is not
+ * reclaimed when the tuple is deleted.
+ *
+ * @see simpledb.SlottedPage#SlottedPage
+ */
+public class SlottedFile implements DbFile {
+
+    private static final long serialVersionUID = 1L;
+
+    File file;
+    TupleDesc tupleDesc;
+
+    /**
+     * Constructs a slotted file backed by the specified file.
+     *
+     * @param f
+     *            the file that stores the on-disk backing store for this
+     *            file.
+     * @param td
+     *            the schema of the table
+     */
+    public SlottedFile(File f, TupleDesc td) {
+        file = f;
+        tupleDesc = td;
+    }
+
+    /**
+     * Returns the File backing this SlottedFile on disk.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns an ID uniquely identifying this SlottedFile, the hash of the
+     * absolute name of its file.
+     */
+    public int getId() {
+        return file.getAbsoluteFile().hashCode();
+    }
+
+    /**
+     * Returns the TupleDesc of the table stored in this DbFile.
+     */
+    public TupleDesc getTupleDesc() {
+        return tupleDesc;
+    }
+
+    /**
+     * Returns the number of pages in this SlottedFile, including overflow
+     * pages.
+     */
+    public int numPages() {
+        return (int) ((file.length() + BufferPool.PAGE_SIZE - 1) / BufferPool.PAGE_SIZE);
+    }
+
+    private byte[] readPageData(int pgNo) throws IOException {
+        byte[] bytes = new byte[BufferPool.PAGE_SIZE];
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            raf.seek((long) BufferPool.PAGE_SIZE * pgNo);
+            raf.readFully(bytes);
+        } finally {
+            raf.close();
+        }
+        return bytes;
+    }
+
+    private void writePageData(int pgNo, byte[] data) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        raf.seek((long) BufferPool.PAGE_SIZE * pgNo);
+        raf.write(data, 0, BufferPool.PAGE_SIZE);
+        raf.close();
+    }
+
+    // see DbFile.java for javadocs
+    public Page readPage(PageId pid) {
+        if (pid.pageNumber() >= numPages())
+            throw new IllegalArgumentException("page " + pid + " does not exist");
+        try {
+            return new SlottedPage((HeapPageId) pid, this, readPageData(pid.pageNumber()));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("unable to read page " + pid, e);
+        }
+    }
+
+    // see DbFile.java for javadocs
+    public void writePage(Page page) throws IOException {
+        page.markDirty(false, null);
+        writePageData(page.getId().pageNumber(), page.getPageData());
+    }
+
+    /**
+     * Reads a long string from the chain of overflow pages starting at the
+     * specified page. Overflow pages are read directly from disk, since they
+     * never change once written.
+     *
+     * @param pgNo the first page of the chain
+     * @param len the number of characters in the string
+     */
+    String readOverflow(int pgNo, int len) throws IOException {
+        StringBuilder sb = new StringBuilder(len);
+        while (pgNo >= 0 && sb.length() < len) {
+            DataInputStream dis = new DataInputStream(new ByteArrayInputStream(readPageData(pgNo)));
+            if (dis.readByte() != SlottedPage.OVERFLOW_PAGE)
+                throw new IOException("page " + pgNo + " of " + file.getName() + " is not an overflow page");
+            pgNo = dis.readInt();
+            byte[] bs = new byte[dis.readUnsignedShort()];
+            dis.readFully(bs);
+            sb.append(new String(bs));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Writes the specified string to a new chain of overflow pages at the end
+     * of the file.
+     *
+     * @return the page number of the first page of the chain
+     */
+    int writeOverflow(String s) throws IOException {
+        int cap = SlottedPage.getOverflowCapacity();
+        int numChunks = (s.length() + cap - 1) / cap;
+        int first = numPages();
+        for (int i = 0; i < numChunks; i++) {
+            int next = i + 1 < numChunks ? first + i + 1 : -1;
+            writePageData(first + i, SlottedPage.createOverflowPageData(s, i * cap,
+                    Math.min(s.length(), (i + 1) * cap), next));
+        }
+        return first;
+    }
+
+    /**
+     * @return the length of the record {@link #encodeRecord} encodes the
+     *         specified tuple as, without writing its overflow pages
+     */
+    int recordLength(Tuple t) {
+        int length = 0;
+        for (int j = 0; j < tupleDesc.numFields(); j++) {
+            Field f = t.getField(j);
+            if (f.getType() == Type.INT_TYPE) {
+                length += 4;
+                continue;
+            }
+            String s = ((StringField) f).getValue();
+            length += s.length() <= SlottedPage.INLINE_LIMIT ? 2 + s.length() : 2 + 4 + 4;
+        }
+        return length;
+    }
+
+    /** Drops the pages of the file from the specified page on. */
+    private void truncate(int pgNo) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            raf.setLength((long) BufferPool.PAGE_SIZE * pgNo);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Encodes the specified tuple in the record format described in the
+     * SlottedPage constructor. Strings longer than
+     * {@link SlottedPage#INLINE_LIMIT} are written to new overflow pages.
+     */
+    byte[] encodeRecord(Tuple t) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(baos);
+        for (int j = 0; j < tupleDesc.numFields(); j++) {
+            Field f = t.getField(j);
+            if (f.getType() == Type.INT_TYPE) {
+                dos.writeInt(((IntField) f).getValue());
+                continue;
+            }
+            String s = ((StringField) f).getValue();
+            if (s.length() <= SlottedPage.INLINE_LIMIT) {
+                dos.writeShort(s.length());
+                dos.writeBytes(s);
+            } else {
+                dos.writeShort(SlottedPage.OVERFLOW_MARKER);
+                dos.writeInt(s.length());
+                dos.writeInt(writeOverflow(s));
+            }
+        }
+        dos.flush();
+        return baos.toByteArray();
+    }
+
+    // see DbFile.java for javadocs
+    public ArrayList<Page> insertTuple(TransactionId tid, Tuple t)
+            throws DbException, IOException, TransactionAbortedException {
+        if (!t.getTupleDesc().equals(tupleDesc))
+            throw new DbException("tuple does not match the schema of the table");
+
+        // find the page before writing any overflow pages, so that an
+        // insert that fails leaves none behind
+        int length = recordLength(t);
+        if (length + SlottedPage.SLOT_SIZE > BufferPool.PAGE_SIZE - SlottedPage.HEADER_SIZE)
+            throw new DbException("tuple is too long to fit on a page");
+        ArrayList<Page> effectedPages = new ArrayList<Page>();
+        BufferPool bp = Database.getBufferPool();
+        SlottedPage page = null;
+        for (int i = 0; i < numPages() && page == null; i++) {
+            SlottedPage p = (SlottedPage) bp.getPage(tid, new HeapPageId(getId(), i), Permissions.READ_WRITE);
+            if (p.hasRoomFor(length))
+                page = p;
+        }
+
+        int pages = numPages();
+        try {
+            byte[] record = encodeRecord(t);
+            if (page != null) {
+                page.insertTuple(t, record);
+                page.markDirty(true, tid);
+            } else {
+                // no page has room, add a new one
+                page = new SlottedPage(new HeapPageId(getId(), numPages()), this,
+                        SlottedPage.createEmptyPageData());
+                page.insertTuple(t, record);
+                writePage(page);
+            }
+        } catch (IOException e) {
+            truncate(pages);
+            throw e;
+        }
+        effectedPages.add(page);
+        return effectedPages;
+    }
+
+    // see DbFile.java for javadocs
+    public Page deleteTuple(TransactionId tid, Tuple t) throws DbException,
+            TransactionAbortedException {
+        if (t.getRecordId() == null)
+            throw new DbException("tuple is not stored in a table");
+        SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(tid,
+                t.getRecordId().getPageId(), Permissions.READ_WRITE);
+        page.deleteTuple(t);
+        page.markDirty(true, tid);
+        return page;
+    }
+
+    // see DbFile.java for javadocs
+    public DbFileIterator iterator(TransactionId tid) {
+        return new SlottedFileIterator(this, tid);
+    }
+}
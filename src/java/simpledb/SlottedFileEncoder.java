@@ -0,0 +1,121 @@
+package simpledb;
+
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+ * SlottedFileEncoder reads a comma delimited text file or accepts an array of
+ * tuples and converts it to the pages of a SlottedFile. Unlike
+ * HeapFileEncoder, strings in the input are not truncated to
+ * {@link Type#STRING_LEN} characters.
+ */
+public class SlottedFileEncoder {
+
+    /** Convert the specified tuple list (with only integer fields) into a
+     * SlottedFile.
+     *
+     * @param tuples the tuples - a list of tuples, each represented by a list of integers that are
+     *        the field values for that tuple.
+     * @param outFile The output file to write data to
+     * @param numFields the number of fields in each input tuple
+     * @throws IOException if the output file can't be written
+     */
+    public static void convert(ArrayList<ArrayList<Integer>> tuples, File outFile, int numFields) throws IOException {
+        PageWriter writer = new PageWriter(outFile, Utility.getTypes(numFields));
+        for (ArrayList<Integer> tuple : tuples) {
+            if (tuple.size() != numFields) {
+                throw new RuntimeException("Tuple does not have " + numFields + " fields: (" +
+                        Utility.listToString(tuple) + ")");
+            }
+            Tuple t = new Tuple(writer.file.getTupleDesc());
+            for (int i = 0; i < numFields; i++)
+                t.setField(i, new IntField(tuple.get(i)));
+            writer.append(t);
+        }
+        writer.close();
+    }
+
+    /** Convert the specified input text file into a SlottedFile. The input
+     * file has the same format as the input to
+     * {@link HeapFileEncoder#convert(File, File, int, int, Type[], char)}.
+     *
+     * @param inFile The input file to read data from
+     * @param outFile The output file to write data to
+     * @param typeAr the types of the fields of each input line
+     * @param fieldSeparator the character separating fields on a line
+     * @throws IOException if the input/output file can't be opened
+     */
+    public static void convert(File inFile, File outFile, Type[] typeAr, char fieldSeparator)
+            throws IOException {
+        PageWriter writer = new PageWriter(outFile, typeAr);
+        BufferedReader br = new BufferedReader(new FileReader(inFile));
+        String line;
+        while ((line = br.readLine()) != null) {
+            if (line.trim().length() == 0)
+                continue;
+            String[] els = line.split(java.util.regex.Pattern.quote(String.valueOf(fieldSeparator)), -1);
+            if (els.length != typeAr.length) {
+                System.out.println("BAD LINE : " + line);
+                continue;
+            }
+            Tuple t = new Tuple(writer.file.getTupleDesc());
+            try {
+                for (int i = 0; i < typeAr.length; i++) {
+                    String s = els[i].trim();
+                    if (typeAr[i] == Type.INT_TYPE)
+                        t.setField(i, new IntField(Integer.parseInt(s)));
+                    else
+                        t.setField(i, new StringField(s, Math.max(s.length(), Type.STRING_LEN)));
+                }
+            } catch (NumberFormatException e) {
+                System.out.println("BAD LINE : " + line);
+                continue;
+            }
+            writer.append(t);
+        }
+        br.close();
+        writer.close();
+    }
+
+    /**
+     * Appends tuples to a new SlottedFile, writing each data page as soon as
+     * it fills up. Overflow pages are written by the file as they are needed.
+     */
+    static class PageWriter {
+        final SlottedFile file;
+        private SlottedPage page;
+
+        PageWriter(File outFile, Type[] typeAr) throws IOException {
+            // start from an empty file
+            new FileOutputStream(outFile).close();
+            file = new SlottedFile(outFile, new TupleDesc(typeAr));
+        }
+
+        void append(Tuple t) throws IOException {
+            byte[] record = file.encodeRecord(t);
+            try {
+                if (page != null && !page.hasRoomFor(record.length)) {
+                    file.writePage(page);
+                    page = null;
+                }
+                if (page == null) {
+                    // reserve the page so overflow pages are allocated after it
+                    page = new SlottedPage(new HeapPageId(0, file.numPages()), file,
+                            SlottedPage.createEmptyPageData());
+                    file.writePage(page);
+                }
+                page.insertTuple(t, record);
+            } catch (DbException e) {
+                throw new IOException(e.getMessage());
+            }
+        }
+
+        void close() throws IOException {
+            // like HeapFileEncoder, an empty table still gets one page
+            if (page == null)
+                page = new SlottedPage(new HeapPageId(0, file.numPages()), file,
+                        SlottedPage.createEmptyPageData());
+            file.writePage(page);
+        }
+    }
+}
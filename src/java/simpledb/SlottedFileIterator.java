@@ -0,0 +1,72 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * SlottedFileIterator returns the tuples on the data pages of a SlottedFile,
+ * fetching pages through the BufferPool and skipping overflow pages.
+ */
+public class SlottedFileIterator implements DbFileIterator {
+
+    SlottedFile file;
+    TransactionId transId;
+    int pageCount;
+    int curPageNum;
+    Iterator<Tuple> pgTups;
+
+    public SlottedFileIterator(SlottedFile f, TransactionId tid) {
+        file = f;
+        transId = tid;
+    }
+
+    /**
+     * Opens the iterator
+     * @throws DbException when there are problems opening/accessing the database.
+     */
+    public void open() throws DbException, TransactionAbortedException {
+        pageCount = file.numPages();
+        curPageNum = -1;
+        pgTups = Collections.<Tuple>emptyList().iterator();
+    }
+
+    /** @return true if there are more tuples available. */
+    public boolean hasNext() throws DbException, TransactionAbortedException {
+        if (pgTups == null)
+            return false;
+        while (!pgTups.hasNext() && curPageNum < pageCount - 1) {
+            curPageNum++;
+            SlottedPage page = (SlottedPage) Database.getBufferPool().getPage(transId,
+                    new HeapPageId(file.getId(), curPageNum), Permissions.READ_ONLY);
+            pgTups = page.iterator();
+        }
+        return pgTups.hasNext();
+    }
+
+    /**
+     * Gets the next tuple from the file.
+     *
+     * @return The next tuple in the iterator.
+     * @throws NoSuchElementException if there are no more tuples
+     */
+    public Tuple next() throws DbException, TransactionAbortedException,
+            NoSuchElementException {
+        if (!hasNext())
+            throw new NoSuchElementException("");
+        return pgTups.next();
+    }
+
+    /**
+     * Resets the iterator to the start.
+     */
+    public void rewind() throws DbException, TransactionAbortedException {
+        close();
+        open();
+    }
+
+    /**
+     * Closes the iterator.
+     */
+    public void close() {
+        pgTups = null;
+    }
+}
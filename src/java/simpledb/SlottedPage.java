@@ -0,0 +1,331 @@
+package simpledb;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Each instance of SlottedPage stores data for one page of a SlottedFile and
+ * implements the Page interface that is used by BufferPool. Unlike HeapPage,
+ * records are variable length: strings take only as many bytes as they have
+ * characters, and strings too long to store inline are kept in a chain of
+ * overflow pages in the same file.
+ *
+ * @see SlottedFile
+ * @see BufferPool
+ */
+public class SlottedPage implements Page {
+
+    /** Page holding a slot directory and records. */
+    public static final byte DATA_PAGE = 0;
+    /** Page holding part of a string that was too long to store inline. */
+    public static final byte OVERFLOW_PAGE = 1;
+
+    /** Strings longer than this many characters are moved to overflow pages. */
+    public static final int INLINE_LIMIT = Type.STRING_LEN;
+
+    /** Bytes of header at the start of a data page. */
+    static final int HEADER_SIZE = 3;
+    /** Bytes used by each entry of the slot directory. */
+    static final int SLOT_SIZE = 4;
+    /** Bytes of header at the start of an overflow page. */
+    static final int OVERFLOW_HEADER_SIZE = 7;
+    /** Marker stored in place of the length of a string kept on overflow pages. */
+    static final int OVERFLOW_MARKER = 0xffff;
+
+    HeapPageId pid;
+    TupleDesc td;
+    SlottedFile file;
+    byte pageType;
+    // encoded record of each slot, null for empty slots
+    ArrayList<byte[]> records;
+    ArrayList<Tuple> tuples;
+    int usedBytes;
+    // contents of an overflow page, which are never modified in place
+    byte[] overflowData;
+    boolean dirty = false;
+    TransactionId lastTrans = null;
+
+    byte[] oldData;
+
+    /**
+     * Create a SlottedPage from a set of bytes of data read from disk. The
+     * file the page belongs to is looked up in the catalog.
+     *
+     * @see #SlottedPage(HeapPageId, SlottedFile, byte[])
+     */
+    public SlottedPage(HeapPageId id, byte[] data) throws IOException {
+        this(id, (SlottedFile) Database.getCatalog().getDbFile(id.getTableId()), data);
+    }
+
+    /**
+     * Create a SlottedPage of the specified file from a set of bytes of data
+     * read from disk. A data page starts with a byte page type of DATA_PAGE
+     * and an unsigned short count of slots, followed by the slot directory,
+     * free space, and the records, which are packed against the end of the
+     * page. Each slot is an unsigned short offset and length of its record;
+     * empty slots have a length of zero.
+     * <p>
+     * A record holds its fields one after another. INT_TYPE fields take 4
+     * bytes. STRING_TYPE fields of at most {@link #INLINE_LIMIT} characters
+     * are an unsigned short length followed by that many bytes; longer ones
+     * are the short {@link #OVERFLOW_MARKER}, an int length and the int page
+     * number of the first overflow page holding the string.
+     * <p>
+     * Overflow pages start with a byte page type of OVERFLOW_PAGE, the int
+     * page number of the next page in the chain (or -1) and an unsigned short
+     * count of the characters stored on the page.
+     *
+     * @param file the file the page belongs to, used to read the overflow
+     *            pages of long strings
+     */
+    public SlottedPage(HeapPageId id, SlottedFile file, byte[] data) throws IOException {
+        this.pid = id;
+        this.file = file;
+        this.td = file.getTupleDesc();
+        records = new ArrayList<byte[]>();
+        tuples = new ArrayList<Tuple>();
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(data));
+        pageType = dis.readByte();
+        if (pageType == DATA_PAGE) {
+            int numSlots = dis.readUnsignedShort();
+            for (int i = 0; i < numSlots; i++) {
+                int offset = dis.readUnsignedShort();
+                int len = dis.readUnsignedShort();
+                if (len == 0) {
+                    records.add(null);
+                    tuples.add(null);
+                    continue;
+                }
+                byte[] rec = new byte[len];
+                System.arraycopy(data, offset, rec, 0, len);
+                records.add(rec);
+                tuples.add(decode(rec, i));
+                usedBytes += len;
+            }
+        } else {
+            overflowData = data.clone();
+        }
+        dis.close();
+
+        setBeforeImage();
+    }
+
+    /** Rebuilds the tuple stored in the specified record. */
+    private Tuple decode(byte[] rec, int slot) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(rec));
+        Tuple t = new Tuple(td);
+        t.setRecordId(new RecordId(pid, slot));
+        for (int j = 0; j < td.numFields(); j++) {
+            if (td.getFieldType(j) == Type.INT_TYPE) {
+                t.setField(j, new IntField(dis.readInt()));
+                continue;
+            }
+            int len = dis.readUnsignedShort();
+            String s;
+            if (len == OVERFLOW_MARKER) {
+                len = dis.readInt();
+                s = file.readOverflow(dis.readInt(), len);
+            } else {
+                byte[] bs = new byte[len];
+                dis.readFully(bs);
+                s = new String(bs);
+            }
+            t.setField(j, new StringField(s, Math.max(len, Type.STRING_LEN)));
+        }
+        dis.close();
+        return t;
+    }
+
+    /** Return a view of this page before it was modified
+        -- used by recovery */
+    public SlottedPage getBeforeImage() {
+        try {
+            return new SlottedPage(pid, file, oldData);
+        } catch (IOException e) {
+            e.printStackTrace();
+            //should never happen -- we parsed it OK before!
+            System.exit(1);
+        }
+        return null;
+    }
+
+    public void setBeforeImage() {
+        oldData = getPageData().clone();
+    }
+
+    /**
+     * @return the PageId associated with this page.
+     */
+    public HeapPageId getId() {
+        return pid;
+    }
+
+    /**
+     * @return true if this page holds part of a long string rather than
+     *         tuples
+     */
+    public boolean isOverflow() {
+        return pageType == OVERFLOW_PAGE;
+    }
+
+    /**
+     * Generates a byte array representing the contents of this page.
+     * Used to serialize this page to disk. Free space is always coalesced
+     * into a single gap between the slot directory and the records.
+     *
+     * @see #SlottedPage
+     * @return A byte array correspond to the bytes of this page.
+     */
+    public byte[] getPageData() {
+        if (pageType == OVERFLOW_PAGE)
+            return overflowData.clone();
+
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[0] = DATA_PAGE;
+        putShort(data, 1, records.size());
+        int end = BufferPool.PAGE_SIZE;
+        for (int i = 0; i < records.size(); i++) {
+            byte[] rec = records.get(i);
+            int slot = HEADER_SIZE + i * SLOT_SIZE;
+            if (rec == null)
+                continue;
+            end -= rec.length;
+            System.arraycopy(rec, 0, data, end, rec.length);
+            putShort(data, slot, end);
+            putShort(data, slot + 2, rec.length);
+        }
+        return data;
+    }
+
+    static void putShort(byte[] data, int off, int v) {
+        data[off] = (byte) (v >>> 8);
+        data[off + 1] = (byte) v;
+    }
+
+    /**
+     * Static method to generate a byte array corresponding to an empty
+     * SlottedPage.
+     */
+    public static byte[] createEmptyPageData() {
+        return new byte[BufferPool.PAGE_SIZE];
+    }
+
+    /**
+     * Static method to generate the bytes of an overflow page holding the
+     * specified part of a long string.
+     *
+     * @param next the page number of the next page of the chain, or -1
+     */
+    public static byte[] createOverflowPageData(String s, int start, int end, int next) {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        data[0] = OVERFLOW_PAGE;
+        data[1] = (byte) (next >>> 24);
+        data[2] = (byte) (next >>> 16);
+        data[3] = (byte) (next >>> 8);
+        data[4] = (byte) next;
+        putShort(data, 5, end - start);
+        for (int i = start; i < end; i++)
+            data[OVERFLOW_HEADER_SIZE + i - start] = (byte) s.charAt(i);
+        return data;
+    }
+
+    /** @return the number of characters of a long string an overflow page can hold */
+    public static int getOverflowCapacity() {
+        return BufferPool.PAGE_SIZE - OVERFLOW_HEADER_SIZE;
+    }
+
+    /**
+     * @return the number of bytes of free space on this page, not counting
+     *         the slot directory entry a new record may need
+     */
+    public int getFreeSpace() {
+        if (pageType == OVERFLOW_PAGE)
+            return 0;
+        return BufferPool.PAGE_SIZE - HEADER_SIZE - SLOT_SIZE * records.size() - usedBytes;
+    }
+
+    /**
+     * @return true if a record of the specified length can be added to this
+     *         page
+     */
+    public boolean hasRoomFor(int recordLength) {
+        if (pageType == OVERFLOW_PAGE)
+            return false;
+        int needed = recordLength;
+        if (!records.contains(null))
+            needed += SLOT_SIZE;
+        return needed <= getFreeSpace();
+    }
+
+    /**
+     * Delete the specified tuple from the page. The slot is left empty so
+     * that the RecordIds of the other tuples on the page do not change.
+     * @throws DbException if this tuple is not on this page, or tuple slot is
+     *         already empty.
+     * @param t The tuple to delete
+     */
+    public void deleteTuple(Tuple t) throws DbException {
+        if (t.getRecordId() == null || !t.getRecordId().getPageId().equals(pid))
+            throw new DbException("tuple is not on page " + pid);
+        int slot = t.getRecordId().tupleno();
+        if (slot >= records.size() || records.get(slot) == null)
+            throw new DbException("tuple slot is already empty");
+        usedBytes -= records.get(slot).length;
+        records.set(slot, null);
+        tuples.set(slot, null);
+    }
+
+    /**
+     * Adds the specified tuple to the page, stored as the specified record;
+     * the tuple is updated to reflect that it is now stored on this page.
+     *
+     * @see SlottedFile#encodeRecord
+     * @throws DbException if the page doesn't have room for the record or
+     *         tupledesc is mismatch.
+     */
+    public void insertTuple(Tuple t, byte[] record) throws DbException {
+        if (!t.getTupleDesc().equals(td))
+            throw new DbException("tuple does not match the schema of the table");
+        if (!hasRoomFor(record.length))
+            throw new DbException("page " + pid + " is full");
+        int slot = records.indexOf(null);
+        if (slot < 0) {
+            slot = records.size();
+            records.add(null);
+            tuples.add(null);
+        }
+        records.set(slot, record);
+        tuples.set(slot, t);
+        usedBytes += record.length;
+        t.setRecordId(new RecordId(pid, slot));
+    }
+
+    /**
+     * Marks this page as dirty/not dirty and record that transaction
+     * that did the dirtying
+     */
+    public void markDirty(boolean dirty, TransactionId tid) {
+        this.dirty = dirty;
+        lastTrans = dirty ? tid : null;
+    }
+
+    /**
+     * Returns the tid of the transaction that last dirtied this page, or null if the page is not dirty
+     */
+    public TransactionId isDirty() {
+        return dirty ? lastTrans : null;
+    }
+
+    /**
+     * @return an iterator over all tuples on this page (calling remove on this iterator throws an UnsupportedOperationException)
+     */
+    public Iterator<Tuple> iterator() {
+        ArrayList<Tuple> tupleArray = new ArrayList<Tuple>();
+        for (Tuple t : tuples) {
+            if (t != null)
+                tupleArray.add(t);
+        }
+        return Collections.unmodifiableList(tupleArray).iterator();
+    }
+}
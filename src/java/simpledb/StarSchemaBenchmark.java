@@ -0,0 +1,240 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * StarSchemaBenchmark measures end-to-end query performance on a database
+ * shaped like the Star Schema Benchmark: a lineorder fact table joined with
+ * dates, customer, supplier and part dimension tables.
+ * <p>
+ * <code>generate dir scale</code> writes the tables of the specified scale
+ * factor as HeapFiles into a directory, along with a catalog file,
+ * ssb.schema, that {@link Catalog#loadSchema} loads. Scale factor 1 has
+ * 60,000 lineorders, 3,000 customers, 200 suppliers and 2,000 parts; the
+ * dates table always has seven years of days. The data is random but the
+ * same for every run of the same scale.
+ * <p>
+ * <code>run catalogFile [runs [resultsFile]]</code> runs each query of
+ * {@link #QUERIES} the specified number of times through the Parser, each
+ * time parsing, optimizing and executing it, after a warm-up run, and
+ * writes the latency percentiles and throughput of each query as CSV.
+ */
+public class StarSchemaBenchmark {
+
+    static final String[] REGIONS = { "AFRICA", "AMERICA", "ASIA", "EUROPE", "MIDDLE EAST" };
+    static final int DAYS = 7 * 365;
+
+    /** The queries that are run, by name. */
+    static final String[][] QUERIES = {
+            { "q1.1", "select sum(lo.lo_revenue) from lineorder lo, dates d"
+                    + " where lo.lo_orderdate = d.d_datekey and d.d_year = 1993"
+                    + " and lo.lo_discount >= 1 and lo.lo_discount <= 3 and lo.lo_quantity < 25;" },
+            { "q2.1", "select p.p_brand, sum(lo.lo_revenue) from lineorder lo, part p, supplier s"
+                    + " where lo.lo_partkey = p.p_partkey and lo.lo_suppkey = s.s_suppkey"
+                    + " and p.p_category = 12 and s.s_region = 'AMERICA'"
+                    + " group by p.p_brand order by p.p_brand;" },
+            { "q3.1", "select c.c_nation, sum(lo.lo_revenue) from customer c, lineorder lo, supplier s, dates d"
+                    + " where lo.lo_custkey = c.c_custkey and lo.lo_suppkey = s.s_suppkey"
+                    + " and lo.lo_orderdate = d.d_datekey and c.c_region = 'ASIA' and s.s_region = 'ASIA'"
+                    + " and d.d_year >= 1992 and d.d_year <= 1997 group by c.c_nation;" },
+            { "q4.1", "select d.d_year, sum(lo.lo_revenue) from dates d, customer c, supplier s, part p, lineorder lo"
+                    + " where lo.lo_custkey = c.c_custkey and lo.lo_suppkey = s.s_suppkey"
+                    + " and lo.lo_partkey = p.p_partkey and lo.lo_orderdate = d.d_datekey"
+                    + " and c.c_region = 'AMERICA' and s.s_region = 'AMERICA' and p.p_mfgr <= 2"
+                    + " group by d.d_year order by d.d_year;" },
+            { "top", "select lo.lo_orderkey, lo.lo_revenue from lineorder lo"
+                    + " where lo.lo_discount = 10 and lo.lo_quantity > 45 order by lo.lo_revenue;" },
+    };
+
+    /**
+     * Generates the tables of the specified scale factor into a directory.
+     *
+     * @return the catalog file of the tables
+     */
+    public static File generate(File dir, double scale) throws IOException {
+        dir.mkdirs();
+        Random rand = new Random(42);
+        int customers = Math.max(1, (int) (3000 * scale));
+        int suppliers = Math.max(1, (int) (200 * scale));
+        int parts = Math.max(1, (int) (2000 * scale));
+        int lineorders = Math.max(1, (int) (60000 * scale));
+
+        ArrayList<String> rows = new ArrayList<String>();
+        for (int i = 0; i < DAYS; i++)
+            rows.add(i + "," + (1992 + i / 365) + "," + ((i % 365) / 31 + 1));
+        write(dir, "dates", rows, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE);
+
+        rows.clear();
+        for (int i = 0; i < customers; i++) {
+            int region = rand.nextInt(REGIONS.length);
+            int nation = region * 5 + rand.nextInt(5);
+            rows.add(i + "," + REGIONS[region] + "," + nation + "," + (nation * 10 + rand.nextInt(10)));
+        }
+        write(dir, "customer", rows, Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE, Type.INT_TYPE);
+
+        rows.clear();
+        for (int i = 0; i < suppliers; i++) {
+            int region = rand.nextInt(REGIONS.length);
+            rows.add(i + "," + REGIONS[region] + "," + (region * 5 + rand.nextInt(5)));
+        }
+        write(dir, "supplier", rows, Type.INT_TYPE, Type.STRING_TYPE, Type.INT_TYPE);
+
+        rows.clear();
+        for (int i = 0; i < parts; i++) {
+            int mfgr = 1 + rand.nextInt(5);
+            int category = mfgr * 10 + 1 + rand.nextInt(5);
+            rows.add(i + "," + mfgr + "," + category + "," + (category * 100 + 1 + rand.nextInt(40)));
+        }
+        write(dir, "part", rows, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE);
+
+        rows.clear();
+        for (int i = 0; i < lineorders; i++) {
+            int quantity = 1 + rand.nextInt(50);
+            int price = quantity * (90 + rand.nextInt(110));
+            int discount = rand.nextInt(11);
+            rows.add((i / 4) + "," + rand.nextInt(customers) + "," + rand.nextInt(parts) + ","
+                    + rand.nextInt(suppliers) + "," + rand.nextInt(DAYS) + "," + quantity + ","
+                    + price + "," + discount + "," + (price * (100 - discount) / 100));
+        }
+        write(dir, "lineorder", rows, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE,
+                Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE, Type.INT_TYPE);
+
+        File catalog = new File(dir, "ssb.schema");
+        PrintWriter out = new PrintWriter(new FileWriter(catalog));
+        try {
+            out.println("dates (d_datekey int pk index, d_year int, d_month int)");
+            out.println("customer (c_custkey int pk index, c_region string, c_nation int, c_city int)");
+            out.println("supplier (s_suppkey int pk index, s_region string, s_nation int)");
+            out.println("part (p_partkey int pk index, p_mfgr int, p_category int, p_brand int)");
+            out.println("lineorder (lo_orderkey int, lo_custkey int, lo_partkey int, lo_suppkey int,"
+                    + " lo_orderdate int, lo_quantity int, lo_extendedprice int, lo_discount int,"
+                    + " lo_revenue int)");
+        } finally {
+            out.close();
+        }
+        return catalog;
+    }
+
+    /** Writes rows of comma separated fields as the HeapFile of a table. */
+    private static void write(File dir, String name, List<String> rows, Type... types) throws IOException {
+        File text = File.createTempFile(name, ".txt");
+        text.deleteOnExit();
+        PrintWriter out = new PrintWriter(new BufferedWriter(new FileWriter(text)));
+        try {
+            for (String row : rows)
+                out.println(row);
+        } finally {
+            out.close();
+        }
+        HeapFileEncoder.convert(text, new File(dir, name + ".dat"), BufferPool.PAGE_SIZE,
+                types.length, types, ',');
+        text.delete();
+    }
+
+    /** The latencies of the runs of a query. */
+    static class Result {
+        String name;
+        int rows;
+        long[] nanos;
+
+        /** @return the latency in milliseconds below which the specified fraction of runs fall */
+        double percentileMillis(double fraction) {
+            long[] sorted = nanos.clone();
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(fraction * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+
+        double meanMillis() {
+            long total = 0;
+            for (long n : nanos)
+                total += n;
+            return total / 1e6 / nanos.length;
+        }
+    }
+
+    /**
+     * Runs a query the specified number of times, after a warm-up run.
+     *
+     * @return the latency of each run
+     */
+    static Result run(Parser parser, String name, String sql, int runs) throws Exception {
+        Result r = new Result();
+        r.name = name;
+        r.nanos = new long[runs];
+        for (int i = -1; i < runs; i++) {
+            long start = System.nanoTime();
+            Transaction t = new Transaction();
+            t.start();
+            Query q = parser.prepare(sql).execute(t.getId());
+            q.start();
+            int rows = 0;
+            while (q.hasNext()) {
+                q.next();
+                rows++;
+            }
+            q.close();
+            t.commit();
+            if (i >= 0)
+                r.nanos[i] = System.nanoTime() - start;
+            r.rows = rows;
+        }
+        return r;
+    }
+
+    /** Writes the results as CSV, one line per query. */
+    static void writeResults(List<Result> results, PrintStream out) {
+        out.println("query,runs,rows,min_ms,p50_ms,p90_ms,p99_ms,max_ms,mean_ms,queries_per_s");
+        for (Result r : results) {
+            out.println(String.format(Locale.US, "%s,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.2f",
+                    r.name, r.nanos.length, r.rows, r.percentileMillis(0), r.percentileMillis(0.5),
+                    r.percentileMillis(0.9), r.percentileMillis(0.99), r.percentileMillis(1),
+                    r.meanMillis(), 1000 / r.meanMillis()));
+        }
+    }
+
+    /**
+     * Loads a generated database and runs every query on it.
+     *
+     * @return the results, in the order of {@link #QUERIES}
+     */
+    public static List<Result> runAll(File catalogFile, int runs) throws Exception {
+        Database.getCatalog().loadSchema(catalogFile.getPath());
+        File costsFile = CostCalibrator.getCostsFile(catalogFile);
+        if (costsFile.exists())
+            CostCalibrator.load(costsFile);
+        TableStats.computeStatistics();
+        Parser parser = new Parser();
+        ArrayList<Result> results = new ArrayList<Result>();
+        for (String[] q : QUERIES)
+            results.add(run(parser, q[0], q[1], runs));
+        return results;
+    }
+
+    static final String usage = "Usage: ssb generate dir [scale]\n"
+            + "       ssb run catalogFile [runs [resultsFile]]";
+
+    public static void main(String[] args) throws Exception {
+        if (args.length >= 2 && args[0].equals("generate") && args.length <= 3) {
+            double scale = args.length > 2 ? Double.parseDouble(args[2]) : 1.0;
+            File catalog = generate(new File(args[1]), scale);
+            System.out.println("Generated scale " + scale + " tables; catalog is " + catalog);
+        } else if (args.length >= 2 && args[0].equals("run") && args.length <= 4) {
+            int runs = args.length > 2 ? Integer.parseInt(args[2]) : 10;
+            List<Result> results = runAll(new File(args[1]), runs);
+            writeResults(results, System.out);
+            if (args.length > 3) {
+                PrintStream out = new PrintStream(new FileOutputStream(args[3]));
+                try {
+                    writeResults(results, out);
+                } finally {
+                    out.close();
+                }
+            }
+        } else {
+            System.out.println(usage);
+            System.exit(0);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package simpledb;
+
+import java.util.*;
+
+/**
+ * StatementCache keeps the optimized plans of recently run queries, so that
+ * a query that differs from an earlier one only in its constants is neither
+ * parsed nor optimized again. Queries are looked up by their text with the
+ * constants taken out (see {@link #normalize}); the cached
+ * {@link LogicalPlan} has its joins in the order the optimizer chose, and is
+ * {@link LogicalPlan#bind bound} to the constants of each query that uses
+ * it. A plan is dropped once the tables or indexes of the database change,
+ * or the statistics of one of its tables are replaced, since a different
+ * plan may then be better. The cache holds a bounded number of plans,
+ * dropping the least recently used one when it is full.
+ */
+public class StatementCache {
+
+    /** Number of plans a cache holds unless specified otherwise. */
+    public static final int DEFAULT_CAPACITY = 128;
+
+    private static class Entry {
+        LogicalPlan plan;
+        long catalogVersion;
+        // statistics of each table of the plan when it was made
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+    }
+
+    private final LinkedHashMap<String, Entry> entries;
+    private int hits = 0, misses = 0;
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param capacity
+     *            the largest number of plans to keep
+     */
+    public StatementCache(final int capacity) {
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Takes the constants out of a SQL statement: each string literal is
+     * replaced by '?' and each number by ?, and runs of white space and a
+     * trailing semicolon are dropped, so that statements that differ only
+     * in constants or spacing have the same normalized text.
+     *
+     * @param sql
+     *            the statement
+     * @param literals
+     *            a list the constants are added to, in the order they
+     *            appear, without quotes
+     * @return the normalized statement
+     */
+    public static String normalize(String sql, List<String> literals) {
+        StringBuilder sb = new StringBuilder();
+        int n = sql.length();
+        int i = 0;
+        while (i < n) {
+            char c = sql.charAt(i);
+            if (c == '\'') {
+                StringBuilder value = new StringBuilder();
+                i++;
+                while (i < n) {
+                    if (sql.charAt(i) == '\'') {
+                        // a doubled quote stands for a quote
+                        if (i + 1 < n && sql.charAt(i + 1) == '\'') {
+                            value.append('\'');
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    value.append(sql.charAt(i++));
+                }
+                i++;
+                literals.add(value.toString());
+                sb.append("'?'");
+            } else if (Character.isDigit(c) && !continuesName(sb)) {
+                int start = i;
+                while (i < n && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.'))
+                    i++;
+                literals.add(sql.substring(start, i));
+                sb.append('?');
+            } else if (Character.isWhitespace(c)) {
+                if (sb.length() > 0 && sb.charAt(sb.length() - 1) != ' ')
+                    sb.append(' ');
+                i++;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        int end = sb.length();
+        while (end > 0 && (sb.charAt(end - 1) == ' ' || sb.charAt(end - 1) == ';'))
+            end--;
+        sb.setLength(end);
+        return sb.toString();
+    }
+
+    /** @return true if a digit after sb is part of a name, like t1 */
+    static boolean continuesName(StringBuilder sb) {
+        if (sb.length() == 0)
+            return false;
+        char last = sb.charAt(sb.length() - 1);
+        return Character.isLetterOrDigit(last) || last == '_';
+    }
+
+    /**
+     * Looks up the plan of a normalized statement.
+     *
+     * @param key
+     *            the normalized statement
+     * @param literals
+     *            the constants of the statement
+     * @return a plan bound to the specified constants, or null if there is
+     *         no plan for the statement that is still up to date
+     */
+    public synchronized LogicalPlan get(String key, List<String> literals) {
+        Entry e = entries.get(key);
+        if (e != null && !isCurrent(e)) {
+            entries.remove(key);
+            e = null;
+        }
+        if (e == null) {
+            misses++;
+            return null;
+        }
+        try {
+            LogicalPlan lp = e.plan.bind(literals);
+            hits++;
+            return lp;
+        } catch (ParsingException ex) {
+            misses++;
+            return null;
+        }
+    }
+
+    /** @return true if nothing the plan of e was made from has changed */
+    private static boolean isCurrent(Entry e) {
+        if (e.catalogVersion != Database.getCatalog().getVersion())
+            return false;
+        for (Map.Entry<String, TableStats> s : e.stats.entrySet()) {
+            if (TableStats.getTableStats(s.getKey()) != s.getValue())
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the plan of a statement to the cache. Plans whose filters do not
+     * have the constants of the statement, in order, cannot be bound to
+     * other constants, and are not added.
+     *
+     * @param key
+     *            the normalized statement
+     * @param literals
+     *            the constants of the statement
+     * @param lp
+     *            the plan of the statement, after {@link LogicalPlan#physicalPlan}
+     *            ordered its joins
+     * @return true if the plan was added
+     */
+    public synchronized boolean put(String key, List<String> literals, LogicalPlan lp) {
+        Vector<LogicalFilterNode> filters = lp.getFilters();
+        if (lp.hasSubqueries() || filters.size() != literals.size())
+            return false;
+        for (int i = 0; i < filters.size(); i++) {
+            if (!filters.get(i).c.equals(literals.get(i)))
+                return false;
+        }
+        Entry e = new Entry();
+        e.plan = lp;
+        e.catalogVersion = Database.getCatalog().getVersion();
+        for (int tableid : lp.getTableAliasToIdMapping().values()) {
+            String name = Database.getCatalog().getTableName(tableid);
+            e.stats.put(name, TableStats.getTableStats(name));
+        }
+        entries.put(key, e);
+        return true;
+    }
+
+    /** Drops every plan. */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /** @return the number of plans in the cache */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /** @return the number of lookups that found a plan */
+    public synchronized int hits() {
+        return hits;
+    }
+
+    /** @return the number of lookups that did not find a plan */
+    public synchronized int misses() {
+        return misses;
+    }
+}
@@ -48,7 +48,6 @@ public class StringAggregator implements Aggregator {
      */
     public void mergeTupleIntoGroup(Tuple tup) {
         // some code goes here
-    	tupleList = new ArrayList<Tuple>();
 		Field key = tup.getField(gbField);
 		int value = 0;
 		aType = tup.getField(aField).getType();
@@ -77,32 +76,6 @@ public class StringAggregator implements Aggregator {
 			fieldHash.put(key, value);
 			countHash.put(key, 1);
 		}
-    	Object[] keyArray = (Object[]) fieldHash.keySet().toArray();
-    	for(int i=0; i<keyArray.length; i++) {
-    		Field keyItem = (Field) keyArray[i];
-    		
-    		Type[] typeArray = new Type[2];
-    		typeArray[gbField] = gbFieldType;
-    		typeArray[aField] = Type.INT_TYPE;
-    		TupleDesc td = new TupleDesc(typeArray);
-    		
-    		Tuple tuple = new Tuple(td);
-    		tuple.setField(gbField, keyItem);
-    		IntField intField = null;
-    		if (agOperator == Op.AVG) {
-    			int val = fieldHash.get(keyItem);
-    			int divisor = countHash.get(keyItem);
-    			val = val/divisor;
-
-        		intField = new IntField(val);
-    		} else if (agOperator == Op.COUNT) {
-    			intField = new IntField(countHash.get(keyItem));
-    		} else {
-    			intField = new IntField(fieldHash.get(keyItem));
-    		}
-    		tuple.setField(aField, intField);
-    		tupleList.add(tuple);
-    	}
     }
 
     /**
@@ -115,8 +88,25 @@ public class StringAggregator implements Aggregator {
      */
     public DbIterator iterator() {
         // some code goes here
+    	// the results are only built here, so that merging a tuple takes
+    	// constant time however many groups there are
     	Type[] tpArray = {gbFieldType, Type.INT_TYPE};
     	TupleDesc td = new TupleDesc(tpArray);
+    	tupleList = new ArrayList<Tuple>();
+    	for (Field keyItem : fieldHash.keySet()) {
+    		Tuple tuple = new Tuple(td);
+    		tuple.setField(0, keyItem);
+    		IntField intField = null;
+    		if (agOperator == Op.AVG) {
+    			intField = new IntField(fieldHash.get(keyItem) / countHash.get(keyItem));
+    		} else if (agOperator == Op.COUNT) {
+    			intField = new IntField(countHash.get(keyItem));
+    		} else {
+    			intField = new IntField(fieldHash.get(keyItem));
+    		}
+    		tuple.setField(1, intField);
+    		tupleList.add(tuple);
+    	}
         return new TupleIterator(td, tupleList);
     }
 
@@ -0,0 +1,115 @@
+package simpledb;
+
+import java.io.Serializable;
+
+/**
+ * A histogram over the values of one string column, kept as an
+ * {@link IntHistogram} over the first {@link #PREFIX_LEN} characters of each
+ * string. Strings that share a prefix are told apart using the number of
+ * distinct strings in the column, which is assumed to be spread evenly over
+ * the distinct prefixes.
+ */
+public class StringHistogram implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Number of leading characters of a string the histogram is kept on. */
+    public static final int PREFIX_LEN = 4;
+
+    /** Selectivity assumed for LIKE, which matches substrings. */
+    static final double LIKE_SELECTIVITY = 0.1;
+
+    IntHistogram hist;
+    // expected number of distinct strings with each distinct prefix
+    double stringsPerPrefix;
+
+    /**
+     * Creates a histogram of the first n prefix codes in the specified
+     * array, which is sorted in place.
+     *
+     * @param buckets
+     *            the largest number of buckets to use
+     * @param prefixes
+     *            the {@link #prefixCode(String) prefix codes} of the column
+     * @param n
+     *            the number of codes in the array that are used
+     * @param distinctValues
+     *            the (estimated) number of distinct strings in the column
+     */
+    public StringHistogram(int buckets, int[] prefixes, int n, double distinctValues) {
+        hist = new IntHistogram(buckets, prefixes, n);
+        stringsPerPrefix = Math.max(1.0, distinctValues / Math.max(1, hist.numDistinct()));
+    }
+
+    /**
+     * @return an int that orders like the first PREFIX_LEN characters of s,
+     *         with 7 bits per character
+     */
+    public static int prefixCode(String s) {
+        int code = 0;
+        for (int i = 0; i < PREFIX_LEN; i++) {
+            int c = i < s.length() ? Math.min(s.charAt(i), 127) : 0;
+            code = (code << 7) | c;
+        }
+        return code;
+    }
+
+    /**
+     * Estimate the selectivity of a particular predicate and operand on this
+     * column.
+     *
+     * @param op
+     *            Operator
+     * @param s
+     *            Value
+     * @return Predicted selectivity of this particular operator and value
+     */
+    public double estimateSelectivity(Predicate.Op op, String s) {
+        if (op == Predicate.Op.LIKE)
+            return LIKE_SELECTIVITY;
+        int code = prefixCode(s);
+        double samePrefix = hist.estimateSelectivity(Predicate.Op.EQUALS, code);
+        double equal = samePrefix / stringsPerPrefix;
+        // short strings are their own prefix and come before the other
+        // strings that share it; longer ones are put in the middle
+        double less = hist.estimateSelectivity(Predicate.Op.LESS_THAN, code);
+        if (s.length() > PREFIX_LEN)
+            less += (samePrefix - equal) / 2;
+        switch (op) {
+        case EQUALS:
+            return equal;
+        case NOT_EQUALS:
+            return 1.0 - equal;
+        case LESS_THAN:
+            return less;
+        case LESS_THAN_OR_EQ:
+            return less + equal;
+        case GREATER_THAN:
+            return Math.max(0.0, 1.0 - less - equal);
+        default:
+            return Math.max(0.0, 1.0 - less);
+        }
+    }
+
+    /** Records that s was added to the column. */
+    public void addValue(String s) {
+        hist.addValue(prefixCode(s));
+    }
+
+    /** Records that s was removed from the column. */
+    public void removeValue(String s) {
+        hist.removeValue(prefixCode(s));
+    }
+
+    /** @return the number of values in the column */
+    public int numValues() {
+        return hist.numValues();
+    }
+
+    /**
+     * @return A string describing this histogram, for debugging purposes
+     */
+    public String toString() {
+        return hist.toString();
+    }
+}
@@ -0,0 +1,62 @@
+package simpledb;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * StripedCounter is a counter that many threads can add to at once without
+ * contending for it. Each thread adds to one of several cells, chosen by its
+ * id, and the value of the counter is the sum of the cells; reading it is
+ * slower than adding to it, which suits counters that are updated on every
+ * page access and read rarely.
+ */
+public class StripedCounter {
+
+    /** Number of cells of each counter, a power of two. */
+    static final int STRIPES = stripes();
+
+    // cells are this many longs apart, so that threads adding to different
+    // cells do not share a cache line
+    private static final int PAD = 8;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * PAD);
+
+    private static int stripes() {
+        int n = 1;
+        while (n < Runtime.getRuntime().availableProcessors() && n < 64)
+            n <<= 1;
+        return n;
+    }
+
+    /** @return the stripe the calling thread adds to */
+    static int stripe() {
+        return (int) (Thread.currentThread().getId() & (STRIPES - 1));
+    }
+
+    /** Adds n to the counter. */
+    public void add(long n) {
+        cells.addAndGet(stripe() * PAD, n);
+    }
+
+    /** Adds one to the counter. */
+    public void increment() {
+        add(1);
+    }
+
+    /** @return the value of the counter */
+    public long get() {
+        long sum = 0;
+        for (int i = 0; i < STRIPES; i++)
+            sum += cells.get(i * PAD);
+        return sum;
+    }
+
+    /** Sets the counter to zero. */
+    public void reset() {
+        for (int i = 0; i < STRIPES; i++)
+            cells.set(i * PAD, 0);
+    }
+
+    public String toString() {
+        return Long.toString(get());
+    }
+}
@@ -0,0 +1,141 @@
+package simpledb;
+
+/**
+ * TableIoStats counts how the pages of one table were accessed: requests
+ * the BufferPool answered from memory (hits) or by reading the page
+ * (misses), pages it evicted, and dirty pages it wrote back, along with the
+ * pages, bytes and time the table's file spent reading and writing.
+ *
+ * @see BufferPoolMetrics
+ */
+public class TableIoStats implements TableIoStatsMBean {
+
+    private final int tableId;
+
+    final StripedCounter hits = new StripedCounter();
+    final StripedCounter misses = new StripedCounter();
+    final StripedCounter evictions = new StripedCounter();
+    final StripedCounter dirtyFlushes = new StripedCounter();
+    final StripedCounter pagesRead = new StripedCounter();
+    final StripedCounter pagesWritten = new StripedCounter();
+    final StripedCounter bytesRead = new StripedCounter();
+    final StripedCounter bytesWritten = new StripedCounter();
+    private final LatencyHistogram readLatency = new LatencyHistogram();
+    private final LatencyHistogram writeLatency = new LatencyHistogram();
+
+    TableIoStats(int tableId) {
+        this.tableId = tableId;
+    }
+
+    /** Records that the file read a page of the specified size. */
+    void recordRead(long nanos, int bytes) {
+        pagesRead.increment();
+        bytesRead.add(bytes);
+        readLatency.record(nanos);
+    }
+
+    /** Records that the file wrote a page of the specified size. */
+    void recordWrite(long nanos, int bytes) {
+        pagesWritten.increment();
+        bytesWritten.add(bytes);
+        writeLatency.record(nanos);
+    }
+
+    public int getTableId() {
+        return tableId;
+    }
+
+    /** @return the name of the table, or its id if it is not in the catalog */
+    public String getTableName() {
+        try {
+            return Database.getCatalog().getTableName(tableId);
+        } catch (RuntimeException e) {
+            // the catalog may have been cleared since
+            return Integer.toString(tableId);
+        }
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /** @return the fraction of page requests answered from memory, or 0 if there were none */
+    public double getHitRatio() {
+        long h = hits.get(), m = misses.get();
+        return h + m == 0 ? 0 : (double) h / (h + m);
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public long getDirtyFlushes() {
+        return dirtyFlushes.get();
+    }
+
+    public long getPagesRead() {
+        return pagesRead.get();
+    }
+
+    public long getPagesWritten() {
+        return pagesWritten.get();
+    }
+
+    public long getBytesRead() {
+        return bytesRead.get();
+    }
+
+    public long getBytesWritten() {
+        return bytesWritten.get();
+    }
+
+    /** @return the time the file took to read each page */
+    public LatencyHistogram getReadLatency() {
+        return readLatency;
+    }
+
+    /** @return the time the file took to write each page */
+    public LatencyHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    public double getMeanReadMicros() {
+        return readLatency.getMeanNanos() / 1000;
+    }
+
+    public double getP99ReadMicros() {
+        return readLatency.getPercentileNanos(0.99) / 1000.0;
+    }
+
+    public double getMeanWriteMicros() {
+        return writeLatency.getMeanNanos() / 1000;
+    }
+
+    public double getP99WriteMicros() {
+        return writeLatency.getPercentileNanos(0.99) / 1000.0;
+    }
+
+    public void reset() {
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+        dirtyFlushes.reset();
+        pagesRead.reset();
+        pagesWritten.reset();
+        bytesRead.reset();
+        bytesWritten.reset();
+        readLatency.reset();
+        writeLatency.reset();
+    }
+
+    public String toString() {
+        return String.format("%s: %d hits, %d misses (%.1f%% hit), %d evictions, %d dirty flushes,"
+                + " %d pages read (%s), %d pages written (%s)", getTableName(), getHits(),
+                getMisses(), 100 * getHitRatio(), getEvictions(), getDirtyFlushes(),
+                getPagesRead(), readLatency, getPagesWritten(), writeLatency);
+    }
+}
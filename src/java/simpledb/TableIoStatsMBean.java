@@ -0,0 +1,42 @@
+package simpledb;
+
+/**
+ * The attributes of the buffer pool and I/O statistics of a table that are
+ * exported through JMX.
+ *
+ * @see TableIoStats
+ */
+public interface TableIoStatsMBean {
+
+    public int getTableId();
+
+    public String getTableName();
+
+    public long getHits();
+
+    public long getMisses();
+
+    public double getHitRatio();
+
+    public long getEvictions();
+
+    public long getDirtyFlushes();
+
+    public long getPagesRead();
+
+    public long getPagesWritten();
+
+    public long getBytesRead();
+
+    public long getBytesWritten();
+
+    public double getMeanReadMicros();
+
+    public double getP99ReadMicros();
+
+    public double getMeanWriteMicros();
+
+    public double getP99WriteMicros();
+
+    public void reset();
+}
@@ -1,22 +1,38 @@
 package simpledb;
 
+import java.io.*;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.Random;
+import java.util.concurrent.*;
+import java.util.zip.CRC32;
 
 /**
  * TableStats represents statistics (e.g., histograms) about base tables in a
  * query. 
  * 
  * This class is not needed in implementing proj1 and proj2.
+ *
+ * @see IntHistogram
+ * @see StringHistogram
+ * @see HyperLogLog
  */
-public class TableStats {
+public class TableStats implements Serializable {
 
     private static final ConcurrentHashMap<String, TableStats> statsMap = new ConcurrentHashMap<String, TableStats>();
 
     static final int IOCOSTPERPAGE = 1000;
 
+    /**
+     * Fraction of the tuples of a table that may be inserted or deleted
+     * before its statistics are recomputed in the background.
+     */
+    private static volatile double stalenessThreshold = 0.2;
+
+    private static ExecutorService refresher;
+
     public static TableStats getTableStats(String tablename) {
         return statsMap.get(tablename);
     }
@@ -47,18 +63,158 @@ public class TableStats {
         return statsMap;
     }
 
+    /**
+     * Sets the fraction of the tuples of a table that may be inserted or
+     * deleted before its statistics are recomputed.
+     */
+    public static void setStalenessThreshold(double threshold) {
+        stalenessThreshold = threshold;
+    }
+
+    /**
+     * Updates the statistics of the specified table, if it has any, for a
+     * tuple that was inserted into it.
+     * @see BufferPool#insertTuple(TransactionId, int, Tuple)
+     */
+    public static void tupleInserted(int tableid, Tuple t) {
+        TableStats s = getTableStats(Database.getCatalog().getTableName(tableid));
+        if (s != null)
+            s.addTuple(t);
+    }
+
+    /**
+     * Updates the statistics of the specified table, if it has any, for a
+     * tuple that was deleted from it.
+     * @see BufferPool#deleteTuple(TransactionId, Tuple)
+     */
+    public static void tupleDeleted(int tableid, Tuple t) {
+        TableStats s = getTableStats(Database.getCatalog().getTableName(tableid));
+        if (s != null)
+            s.removeTuple(t);
+    }
+
+    /** @return the thread statistics are recomputed on in the background */
+    private static synchronized ExecutorService getRefresher() {
+        if (refresher == null) {
+            refresher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "TableStats refresher");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return refresher;
+    }
+
     public static void computeStatistics() {
-        Iterator<Integer> tableIt = Database.getCatalog().tableIdIterator();
+        computeStatistics(null, 1.0);
+    }
+
+    /**
+     * @return the file the statistics of the tables of the specified catalog
+     *         file are kept in, next to it
+     */
+    public static File getStatsFile(File catalogFile) {
+        return new File(catalogFile.getPath() + ".stats");
+    }
+
+    /**
+     * Computes the statistics of every table in the Catalog, several tables
+     * at a time on a pool of threads.
+     * <p>
+     * If statsFile is not null, the statistics of tables whose files have
+     * the same number of pages, length and contents as when their statistics
+     * were computed are loaded from it rather than recomputed,
+     * and the statistics of all tables are then written back to it.
+     * 
+     * @param statsFile
+     *            the file statistics are kept in between runs, or null
+     * @param sampleRate
+     *            the fraction of each table to compute statistics from
+     * @see #TableStats(int, int, double)
+     */
+    public static void computeStatistics(File statsFile, final double sampleRate) {
+        HashMap<String, TableStats> saved = statsFile == null ? new HashMap<String, TableStats>()
+                : readStatsFile(statsFile);
 
         System.out.println("Computing table stats.");
-        while (tableIt.hasNext()) {
-            int tableid = tableIt.next();
-            TableStats s = new TableStats(tableid, IOCOSTPERPAGE);
-            setTableStats(Database.getCatalog().getTableName(tableid), s);
+        ExecutorService pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        HashMap<String, Future<TableStats>> computed = new HashMap<String, Future<TableStats>>();
+        try {
+            Iterator<Integer> tableIt = Database.getCatalog().tableIdIterator();
+            while (tableIt.hasNext()) {
+                final int tableid = tableIt.next();
+                String name = Database.getCatalog().getTableName(tableid);
+                DbFile file = Database.getCatalog().getDbFile(tableid);
+                TableStats s = saved.get(name);
+                long[] version = s == null ? null : fileVersion(file);
+                if (version != null && s.numPages == numPages(file) && s.td.equals(file.getTupleDesc())
+                        && Arrays.equals(s.fileVersion, version)) {
+                    s.tableid = tableid;
+                    s.ioCostPerPage = CostCalibrator.ioCostPerPage();
+                    setTableStats(name, s);
+                    continue;
+                }
+                computed.put(name, pool.submit(new Callable<TableStats>() {
+                    public TableStats call() {
+                        return new TableStats(tableid, CostCalibrator.ioCostPerPage(), sampleRate);
+                    }
+                }));
+            }
+            for (Map.Entry<String, Future<TableStats>> e : computed.entrySet())
+                setTableStats(e.getKey(), e.getValue().get());
+        } catch (InterruptedException e) {
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            pool.shutdown();
         }
+        if (statsFile != null)
+            writeStatsFile(statsFile, new HashMap<String, TableStats>(statsMap));
         System.out.println("Done.");
     }
 
+    /**
+     * @return the statistics saved in the specified file, by table name, or
+     *         an empty map if it is missing or unreadable
+     */
+    @SuppressWarnings("unchecked")
+    static HashMap<String, TableStats> readStatsFile(File statsFile) {
+        if (!statsFile.exists())
+            return new HashMap<String, TableStats>();
+        try {
+            ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(
+                    new FileInputStream(statsFile)));
+            try {
+                return (HashMap<String, TableStats>) in.readObject();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        } catch (ClassNotFoundException e) {
+            e.printStackTrace();
+        }
+        return new HashMap<String, TableStats>();
+    }
+
+    /** Saves the specified statistics, by table name, in the specified file. */
+    static void writeStatsFile(File statsFile, HashMap<String, TableStats> stats) {
+        try {
+            ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(
+                    new FileOutputStream(statsFile)));
+            try {
+                out.writeObject(stats);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
     /**
      * Number of bins for the histogram. Feel free to increase this value over
      * 100, though our tests assume that you have at least 100 bins in your
@@ -66,9 +222,39 @@ public class TableStats {
      */
     static final int NUM_HIST_BINS = 100;
 
+    private static final long serialVersionUID = 1L;
+
+    int tableid;
+    double sampleRate;
+    int ioCostPerPage;
+    TupleDesc td;
+    int numPages;
+    // length and checksum of the table's files when computed
+    long[] fileVersion;
+    int ntups;
+    // histogram of each int field, or of each string field
+    IntHistogram[] intHists;
+    StringHistogram[] stringHists;
+    HyperLogLog[] sketches;
+    double[] distinct;
+    // tuples the statistics were computed from, and tuples inserted and
+    // deleted since then
+    int builtTuples;
+    int modifications;
+    transient Future<TableStats> refresh;
+
+    // values of each field in the tuples sampled so far, while computing,
+    // and the hash codes of the fields if only some pages are read
+    private transient int[][] values;
+    private transient int[][] hashes;
+    private transient int sampled;
+
     /**
      * Create a new TableStats object, that keeps track of statistics on each
-     * column of a table
+     * column of a table: an equi-depth histogram of its values (of the
+     * prefixes of its values, for strings) and a HyperLogLog sketch of its
+     * number of distinct values. They are all computed in a single scan of
+     * the table.
      * 
      * @param tableid
      *            The table over which to compute statistics
@@ -77,14 +263,288 @@ public class TableStats {
      *            sequential-scan IO and disk seeks.
      */
     public TableStats(int tableid, int ioCostPerPage) {
-        // For this function, you'll have to get the
-        // DbFile for the table in question,
-        // then scan through its tuples and calculate
-        // the values that you need.
-        // You should try to do this reasonably efficiently, but you don't
-        // necessarily have to (for example) do everything
-        // in a single scan of the table.
-        // some code goes here
+        this(tableid, ioCostPerPage, 1.0);
+    }
+
+    /**
+     * Create a new TableStats object from a sample of the tuples of a table.
+     * For a HeapFile, only a random sample of its pages is read, and the
+     * number of tuples is extrapolated from them; other files are read in
+     * full, but only a random sample of their tuples is kept for the
+     * histograms. When only some pages are read, the number of distinct
+     * values of each field is estimated from how many values occur once and
+     * twice in the sample, with the bias-corrected Chao1 estimator.
+     * 
+     * @param sampleRate
+     *            the fraction of the pages (or tuples) of the table to
+     *            sample; 1.0 or more reads the whole table
+     * @see #TableStats(int, int)
+     */
+    public TableStats(int tableid, int ioCostPerPage, double sampleRate) {
+        this.tableid = tableid;
+        this.sampleRate = sampleRate;
+        this.ioCostPerPage = ioCostPerPage;
+        DbFile file = Database.getCatalog().getDbFile(tableid);
+        td = file.getTupleDesc();
+        numPages = numPages(file);
+        fileVersion = fileVersion(file);
+        int n = td.numFields();
+        values = new int[n][64];
+        sketches = new HyperLogLog[n];
+        for (int i = 0; i < n; i++)
+            sketches[i] = new HyperLogLog();
+
+        Random rand = new Random(tableid);
+        TransactionId tid = new TransactionId();
+        boolean samplePages = sampleRate < 1.0 && file instanceof HeapFile;
+        if (samplePages)
+            hashes = new int[n][64];
+        try {
+            if (samplePages) {
+                int[] pages = samplePages(numPages, sampleRate, rand);
+                for (int p : pages) {
+                    HeapPage page = (HeapPage) Database.getBufferPool().getPage(tid,
+                            new HeapPageId(tableid, p), Permissions.READ_ONLY);
+                    if (page == null)
+                        continue;
+                    Iterator<Tuple> it = page.iterator();
+                    while (it.hasNext())
+                        sample(it.next());
+                }
+                ntups = pages.length == 0 ? 0
+                        : (int) Math.round((double) sampled * numPages / pages.length);
+            } else {
+                DbFileIterator it = file.iterator(tid);
+                it.open();
+                try {
+                    while (it.hasNext()) {
+                        Tuple t = it.next();
+                        if (sampleRate >= 1.0 || rand.nextDouble() < sampleRate) {
+                            sample(t);
+                        } else {
+                            for (int i = 0; i < n; i++)
+                                sketches[i].add(t.getField(i));
+                        }
+                        ntups++;
+                    }
+                } finally {
+                    it.close();
+                }
+            }
+        } catch (DbException e) {
+            throw new RuntimeException(e);
+        } catch (TransactionAbortedException e) {
+            throw new RuntimeException(e);
+        }
+
+        intHists = new IntHistogram[n];
+        stringHists = new StringHistogram[n];
+        distinct = new double[n];
+        for (int i = 0; i < n; i++) {
+            // unless only some pages were read, the sketch saw every tuple
+            double d = samplePages ? estimateDistinct(hashes[i], sampled) : sketches[i].estimate();
+            distinct[i] = Math.min(ntups, d);
+            if (td.getFieldType(i) == Type.INT_TYPE)
+                intHists[i] = new IntHistogram(NUM_HIST_BINS, values[i], sampled);
+            else
+                stringHists[i] = new StringHistogram(NUM_HIST_BINS, values[i], sampled, distinct[i]);
+            values[i] = null;
+        }
+        values = null;
+        hashes = null;
+        builtTuples = ntups;
+    }
+
+    /**
+     * Updates these statistics for a tuple that was inserted into the table:
+     * the tuple count, the histograms, and the distinct value sketches.
+     */
+    public synchronized void addTuple(Tuple t) {
+        ntups++;
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (intHists[i] != null)
+                intHists[i].addValue(((IntField) f).getValue());
+            else
+                stringHists[i].addValue(((StringField) f).getValue());
+            if (sketches[i].add(f))
+                distinct[i] = Math.max(distinct[i], Math.min(ntups, sketches[i].estimate()));
+        }
+        modified();
+    }
+
+    /**
+     * Updates these statistics for a tuple that was deleted from the table.
+     * Distinct value counts are not lowered, since the sketches cannot tell
+     * whether the last copy of a value was deleted.
+     */
+    public synchronized void removeTuple(Tuple t) {
+        ntups = Math.max(0, ntups - 1);
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = t.getField(i);
+            if (intHists[i] != null)
+                intHists[i].removeValue(((IntField) f).getValue());
+            else
+                stringHists[i].removeValue(((StringField) f).getValue());
+        }
+        modified();
+    }
+
+    /**
+     * Counts a modification of the table, and once more than the staleness
+     * threshold of its tuples have changed, recomputes its statistics in the
+     * background and replaces these with them, unless they were replaced in
+     * the meantime. A refresh that fails is tried again on the next
+     * modification.
+     */
+    private void modified() {
+        modifications++;
+        if (refresh != null || modifications <= stalenessThreshold * builtTuples)
+            return;
+        final String name = Database.getCatalog().getTableName(tableid);
+        if (getTableStats(name) != this)
+            return;
+        final int started = modifications;
+        refresh = getRefresher().submit(new Callable<TableStats>() {
+            public TableStats call() {
+                try {
+                    TableStats fresh = new TableStats(tableid, ioCostPerPage, sampleRate);
+                    synchronized (TableStats.this) {
+                        // the scan may have missed changes made while it
+                        // ran; count them toward the next refresh
+                        fresh.modifications = modifications - started;
+                        statsMap.replace(name, TableStats.this, fresh);
+                    }
+                    return fresh;
+                } finally {
+                    synchronized (TableStats.this) {
+                        refresh = null;
+                    }
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the estimated number of distinct values in a table, given the
+     *         hash codes of the values in a sample of it, which are sorted
+     *         in place
+     */
+    private static double estimateDistinct(int[] hashes, int n) {
+        Arrays.sort(hashes, 0, n);
+        int d = 0, f1 = 0, f2 = 0;
+        for (int i = 0; i < n;) {
+            int j = i + 1;
+            while (j < n && hashes[j] == hashes[i])
+                j++;
+            d++;
+            if (j - i == 1)
+                f1++;
+            else if (j - i == 2)
+                f2++;
+            i = j;
+        }
+        return d + (double) f1 * (f1 - 1) / (2.0 * (f2 + 1));
+    }
+
+    /**
+     * @return the sorted page numbers of a random sample of the specified
+     *         fraction of numPages pages, with at least one page
+     */
+    private static int[] samplePages(int numPages, double sampleRate, Random rand) {
+        int[] pages = new int[numPages];
+        for (int i = 0; i < numPages; i++)
+            pages[i] = i;
+        int k = Math.min(numPages, Math.max(1, (int) Math.ceil(numPages * sampleRate)));
+        for (int i = 0; i < k; i++) {
+            int j = i + rand.nextInt(numPages - i);
+            int tmp = pages[i];
+            pages[i] = pages[j];
+            pages[j] = tmp;
+        }
+        int[] result = Arrays.copyOf(pages, k);
+        Arrays.sort(result);
+        return result;
+    }
+
+    /** Adds the values of the fields of t to the sample. */
+    private void sample(Tuple t) {
+        if (sampled == values[0].length) {
+            for (int i = 0; i < values.length; i++) {
+                values[i] = Arrays.copyOf(values[i], sampled * 2);
+                if (hashes != null)
+                    hashes[i] = Arrays.copyOf(hashes[i], sampled * 2);
+            }
+        }
+        for (int i = 0; i < values.length; i++) {
+            Field f = t.getField(i);
+            if (f.getType() == Type.INT_TYPE)
+                values[i][sampled] = ((IntField) f).getValue();
+            else
+                values[i][sampled] = StringHistogram.prefixCode(((StringField) f).getValue());
+            sketches[i].add(f);
+            if (hashes != null)
+                hashes[i][sampled] = f.hashCode();
+        }
+        sampled++;
+    }
+
+    /**
+     * @return the total length and a CRC32 checksum of the contents of the
+     *         files the specified table is stored in, zeros if unknown, or
+     *         null if they cannot be read
+     */
+    private static long[] fileVersion(DbFile file) {
+        File[] files;
+        if (file instanceof HeapFile)
+            files = new File[] { ((HeapFile) file).getFile() };
+        else if (file instanceof BTreeFile)
+            files = new File[] { ((BTreeFile) file).getFile() };
+        else if (file instanceof SlottedFile)
+            files = new File[] { ((SlottedFile) file).getFile() };
+        else if (file instanceof ColumnFile) {
+            files = new File[file.getTupleDesc().numFields()];
+            for (int i = 0; i < files.length; i++)
+                files[i] = ((ColumnFile) file).getColumnFile(i);
+        } else
+            files = new File[0];
+        long length = 0;
+        CRC32 crc = new CRC32();
+        byte[] buf = new byte[BufferPool.PAGE_SIZE];
+        for (File f : files) {
+            if (!f.exists())
+                continue;
+            length += f.length();
+            try {
+                InputStream in = new FileInputStream(f);
+                try {
+                    for (int n = in.read(buf); n >= 0; n = in.read(buf))
+                        crc.update(buf, 0, n);
+                } finally {
+                    in.close();
+                }
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return new long[] { length, crc.getValue() };
+    }
+
+    /** @return the number of pages the tuples of the specified file take up */
+    private static int numPages(DbFile file) {
+        if (file instanceof HeapFile)
+            return ((HeapFile) file).numPages();
+        if (file instanceof BTreeFile)
+            return ((BTreeFile) file).numPages();
+        if (file instanceof SlottedFile)
+            return ((SlottedFile) file).numPages();
+        if (file instanceof ColumnFile) {
+            int pages = 0;
+            for (int i = 0; i < file.getTupleDesc().numFields(); i++)
+                pages += ((ColumnFile) file).numPages(i);
+            return pages;
+        }
+        return 1;
     }
 
     /**
@@ -100,8 +560,7 @@ public class TableStats {
      * @return The estimated cost of scanning the table.
      */
     public double estimateScanCost() {
-        // some code goes here
-        return 0;
+        return (double) numPages * ioCostPerPage;
     }
 
     /**
@@ -114,8 +573,14 @@ public class TableStats {
      *         selectivityFactor
      */
     public int estimateTableCardinality(double selectivityFactor) {
-        // some code goes here
-        return 0;
+        return (int) Math.round(ntups * selectivityFactor);
+    }
+
+    /**
+     * @return the estimated number of distinct values of the specified field
+     */
+    public double numDistinct(int field) {
+        return distinct[field];
     }
 
     /**
@@ -126,11 +591,24 @@ public class TableStats {
      *        the operator in the predicate
      * The semantic of the method is that, given the table, and then given a
      * tuple, of which we do not know the value of the field, return the
-     * expected selectivity. You may estimate this value from the histograms.
+     * expected selectivity. This is estimated from the number of distinct
+     * values of the field: a value matches one of them, and is on average
+     * greater than half of the others.
      * */
     public double avgSelectivity(int field, Predicate.Op op) {
-        // some code goes here
-        return 1.0;
+        double equal = 1.0 / Math.max(1.0, distinct[field]);
+        switch (op) {
+        case EQUALS:
+        case LIKE:
+            return equal;
+        case NOT_EQUALS:
+            return 1.0 - equal;
+        case LESS_THAN:
+        case GREATER_THAN:
+            return (1.0 - equal) / 2;
+        default:
+            return (1.0 - equal) / 2 + equal;
+        }
     }
 
     /**
@@ -147,16 +625,16 @@ public class TableStats {
      *         predicate
      */
     public double estimateSelectivity(int field, Predicate.Op op, Field constant) {
-        // some code goes here
-        return 1.0;
+        if (intHists[field] != null)
+            return intHists[field].estimateSelectivity(op, ((IntField) constant).getValue());
+        return stringHists[field].estimateSelectivity(op, ((StringField) constant).getValue());
     }
 
     /**
      * return the total number of tuples in this table
      * */
     public int totalTuples() {
-        // some code goes here
-        return 0;
+        return ntups;
     }
 
 }
@@ -1,6 +1,7 @@
 package simpledb;
 
 import java.io.*;
+import java.text.ParseException;
 import java.util.ArrayList;
 import java.util.UUID;
 
@@ -153,5 +154,32 @@ public class Utility {
         }
         return out;
     }
-}
 
+    /**
+     * Writes the specified field in the fixed size format of its type.
+     * Strings are always written with {@link Type#STRING_LEN} characters,
+     * whatever the size the field was created with.
+     */
+    static void writeField(DataOutputStream dos, Field f) throws IOException {
+        if (f.getType() == Type.STRING_TYPE)
+            f = new StringField(((StringField) f).getValue(), Type.STRING_LEN);
+        f.serialize(dos);
+    }
+
+    /** Reads a field of the specified type written by writeField. */
+    static Field readField(DataInputStream dis, Type type) throws IOException {
+        try {
+            return type.parse(dis);
+        } catch (ParseException e) {
+            throw new IOException("unable to parse field: " + e.getMessage());
+        }
+    }
+
+    /** Pads the page written to dos so far with zeros up to the page size. */
+    static byte[] pad(ByteArrayOutputStream baos) {
+        byte[] data = new byte[BufferPool.PAGE_SIZE];
+        byte[] written = baos.toByteArray();
+        System.arraycopy(written, 0, data, 0, written.length);
+        return data;
+    }
+}
@@ -0,0 +1,41 @@
+package simpledb;
+
+import java.util.concurrent.*;
+
+/**
+ * WorkerPool holds the threads that parallel plans run their pipelines on,
+ * shared by all the {@link Exchange}s of all queries. Threads are created
+ * as they are needed and reused once idle, rather than capped: the
+ * producers of an exchange often feed another exchange, and a bounded pool
+ * could have every thread waiting for tuples that only a queued task would
+ * produce. How much a plan runs at once is instead set by the number of
+ * pipelines it is split into, see {@link LogicalPlan#setParallelism}.
+ */
+public class WorkerPool {
+
+    /** The number of pipelines parallel plans use unless told otherwise. */
+    public static final int DEFAULT_PARALLELISM = Runtime.getRuntime().availableProcessors();
+
+    private static ExecutorService workers;
+
+    /** @return the threads that parallel plans run on */
+    static synchronized ExecutorService getWorkers() {
+        if (workers == null) {
+            workers = Executors.newCachedThreadPool(new ThreadFactory() {
+                private int n = 0;
+
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "Worker " + n++);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+        return workers;
+    }
+
+    /** Runs a task on a worker thread. */
+    public static void execute(Runnable task) {
+        getWorkers().execute(task);
+    }
+}
@@ -0,0 +1,344 @@
+package simpledb;
+
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * WorkloadDriver stresses concurrent transactions: client threads each run
+ * transactions one after another against a table of (key, value) integer
+ * tuples with a {@link HashIndex} on the key, each transaction being one
+ * operation picked at random according to a mix of weights:
+ * <ul>
+ * <li>INSERT adds a tuple with a new key.</li>
+ * <li>DELETE looks up a random key and deletes the tuple holding it.</li>
+ * <li>SELECT looks up a random key.</li>
+ * <li>SCAN reads the whole table.</li>
+ * </ul>
+ * For each operation it counts the transactions that committed, that were
+ * aborted with a TransactionAbortedException, and that failed with a
+ * DbException (such as deleting a tuple another client just deleted), and
+ * records their latencies and the time their clients spent blocked or
+ * waiting on locks, as reported by the JVM's thread contention monitoring.
+ * <p>
+ * <code>workload [-threads n] [-seconds s] [-rows r] [-mix i,d,s,q]
+ * [-pages p] [-out resultsFile]</code> runs the driver against a fresh
+ * table in a temporary file, and prints the results as CSV.
+ */
+public class WorkloadDriver {
+
+    /** The operation of a transaction. */
+    public enum Operation {
+        INSERT, DELETE, SELECT, SCAN
+    }
+
+    /** The counts and latencies of the transactions of one operation. */
+    public static class OperationStats {
+        final StripedCounter commits = new StripedCounter();
+        final StripedCounter aborts = new StripedCounter();
+        final StripedCounter errors = new StripedCounter();
+        final StripedCounter lockWaitMillis = new StripedCounter();
+        final LatencyHistogram latency = new LatencyHistogram();
+
+        /** @return the number of transactions that committed */
+        public long getCommits() {
+            return commits.get();
+        }
+
+        /** @return the number of transactions aborted by a TransactionAbortedException */
+        public long getAborts() {
+            return aborts.get();
+        }
+
+        /** @return the number of transactions that failed with a DbException */
+        public long getErrors() {
+            return errors.get();
+        }
+
+        /** @return the number of transactions run */
+        public long getTransactions() {
+            return getCommits() + getAborts() + getErrors();
+        }
+
+        /** @return the time the transactions spent blocked or waiting on locks, in milliseconds */
+        public long getLockWaitMillis() {
+            return lockWaitMillis.get();
+        }
+
+        /** @return the latencies of the transactions, whatever their outcome */
+        public LatencyHistogram getLatency() {
+            return latency;
+        }
+    }
+
+    private final int tableId;
+    private final int threads;
+    private final int[] mix;
+    private final int totalWeight;
+    private final AtomicInteger nextKey;
+    private final OperationStats[] stats;
+    private final OperationStats total = new OperationStats();
+    private final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private volatile boolean running;
+    private long elapsedNanos;
+
+    /**
+     * Creates a driver for the specified table, whose first two fields are
+     * integers, the first of which is indexed and holds the keys 0 up to
+     * the specified number of tuples.
+     *
+     * @param mix
+     *            the relative weight of each {@link Operation}, in order
+     */
+    public WorkloadDriver(int tableId, int keys, int threads, int[] mix) {
+        if (mix.length != Operation.values().length)
+            throw new IllegalArgumentException("expected a weight for each of " + Arrays.toString(Operation.values()));
+        int sum = 0;
+        for (int w : mix) {
+            if (w < 0)
+                throw new IllegalArgumentException("negative weight in mix");
+            sum += w;
+        }
+        if (sum == 0)
+            throw new IllegalArgumentException("mix has no operations");
+        this.tableId = tableId;
+        this.threads = threads;
+        this.mix = mix.clone();
+        this.totalWeight = sum;
+        this.nextKey = new AtomicInteger(keys);
+        stats = new OperationStats[mix.length];
+        for (int i = 0; i < stats.length; i++)
+            stats[i] = new OperationStats();
+    }
+
+    /**
+     * Creates a table of (key, value) tuples with keys 0 up to the
+     * specified number, indexed on the key, in a temporary file, and adds
+     * it to the catalog.
+     *
+     * @return the table
+     */
+    public static HeapFile createTable(int rows) throws IOException, DbException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        Random rand = new Random(0);
+        for (int i = 0; i < rows; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, rand.nextInt(1 << 16))));
+        File f = File.createTempFile("workload", ".dat");
+        f.deleteOnExit();
+        HashIndex.getIndexFile(f, 0).deleteOnExit();
+        ZoneMap.getZoneFile(f).deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2, "workload"));
+        Database.getCatalog().addTable(hf, "workload_" + f.getName().replace(".dat", ""));
+        hf.addIndex(0);
+        return hf;
+    }
+
+    /** @return the operation the specified number below the total weight picks */
+    Operation pick(int n) {
+        for (int i = 0; i < mix.length; i++) {
+            if (n < mix[i])
+                return Operation.values()[i];
+            n -= mix[i];
+        }
+        throw new IllegalStateException();
+    }
+
+    /** @return a key that is or once was in the table */
+    private int randomKey(Random rand) {
+        return rand.nextInt(nextKey.get());
+    }
+
+    /** Runs an operation as a part of the specified transaction. */
+    private void execute(Operation op, TransactionId tid, Random rand)
+            throws DbException, TransactionAbortedException, IOException {
+        BufferPool bp = Database.getBufferPool();
+        switch (op) {
+        case INSERT:
+            Tuple t = new Tuple(Database.getCatalog().getTupleDesc(tableId));
+            t.setField(0, new IntField(nextKey.getAndIncrement()));
+            t.setField(1, new IntField(rand.nextInt(1 << 16)));
+            bp.insertTuple(tid, tableId, t);
+            break;
+        case DELETE:
+            IndexLookup victim = new IndexLookup(tid, tableId, null, 0, new IntField(randomKey(rand)));
+            victim.open();
+            if (victim.hasNext())
+                bp.deleteTuple(tid, victim.next());
+            victim.close();
+            break;
+        case SELECT:
+            drain(new IndexLookup(tid, tableId, null, 0, new IntField(randomKey(rand))));
+            break;
+        case SCAN:
+            drain(new SeqScan(tid, tableId, null));
+            break;
+        }
+    }
+
+    private static void drain(DbIterator it) throws DbException, TransactionAbortedException {
+        it.open();
+        while (it.hasNext())
+            it.next();
+        it.close();
+    }
+
+    /** @return the time the calling thread has been blocked or waiting, in milliseconds */
+    private long lockWaitMillis() {
+        if (!threadBean.isThreadContentionMonitoringEnabled())
+            return 0;
+        ThreadInfo info = threadBean.getThreadInfo(Thread.currentThread().getId());
+        return info.getBlockedTime() + info.getWaitedTime();
+    }
+
+    /** Runs transactions on the calling thread until the driver is stopped. */
+    private void client(long seed) {
+        Random rand = new Random(seed);
+        while (running) {
+            Operation op = pick(rand.nextInt(totalWeight));
+            OperationStats s = stats[op.ordinal()];
+            long waited = lockWaitMillis();
+            long start = System.nanoTime();
+            Transaction t = new Transaction();
+            t.start();
+            StripedCounter outcome;
+            try {
+                execute(op, t.getId(), rand);
+                t.commit();
+                outcome = s.commits;
+            } catch (TransactionAbortedException e) {
+                abort(t);
+                outcome = s.aborts;
+            } catch (DbException e) {
+                abort(t);
+                outcome = s.errors;
+            } catch (IOException e) {
+                abort(t);
+                outcome = s.errors;
+            }
+            long nanos = System.nanoTime() - start;
+            waited = lockWaitMillis() - waited;
+            outcome.increment();
+            s.latency.record(nanos);
+            s.lockWaitMillis.add(waited);
+            total.latency.record(nanos);
+            total.lockWaitMillis.add(waited);
+        }
+    }
+
+    private static void abort(Transaction t) {
+        try {
+            t.abort();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Runs the client threads for the specified time and waits for their
+     * last transactions to finish.
+     */
+    public void run(long millis) throws InterruptedException {
+        if (threadBean.isThreadContentionMonitoringSupported())
+            threadBean.setThreadContentionMonitoringEnabled(true);
+        running = true;
+        Thread[] clients = new Thread[threads];
+        for (int i = 0; i < threads; i++) {
+            final long seed = i;
+            clients[i] = new Thread(new Runnable() {
+                public void run() {
+                    client(seed);
+                }
+            }, "workload-client-" + i);
+        }
+        long start = System.nanoTime();
+        for (Thread c : clients)
+            c.start();
+        Thread.sleep(millis);
+        running = false;
+        for (Thread c : clients)
+            c.join();
+        elapsedNanos = System.nanoTime() - start;
+    }
+
+    /** @return the counts and latencies of the transactions of the specified operation */
+    public OperationStats getStats(Operation op) {
+        return stats[op.ordinal()];
+    }
+
+    /** Writes the results of the last run as CSV, one line per operation and one for all of them. */
+    public void writeResults(PrintStream out) {
+        out.println("operation,transactions,commits,aborts,errors,commits_per_s,abort_rate,"
+                + "p50_ms,p90_ms,p99_ms,mean_ms,lock_wait_ms");
+        long commits = 0, aborts = 0, errors = 0;
+        for (Operation op : Operation.values()) {
+            OperationStats s = getStats(op);
+            writeLine(out, op.name().toLowerCase(), s, s.getCommits(), s.getAborts(), s.getErrors());
+            commits += s.getCommits();
+            aborts += s.getAborts();
+            errors += s.getErrors();
+        }
+        writeLine(out, "all", total, commits, aborts, errors);
+    }
+
+    private void writeLine(PrintStream out, String name, OperationStats s, long commits, long aborts, long errors) {
+        long n = commits + aborts + errors;
+        LatencyHistogram h = s.getLatency();
+        out.println(String.format(Locale.US, "%s,%d,%d,%d,%d,%.1f,%.4f,%.3f,%.3f,%.3f,%.3f,%d", name, n,
+                commits, aborts, errors, commits / (elapsedNanos / 1e9), n == 0 ? 0.0 : (double) aborts / n,
+                h.getPercentileNanos(0.5) / 1e6, h.getPercentileNanos(0.9) / 1e6,
+                h.getPercentileNanos(0.99) / 1e6, h.getMeanNanos() / 1e6, s.getLockWaitMillis()));
+    }
+
+    static final String usage = "Usage: workload [-threads n] [-seconds s] [-rows r] [-mix insert,delete,select,scan]"
+            + " [-pages p] [-out resultsFile]";
+
+    public static void main(String[] args) throws Exception {
+        int threads = 4, seconds = 10, rows = 10000, pages = BufferPool.DEFAULT_PAGES;
+        int[] mix = { 25, 25, 45, 5 };
+        String out = null;
+        for (int i = 0; i < args.length; i += 2) {
+            if (i + 1 >= args.length) {
+                System.out.println(usage);
+                System.exit(0);
+            }
+            String v = args[i + 1];
+            if (args[i].equals("-threads"))
+                threads = Integer.parseInt(v);
+            else if (args[i].equals("-seconds"))
+                seconds = Integer.parseInt(v);
+            else if (args[i].equals("-rows"))
+                rows = Integer.parseInt(v);
+            else if (args[i].equals("-pages"))
+                pages = Integer.parseInt(v);
+            else if (args[i].equals("-out"))
+                out = v;
+            else if (args[i].equals("-mix")) {
+                String[] ws = v.split(",");
+                mix = new int[ws.length];
+                for (int j = 0; j < ws.length; j++)
+                    mix[j] = Integer.parseInt(ws[j]);
+            } else {
+                System.out.println(usage);
+                System.exit(0);
+            }
+        }
+
+        Database.resetBufferPool(pages);
+        HeapFile hf = createTable(rows);
+        WorkloadDriver driver = new WorkloadDriver(hf.getId(), rows, threads, mix);
+        driver.run(seconds * 1000L);
+        driver.writeResults(System.out);
+        if (out != null) {
+            PrintStream ps = new PrintStream(new FileOutputStream(out));
+            try {
+                driver.writeResults(ps);
+            } finally {
+                ps.close();
+            }
+        }
+    }
+}
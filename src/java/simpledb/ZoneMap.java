@@ -0,0 +1,310 @@
+package simpledb;
+
+import java.io.*;
+import java.util.*;
+
+/**
+ * ZoneMap keeps a summary of the smallest and largest value of each column
+ * on each page of a HeapFile, so that scans with a Predicate can skip pages
+ * that cannot contain a matching tuple. For string columns only the first
+ * {@link #PREFIX_LEN} characters of the smallest and largest value are kept.
+ * <p>
+ * The zone map of a file <tt>f</tt> is stored in the side file
+ * <tt>f.zm</tt>. It is loaded (or rebuilt, if it is missing or the heap file
+ * has changed since it was written) the first time a scan needs it, and once
+ * loaded is widened as tuples are inserted. Widened entries are kept in
+ * memory and written to the side file when the heap file is written, since
+ * the side file is only trusted if it was written after the heap file
+ * anyway. Pages that were changed before
+ * the zone map was loaded are marked as unknown, and deleting tuples does not
+ * narrow the ranges, so the summary stays conservative.
+ *
+ * @see HeapFile#iterator(TransactionId, Predicate[])
+ */
+public class ZoneMap {
+
+    /** Number of leading characters of a string kept in the page min/max. */
+    public static final int PREFIX_LEN = ColumnPage.ZONE_PREFIX_LEN;
+
+    private static final int MAGIC = 0x5a4d4150;
+    private static final int FILE_HEADER_SIZE = 20;
+
+    HeapFile heapFile;
+    TupleDesc td;
+    File zoneFile;
+    int entrySize;
+    // per page bounds of each column; null for pages with no tuples
+    ArrayList<Field[]> mins = new ArrayList<Field[]>();
+    ArrayList<Field[]> maxs = new ArrayList<Field[]>();
+    // pages whose contents are not summarized and which must always be read
+    BitSet unknown = new BitSet();
+    // pages whose entries changed since the side file was written
+    BitSet changed = new BitSet();
+
+    /**
+     * Creates the zone map of the specified file, and loads it from its side
+     * file or builds it from the pages of the file.
+     */
+    public ZoneMap(HeapFile f) throws IOException {
+        heapFile = f;
+        td = f.getTupleDesc();
+        zoneFile = getZoneFile(f.getFile());
+        entrySize = 1;
+        for (int i = 0; i < td.numFields(); i++)
+            entrySize += td.getFieldType(i) == Type.INT_TYPE ? 8 : 2 * (1 + PREFIX_LEN);
+        if (!load())
+            rebuild();
+    }
+
+    /** @return the side file holding the zone map of the specified heap file */
+    public static File getZoneFile(File dataFile) {
+        return new File(dataFile.getPath() + ".zm");
+    }
+
+    /** @return the number of pages summarized by this zone map */
+    public int numPages() {
+        return mins.size();
+    }
+
+    /**
+     * Reads the zone map from its side file.
+     * @return false if the side file is missing or out of date
+     */
+    private boolean load() throws IOException {
+        if (!zoneFile.exists())
+            return false;
+        DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(zoneFile)));
+        try {
+            if (dis.readInt() != MAGIC || dis.readLong() != heapFile.getFile().length()
+                    || dis.readLong() != heapFile.getFile().lastModified())
+                return false;
+            int numPages = (int) ((zoneFile.length() - FILE_HEADER_SIZE) / entrySize);
+            if (numPages != heapFile.numPages())
+                return false;
+            for (int p = 0; p < numPages; p++) {
+                byte state = dis.readByte();
+                boolean used = state != 0;
+                unknown.set(p, state == 2);
+                Field[] lo = new Field[td.numFields()];
+                Field[] hi = new Field[td.numFields()];
+                for (int i = 0; i < td.numFields(); i++) {
+                    lo[i] = readBound(dis, td.getFieldType(i));
+                    hi[i] = readBound(dis, td.getFieldType(i));
+                }
+                mins.add(used ? lo : null);
+                maxs.add(used ? hi : null);
+            }
+            return true;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            dis.close();
+        }
+    }
+
+    /**
+     * Recomputes the zone map from the pages of the heap file on disk and
+     * writes it to the side file.
+     */
+    public synchronized void rebuild() throws IOException {
+        mins.clear();
+        maxs.clear();
+        unknown.clear();
+        changed.clear();
+        int numPages = heapFile.numPages();
+        for (int p = 0; p < numPages; p++) {
+            mins.add(null);
+            maxs.add(null);
+            HeapPage page = (HeapPage) heapFile.readPage(new HeapPageId(heapFile.getId(), p));
+            Iterator<Tuple> it = page.iterator();
+            while (it.hasNext())
+                widenInMemory(p, it.next());
+        }
+
+        DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(zoneFile)));
+        writeHeader(dos);
+        for (int p = 0; p < numPages; p++)
+            dos.write(entryBytes(p));
+        dos.close();
+    }
+
+    private void writeHeader(DataOutput out) throws IOException {
+        out.writeInt(MAGIC);
+        out.writeLong(heapFile.getFile().length());
+        out.writeLong(heapFile.getFile().lastModified());
+    }
+
+    /**
+     * Records that the heap file was written, writing the entries that
+     * changed since the last time, so that the side file is still
+     * considered up to date the next time it is loaded.
+     */
+    public synchronized void fileWritten() throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(zoneFile, "rw");
+        try {
+            for (int p = changed.nextSetBit(0); p >= 0; p = changed.nextSetBit(p + 1)) {
+                raf.seek(FILE_HEADER_SIZE + (long) entrySize * p);
+                raf.write(entryBytes(p));
+            }
+            changed.clear();
+            raf.seek(0);
+            writeHeader(raf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Widens the ranges of the specified page to include the specified tuple,
+     * which was just added to it.
+     */
+    public synchronized void widen(int pgNo, Tuple t) {
+        widenInMemory(pgNo, t);
+        changed.set(pgNo);
+    }
+
+    /**
+     * Marks the specified page as unknown, so that it is never skipped.
+     * Used for pages that were changed while the zone map was not loaded.
+     */
+    public synchronized void invalidate(int pgNo) {
+        while (mins.size() <= pgNo) {
+            mins.add(null);
+            maxs.add(null);
+        }
+        unknown.set(pgNo);
+        changed.set(pgNo);
+    }
+
+    private void widenInMemory(int pgNo, Tuple t) {
+        while (mins.size() <= pgNo) {
+            mins.add(null);
+            maxs.add(null);
+        }
+        Field[] lo = mins.get(pgNo);
+        Field[] hi = maxs.get(pgNo);
+        if (lo == null) {
+            lo = new Field[td.numFields()];
+            hi = new Field[td.numFields()];
+            mins.set(pgNo, lo);
+            maxs.set(pgNo, hi);
+        }
+        for (int i = 0; i < td.numFields(); i++) {
+            Field f = truncate(t.getField(i));
+            if (lo[i] == null || f.compare(Predicate.Op.LESS_THAN, lo[i]))
+                lo[i] = f;
+            if (hi[i] == null || f.compare(Predicate.Op.GREATER_THAN, hi[i]))
+                hi[i] = f;
+        }
+    }
+
+    /** @return f, or the first PREFIX_LEN characters of it if it is a string */
+    static Field truncate(Field f) {
+        if (f.getType() == Type.STRING_TYPE && ((StringField) f).getValue().length() > PREFIX_LEN)
+            return new StringField(((StringField) f).getValue().substring(0, PREFIX_LEN), PREFIX_LEN);
+        return f;
+    }
+
+    private byte[] entryBytes(int pgNo) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(entrySize);
+        DataOutputStream dos = new DataOutputStream(baos);
+        Field[] lo = mins.get(pgNo);
+        Field[] hi = maxs.get(pgNo);
+        dos.writeByte(unknown.get(pgNo) ? 2 : lo == null ? 0 : 1);
+        for (int i = 0; i < td.numFields(); i++) {
+            writeBound(dos, td.getFieldType(i), lo == null ? null : lo[i]);
+            writeBound(dos, td.getFieldType(i), hi == null ? null : hi[i]);
+        }
+        dos.flush();
+        return baos.toByteArray();
+    }
+
+    private static void writeBound(DataOutputStream dos, Type type, Field f) throws IOException {
+        if (type == Type.INT_TYPE) {
+            dos.writeInt(f == null ? 0 : ((IntField) f).getValue());
+            return;
+        }
+        String s = f == null ? "" : ((StringField) f).getValue();
+        dos.writeByte(s.length());
+        dos.writeBytes(s);
+        for (int i = s.length(); i < PREFIX_LEN; i++)
+            dos.writeByte(0);
+    }
+
+    private static Field readBound(DataInputStream dis, Type type) throws IOException {
+        if (type == Type.INT_TYPE)
+            return new IntField(dis.readInt());
+        byte[] bs = new byte[dis.readByte()];
+        dis.readFully(bs);
+        dis.skipBytes(PREFIX_LEN - bs.length);
+        return new StringField(new String(bs), PREFIX_LEN);
+    }
+
+    /**
+     * @return the smallest value (or string prefix) of the specified column
+     *         on the specified page, or null if the page has no tuples
+     */
+    public synchronized Field getMin(int pgNo, int field) {
+        Field[] lo = pgNo < mins.size() ? mins.get(pgNo) : null;
+        return lo == null ? null : lo[field];
+    }
+
+    /**
+     * @return the largest value (or string prefix) of the specified column
+     *         on the specified page, or null if the page has no tuples
+     */
+    public synchronized Field getMax(int pgNo, int field) {
+        Field[] hi = pgNo < maxs.size() ? maxs.get(pgNo) : null;
+        return hi == null ? null : hi[field];
+    }
+
+    /**
+     * @return false if no tuple on the specified page can satisfy the
+     *         predicate; pages the zone map knows nothing about may match.
+     */
+    public synchronized boolean mayMatch(int pgNo, Predicate p) {
+        if (pgNo >= mins.size() || unknown.get(pgNo))
+            return true;
+        if (mins.get(pgNo) == null)
+            return false;
+        Field lo = getMin(pgNo, p.getField());
+        Field hi = getMax(pgNo, p.getField());
+        Field c = p.getOperand();
+        boolean prefix = c.getType() == Type.STRING_TYPE;
+        if (prefix)
+            c = truncate(c);
+
+        // string bounds are prefixes, so a value can only be ruled out if
+        // its prefix is strictly outside them
+        switch (p.getOp()) {
+        case EQUALS:
+            return !c.compare(Predicate.Op.LESS_THAN, lo) && !c.compare(Predicate.Op.GREATER_THAN, hi);
+        case LESS_THAN:
+            return prefix ? !c.compare(Predicate.Op.LESS_THAN, lo) : lo.compare(Predicate.Op.LESS_THAN, c);
+        case LESS_THAN_OR_EQ:
+            return lo.compare(Predicate.Op.LESS_THAN_OR_EQ, c);
+        case GREATER_THAN:
+            return prefix ? !c.compare(Predicate.Op.GREATER_THAN, hi) : hi.compare(Predicate.Op.GREATER_THAN, c);
+        case GREATER_THAN_OR_EQ:
+            return hi.compare(Predicate.Op.GREATER_THAN_OR_EQ, c);
+        case NOT_EQUALS:
+            return prefix || !(lo.equals(c) && hi.equals(c));
+        default:
+            return true;
+        }
+    }
+
+    /**
+     * @return false if no tuple on the specified page can satisfy all of the
+     *         predicates
+     */
+    public synchronized boolean mayMatch(int pgNo, Predicate[] preds) {
+        if (pgNo < mins.size() && mins.get(pgNo) == null && !unknown.get(pgNo))
+            return false;
+        for (Predicate p : preds) {
+            if (!mayMatch(pgNo, p))
+                return false;
+        }
+        return true;
+    }
+}
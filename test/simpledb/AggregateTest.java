@@ -176,6 +176,60 @@ public class AggregateTest extends SimpleDbTestBase {
     TestUtil.matchAllTuples(min, op);
   }
 
+  /** @return an open iterator over the specified tuples */
+  private static DbIterator expect(int width, int[] data) throws Exception {
+    DbIterator it = TestUtil.createTupleList(width, data);
+    it.open();
+    return it;
+  }
+
+  /**
+   * The output has the group field and then the aggregate, named after the
+   * fields they come from, whatever their positions in the input
+   */
+  @Test public void outputFields() throws Exception {
+    DbIterator wide = TestUtil.createTupleList(3,
+        new int[] { 9, 9, 1,
+                    2, 9, 1,
+                    4, 9, 3 });
+    Aggregate op = new Aggregate(wide, 0, 2, Aggregator.Op.SUM);
+    assertEquals(2, op.getTupleDesc().numFields());
+    assertEquals(op.groupFieldName(), op.getTupleDesc().getFieldName(0));
+    assertEquals(op.aggregateFieldName(), op.getTupleDesc().getFieldName(1));
+    op.open();
+    TestUtil.matchAllTuples(expect(2, new int[] { 1, 11, 3, 4 }), op);
+  }
+
+  /**
+   * Without grouping, only the aggregate field is aggregated
+   */
+  @Test public void noGrouping() throws Exception {
+    Aggregate op = new Aggregate(scan1, 1, Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+    assertEquals(1, op.getTupleDesc().numFields());
+    assertEquals(null, op.groupFieldName());
+    op.open();
+    TestUtil.matchAllTuples(expect(1, new int[] { 31 }), op);
+
+    // closing starts over with an empty aggregator of the same kind
+    op.close();
+    op.open();
+    TestUtil.matchAllTuples(expect(1, new int[] { 31 }), op);
+  }
+
+  /**
+   * An empty input has a count of 0, but no other aggregate
+   */
+  @Test public void emptyInput() throws Exception {
+    Aggregate count = new Aggregate(TestUtil.createTupleList(2, new int[] {}), 1,
+        Aggregator.NO_GROUPING, Aggregator.Op.COUNT);
+    count.open();
+    TestUtil.matchAllTuples(expect(1, new int[] { 0 }), count);
+    Aggregate sum = new Aggregate(TestUtil.createTupleList(2, new int[] {}), 1,
+        Aggregator.NO_GROUPING, Aggregator.Op.SUM);
+    sum.open();
+    assertTrue(TestUtil.checkExhausted(sum));
+  }
+
   /**
    * JUnit suite target
    */
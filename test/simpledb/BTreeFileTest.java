@@ -0,0 +1,218 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BTreeFileTest extends SimpleDbTestBase {
+    private TransactionId tid;
+    private Random rand;
+
+    /**
+     * Set up initial resources for each unit test. The buffer pool is made
+     * large enough to hold every page the tests create.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        Database.resetBufferPool(1000);
+        tid = new TransactionId();
+        rand = new Random(42);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private BTreeFile createFile(TupleDesc td) throws Exception {
+        File f = File.createTempFile("table", ".bt");
+        f.delete();
+        f.deleteOnExit();
+        BTreeFile bf = new BTreeFile(f, 0, td);
+        Database.getCatalog().addTable(bf, SystemTestUtil.getUUID());
+        return bf;
+    }
+
+    private static Tuple stringTuple(TupleDesc td, int i) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new StringField(String.format("key%05d", i), Type.STRING_LEN));
+        return t;
+    }
+
+    private ArrayList<Tuple> scan(DbFileIterator it) throws Exception {
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        return result;
+    }
+
+    private static void assertSorted(ArrayList<Tuple> tuples) {
+        for (int i = 1; i < tuples.size(); i++) {
+            assertTrue(tuples.get(i - 1).getField(0).compare(Predicate.Op.LESS_THAN_OR_EQ,
+                    tuples.get(i).getField(0)));
+        }
+    }
+
+    /** @return the number of levels of internal pages above the leaves */
+    private int internalLevels(BTreeFile bf) throws Exception {
+        int levels = 0;
+        BTreePageId pid = bf.getRootId(tid);
+        while (pid.pgcateg() == BTreePageId.INTERNAL) {
+            levels++;
+            BTreeInternalPage page = (BTreeInternalPage) Database.getBufferPool().getPage(tid, pid,
+                    Permissions.READ_ONLY);
+            pid = page.getChildId(0);
+        }
+        return levels;
+    }
+
+    @Test
+    public void insertSplitsLeaves() throws Exception {
+        BTreeFile bf = createFile(Utility.getTupleDesc(2));
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < 2000; i++) {
+            int k = rand.nextInt(100000);
+            keys.add(k);
+            bf.insertTuple(tid, Utility.getHeapTuple(new int[] { k, i }));
+        }
+        assertEquals(1, internalLevels(bf));
+
+        ArrayList<Tuple> tuples = scan(bf.iterator(tid));
+        Collections.sort(keys);
+        assertEquals(keys.size(), tuples.size());
+        for (int i = 0; i < keys.size(); i++)
+            assertEquals(new IntField(keys.get(i)), tuples.get(i).getField(0));
+    }
+
+    /**
+     * String keys are large enough that internal pages fill up quickly, so
+     * these inserts also split internal pages and grow the tree a level.
+     */
+    @Test
+    public void insertSplitsInternalPages() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+        BTreeFile bf = createFile(td);
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < 2000; i++)
+            keys.add(i);
+        Collections.shuffle(keys, rand);
+        for (int k : keys)
+            bf.insertTuple(tid, stringTuple(td, k));
+        assertTrue(internalLevels(bf) >= 2);
+
+        ArrayList<Tuple> tuples = scan(bf.iterator(tid));
+        assertEquals(2000, tuples.size());
+        for (int i = 0; i < 2000; i++)
+            assertEquals(stringTuple(td, i).getField(0), tuples.get(i).getField(0));
+    }
+
+    /**
+     * Searches return the tuples with matching keys in key order, including
+     * runs of equal keys that span several leaves.
+     */
+    @Test
+    public void search() throws Exception {
+        BTreeFile bf = createFile(Utility.getTupleDesc(2));
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        for (int i = 0; i < 3000; i++)
+            keys.add(i % 50);
+        Collections.shuffle(keys, rand);
+        for (int i = 0; i < keys.size(); i++)
+            bf.insertTuple(tid, Utility.getHeapTuple(new int[] { keys.get(i), i }));
+
+        for (Predicate.Op op : Predicate.Op.values()) {
+            if (op == Predicate.Op.LIKE)
+                continue;
+            for (int v : new int[] { -1, 0, 17, 49, 60 }) {
+                IndexPredicate ipred = new IndexPredicate(op, new IntField(v));
+                ArrayList<Tuple> tuples = scan(bf.indexIterator(tid, ipred));
+                int expected = 0;
+                for (int k : keys) {
+                    if (new IntField(k).compare(op, new IntField(v)))
+                        expected++;
+                }
+                assertEquals(op + " " + v, expected, tuples.size());
+                assertSorted(tuples);
+                for (Tuple t : tuples)
+                    assertTrue(ipred.matches(t.getField(0)));
+            }
+        }
+    }
+
+    /**
+     * Deleting most of the tuples merges and redistributes pages, and the
+     * freed pages are reused by later inserts.
+     */
+    @Test
+    public void deleteMergesPages() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+        BTreeFile bf = createFile(td);
+        for (int i = 0; i < 2000; i++)
+            bf.insertTuple(tid, stringTuple(td, rand.nextInt(1000)));
+        int pages = bf.numPages();
+
+        ArrayList<Tuple> tuples = scan(bf.iterator(tid));
+        Collections.shuffle(tuples, rand);
+        List<Tuple> kept = tuples.subList(0, 20);
+        for (Tuple t : tuples.subList(20, tuples.size()))
+            bf.deleteTuple(tid, t);
+        assertEquals(0, internalLevels(bf));
+
+        ArrayList<Tuple> remaining = scan(bf.iterator(tid));
+        assertSorted(remaining);
+        assertEquals(kept.size(), remaining.size());
+        ArrayList<Field> expected = new ArrayList<Field>();
+        for (Tuple t : kept)
+            expected.add(t.getField(0));
+        for (Tuple t : remaining)
+            assertTrue(expected.remove(t.getField(0)));
+
+        for (int i = 0; i < 2000; i++)
+            bf.insertTuple(tid, stringTuple(td, rand.nextInt(1000)));
+        assertEquals(2020, scan(bf.iterator(tid)).size());
+        assertTrue(bf.numPages() <= pages + 2);
+    }
+
+    @Test
+    public void bulkLoad() throws Exception {
+        ArrayList<ArrayList<Integer>> rows = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 5000; i++)
+            rows.add(new ArrayList<Integer>(Arrays.asList(rand.nextInt(2500), i)));
+        File f = File.createTempFile("table", ".bt");
+        f.deleteOnExit();
+        BTreeFileEncoder.convert(rows, f, 2, 0);
+        BTreeFile bf = new BTreeFile(f, 0, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(bf, SystemTestUtil.getUUID());
+
+        ArrayList<Tuple> tuples = scan(bf.iterator(tid));
+        assertEquals(5000, tuples.size());
+        assertSorted(tuples);
+
+        bf.insertTuple(tid, Utility.getHeapTuple(new int[] { 1234, -1 }));
+        int expected = 1;
+        for (ArrayList<Integer> row : rows) {
+            if (row.get(0) == 1234)
+                expected++;
+        }
+        IndexPredicate ipred = new IndexPredicate(Predicate.Op.EQUALS, new IntField(1234));
+        assertEquals(expected, scan(bf.indexIterator(tid, ipred)).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BTreeFileTest.class);
+    }
+}
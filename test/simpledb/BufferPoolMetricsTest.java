@@ -0,0 +1,156 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import javax.management.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BufferPoolMetricsTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private TableIoStats stats;
+
+    @Before
+    public void createTable() throws Exception {
+        hf = SystemTestUtil.createRandomHeapFile(2, 5000, null, null);
+        stats = BufferPoolMetrics.forTable(hf.getId());
+        stats.reset();
+    }
+
+    /** Scans the table, and returns the number of tuples it has. */
+    private int scan() throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan ss = new SeqScan(tid, hf.getId(), "t");
+        ss.open();
+        int n = 0;
+        while (ss.hasNext()) {
+            ss.next();
+            n++;
+        }
+        ss.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+
+    /**
+     * A table that fits in the pool is read once, and then found in memory;
+     * one that does not is read again, evicting pages.
+     */
+    @Test
+    public void hitsAndMisses() throws Exception {
+        int pages = hf.numPages();
+        assertTrue(pages > 5);
+        Database.resetBufferPool(pages + 1);
+        scan();
+        assertEquals(pages, stats.getMisses());
+        assertEquals(0, stats.getHits());
+        assertEquals(pages, stats.getPagesRead());
+        assertEquals((long) pages * BufferPool.PAGE_SIZE, stats.getBytesRead());
+        assertEquals(pages, stats.getReadLatency().getCount());
+        assertTrue(stats.getReadLatency().getTotalNanos() > 0);
+        scan();
+        assertEquals(pages, stats.getHits());
+        assertEquals(0.5, stats.getHitRatio(), 1e-9);
+        assertEquals(0, stats.getEvictions());
+
+        stats.reset();
+        Database.resetBufferPool(3);
+        scan();
+        scan();
+        assertEquals(2 * pages, stats.getMisses());
+        assertTrue(stats.getEvictions() >= 2 * pages - 4);
+        assertEquals(0, stats.getDirtyFlushes());
+        assertTrue(BufferPoolMetrics.getInstance().getMisses() >= 2 * pages);
+    }
+
+    /** Dirty pages are written back when they are evicted, not dropped. */
+    @Test
+    public void flushOnEvict() throws Exception {
+        Database.resetBufferPool(3);
+        int before = scan();
+        TransactionId tid = new TransactionId();
+        Tuple t = new Tuple(hf.getTupleDesc());
+        t.setField(0, new IntField(-1));
+        t.setField(1, new IntField(-2));
+        Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(0, stats.getDirtyFlushes());
+
+        // scanning the table evicts the page the tuple was added to
+        assertEquals(before + 1, scan());
+        assertEquals(1, stats.getDirtyFlushes());
+        assertEquals(1, stats.getWriteLatency().getCount());
+        int onDisk = 0;
+        for (int i = 0; i < hf.numPages(); i++) {
+            HeapPage p = (HeapPage) hf.readPage(new HeapPageId(hf.getId(), i));
+            Iterator<Tuple> it = p.iterator();
+            while (it.hasNext()) {
+                it.next();
+                onDisk++;
+            }
+        }
+        assertEquals(before + 1, onDisk);
+    }
+
+    @Test
+    public void histogram() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (int i = 0; i < 99; i++)
+            h.record(1000);
+        h.record(1000000);
+        assertEquals(100, h.getCount());
+        assertEquals(99 * 1000 + 1000000, h.getTotalNanos());
+        // 1000 ns falls in [512, 1024)
+        assertEquals(1024, h.getPercentileNanos(0.5));
+        assertEquals(1024, h.getPercentileNanos(0.99));
+        assertEquals(1L << 20, h.getPercentileNanos(1.0));
+        assertEquals(99, h.getBucketCounts()[9]);
+    }
+
+    @Test
+    public void stripedCounter() throws Exception {
+        final StripedCounter c = new StripedCounter();
+        Thread[] threads = new Thread[4];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    for (int j = 0; j < 10000; j++)
+                        c.increment();
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread th : threads)
+            th.join();
+        assertEquals(40000, c.get());
+        c.reset();
+        assertEquals(0, c.get());
+    }
+
+    /** The metrics can be read through JMX. */
+    @Test
+    public void jmx() throws Exception {
+        Database.resetBufferPool(hf.numPages() + 1);
+        BufferPoolMetrics.registerMBeans();
+        scan();
+        scan();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = BufferPoolMetrics.tableObjectName(hf.getId());
+        assertEquals((long) hf.numPages(), server.getAttribute(name, "Hits"));
+        assertEquals(hf.numPages() + 1, server.getAttribute(new ObjectName("simpledb:type=BufferPool"), "Capacity"));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolMetricsTest.class);
+    }
+}
@@ -0,0 +1,41 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class BufferPoolTest extends SimpleDbTestBase {
+
+    /**
+     * Pages stay evictable once the transaction that read them has flushed
+     * them, so a full pool still makes room for other pages.
+     */
+    @Test(timeout = 10000)
+    public void flushedPagesAreEvictable() throws Exception {
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 5000, null, null);
+        assertTrue(hf.numPages() > 5);
+        Database.resetBufferPool(3);
+        BufferPool pool = Database.getBufferPool();
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 4; i++)
+            pool.getPage(tid, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+        pool.flushPages(tid);
+
+        TransactionId other = new TransactionId();
+        for (int i = 4; i < hf.numPages(); i++)
+            pool.getPage(other, new HeapPageId(hf.getId(), i), Permissions.READ_ONLY);
+        assertTrue(pool.numPagesCached() <= pool.getCapacity() + 1);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(BufferPoolTest.class);
+    }
+}
@@ -68,6 +68,25 @@ public class CatalogTest extends SimpleDbTestBase {
         assertEquals(-1, f.getId());
     }
 
+    /**
+     * Unit test for Catalog.removeTable()
+     */
+    @Test public void removeTable() throws Exception {
+        Database.getCatalog().removeTable(-1);
+        try {
+            Database.getCatalog().getTableId(nameThisTestRun);
+            Assert.fail("Should not find the removed table");
+        } catch (NoSuchElementException e) {
+        }
+        assertEquals(-2, Database.getCatalog().getTableId(name));
+
+        // a table whose name was taken by a later one keeps the later one
+        Database.getCatalog().addTable(new SkeletonFile(-3, Utility.getTupleDesc(2)), name);
+        Database.getCatalog().removeTable(-2);
+        assertEquals(-3, Database.getCatalog().getTableId(name));
+        Database.getCatalog().removeTable(-2);
+    }
+
     /**
      * JUnit suite target
      */
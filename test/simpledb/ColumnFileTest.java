@@ -0,0 +1,135 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ColumnFileTest extends SimpleDbTestBase {
+    private ArrayList<ArrayList<Integer>> tuples;
+    private ColumnFile cf;
+    private TransactionId tid;
+    private final HashSet<Integer> readColumns = new HashSet<Integer>();
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        SystemTestUtil.createRandomHeapFileUnopened(3, 2500, 1000, null, tuples);
+        File f = File.createTempFile("table", ".col");
+        f.deleteOnExit();
+        ColumnFileEncoder.convert(tuples, f, 3);
+        for (int i = 0; i < 3; i++)
+            new File(f.getPath() + "." + i).deleteOnExit();
+        cf = new ColumnFile(f, Utility.getTupleDesc(3)) {
+            @Override
+            public Page readPage(PageId pid) {
+                readColumns.add(((ColumnPageId) pid).getColumn());
+                return super.readPage(pid);
+            }
+        };
+        Database.getCatalog().addTable(cf, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Each column is stored in its own page sequence, with int columns
+     * taking 4 bytes per value.
+     */
+    @Test
+    public void numPages() throws Exception {
+        int perPage = (BufferPool.PAGE_SIZE - 17) / 4;
+        for (int i = 0; i < 3; i++)
+            assertEquals((2500 + perPage - 1) / perPage, cf.numPages(i));
+    }
+
+    @Test
+    public void scanAll() throws Exception {
+        SystemTestUtil.matchTuples(cf, tuples);
+    }
+
+    /**
+     * Scanning a subset of the columns returns just those columns, and only
+     * reads their pages.
+     */
+    @Test
+    public void scanProjected() throws Exception {
+        SeqScan scan = new SeqScan(tid, cf.getId(), "t", new int[] { 2, 0 });
+        assertEquals(2, scan.getTupleDesc().numFields());
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples)
+            expected.add(new ArrayList<Integer>(Arrays.asList(t.get(2), t.get(0))));
+        SystemTestUtil.matchTuples(scan, expected);
+
+        assertFalse(readColumns.contains(1));
+    }
+
+    /**
+     * Tuples refer to their position in the first column, whichever columns
+     * are scanned.
+     */
+    @Test
+    public void recordIds() throws Exception {
+        DbFileIterator all = cf.iterator(tid);
+        DbFileIterator projected = cf.iterator(tid, new int[] { 2 },
+                new Predicate[] { new Predicate(1, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(0)) });
+        all.open();
+        projected.open();
+        while (all.hasNext()) {
+            RecordId rid = all.next().getRecordId();
+            assertEquals(0, ((ColumnPageId) rid.getPageId()).getColumn());
+            assertEquals(rid, projected.next().getRecordId());
+        }
+        assertFalse(projected.hasNext());
+        all.close();
+        projected.close();
+
+        Tuple t = Utility.getHeapTuple(new int[] { 7, 8, 9 });
+        cf.insertTuple(tid, t);
+        DbFileIterator last = cf.iterator(tid, new int[] { 1 });
+        last.open();
+        Tuple read = null;
+        while (last.hasNext())
+            read = last.next();
+        assertEquals(t.getRecordId(), read.getRecordId());
+        last.close();
+    }
+
+    @Test
+    public void insertTuple() throws Exception {
+        Tuple t = Utility.getHeapTuple(new int[] { 7, 8, 9 });
+        cf.insertTuple(tid, t);
+        tuples.add(new ArrayList<Integer>(Arrays.asList(7, 8, 9)));
+        SystemTestUtil.matchTuples(cf, tid, tuples);
+    }
+
+    @Test(expected = DbException.class)
+    public void deleteTuple() throws Exception {
+        DbFileIterator it = cf.iterator(tid);
+        it.open();
+        cf.deleteTuple(tid, it.next());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnFileTest.class);
+    }
+}
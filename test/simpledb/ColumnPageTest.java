@@ -0,0 +1,135 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.util.*;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ColumnPageTest extends SimpleDbTestBase {
+
+    private ColumnPage emptyPage(Type type, boolean compressed) throws Exception {
+        return new ColumnPage(new ColumnPageId(0, 0, 0), type, compressed,
+                ColumnPage.createEmptyPageData(0));
+    }
+
+    /**
+     * Fills the page with values until it is full.
+     * @return the values that were added
+     */
+    private ArrayList<Field> fill(ColumnPage page, Iterator<Field> values) throws Exception {
+        ArrayList<Field> added = new ArrayList<Field>();
+        while (values.hasNext()) {
+            Field f = values.next();
+            if (!page.hasRoomFor(f))
+                break;
+            page.appendValue(f);
+            added.add(f);
+        }
+        return added;
+    }
+
+    private void checkRoundTrip(ColumnPage page, List<Field> expected) throws Exception {
+        ColumnPage read = new ColumnPage(page.getId(), expected.get(0).getType(), true,
+                page.getPageData());
+        assertEquals(expected.size(), read.getNumValues());
+        for (int i = 0; i < expected.size(); i++)
+            assertEquals(expected.get(i), read.getValue(i));
+        assertEquals(page.getMin(), read.getMin());
+        assertEquals(page.getMax(), read.getMax());
+    }
+
+    /** An iterator over count ints produced by the specified function of the position. */
+    private static abstract class IntGen implements Iterator<Field> {
+        int i = 0;
+        final int count;
+        IntGen(int count) { this.count = count; }
+        abstract int value(int i);
+        public boolean hasNext() { return i < count; }
+        public Field next() { return new IntField(value(i++)); }
+        public void remove() { throw new UnsupportedOperationException(); }
+    }
+
+    @Test public void plainIsDefault() throws Exception {
+        ColumnPage page = emptyPage(Type.INT_TYPE, false);
+        ArrayList<Field> vals = fill(page, new IntGen(100000) {
+            int value(int i) { return 7; }
+        });
+        assertEquals(ColumnPage.PLAIN, page.getEncoding());
+        assertEquals((BufferPool.PAGE_SIZE - ColumnPage.getHeaderSize(Type.INT_TYPE)) / 4, vals.size());
+    }
+
+    @Test public void runLength() throws Exception {
+        ColumnPage page = emptyPage(Type.INT_TYPE, true);
+        ArrayList<Field> vals = fill(page, new IntGen(20000) {
+            int value(int i) { return -1000000 + 1000000000 * (i / 100); }
+        });
+        assertEquals(20000, vals.size());
+        assertEquals(ColumnPage.RLE, page.getEncoding());
+        checkRoundTrip(page, vals);
+    }
+
+    @Test public void frameOfReference() throws Exception {
+        ColumnPage page = emptyPage(Type.INT_TYPE, true);
+        ArrayList<Field> vals = fill(page, new IntGen(100000) {
+            int value(int i) { return 5000 + (i * 37) % 64; }
+        });
+        assertEquals(ColumnPage.FRAME_OF_REFERENCE, page.getEncoding());
+        // six bits per value instead of 32
+        assertTrue(vals.size() > 5 * (BufferPool.PAGE_SIZE / 4));
+        checkRoundTrip(page, vals);
+    }
+
+    @Test public void frameOfReferenceFullRange() throws Exception {
+        ColumnPage page = emptyPage(Type.INT_TYPE, true);
+        page.appendValue(new IntField(Integer.MIN_VALUE));
+        page.appendValue(new IntField(Integer.MAX_VALUE));
+        page.appendValue(new IntField(0));
+        checkRoundTrip(page, Arrays.<Field>asList(new IntField(Integer.MIN_VALUE),
+                new IntField(Integer.MAX_VALUE), new IntField(0)));
+    }
+
+    @Test public void dictionary() throws Exception {
+        final String[] words = { "red", "green", "blue", "cyan", "magenta" };
+        ColumnPage page = emptyPage(Type.STRING_TYPE, true);
+        ArrayList<Field> vals = fill(page, new Iterator<Field>() {
+            int i = 0;
+            public boolean hasNext() { return true; }
+            public Field next() { return new StringField(words[i++ % words.length], Type.STRING_LEN); }
+            public void remove() { throw new UnsupportedOperationException(); }
+        });
+        assertEquals(ColumnPage.DICTIONARY, page.getEncoding());
+        assertTrue(vals.size() > BufferPool.PAGE_SIZE);
+        checkRoundTrip(page, vals);
+
+        // decoded values share one Field per dictionary entry
+        ColumnPage read = new ColumnPage(page.getId(), Type.STRING_TYPE, true, page.getPageData());
+        assertSame(read.getValue(0), read.getValue(words.length));
+    }
+
+    @Test public void compressedFileScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 5000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i / 500, i % 16, i)));
+        java.io.File f = java.io.File.createTempFile("table", ".col");
+        f.deleteOnExit();
+        ColumnFileEncoder.convert(tuples, f, 3, true);
+        for (int i = 0; i < 3; i++)
+            new java.io.File(f.getPath() + "." + i).deleteOnExit();
+
+        ColumnFile cf = new ColumnFile(f, Utility.getTupleDesc(3), true);
+        Database.getCatalog().addTable(cf, "compressed");
+        assertEquals(1, cf.numPages(0));
+        assertEquals(1, cf.numPages(1));
+        simpledb.systemtest.SystemTestUtil.matchTuples(cf, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ColumnPageTest.class);
+    }
+}
@@ -0,0 +1,65 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class CostCalibratorTest extends SimpleDbTestBase {
+
+    @After
+    public void restoreCosts() {
+        CostCalibrator.setCosts(TableStats.IOCOSTPERPAGE, TableStats.IOCOSTPERPAGE, 1.0);
+    }
+
+    /**
+     * Measured costs are positive, a page read costs more than evaluating a
+     * predicate on one tuple, and the costs survive saving and loading.
+     */
+    @Test
+    public void calibrateAndSave() throws Exception {
+        long version = Database.getCatalog().getVersion();
+        CostCalibrator.calibrate(64);
+        // the scratch table is gone from the catalog
+        assertFalse(Database.getCatalog().tableIdIterator().hasNext());
+        assertTrue(Database.getCatalog().getVersion() > version);
+        assertTrue(CostCalibrator.seqPageCost() > 1.0);
+        assertTrue(CostCalibrator.randomPageCost() > 1.0);
+        assertTrue(CostCalibrator.hashProbeCost() > 0.0);
+        double seq = CostCalibrator.seqPageCost();
+        double random = CostCalibrator.randomPageCost();
+
+        File f = File.createTempFile("catalog", ".costs");
+        f.deleteOnExit();
+        CostCalibrator.save(f);
+        CostCalibrator.setCosts(1, 2, 3);
+        CostCalibrator.load(f);
+        assertEquals(seq, CostCalibrator.seqPageCost(), 1e-9);
+        assertEquals(random, CostCalibrator.randomPageCost(), 1e-9);
+    }
+
+    /**
+     * Table statistics computed after calibration cost scans with the
+     * measured page cost.
+     */
+    @Test
+    public void statisticsUseCosts() throws Exception {
+        CostCalibrator.setCosts(250, 2000, 1);
+        HeapFile hf = SystemTestUtil.createRandomHeapFile(2, 2000, null, null);
+        TableStats.computeStatistics();
+        TableStats s = TableStats.getTableStats(Database.getCatalog().getTableName(hf.getId()));
+        assertEquals(hf.numPages() * 250.0, s.estimateScanCost(), 1e-9);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(CostCalibratorTest.class);
+    }
+}
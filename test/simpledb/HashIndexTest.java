@@ -0,0 +1,163 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class HashIndexTest extends SimpleDbTestBase {
+    private File f;
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /**
+     * Set up initial resources for each unit test. The second field of the
+     * table holds each of 100 values 30 times.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 3000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 100)));
+        f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HashIndex.getIndexFile(f, 1).deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = Utility.openHeapFile(2, f);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private ArrayList<ArrayList<Integer>> expected(int value, int numTuples) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        for (int i = value; i < numTuples; i += 100)
+            result.add(new ArrayList<Integer>(Arrays.asList(i, value)));
+        return result;
+    }
+
+    @Test
+    public void lookup() throws Exception {
+        HashIndex index = hf.addIndex(1);
+        assertEquals(30, index.lookup(new IntField(7)).size());
+        assertEquals(0, index.lookup(new IntField(100)).size());
+        SystemTestUtil.matchTuples(new IndexLookup(tid, hf.getId(), "t", 1, new IntField(7)),
+                expected(7, 3000));
+    }
+
+    /**
+     * Inserted tuples are added to the index at the RecordId they were
+     * stored at, and deleted ones are removed.
+     */
+    @Test
+    public void maintained() throws Exception {
+        hf.addIndex(1);
+        for (int i = 3000; i < 3100; i++)
+            hf.insertTuple(tid, Utility.getHeapTuple(new int[] { i, i % 100 }));
+        SystemTestUtil.matchTuples(new IndexLookup(tid, hf.getId(), "t", 1, new IntField(42)),
+                expected(42, 3100));
+
+        IndexLookup lookup = new IndexLookup(tid, hf.getId(), "t", 1, new IntField(42));
+        lookup.open();
+        ArrayList<Tuple> found = new ArrayList<Tuple>();
+        while (lookup.hasNext())
+            found.add(lookup.next());
+        for (Tuple t : found)
+            hf.deleteTuple(tid, t);
+        assertEquals(0, hf.getIndex(1).lookup(new IntField(42)).size());
+        assertEquals(31, hf.getIndex(1).lookup(new IntField(43)).size());
+    }
+
+    /**
+     * The index is reopened from its side file if the heap file has not
+     * changed, and rebuilt if it has.
+     */
+    @Test
+    public void reopened() throws Exception {
+        HashIndex index = hf.addIndex(1);
+        assertTrue(index.globalDepth > 0);
+        HashIndex reopened = new HashIndex(hf, 1);
+        assertEquals(index.globalDepth, reopened.globalDepth);
+        assertTrue(Arrays.equals(index.directory, reopened.directory));
+
+        // change the heap file behind the index's back, adding a page
+        HeapFile other = new HeapFile(f, hf.getTupleDesc());
+        Database.getCatalog().addTable(other, SystemTestUtil.getUUID());
+        for (int i = 0; i < 600; i++)
+            other.insertTuple(tid, Utility.getHeapTuple(new int[] { 5000 + i, 7 }));
+        Database.getBufferPool().flushAllPages();
+        assertEquals(630, new HashIndex(hf, 1).lookup(new IntField(7)).size());
+    }
+
+    /**
+     * Changes to the index are kept in memory until the heap file is
+     * written, and are then written to the side file.
+     */
+    @Test
+    public void writtenWithHeapFile() throws Exception {
+        HashIndex index = hf.addIndex(1);
+        File side = HashIndex.getIndexFile(f, 1);
+        long length = side.length();
+        RecordId rid = new RecordId(new HeapPageId(hf.getId(), 0), 0);
+        for (int i = 0; i < 3000; i++)
+            index.insert(new IntField(1000 + i), rid);
+        assertEquals(length, side.length());
+        assertEquals(1, index.lookup(new IntField(3999)).size());
+
+        index.fileWritten();
+        assertTrue(side.length() > length);
+        HashIndex reopened = new HashIndex(hf, 1);
+        assertTrue(Arrays.equals(index.directory, reopened.directory));
+        assertEquals(1, reopened.lookup(new IntField(3999)).size());
+        assertEquals(30, reopened.lookup(new IntField(7)).size());
+    }
+
+    /**
+     * Dropping the heap file from the catalog closes the side file of its
+     * index, which is opened again if the index is used afterwards.
+     */
+    @Test
+    public void closed() throws Exception {
+        HashIndex index = hf.addIndex(1);
+        assertNotNull(index.raf);
+        Database.getCatalog().removeTable(hf.getId());
+        assertNull(index.raf);
+        assertEquals(30, index.lookup(new IntField(7)).size());
+        index.fileWritten();
+        assertNotNull(index.raf);
+
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        Database.getCatalog().clear();
+        assertNull(index.raf);
+    }
+
+    /**
+     * Values that fill a bucket by themselves are kept on overflow pages.
+     */
+    @Test
+    public void overflow() throws Exception {
+        HashIndex index = hf.addIndex(1);
+        for (int i = 0; i < 1000; i++)
+            hf.insertTuple(tid, Utility.getHeapTuple(new int[] { i, 5 }));
+        assertEquals(1030, index.lookup(new IntField(5)).size());
+        assertEquals(30, index.lookup(new IntField(6)).size());
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashIndexTest.class);
+    }
+}
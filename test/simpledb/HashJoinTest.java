@@ -0,0 +1,79 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class HashJoinTest extends SimpleDbTestBase {
+
+    private DbIterator scan1;
+    private DbIterator scan2;
+    private DbIterator eqJoin;
+
+    @Before
+    public void createTupleLists() throws Exception {
+        scan1 = TestUtil.createTupleList(2, new int[] { 1, 2, 3, 4, 5, 6, 7, 8, 3, 9 });
+        scan2 = TestUtil.createTupleList(3, new int[] { 1, 2, 3, 3, 4, 5, 3, 5, 6, 5, 6, 7, 9, 9, 9 });
+        eqJoin = TestUtil.createTupleList(5, new int[] {
+                1, 2, 1, 2, 3,
+                3, 4, 3, 4, 5,
+                3, 4, 3, 5, 6,
+                5, 6, 5, 6, 7,
+                3, 9, 3, 4, 5,
+                3, 9, 3, 5, 6 });
+    }
+
+    /** The result is that of a Join, in the same order. */
+    @Test
+    public void sameAsJoin() throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        HashJoin op = new HashJoin(p, scan1, scan2);
+        assertEquals(5, op.getTupleDesc().numFields());
+        op.open();
+        eqJoin.open();
+        TestUtil.matchAllTuples(eqJoin, op);
+    }
+
+    /** Rewinding reads the left child again, but keeps the hash table. */
+    @Test
+    public void rewind() throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        HashJoin op = new HashJoin(p, scan1, scan2);
+        op.open();
+        while (op.hasNext())
+            op.next();
+        op.rewind();
+        eqJoin.open();
+        TestUtil.matchAllTuples(eqJoin, op);
+        op.close();
+    }
+
+    /** Building the left child returns the same tuples, with the same fields. */
+    @Test
+    public void buildLeft() throws Exception {
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.EQUALS, 0);
+        HashJoin op = new HashJoin(p, scan1, scan2, true);
+        op.open();
+        eqJoin.open();
+        TestUtil.matchAllTuples(eqJoin, op);
+        op.rewind();
+        eqJoin.rewind();
+        TestUtil.matchAllTuples(eqJoin, op);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void onlyEquality() throws Exception {
+        new HashJoin(new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0), scan1, scan2);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(HashJoinTest.class);
+    }
+}
@@ -99,6 +99,48 @@ public class HeapPageReadTest extends SimpleDbTestBase {
         }
     }
 
+    /**
+     * Unit test for HeapPage.iterator(Predicate[])
+     */
+    @Test public void testIteratorWithPredicates() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        Predicate[] preds = {
+            new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(30000)),
+            new Predicate(1, Predicate.Op.LESS_THAN_OR_EQ, new IntField(43771)) };
+        Iterator<Tuple> it = page.iterator(preds);
+
+        for (int row = 0; row < EXAMPLE_VALUES.length; row++) {
+            if (EXAMPLE_VALUES[row][0] <= 30000 || EXAMPLE_VALUES[row][1] > 43771) {
+                // rejected rows are never decoded
+                assertTrue(page.tuples[row] == null);
+                continue;
+            }
+            Tuple tup = it.next();
+            assertEquals(EXAMPLE_VALUES[row][0], ((IntField) tup.getField(0)).getValue());
+            assertEquals(EXAMPLE_VALUES[row][1], ((IntField) tup.getField(1)).getValue());
+        }
+        assertFalse(it.hasNext());
+    }
+
+    @Test public void testIteratorWithFields() throws Exception {
+        HeapPage page = new HeapPage(pid, EXAMPLE_DATA);
+        TupleDesc projected = new TupleDesc(new Type[] { Type.INT_TYPE });
+        Predicate[] preds = { new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(30000)) };
+        Iterator<Tuple> it = page.iterator(preds, new int[] { 1 }, projected);
+
+        for (int row = 0; row < EXAMPLE_VALUES.length; row++) {
+            if (EXAMPLE_VALUES[row][0] <= 30000)
+                continue;
+            Tuple tup = it.next();
+            assertEquals(1, tup.getTupleDesc().numFields());
+            assertEquals(EXAMPLE_VALUES[row][1], ((IntField) tup.getField(0)).getValue());
+            assertEquals(row, tup.getRecordId().tupleno());
+            // projected tuples are not cached as the page's tuples
+            assertTrue(page.tuples[row] == null);
+        }
+        assertFalse(it.hasNext());
+    }
+
     /**
      * Unit test for HeapPage.getNumEmptySlots()
      */
@@ -0,0 +1,238 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.File;
+import java.util.*;
+import org.junit.After;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class JoinOptimizerTest extends SimpleDbTestBase {
+
+    private LogicalPlan lp;
+    private HashMap<String, TableStats> stats;
+    private HashMap<String, Double> filterSelectivities;
+
+    /**
+     * Creates a table of the specified number of tuples whose first field is
+     * a unique id and second is the id modulo mod, and adds it to the plan
+     * under the specified alias.
+     */
+    private void addTable(String alias, int rows, int mod) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < rows; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % mod)));
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = Utility.openHeapFile(2, "f", f);
+        lp.addScan(hf.getId(), alias);
+        stats.put(Database.getCatalog().getTableName(hf.getId()), new TableStats(hf.getId(), 1000));
+        filterSelectivities.put(alias, 1.0);
+    }
+
+    private void init() {
+        lp = new LogicalPlan();
+        stats = new HashMap<String, TableStats>();
+        filterSelectivities = new HashMap<String, Double>();
+    }
+
+    @Test
+    public void joinCardinality() throws Exception {
+        init();
+        addTable("a", 1000, 10);
+        addTable("b", 200, 50);
+        HashMap<String, Integer> ids = lp.getTableAliasToIdMapping();
+        // every tuple of a matches the 4 tuples of b with its value
+        assertEquals(4000, JoinOptimizer.estimateTableJoinCardinality(Predicate.Op.EQUALS,
+                "a", "b", "f1", "f1", 1000, 200, false, false, stats, ids), 100);
+        assertEquals(196000, JoinOptimizer.estimateTableJoinCardinality(Predicate.Op.NOT_EQUALS,
+                "a", "b", "f1", "f1", 1000, 200, false, false, stats, ids), 100);
+        assertEquals(200, JoinOptimizer.estimateTableJoinCardinality(Predicate.Op.EQUALS,
+                "a", "b", "f0", "f1", 1000, 200, true, false, stats, ids));
+        assertEquals(200, JoinOptimizer.estimateTableJoinCardinality(Predicate.Op.EQUALS,
+                "a", "b", "f0", "f0", 1000, 200, true, true, stats, ids));
+        assertEquals(100000, JoinOptimizer.estimateTableJoinCardinality(Predicate.Op.LESS_THAN,
+                "a", "b", "f0", "f0", 1000, 200, false, false, stats, ids), 1000);
+    }
+
+    /**
+     * The join with a small table is done first when it keeps the
+     * intermediate result small, whatever the order in the query.
+     */
+    @Test
+    public void smallTableFirst() throws Exception {
+        init();
+        addTable("a", 2000, 10);
+        addTable("b", 2000, 10);
+        addTable("c", 10, 10);
+        Vector<LogicalJoinNode> joins = new Vector<LogicalJoinNode>();
+        joins.add(new LogicalJoinNode("a", "b", "f1", "f1", Predicate.Op.EQUALS));
+        joins.add(new LogicalJoinNode("b", "c", "f0", "f0", Predicate.Op.EQUALS));
+        Vector<LogicalJoinNode> order = new JoinOptimizer(lp, joins).orderJoins(
+                stats, filterSelectivities, false);
+        assertEquals(2, order.size());
+        assertTrue(order.get(0).t1Alias.equals("c") || order.get(0).t2Alias.equals("c"));
+    }
+
+    /**
+     * A chain of a dozen tables is ordered quickly, without cross products.
+     */
+    @Test
+    public void manyJoins() throws Exception {
+        init();
+        int n = 12;
+        Vector<LogicalJoinNode> joins = new Vector<LogicalJoinNode>();
+        for (int i = 0; i < n; i++) {
+            addTable("t" + i, 100 + 100 * (i % 4), 10 + i);
+            if (i > 0)
+                joins.add(new LogicalJoinNode("t" + (i - 1), "t" + i, "f1", "f0", Predicate.Op.EQUALS));
+        }
+        long start = System.currentTimeMillis();
+        Vector<LogicalJoinNode> order = new JoinOptimizer(lp, joins).orderJoins(
+                stats, filterSelectivities, false);
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(n - 1, order.size());
+        HashSet<String> joined = new HashSet<String>();
+        for (LogicalJoinNode j : order) {
+            assertTrue(joined.isEmpty() || joined.contains(j.t1Alias) || joined.contains(j.t2Alias));
+            joined.add(j.t1Alias);
+            joined.add(j.t2Alias);
+        }
+        assertEquals(n, joined.size());
+    }
+
+    /**
+     * Joins of more tables than are enumerated exhaustively are ordered
+     * heuristically, within the time budget, into a plan about as cheap as
+     * the best one.
+     */
+    @Test
+    public void heuristicOrder() throws Exception {
+        init();
+        int n = 9;
+        Vector<LogicalJoinNode> joins = new Vector<LogicalJoinNode>();
+        for (int i = 0; i < n; i++) {
+            addTable("t" + i, 50 + 300 * ((i * 7) % 5), 5 + 3 * i);
+            if (i > 0)
+                joins.add(new LogicalJoinNode("t" + (i / 2), "t" + i, "f1", "f1", Predicate.Op.EQUALS));
+        }
+        JoinOptimizer dp = new JoinOptimizer(lp, joins);
+        dp.orderJoins(stats, filterSelectivities, false);
+        assertEquals("dynamic programming", dp.strategy);
+
+        JoinOptimizer.setMaxDpTables(4);
+        JoinOptimizer heuristic = new JoinOptimizer(lp, joins);
+        Vector<LogicalJoinNode> order = heuristic.orderJoins(stats, filterSelectivities, false);
+        assertTrue(heuristic.strategy.startsWith("greedy"));
+        assertEquals(n - 1, order.size());
+        assertTrue(heuristic.planCost >= dp.planCost);
+        assertTrue(heuristic.planCost < dp.planCost * 1.5);
+
+        // a chain of 30 tables
+        init();
+        joins = new Vector<LogicalJoinNode>();
+        for (int i = 0; i < 30; i++) {
+            addTable("t" + i, 100 + 100 * (i % 4), 10 + i);
+            if (i > 0)
+                joins.add(new LogicalJoinNode("t" + (i - 1), "t" + i, "f1", "f0", Predicate.Op.EQUALS));
+        }
+        JoinOptimizer.setOptimizationBudget(200);
+        long start = System.currentTimeMillis();
+        order = new JoinOptimizer(lp, joins).orderJoins(stats, filterSelectivities, false);
+        assertTrue(System.currentTimeMillis() - start < 2000);
+        assertEquals(29, order.size());
+    }
+
+    /**
+     * Every subset of the joins is enumerated, so queries with more joins
+     * than tables enumerated exhaustively are ordered heuristically even if
+     * they have few tables.
+     */
+    @Test
+    public void manyJoinsOfFewTables() throws Exception {
+        init();
+        Vector<LogicalJoinNode> joins = new Vector<LogicalJoinNode>();
+        for (int i = 0; i < 4; i++) {
+            addTable("t" + i, 100 + 100 * i, 10 + i);
+            for (int j = 0; j < i; j++)
+                joins.add(new LogicalJoinNode("t" + j, "t" + i, "f1", "f1", Predicate.Op.EQUALS));
+        }
+        JoinOptimizer jo = new JoinOptimizer(lp, joins);
+        jo.orderJoins(stats, filterSelectivities, false);
+        assertEquals("dynamic programming", jo.strategy);
+
+        JoinOptimizer.setMaxDpTables(5);
+        jo = new JoinOptimizer(lp, joins);
+        assertEquals(6, jo.orderJoins(stats, filterSelectivities, false).size());
+        assertTrue(jo.strategy.startsWith("greedy"));
+    }
+
+    /**
+     * Two selective joins of independent pairs of tables are done first,
+     * and their results joined, rather than joining the result of one with
+     * a large table of the other.
+     */
+    @Test
+    public void bushyPlan() throws Exception {
+        init();
+        addTable("a", 5000, 100);
+        addTable("b", 100, 50);
+        addTable("c", 5000, 100);
+        addTable("d", 100, 50);
+        Vector<LogicalJoinNode> joins = new Vector<LogicalJoinNode>();
+        joins.add(new LogicalJoinNode("a", "c", "f1", "f1", Predicate.Op.EQUALS));
+        joins.add(new LogicalJoinNode("a", "b", "f0", "f0", Predicate.Op.EQUALS));
+        joins.add(new LogicalJoinNode("c", "d", "f0", "f0", Predicate.Op.EQUALS));
+        Vector<LogicalJoinNode> order = new JoinOptimizer(lp, joins).orderJoins(
+                stats, filterSelectivities, false);
+        // the join of a with c comes last, after a and c are joined with
+        // the small tables
+        assertEquals(3, order.size());
+        LogicalJoinNode last = order.get(2);
+        assertTrue((last.t1Alias + last.t2Alias).equals("ac") || (last.t1Alias + last.t2Alias).equals("ca"));
+        // each join joins the subplans of its tables, not the joins before it
+        long[] masks = new JoinOptimizer(lp, joins).subplanMasks(order);
+        assertEquals(1L << joins.indexOf(order.get(0)), masks[0]);
+        assertEquals(1L << joins.indexOf(order.get(1)), masks[1]);
+        assertEquals(7L, masks[2]);
+
+        // the plan joins the materialized result of one pair of tables
+        // with the other
+        lp.addJoin("a.f1", "c.f1", Predicate.Op.EQUALS);
+        lp.addJoin("a.f0", "b.f0", Predicate.Op.EQUALS);
+        lp.addJoin("c.f0", "d.f0", Predicate.Op.EQUALS);
+        lp.addProjectField("a.f0", null);
+        lp.addProjectField("c.f0", null);
+        TransactionId tid = new TransactionId();
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        DbIterator join = ((Operator) plan).getChildren()[0];
+        assertTrue(((Operator) join).getChildren()[1] instanceof Materialize);
+        plan.open();
+        int count = 0;
+        while (plan.hasNext()) {
+            Tuple t = plan.next();
+            assertEquals(t.getField(0), t.getField(1));
+            count++;
+        }
+        plan.close();
+        assertEquals(100, count);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @After
+    public void restoreLimits() {
+        JoinOptimizer.setMaxDpTables(12);
+        JoinOptimizer.setOptimizationBudget(1000);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(JoinOptimizerTest.class);
+    }
+}
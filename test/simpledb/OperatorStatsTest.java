@@ -0,0 +1,176 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.*;
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class OperatorStatsTest extends SimpleDbTestBase {
+
+    private HeapFile a, b;
+
+    /**
+     * Creates a table of the specified number of tuples whose first field
+     * is a unique id and second is the id modulo mod.
+     */
+    private HeapFile createTable(String name, int rows, int mod) throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < rows; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % mod)));
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, name);
+        return hf;
+    }
+
+    @Before
+    public void createTables() throws Exception {
+        a = createTable("a", 1000, 10);
+        b = createTable("b", 20, 20);
+        TableStats.computeStatistics();
+    }
+
+    /**
+     * Each operator of an instrumented plan records the tuples it returned,
+     * how often it was opened and rewound, and the pages it requested.
+     */
+    @Test
+    public void profile() throws Exception {
+        TransactionId tid = new TransactionId();
+        SeqScan outer = new SeqScan(tid, b.getId(), "b");
+        SeqScan inner = new SeqScan(tid, a.getId(), "a");
+        Join join = new Join(new JoinPredicate(0, Predicate.Op.EQUALS, 1), outer, inner);
+        Filter filter = new Filter(new Predicate(0, Predicate.Op.LESS_THAN, new IntField(5)), join);
+
+        DbIterator plan = OperatorStats.instrument(filter);
+        assertTrue(plan instanceof Profile);
+        Profile joinProfile = (Profile) filter.getChildren()[0];
+        assertSame(join, joinProfile.getProfiled());
+        Profile outerProfile = (Profile) join.getChildren()[0];
+        Profile innerProfile = (Profile) join.getChildren()[1];
+        assertSame(outer, outerProfile.getProfiled());
+        assertSame(inner, innerProfile.getProfiled());
+
+        HashMap<String, Integer> aliases = new HashMap<String, Integer>();
+        aliases.put("a", a.getId());
+        aliases.put("b", b.getId());
+        OperatorCardinality.updateOperatorCardinality(plan, aliases, TableStats.getStatsMap());
+        assertEquals(20, outerProfile.getEstimatedCardinality());
+        assertEquals(1000, innerProfile.getEstimatedCardinality());
+
+        plan.open();
+        int count = 0;
+        while (plan.hasNext()) {
+            plan.next();
+            count++;
+        }
+        plan.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        // ids 0 to 9 of b match 100 tuples of a each
+        assertEquals(1000, joinProfile.getStats().getRows());
+        assertEquals(500, count);
+        assertEquals(500, ((Profile) plan).getStats().getRows());
+        assertEquals(20, outerProfile.getStats().getRows());
+        assertEquals(1, outerProfile.getStats().getOpens());
+        assertEquals(20 * 1000, innerProfile.getStats().getRows());
+        assertTrue(innerProfile.getStats().getRewinds() >= 19);
+        assertTrue(innerProfile.getStats().getPageRequests() >= a.numPages());
+        assertTrue(joinProfile.getStats().getPageRequests() >= innerProfile.getStats().getPageRequests()
+                + outerProfile.getStats().getPageRequests());
+        assertTrue(joinProfile.getStats().getNanos() >= innerProfile.getStats().getNanos());
+
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        OperatorStats.print(plan, new PrintStream(buf));
+        String[] lines = buf.toString().split("\n");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0], lines[0].startsWith("Filter"));
+        assertTrue(lines[1], lines[1].contains("Join(b.f0 = a.f1)"));
+        assertTrue(lines[3], lines[3].contains("actual 20000 rows"));
+
+        // instrumenting again starts over without adding profiles
+        assertSame(plan, OperatorStats.instrument(plan));
+        assertSame(joinProfile, filter.getChildren()[0]);
+        assertEquals(0, joinProfile.getStats().getRows());
+    }
+
+    /**
+     * The profile of the inner child of an index join records the probes
+     * that stand in for it.
+     */
+    @Test
+    public void profileIndexJoin() throws Exception {
+        a.addIndex(1);
+        HashIndex.getIndexFile(a.getFile(), 1).deleteOnExit();
+        TransactionId tid = new TransactionId();
+        SeqScan outer = new SeqScan(tid, b.getId(), "b");
+        SeqScan inner = new SeqScan(tid, a.getId(), "a");
+        IndexNestedLoopJoin join = new IndexNestedLoopJoin(
+                new JoinPredicate(0, Predicate.Op.EQUALS, 1), outer, inner);
+
+        DbIterator plan = OperatorStats.instrument(join);
+        Profile innerProfile = (Profile) join.getChildren()[1];
+        assertSame(inner, innerProfile.getProfiled());
+        plan.open();
+        int count = 0;
+        while (plan.hasNext()) {
+            plan.next();
+            count++;
+        }
+        plan.close();
+
+        // ids 0 to 9 of b match 100 tuples of a each
+        assertEquals(1000, count);
+        assertEquals(1000, innerProfile.getStats().getRows());
+        assertEquals(20, innerProfile.getStats().getOpens());
+        assertTrue(innerProfile.getStats().getPageRequests() > 0);
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        OperatorStats.print(plan, new PrintStream(buf));
+        String[] lines = buf.toString().split("\n");
+        assertEquals(3, lines.length);
+        assertTrue(lines[2], lines[2].contains("actual 1000 rows"));
+
+        // an inner child without an index on the join field is refused
+        try {
+            join.setChildren(new DbIterator[] { outer, new SeqScan(tid, b.getId(), "b") });
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+        assertSame(innerProfile, join.getChildren()[1]);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** EXPLAIN ANALYZE runs a query and prints its profiled plan. */
+    @Test
+    public void explainAnalyze() throws Exception {
+        PrintStream out = System.out;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buf));
+        try {
+            new Parser().processNextStatement(
+                    "explain analyze select a.f0 from a, b where a.f1 = b.f0 and b.f0 < 3;");
+        } finally {
+            System.setOut(out);
+        }
+        String output = buf.toString();
+        assertTrue(output, output.contains(" 300 rows."));
+        assertTrue(output, output.contains("Project  (estimated"));
+        assertTrue(output, output.contains("actual 300 rows"));
+        assertTrue(output, output.contains("-> SeqScan(a a)"));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(OperatorStatsTest.class);
+    }
+}
@@ -0,0 +1,125 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ParallelSeqScanTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private ArrayList<ArrayList<Integer>> tuples;
+    private TransactionId tid;
+
+    /** Creates a table of 5000 tuples, which spans 10 pages. */
+    @Before
+    public void createTable() throws Exception {
+        tuples = new ArrayList<ArrayList<Integer>>();
+        hf = SystemTestUtil.createRandomHeapFile(2, 5000, 1000, null, tuples);
+        tid = new TransactionId();
+    }
+
+    /** Every tuple is returned once, whatever the number of threads. */
+    @Test
+    public void allTuples() throws Exception {
+        assertEquals(10, hf.numPages());
+        for (int threads : new int[] { 1, 3, 4, 10, 16 }) {
+            ParallelSeqScan scan = new ParallelSeqScan(tid, hf.getId(), "t", null, null, threads);
+            assertEquals(Math.min(threads, 10), scan.getParallelism());
+            SystemTestUtil.matchTuples(scan, tuples);
+        }
+    }
+
+    /** The partitions apply the predicates and projection of the scan. */
+    @Test
+    public void predicatesAndFields() throws Exception {
+        Predicate p = new Predicate(0, Predicate.Op.LESS_THAN, new IntField(100));
+        ParallelSeqScan scan = new ParallelSeqScan(tid, hf.getId(), "t", new int[] { 1 },
+                new Predicate[] { p }, 4);
+        assertEquals(1, scan.getTupleDesc().numFields());
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (ArrayList<Integer> t : tuples) {
+            if (t.get(0) < 100)
+                expected.add(new ArrayList<Integer>(Arrays.asList(t.get(1))));
+        }
+        SystemTestUtil.matchTuples(scan, expected);
+    }
+
+    @Test
+    public void rewind() throws Exception {
+        ParallelSeqScan scan = new ParallelSeqScan(tid, hf.getId(), "t", null, null, 4);
+        scan.open();
+        for (int i = 0; i < 100; i++)
+            scan.next();
+        scan.rewind();
+        int n = 0;
+        while (scan.hasNext()) {
+            scan.next();
+            n++;
+        }
+        assertEquals(5000, n);
+        scan.close();
+    }
+
+    /** Pages read by the partitions at the same time are all counted. */
+    @Test
+    public void pageCounters() throws Exception {
+        hf.resetScanCounters();
+        for (int i = 0; i < 20; i++) {
+            ParallelSeqScan scan = new ParallelSeqScan(tid, hf.getId(), "t", null, null, 10);
+            scan.open();
+            while (scan.hasNext())
+                scan.next();
+            scan.close();
+        }
+        assertEquals(20 * hf.numPages(), hf.getPagesRead());
+        assertEquals(0, hf.getPagesSkipped());
+    }
+
+    /**
+     * Closing an exchange before its children are drained stops the workers
+     * even though they are waiting for room in the queue.
+     */
+    @Test
+    public void closeEarly() throws Exception {
+        DbIterator[] children = new DbIterator[4];
+        for (int i = 0; i < children.length; i++)
+            children[i] = new TestUtil.MockScan(0, 100000, 1);
+        Exchange exchange = new Exchange(children);
+        exchange.open();
+        assertTrue(exchange.hasNext());
+        exchange.next();
+        exchange.close();
+    }
+
+    /** Errors in a worker are thrown by the consumer. */
+    @Test(expected = DbException.class)
+    public void workerFailure() throws Exception {
+        DbIterator failing = new TestUtil.MockScan(0, 10, 1) {
+            public Tuple next() throws DbException, TransactionAbortedException {
+                throw new DbException("failed");
+            }
+        };
+        Exchange exchange = new Exchange(new DbIterator[] { new TestUtil.MockScan(0, 10, 1), failing });
+        exchange.open();
+        try {
+            while (exchange.hasNext())
+                exchange.next();
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ParallelSeqScanTest.class);
+    }
+}
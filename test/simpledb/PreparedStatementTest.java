@@ -0,0 +1,148 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.*;
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class PreparedStatementTest extends SimpleDbTestBase {
+
+    private HeapFile hf;
+    private Parser parser;
+
+    /**
+     * Creates a table items of 1000 tuples whose first field is a unique id
+     * and second is the id modulo 10.
+     */
+    @Before
+    public void createTable() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 1000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+        File f = File.createTempFile("items", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = new HeapFile(f, Utility.getTupleDesc(2, "f"));
+        Database.getCatalog().addTable(hf, "items");
+        TableStats.computeStatistics();
+        parser = new Parser();
+    }
+
+    /** @return the number of tuples the statement returns */
+    private int count(PreparedStatement ps) throws Exception {
+        TransactionId tid = new TransactionId();
+        Query q = ps.execute(tid);
+        q.start();
+        int n = 0;
+        while (q.hasNext()) {
+            q.next();
+            n++;
+        }
+        q.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+
+    /**
+     * A prepared statement returns the tuples for the current values of its
+     * parameters, with the same operators every time.
+     */
+    @Test
+    public void rebind() throws Exception {
+        PreparedStatement ps = parser.prepare(
+                "select items.f0 from items where items.f0 < ? and items.f1 = ? order by items.f0;");
+        assertEquals(2, ps.numParameters());
+        assertEquals(Type.INT_TYPE, ps.getParameterType(1));
+
+        ps.setParameter(0, new IntField(100));
+        ps.setParameter(1, new IntField(3));
+        assertEquals(10, count(ps));
+        DbIterator plan = ps.execute(new TransactionId()).getPhysicalPlan();
+
+        ps.setParameter(0, "500");
+        ps.setParameter(1, "7");
+        assertEquals(50, count(ps));
+        assertSame(plan, ps.execute(new TransactionId()).getPhysicalPlan());
+
+        ps.setParameter(1, new IntField(11));
+        assertEquals(0, count(ps));
+        assertEquals(ps.getSql(), ps.execute(new TransactionId()).getLogicalPlan().getQuery());
+    }
+
+    /** Parameters and constants may be mixed. */
+    @Test
+    public void constants() throws Exception {
+        PreparedStatement ps = parser.prepare(
+                "select * from items where items.f1 = 5 and items.f0 >= ?;");
+        assertEquals(1, ps.numParameters());
+        ps.setParameter(0, new IntField(900));
+        assertEquals(10, count(ps));
+        ps.setParameter(0, new IntField(0));
+        assertEquals(100, count(ps));
+    }
+
+    /** Lookups through an index search for the new value of the parameter. */
+    @Test
+    public void indexLookup() throws Exception {
+        hf.addIndex(0);
+        PreparedStatement ps = parser.prepare("select * from items where items.f0 = ?;");
+        ps.setParameter(0, new IntField(17));
+        assertEquals(1, count(ps));
+        DbIterator scan = ((Operator) ps.execute(new TransactionId()).getPhysicalPlan()).getChildren()[0];
+        assertTrue(scan instanceof IndexLookup);
+        ps.setParameter(0, new IntField(2000));
+        assertEquals(0, count(ps));
+        ps.setParameter(0, new IntField(999));
+        assertEquals(1, count(ps));
+    }
+
+    @Test
+    public void invalid() throws Exception {
+        PreparedStatement ps = parser.prepare("select * from items where items.f0 = ?;");
+        try {
+            ps.setParameter(0, new StringField("x", Type.STRING_LEN));
+            fail("expected a type mismatch");
+        } catch (ParsingException e) {
+        }
+        try {
+            ps.execute(new TransactionId());
+            fail("expected an unset parameter");
+        } catch (ParsingException e) {
+        }
+        try {
+            parser.prepare("select * from items where ? = ?;");
+            fail("expected a parameter outside of a filter");
+        } catch (ParsingException e) {
+        }
+    }
+
+    /** PREPARE and EXECUTE statements prepare and run statements by name. */
+    @Test
+    public void console() throws Exception {
+        PrintStream out = System.out;
+        ByteArrayOutputStream buf = new ByteArrayOutputStream();
+        System.setOut(new PrintStream(buf));
+        try {
+            parser.processNextStatement("prepare small as select * from items where items.f0 < ?;");
+            parser.processNextStatement("execute small (3);");
+            parser.processNextStatement("EXECUTE small(-1);");
+        } finally {
+            System.setOut(out);
+        }
+        String output = buf.toString();
+        assertTrue(output, output.contains(" 3 rows."));
+        assertTrue(output, output.contains(" 0 rows."));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(PreparedStatementTest.class);
+    }
+}
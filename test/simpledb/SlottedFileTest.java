@@ -0,0 +1,170 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class SlottedFileTest extends SimpleDbTestBase {
+    private TupleDesc td;
+    private SlottedFile sf;
+    private TransactionId tid;
+
+    /**
+     * Set up initial resources for each unit test.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        td = new TupleDesc(new Type[] { Type.INT_TYPE, Type.STRING_TYPE });
+        File f = File.createTempFile("table", ".slt");
+        f.deleteOnExit();
+        sf = new SlottedFile(f, td);
+        Database.getCatalog().addTable(sf, SystemTestUtil.getUUID());
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private Tuple tuple(int i, String s) {
+        Tuple t = new Tuple(td);
+        t.setField(0, new IntField(i));
+        t.setField(1, new StringField(s, Math.max(s.length(), Type.STRING_LEN)));
+        return t;
+    }
+
+    private ArrayList<Tuple> scan() throws Exception {
+        ArrayList<Tuple> result = new ArrayList<Tuple>();
+        DbFileIterator it = sf.iterator(tid);
+        it.open();
+        while (it.hasNext())
+            result.add(it.next());
+        it.close();
+        return result;
+    }
+
+    private static String repeat(char c, int n) {
+        char[] cs = new char[n];
+        Arrays.fill(cs, c);
+        return new String(cs);
+    }
+
+    /**
+     * Short strings take only as much space as they need, so many more rows
+     * fit on a page than with HeapPage's fixed size slots.
+     */
+    @Test
+    public void shortStringsPackDensely() throws Exception {
+        // a HeapPage holds 30 of these tuples
+        for (int i = 0; i < 250; i++)
+            sf.insertTuple(tid, tuple(i, "row" + i));
+        assertEquals(1, sf.numPages());
+
+        ArrayList<Tuple> rows = scan();
+        assertEquals(250, rows.size());
+        for (int i = 0; i < 250; i++) {
+            assertEquals(new IntField(i), rows.get(i).getField(0));
+            assertEquals("row" + i, ((StringField) rows.get(i).getField(1)).getValue());
+        }
+    }
+
+    /**
+     * Strings longer than Type.STRING_LEN, and longer than a page, are kept
+     * intact on overflow pages.
+     */
+    @Test
+    public void longStrings() throws Exception {
+        String medium = repeat('m', 1000);
+        String huge = repeat('h', 3 * BufferPool.PAGE_SIZE);
+        sf.insertTuple(tid, tuple(1, medium));
+        sf.insertTuple(tid, tuple(2, huge));
+        sf.insertTuple(tid, tuple(3, "short"));
+        Database.getBufferPool().flushAllPages();
+        Database.resetBufferPool(BufferPool.DEFAULT_PAGES);
+
+        ArrayList<Tuple> rows = scan();
+        assertEquals(3, rows.size());
+        assertEquals(medium, ((StringField) rows.get(0).getField(1)).getValue());
+        assertEquals(huge, ((StringField) rows.get(1).getField(1)).getValue());
+        assertEquals("short", ((StringField) rows.get(2).getField(1)).getValue());
+    }
+
+    @Test
+    public void deleteReusesSlot() throws Exception {
+        for (int i = 0; i < 3; i++)
+            sf.insertTuple(tid, tuple(i, "x" + i));
+        Tuple victim = scan().get(1);
+        sf.deleteTuple(tid, victim);
+        assertEquals(2, scan().size());
+
+        Tuple t = tuple(9, "y");
+        sf.insertTuple(tid, t);
+        assertEquals(victim.getRecordId(), t.getRecordId());
+        assertEquals(3, scan().size());
+    }
+
+    /**
+     * A tuple too long for a page is refused before its long strings are
+     * written to overflow pages, which would never be reclaimed.
+     */
+    @Test
+    public void tooLongLeavesNoOverflow() throws Exception {
+        Type[] types = new Type[40];
+        Arrays.fill(types, Type.STRING_TYPE);
+        TupleDesc wide = new TupleDesc(types);
+        File f = File.createTempFile("table", ".slt");
+        f.deleteOnExit();
+        SlottedFile wideFile = new SlottedFile(f, wide);
+        Database.getCatalog().addTable(wideFile, SystemTestUtil.getUUID());
+
+        Tuple t = new Tuple(wide);
+        t.setField(0, new StringField(repeat('l', 1000), 1000));
+        for (int i = 1; i < types.length; i++)
+            t.setField(i, new StringField(repeat('s', Type.STRING_LEN), Type.STRING_LEN));
+        try {
+            wideFile.insertTuple(tid, t);
+            fail("expected DbException");
+        } catch (DbException e) {
+            // expected
+        }
+        assertEquals(0, wideFile.numPages());
+    }
+
+    @Test(expected = DbException.class)
+    public void deleteTwice() throws Exception {
+        sf.insertTuple(tid, tuple(0, "a"));
+        Tuple t = scan().get(0);
+        sf.deleteTuple(tid, t);
+        sf.deleteTuple(tid, t);
+    }
+
+    @Test
+    public void encoder() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 2000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, -i)));
+        File f = File.createTempFile("table", ".slt");
+        f.deleteOnExit();
+        SlottedFileEncoder.convert(tuples, f, 2);
+        SlottedFile ints = new SlottedFile(f, Utility.getTupleDesc(2));
+        Database.getCatalog().addTable(ints, SystemTestUtil.getUUID());
+        SystemTestUtil.matchTuples(ints, tuples);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(SlottedFileTest.class);
+    }
+}
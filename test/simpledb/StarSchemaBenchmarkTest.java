@@ -0,0 +1,76 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.*;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class StarSchemaBenchmarkTest extends SimpleDbTestBase {
+
+    private static File tempDir() throws IOException {
+        File dir = File.createTempFile("ssb", "");
+        dir.delete();
+        dir.mkdirs();
+        dir.deleteOnExit();
+        return dir;
+    }
+
+    /**
+     * The generated tables load through the catalog file, every query runs
+     * on them, and the results have a line per query.
+     */
+    @Test
+    public void generateAndRun() throws Exception {
+        File dir = tempDir();
+        File catalog = StarSchemaBenchmark.generate(dir, 0.05);
+        for (File f : dir.listFiles())
+            f.deleteOnExit();
+
+        List<StarSchemaBenchmark.Result> results = StarSchemaBenchmark.runAll(catalog, 2);
+        assertEquals(StarSchemaBenchmark.QUERIES.length, results.size());
+        assertEquals(9, Database.getCatalog().getTupleDesc(Database.getCatalog().getTableId("lineorder"))
+                .numFields());
+
+        // the single aggregate has one row, and the grouped ones a row per group
+        assertEquals(1, results.get(0).rows);
+        assertTrue(results.get(3).rows > 0 && results.get(3).rows <= 7);
+
+        // the order by query returns every matching lineorder
+        int matching = 0;
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, Database.getCatalog().getTableId("lineorder"), "lo");
+        scan.open();
+        while (scan.hasNext()) {
+            Tuple t = scan.next();
+            if (((IntField) t.getField(7)).getValue() == 10 && ((IntField) t.getField(5)).getValue() > 45)
+                matching++;
+        }
+        scan.close();
+        Database.getBufferPool().transactionComplete(tid);
+        assertEquals(matching, results.get(4).rows);
+
+        for (StarSchemaBenchmark.Result r : results) {
+            assertEquals(2, r.nanos.length);
+            assertTrue(r.percentileMillis(0) <= r.percentileMillis(0.5));
+            assertTrue(r.percentileMillis(0.99) <= r.percentileMillis(1));
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        StarSchemaBenchmark.writeResults(results, new PrintStream(bytes));
+        String[] lines = bytes.toString().split("\n");
+        assertEquals(results.size() + 1, lines.length);
+        assertTrue(lines[0].startsWith("query,runs,rows,"));
+        assertTrue(lines[1].startsWith("q1.1,2,1,"));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StarSchemaBenchmarkTest.class);
+    }
+}
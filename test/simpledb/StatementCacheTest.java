@@ -0,0 +1,126 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.util.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class StatementCacheTest extends SimpleDbTestBase {
+
+    private String name;
+    private HeapFile hf;
+
+    @Before
+    public void createTable() throws Exception {
+        hf = new HeapFile(SystemTestUtil.createRandomHeapFileUnopened(2, 100, 1000, null, null),
+                Utility.getTupleDesc(2, "f"));
+        name = "items";
+        Database.getCatalog().addTable(hf, name);
+        TableStats.computeStatistics();
+    }
+
+    @Test
+    public void normalize() {
+        ArrayList<String> literals = new ArrayList<String>();
+        String key = StatementCache.normalize(
+                "SELECT t1.f0  FROM t1\n WHERE t1.f1 > 42 AND t1.f2 = 'it''s';", literals);
+        assertEquals("SELECT t1.f0 FROM t1 WHERE t1.f1 > ? AND t1.f2 = '?'", key);
+        assertEquals(Arrays.asList("42", "it's"), literals);
+
+        literals.clear();
+        assertEquals(key, StatementCache.normalize(
+                "SELECT t1.f0 FROM t1 WHERE t1.f1 > 7 AND t1.f2 = 'x'", literals));
+        assertEquals(Arrays.asList("7", "x"), literals);
+    }
+
+    /** @return the number of tuples the plan of the specified query returns */
+    private int count(LogicalPlan lp) throws Exception {
+        TransactionId tid = new TransactionId();
+        DbIterator it = lp.physicalPlan(tid, TableStats.getStatsMap(), false);
+        it.open();
+        int n = 0;
+        while (it.hasNext()) {
+            it.next();
+            n++;
+        }
+        it.close();
+        Database.getBufferPool().transactionComplete(tid);
+        return n;
+    }
+
+    /**
+     * Queries that differ only in their constants reuse the plan of the
+     * first, bound to their own constants.
+     */
+    @Test
+    public void reusePlan() throws Exception {
+        Parser p = new Parser();
+        p.processNextStatement("select * from " + name + " where " + name + ".f0 < 10;");
+        assertEquals(1, p.statementCache.size());
+        assertEquals(0, p.statementCache.hits());
+        p.processNextStatement("select * from " + name + " where " + name + ".f0 < 20;");
+        assertEquals(1, p.statementCache.hits());
+
+        ArrayList<String> literals = new ArrayList<String>();
+        String key = StatementCache.normalize("select * from " + name + " where " + name
+                + ".f0 < 1000000;", literals);
+        LogicalPlan lp = p.statementCache.get(key, literals);
+        assertNotNull(lp);
+        // the text of the cached plan holds its old constants
+        assertEquals("", lp.getQuery());
+        assertEquals(100, count(lp));
+        literals.set(0, "-1");
+        assertEquals(0, count(p.statementCache.get(key, literals)));
+
+        // inserts and deletes are not cached
+        p.processNextStatement("insert into " + name + " values (1, 2);");
+        assertEquals(1, p.statementCache.size());
+    }
+
+    /**
+     * Plans are dropped when the catalog changes or the statistics of one of
+     * their tables are replaced.
+     */
+    @Test
+    public void invalidation() throws Exception {
+        StatementCache cache = new StatementCache(2);
+        Parser p = new Parser();
+        String sql = "select * from " + name + " where " + name + ".f0 < 10;";
+        LogicalPlan lp = p.generateLogicalPlan(new TransactionId(), sql);
+        lp.physicalPlan(new TransactionId(), TableStats.getStatsMap(), false);
+        ArrayList<String> literals = new ArrayList<String>();
+        String key = StatementCache.normalize(sql, literals);
+        assertTrue(cache.put(key, literals, lp));
+        assertNotNull(cache.get(key, literals));
+
+        TableStats.setTableStats(name, new TableStats(hf.getId(), 1000));
+        assertNull(cache.get(key, literals));
+        assertEquals(0, cache.size());
+
+        cache.put(key, literals, lp);
+        SystemTestUtil.createRandomHeapFile(1, 1, null, null);
+        assertNull(cache.get(key, literals));
+
+        // least recently used plans are dropped
+        LogicalPlan scan = p.generateLogicalPlan(new TransactionId(), "select * from " + name + ";");
+        ArrayList<String> none = new ArrayList<String>();
+        assertTrue(cache.put("a", none, scan));
+        assertTrue(cache.put("b", none, scan));
+        assertTrue(cache.put(key, literals, lp));
+        assertEquals(2, cache.size());
+        assertNull(cache.get("a", none));
+        assertNotNull(cache.get("b", none));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(StatementCacheTest.class);
+    }
+}
@@ -0,0 +1,278 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class TableStatsTest extends SimpleDbTestBase {
+
+    /**
+     * Creates a table of 10000 tuples whose first field is a unique id,
+     * second is uniform over 0..99 and third is 0 in nine tenths of the
+     * tuples and uniform over 1..1000 in the rest.
+     */
+    private HeapFile createTable() throws Exception {
+        Random rand = new Random(7);
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 10000; i++) {
+            int skewed = rand.nextInt(10) == 0 ? 1 + rand.nextInt(1000) : 0;
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, rand.nextInt(100), skewed)));
+        }
+        Collections.shuffle(tuples, rand);
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 3);
+        return Utility.openHeapFile(3, f);
+    }
+
+    @Test
+    public void cardinalityAndCost() throws Exception {
+        HeapFile hf = createTable();
+        TableStats stats = new TableStats(hf.getId(), 1000);
+        assertEquals(10000, stats.totalTuples());
+        assertEquals(2500, stats.estimateTableCardinality(0.25));
+        assertEquals(hf.numPages() * 1000.0, stats.estimateScanCost(), 1e-6);
+    }
+
+    @Test
+    public void intSelectivity() throws Exception {
+        TableStats stats = new TableStats(createTable().getId(), 1000);
+        assertEquals(0.0001, stats.estimateSelectivity(0, Predicate.Op.EQUALS, new IntField(42)), 0.0001);
+        assertEquals(0.25, stats.estimateSelectivity(0, Predicate.Op.LESS_THAN, new IntField(2500)), 0.01);
+        assertEquals(0.1, stats.estimateSelectivity(0, Predicate.Op.GREATER_THAN_OR_EQ, new IntField(9000)), 0.01);
+        assertEquals(0.0, stats.estimateSelectivity(0, Predicate.Op.EQUALS, new IntField(-5)), 1e-9);
+        assertEquals(1.0, stats.estimateSelectivity(0, Predicate.Op.GREATER_THAN, new IntField(-5)), 1e-9);
+        assertEquals(0.01, stats.estimateSelectivity(1, Predicate.Op.EQUALS, new IntField(17)), 0.003);
+        assertEquals(0.99, stats.estimateSelectivity(1, Predicate.Op.NOT_EQUALS, new IntField(17)), 0.003);
+
+        // the frequent value gets a bucket of its own
+        assertEquals(0.9, stats.estimateSelectivity(2, Predicate.Op.EQUALS, new IntField(0)), 0.02);
+        assertEquals(0.9, stats.estimateSelectivity(2, Predicate.Op.LESS_THAN_OR_EQ, new IntField(0)), 0.02);
+        assertEquals(0.05, stats.estimateSelectivity(2, Predicate.Op.GREATER_THAN, new IntField(500)), 0.01);
+    }
+
+    @Test
+    public void distinctValues() throws Exception {
+        TableStats stats = new TableStats(createTable().getId(), 1000);
+        assertEquals(10000, stats.numDistinct(0), 10000 * 0.05);
+        assertEquals(100, stats.numDistinct(1), 100 * 0.05);
+        assertEquals(0.01, stats.avgSelectivity(1, Predicate.Op.EQUALS), 0.001);
+        assertEquals(0.495, stats.avgSelectivity(1, Predicate.Op.LESS_THAN), 0.01);
+
+        HyperLogLog hll = new HyperLogLog();
+        for (int i = 0; i < 1000000; i++)
+            hll.add(new IntField(i % 300000));
+        assertEquals(300000, hll.estimate(), 300000 * 0.05);
+    }
+
+    @Test
+    public void stringSelectivity() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+        File f = File.createTempFile("table", ".dat");
+        f.delete();
+        f.deleteOnExit();
+        HeapFile hf = new HeapFile(f, td);
+        Database.getCatalog().addTable(hf, SystemTestUtil.getUUID());
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 2000; i++) {
+            Tuple t = new Tuple(td);
+            // 26 prefixes of 20 strings each
+            String s = "abc" + (char) ('a' + i % 26) + (i / 26 % 20);
+            t.setField(0, new StringField(s, Type.STRING_LEN));
+            hf.insertTuple(tid, t);
+        }
+        Database.getBufferPool().flushAllPages();
+        TableStats stats = new TableStats(hf.getId(), 1000);
+
+        assertEquals(1.0 / 520, stats.estimateSelectivity(0, Predicate.Op.EQUALS,
+                new StringField("abcq7", Type.STRING_LEN)), 0.0003);
+        assertEquals(0.5, stats.estimateSelectivity(0, Predicate.Op.LESS_THAN,
+                new StringField("abcn", Type.STRING_LEN)), 0.01);
+        assertEquals(3.0 / 26, stats.estimateSelectivity(0, Predicate.Op.GREATER_THAN_OR_EQ,
+                new StringField("abcx", Type.STRING_LEN)), 0.01);
+        assertEquals(0.0, stats.estimateSelectivity(0, Predicate.Op.EQUALS,
+                new StringField("y", Type.STRING_LEN)), 1e-9);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Statistics from a sample of the pages of a table are close to the
+     * statistics of the whole table.
+     */
+    @Test
+    public void sampled() throws Exception {
+        HeapFile hf = createTable();
+        TableStats stats = new TableStats(hf.getId(), 1000, 0.2);
+        assertEquals(10000, stats.totalTuples(), 500);
+        assertEquals(0.25, stats.estimateSelectivity(0, Predicate.Op.LESS_THAN, new IntField(2500)), 0.05);
+        assertEquals(0.9, stats.estimateSelectivity(2, Predicate.Op.EQUALS, new IntField(0)), 0.05);
+        assertEquals(10000, stats.numDistinct(0), 10000 * 0.2);
+        assertEquals(100, stats.numDistinct(1), 100 * 0.1);
+    }
+
+    /**
+     * Statistics are loaded from the stats file for tables that have not
+     * changed since it was written, and recomputed for the others.
+     */
+    @Test
+    public void statsFile() throws Exception {
+        HeapFile hf = createTable();
+        String name = Database.getCatalog().getTableName(hf.getId());
+        File statsFile = File.createTempFile("catalog", ".stats");
+        statsFile.delete();
+        statsFile.deleteOnExit();
+        TableStats.computeStatistics(statsFile, 1.0);
+        assertTrue(statsFile.exists());
+        assertEquals(10000, TableStats.getTableStats(name).totalTuples());
+
+        HashMap<String, TableStats> saved = TableStats.readStatsFile(statsFile);
+        saved.get(name).ntups = 12345;
+        TableStats.writeStatsFile(statsFile, saved);
+        TableStats.computeStatistics(statsFile, 1.0);
+        assertEquals(12345, TableStats.getTableStats(name).totalTuples());
+
+        TransactionId tid = new TransactionId();
+        for (int i = 0; i < 1000; i++)
+            hf.insertTuple(tid, Utility.getHeapTuple(new int[] { i, i, i }));
+        Database.getBufferPool().flushAllPages();
+        TableStats.computeStatistics(statsFile, 1.0);
+        assertEquals(11000, TableStats.getTableStats(name).totalTuples());
+        assertEquals(11000, TableStats.readStatsFile(statsFile).get(name).totalTuples());
+
+        // rewriting tuples in place keeps the number of pages and the
+        // length of the file, and may keep its modification time
+        long length = hf.getFile().length();
+        DbFileIterator it = hf.iterator(tid);
+        it.open();
+        for (int i = 0; i < 100; i++)
+            Database.getBufferPool().deleteTuple(tid, it.next());
+        it.close();
+        int pages = hf.numPages();
+        Database.getBufferPool().flushAllPages();
+        assertEquals(pages, hf.numPages());
+        assertEquals(length, hf.getFile().length());
+        TableStats.computeStatistics(statsFile, 1.0);
+        assertEquals(10900, TableStats.getTableStats(name).totalTuples());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Inserts and deletes through the BufferPool update the statistics of
+     * the table, which are recomputed once enough of the table changed.
+     */
+    @Test
+    public void incremental() throws Exception {
+        HeapFile hf = createTable();
+        String name = Database.getCatalog().getTableName(hf.getId());
+        TableStats stats = new TableStats(hf.getId(), 1000);
+        TableStats.setTableStats(name, stats);
+        TransactionId tid = new TransactionId();
+        ArrayList<Tuple> inserted = new ArrayList<Tuple>();
+        for (int i = 0; i < 1000; i++) {
+            Tuple t = Utility.getHeapTuple(new int[] { 20000 + i, 7, 5000 });
+            Database.getBufferPool().insertTuple(tid, hf.getId(), t);
+            inserted.add(t);
+        }
+        assertSame(stats, TableStats.getTableStats(name));
+        assertEquals(11000, stats.totalTuples());
+        assertEquals(1.0 / 11, stats.estimateSelectivity(0, Predicate.Op.GREATER_THAN_OR_EQ,
+                new IntField(20000)), 0.01);
+        assertEquals(1.0 / 11, stats.estimateSelectivity(2, Predicate.Op.EQUALS, new IntField(5000)), 0.01);
+        assertEquals(11000, stats.numDistinct(0), 11000 * 0.05);
+
+        for (Tuple t : inserted.subList(0, 500))
+            Database.getBufferPool().deleteTuple(tid, t);
+        assertEquals(10500, stats.totalTuples());
+        assertEquals(0.5 / 10.5, stats.estimateSelectivity(0, Predicate.Op.GREATER_THAN_OR_EQ,
+                new IntField(20000)), 0.01);
+        assertNull(stats.refresh);
+
+        // 2000 changes in a table of 10000 tuples make the statistics
+        // stale; the refresh clears the field once it is done, which it
+        // cannot do while the statistics are locked
+        Future<TableStats> refresh;
+        synchronized (stats) {
+            for (int i = 0; i < 501; i++)
+                Database.getBufferPool().insertTuple(tid, hf.getId(), Utility.getHeapTuple(new int[] { i, i, i }));
+            refresh = stats.refresh;
+        }
+        assertNotNull(refresh);
+        Database.getBufferPool().flushAllPages();
+        TableStats fresh = refresh.get();
+        assertNull(stats.refresh);
+        assertSame(fresh, TableStats.getTableStats(name));
+        assertEquals(11000, fresh.totalTuples(), 1);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * A refresh that fails is tried again, and one that finishes after the
+     * statistics were replaced does not replace them again.
+     */
+    @Test
+    public void refreshRetried() throws Exception {
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 1000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        final boolean[] failing = new boolean[1];
+        HeapFile hf = new HeapFile(f, Utility.getTupleDesc(2)) {
+            @Override
+            public DbFileIterator iterator(TransactionId tid) {
+                if (failing[0])
+                    throw new IllegalStateException("table unreadable");
+                return super.iterator(tid);
+            }
+        };
+        String name = SystemTestUtil.getUUID();
+        Database.getCatalog().addTable(hf, name);
+        TableStats stats = new TableStats(hf.getId(), 1000);
+        TableStats.setTableStats(name, stats);
+        Tuple t = Utility.getHeapTuple(new int[] { 5, 5 });
+
+        failing[0] = true;
+        Future<TableStats> refresh;
+        synchronized (stats) {
+            for (int i = 0; i < 201; i++)
+                stats.addTuple(t);
+            refresh = stats.refresh;
+        }
+        try {
+            refresh.get();
+            fail("expected the refresh to fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+        assertNull(stats.refresh);
+        assertSame(stats, TableStats.getTableStats(name));
+
+        failing[0] = false;
+        TableStats other = new TableStats(hf.getId(), 1000);
+        synchronized (stats) {
+            stats.addTuple(t);
+            refresh = stats.refresh;
+            TableStats.setTableStats(name, other);
+        }
+        assertNotNull(refresh);
+        assertEquals(1000, refresh.get().totalTuples());
+        assertSame(other, TableStats.getTableStats(name));
+        stats.addTuple(t);
+        assertNull(stats.refresh);
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(TableStatsTest.class);
+    }
+}
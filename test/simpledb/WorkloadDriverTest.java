@@ -0,0 +1,90 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+
+import java.io.*;
+import java.util.*;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class WorkloadDriverTest extends SimpleDbTestBase {
+
+    /** @return the keys of the tuples of the table, checking that each is found through the index */
+    private static ArrayList<Integer> keys(HeapFile hf) throws Exception {
+        ArrayList<Integer> keys = new ArrayList<Integer>();
+        TransactionId tid = new TransactionId();
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t");
+        scan.open();
+        while (scan.hasNext())
+            keys.add(((IntField) scan.next().getField(0)).getValue());
+        scan.close();
+        for (int k : keys)
+            assertEquals(1, hf.getIndex(0).lookup(new IntField(k)).size());
+        Database.getBufferPool().transactionComplete(tid);
+        return keys;
+    }
+
+    /**
+     * Clients inserting at the same time neither lose tuples by filling the
+     * same slot nor by appending the same page.
+     */
+    @Test
+    public void concurrentInserts() throws Exception {
+        HeapFile hf = WorkloadDriver.createTable(100);
+        WorkloadDriver driver = new WorkloadDriver(hf.getId(), 100, 4, new int[] { 1, 0, 0, 0 });
+        driver.run(300);
+
+        WorkloadDriver.OperationStats s = driver.getStats(WorkloadDriver.Operation.INSERT);
+        assertTrue(s.getCommits() > 0);
+        assertEquals(0, s.getErrors());
+        assertEquals(s.getCommits(), s.getLatency().getCount());
+        ArrayList<Integer> keys = keys(hf);
+        assertEquals(100 + s.getCommits(), keys.size());
+        assertEquals(keys.size(), new HashSet<Integer>(keys).size());
+    }
+
+    /**
+     * A run of every operation leaves each tuple in the table once and in
+     * the index, and reports a line per operation.
+     */
+    @Test
+    public void mixedWorkload() throws Exception {
+        HeapFile hf = WorkloadDriver.createTable(500);
+        WorkloadDriver driver = new WorkloadDriver(hf.getId(), 500, 4, new int[] { 30, 30, 30, 10 });
+        driver.run(500);
+
+        long inserts = 0;
+        for (WorkloadDriver.Operation op : WorkloadDriver.Operation.values()) {
+            WorkloadDriver.OperationStats s = driver.getStats(op);
+            assertTrue(op + " never committed", s.getCommits() > 0);
+            assertEquals(s.getTransactions(), s.getLatency().getCount());
+            if (op == WorkloadDriver.Operation.INSERT)
+                inserts = s.getCommits();
+        }
+        ArrayList<Integer> keys = keys(hf);
+        assertTrue(keys.size() <= 500 + inserts);
+        assertEquals(keys.size(), new HashSet<Integer>(keys).size());
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        driver.writeResults(new PrintStream(bytes));
+        String[] lines = bytes.toString().split("\n");
+        assertEquals(WorkloadDriver.Operation.values().length + 2, lines.length);
+        assertTrue(lines[0].startsWith("operation,transactions,commits,aborts,errors,"));
+        assertTrue(lines[1].startsWith("insert,"));
+        assertTrue(lines[lines.length - 1].startsWith("all,"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyMix() throws Exception {
+        new WorkloadDriver(0, 0, 1, new int[] { 0, 0, 0, 0 });
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(WorkloadDriverTest.class);
+    }
+}
@@ -0,0 +1,174 @@
+package simpledb;
+
+import simpledb.systemtest.SimpleDbTestBase;
+import simpledb.systemtest.SystemTestUtil;
+
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import junit.framework.JUnit4TestAdapter;
+
+public class ZoneMapTest extends SimpleDbTestBase {
+    private ArrayList<ArrayList<Integer>> tuples;
+    private HeapFile hf;
+    private TransactionId tid;
+
+    /**
+     * Set up initial resources for each unit test. The table holds the
+     * values 0..1999 in order, so each page covers a distinct range.
+     */
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 2000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 7)));
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        ZoneMap.getZoneFile(f).deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        hf = Utility.openHeapFile(2, f);
+        tid = new TransactionId();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    private ArrayList<ArrayList<Integer>> select(Predicate.Op op, int value) {
+        ArrayList<ArrayList<Integer>> result = new ArrayList<ArrayList<Integer>>();
+        Predicate p = new Predicate(0, op, new IntField(value));
+        for (ArrayList<Integer> t : tuples) {
+            if (new IntField(t.get(0)).compare(op, p.getOperand()))
+                result.add(t);
+        }
+        return result;
+    }
+
+    /**
+     * A selective predicate only reads the pages whose range overlaps it.
+     */
+    @Test
+    public void skipsPages() throws Exception {
+        Predicate[] preds = { new Predicate(0, Predicate.Op.EQUALS, new IntField(1234)) };
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t", null, preds);
+        SystemTestUtil.matchTuples(scan, select(Predicate.Op.EQUALS, 1234));
+        assertEquals(1, hf.getPagesRead());
+        assertEquals(hf.numPages() - 1, hf.getPagesSkipped());
+    }
+
+    @Test
+    public void rangePredicates() throws Exception {
+        Predicate.Op[] ops = { Predicate.Op.LESS_THAN, Predicate.Op.LESS_THAN_OR_EQ,
+                Predicate.Op.GREATER_THAN, Predicate.Op.GREATER_THAN_OR_EQ, Predicate.Op.NOT_EQUALS };
+        for (Predicate.Op op : ops) {
+            Predicate[] preds = { new Predicate(0, op, new IntField(1000)) };
+            SeqScan scan = new SeqScan(tid, hf.getId(), "t", null, preds);
+            SystemTestUtil.matchTuples(scan, select(op, 1000));
+        }
+    }
+
+    /**
+     * The zone map is written to its side file and read back by a new
+     * HeapFile over the same data.
+     */
+    @Test
+    public void persisted() throws Exception {
+        ZoneMap zm = hf.getZoneMap();
+        assertTrue(ZoneMap.getZoneFile(hf.getFile()).exists());
+        ZoneMap reloaded = new ZoneMap(hf);
+        assertEquals(zm.numPages(), reloaded.numPages());
+        for (int p = 0; p < zm.numPages(); p++) {
+            assertEquals(zm.getMin(p, 0), reloaded.getMin(p, 0));
+            assertEquals(zm.getMax(p, 0), reloaded.getMax(p, 0));
+        }
+    }
+
+    /**
+     * Widened ranges are written to the side file with the heap file page
+     * they describe, not on every insert.
+     */
+    @Test
+    public void widenedWithPage() throws Exception {
+        ZoneMap zm = hf.getZoneMap();
+        File zoneFile = ZoneMap.getZoneFile(hf.getFile());
+        byte[] written = readFile(zoneFile);
+        int last = hf.numPages() - 1;
+        hf.insertTuple(tid, Utility.getHeapTuple(new int[] { 6000, 1 }));
+        assertEquals(new IntField(6000), zm.getMax(last, 0));
+        assertTrue(Arrays.equals(written, readFile(zoneFile)));
+
+        Database.getBufferPool().flushAllPages();
+        assertEquals(new IntField(6000), new ZoneMap(hf).getMax(last, 0));
+    }
+
+    private static byte[] readFile(File f) throws Exception {
+        byte[] data = new byte[(int) f.length()];
+        DataInputStream in = new DataInputStream(new FileInputStream(f));
+        try {
+            in.readFully(data);
+        } finally {
+            in.close();
+        }
+        return data;
+    }
+
+    /**
+     * Inserted tuples are found whether or not the zone map was loaded when
+     * they were inserted.
+     */
+    @Test
+    public void insertWidens() throws Exception {
+        Predicate[] preds = { new Predicate(0, Predicate.Op.GREATER_THAN, new IntField(5000)) };
+
+        hf.insertTuple(tid, Utility.getHeapTuple(new int[] { 6000, 1 }));
+        SeqScan scan = new SeqScan(tid, hf.getId(), "t", null, preds);
+        SystemTestUtil.matchTuples(scan, Arrays.asList(new ArrayList<Integer>(Arrays.asList(6000, 1))));
+
+        hf.insertTuple(tid, Utility.getHeapTuple(new int[] { 7000, 2 }));
+        scan = new SeqScan(tid, hf.getId(), "t", null, preds);
+        SystemTestUtil.matchTuples(scan, Arrays.asList(new ArrayList<Integer>(Arrays.asList(6000, 1)),
+                new ArrayList<Integer>(Arrays.asList(7000, 2))));
+    }
+
+    @Test
+    public void stringPrefixes() throws Exception {
+        TupleDesc td = new TupleDesc(new Type[] { Type.STRING_TYPE });
+        File f = File.createTempFile("strings", ".dat");
+        f.deleteOnExit();
+        ZoneMap.getZoneFile(f).deleteOnExit();
+        HeapFile sf = new HeapFile(f, td);
+        Database.getCatalog().addTable(sf, SystemTestUtil.getUUID());
+        // loaded before the inserts, so it is widened to cover them
+        ZoneMap zm = sf.getZoneMap();
+        for (String s : new String[] { "applesauce", "bananabread" }) {
+            Tuple t = new Tuple(td);
+            t.setField(0, new StringField(s, Type.STRING_LEN));
+            sf.insertTuple(tid, t);
+        }
+
+        assertEquals("applesau", ((StringField) zm.getMin(0, 0)).getValue());
+        assertEquals("bananabr", ((StringField) zm.getMax(0, 0)).getValue());
+        // values beyond the stored prefix can't be ruled out
+        assertTrue(zm.mayMatch(0, new Predicate(0, Predicate.Op.EQUALS,
+                new StringField("bananabread", Type.STRING_LEN))));
+        assertTrue(zm.mayMatch(0, new Predicate(0, Predicate.Op.GREATER_THAN,
+                new StringField("bananabr", Type.STRING_LEN))));
+        assertFalse(zm.mayMatch(0, new Predicate(0, Predicate.Op.GREATER_THAN,
+                new StringField("cherry", Type.STRING_LEN))));
+        assertFalse(zm.mayMatch(0, new Predicate(0, Predicate.Op.LESS_THAN,
+                new StringField("apple", Type.STRING_LEN))));
+    }
+
+    /**
+     * JUnit suite target
+     */
+    public static junit.framework.Test suite() {
+        return new JUnit4TestAdapter(ZoneMapTest.class);
+    }
+}
@@ -0,0 +1,196 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.util.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import simpledb.*;
+
+/**
+ * Checks that joins with a table indexed on its join field probe the index
+ * with an IndexNestedLoopJoin, and that the optimizer costs them as such.
+ */
+public class IndexJoinTest extends SimpleDbTestBase {
+
+    private HeapFile createHeapFile(int rows, int mod, String prefix) throws Exception {
+        HeapFile hf = SystemTestUtil.createModHeapFile(rows, mod, prefix);
+        HashIndex.getIndexFile(hf.getFile(), 1).deleteOnExit();
+        return hf;
+    }
+
+    @Test public void equalityJoinProbesHashIndex() throws Exception {
+        HeapFile outer = createHeapFile(200, 50, "a");
+        HeapFile inner = createHeapFile(2000, 100, "b");
+        inner.addIndex(1);
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(outer.getId(), "o");
+        lp.addScan(inner.getId(), "i");
+        lp.addFilter("o.a0", Predicate.Op.LESS_THAN, "20");
+        lp.addJoin("o.a1", "i.b1", Predicate.Op.EQUALS);
+        lp.addProjectField("o.a0", null);
+        lp.addProjectField("i.b0", null);
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(Database.getCatalog().getTableName(outer.getId()), new TableStats(outer.getId(), 1));
+        stats.put(Database.getCatalog().getTableName(inner.getId()), new TableStats(inner.getId(), 1));
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        assertTrue(((Operator) plan).getChildren()[0] instanceof IndexNestedLoopJoin);
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int o = 0; o < 20; o++) {
+            for (int i = o; i < 2000; i += 100)
+                expected.add(new ArrayList<Integer>(Arrays.asList(o, i)));
+        }
+        SystemTestUtil.matchTuples(plan, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return the IndexNestedLoopJoin in a plan, or null if there is none */
+    private static IndexNestedLoopJoin findIndexJoin(DbIterator it) {
+        if (it instanceof IndexNestedLoopJoin)
+            return (IndexNestedLoopJoin) it;
+        if (it instanceof Operator) {
+            for (DbIterator child : ((Operator) it).getChildren()) {
+                IndexNestedLoopJoin j = findIndexJoin(child);
+                if (j != null)
+                    return j;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A filter on an indexed field replaces the scan of the inner table with
+     * an index lookup; the join still probes the index, applying the
+     * lookup's predicate to what it finds.
+     */
+    @Test public void filteredInnerProbesIndex() throws Exception {
+        HeapFile outer = createHeapFile(200, 50, "a");
+        HeapFile inner = createHeapFile(2000, 100, "b");
+        inner.addIndex(1);
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(outer.getId(), "o");
+        lp.addScan(inner.getId(), "i");
+        lp.addFilter("o.a0", Predicate.Op.LESS_THAN, "3");
+        lp.addFilter("i.b1", Predicate.Op.EQUALS, "1");
+        lp.addJoin("o.a1", "i.b1", Predicate.Op.EQUALS);
+        lp.addProjectField("o.a0", null);
+        lp.addProjectField("i.b0", null);
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(Database.getCatalog().getTableName(outer.getId()), new TableStats(outer.getId(), 1));
+        stats.put(Database.getCatalog().getTableName(inner.getId()), new TableStats(inner.getId(), 1));
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+        IndexNestedLoopJoin join = findIndexJoin(plan);
+        assertNotNull(join);
+        assertTrue(join.getChildren()[1] instanceof IndexLookup);
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int i = 1; i < 2000; i += 100)
+            expected.add(new ArrayList<Integer>(Arrays.asList(1, i)));
+        SystemTestUtil.matchTuples(plan, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Range joins on the key of a B+ tree search it once per outer tuple,
+     * applying the inner scan's projection and filters to what they find.
+     */
+    @Test public void rangeJoinProbesBTree() throws Exception {
+        HeapFile outer = createHeapFile(30, 1000, "a");
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 3000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i % 1000, i)));
+        Collections.shuffle(tuples, new Random(3));
+        File f = File.createTempFile("table", ".bt");
+        f.deleteOnExit();
+        BTreeFileEncoder.convert(tuples, f, 2, 0);
+        BTreeFile inner = new BTreeFile(f, 0, Utility.getTupleDesc(2, "b"));
+        Database.getCatalog().addTable(inner, SystemTestUtil.getUUID());
+
+        TransactionId tid = new TransactionId();
+        SeqScan innerScan = new SeqScan(tid, inner.getId(), "i", new int[] { 1 },
+                new Predicate[] { new Predicate(1, Predicate.Op.LESS_THAN, new IntField(1000)) });
+        // o.a0 > i.b0, so every outer tuple probes for smaller keys
+        JoinPredicate p = new JoinPredicate(0, Predicate.Op.GREATER_THAN, 0);
+        assertFalse(IndexNestedLoopJoin.canProbe(p, innerScan));
+        innerScan = new SeqScan(tid, inner.getId(), "i", new int[] { 0, 1 },
+                new Predicate[] { new Predicate(1, Predicate.Op.LESS_THAN, new IntField(1000)) });
+        assertTrue(IndexNestedLoopJoin.canProbe(p, innerScan));
+        IndexNestedLoopJoin join = new IndexNestedLoopJoin(p,
+                new SeqScan(tid, outer.getId(), "o", new int[] { 0 }), innerScan);
+        assertEquals(3, join.getTupleDesc().numFields());
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int o = 0; o < 30; o++) {
+            for (int i = 0; i < o; i++)
+                expected.add(new ArrayList<Integer>(Arrays.asList(o, i, i)));
+        }
+        SystemTestUtil.matchTuples(join, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /**
+     * Probing an index on a key costs much less than scanning the inner
+     * table for every outer tuple, and joins on unindexed fields are costed
+     * as nested-loops joins.
+     */
+    @Test public void indexProbesAreCheaper() throws Exception {
+        HeapFile outer = createHeapFile(200, 50, "a");
+        HeapFile inner = createHeapFile(20000, 20000, "b");
+        inner.addIndex(1);
+        Database.getCatalog().addTable(inner, Database.getCatalog().getTableName(inner.getId()), "b1");
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(outer.getId(), "o");
+        lp.addScan(inner.getId(), "i");
+        Vector<LogicalJoinNode> joins = new Vector<LogicalJoinNode>();
+        LogicalJoinNode indexed = new LogicalJoinNode("o", "i", "a1", "b1", Predicate.Op.EQUALS);
+        LogicalJoinNode unindexed = new LogicalJoinNode("o", "i", "a1", "b0", Predicate.Op.EQUALS);
+        joins.add(indexed);
+        JoinOptimizer jo = new JoinOptimizer(lp, joins);
+
+        double scanCost = inner.numPages() * 1000.0;
+        double nestedLoops = jo.estimateJoinCost(unindexed, 200, 20000, 1000.0, scanCost);
+        assertEquals(1000.0 + 200 * scanCost + 200 * 20000.0, nestedLoops, 1e-6);
+        double probes = jo.estimateJoinCost(indexed, 200, 20000, 1000.0, scanCost);
+        assertTrue(probes < nestedLoops / 10);
+        // the outer table has no index, so swapping sides does not help
+        assertEquals(scanCost + 20000 * 1000.0 + 20000 * 200.0,
+                jo.estimateJoinCost(indexed.swapInnerOuter(), 20000, 200, scanCost, 1000.0), 1e-6);
+    }
+
+    /**
+     * Probes fetch every index match before the filters over the inner
+     * table apply, so filtering the inner table does not make them cheaper.
+     */
+    @Test public void filteredInnerCostsAllMatches() throws Exception {
+        HeapFile outer = createHeapFile(200, 50, "a");
+        HeapFile inner = createHeapFile(2000, 100, "b");
+        inner.addIndex(1);
+        String name = Database.getCatalog().getTableName(inner.getId());
+        TableStats.setTableStats(name, new TableStats(inner.getId(), 1000));
+
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(outer.getId(), "o");
+        lp.addScan(inner.getId(), "i");
+        Vector<LogicalJoinNode> joins = new Vector<LogicalJoinNode>();
+        LogicalJoinNode j = new LogicalJoinNode("o", "i", "a1", "b1", Predicate.Op.EQUALS);
+        joins.add(j);
+        JoinOptimizer jo = new JoinOptimizer(lp, joins);
+
+        double scanCost = inner.numPages() * 1000.0;
+        double unfiltered = jo.estimateJoinCost(j, 200, 2000, 1000.0, scanCost);
+        double filtered = jo.estimateJoinCost(j, 200, 20, 1000.0, scanCost);
+        assertEquals(unfiltered, filtered, 1e-6);
+        // each probe still finds about 20 of the 2000 tuples
+        assertTrue(filtered > 1000.0 + 200 * 20);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(IndexJoinTest.class);
+    }
+}
@@ -0,0 +1,86 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.util.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import simpledb.*;
+
+/**
+ * Checks that LogicalPlan answers filters on the key of a B+ tree table
+ * with an IndexScan, and equality filters on hash indexed fields with an
+ * IndexLookup.
+ */
+public class IndexScanTest extends SimpleDbTestBase {
+
+    @Test public void filterUsesIndex() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 5000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+        Collections.shuffle(tuples, new Random(1));
+        File f = File.createTempFile("table", ".bt");
+        f.deleteOnExit();
+        BTreeFileEncoder.convert(tuples, f, 2, 0);
+        BTreeFile table = new BTreeFile(f, 0, Utility.getTupleDesc(2, "field"));
+        Database.getCatalog().addTable(table, SystemTestUtil.getUUID());
+        String tableName = Database.getCatalog().getTableName(table.getId());
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.field1", Predicate.Op.EQUALS, "3");
+        lp.addFilter("t.field0", Predicate.Op.LESS_THAN, "100");
+        lp.addProjectField("t.field0", null);
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(tableName, new TableStats(table.getId(), 1));
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+
+        IndexScan scan = (IndexScan) ((Operator) plan).getChildren()[0];
+        assertEquals(Predicate.Op.LESS_THAN, scan.getIndexPredicate().getOp());
+        assertEquals(1, scan.getPredicates().length);
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int i = 3; i < 100; i += 10)
+            expected.add(new ArrayList<Integer>(Arrays.asList(i)));
+        SystemTestUtil.matchTuples(plan, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    @Test public void equalityUsesHashIndex() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 5000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 100)));
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        HashIndex.getIndexFile(f, 1).deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile table = Utility.openHeapFile(2, "field", f);
+        table.addIndex(1);
+        String tableName = Database.getCatalog().getTableName(table.getId());
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), "t");
+        lp.addFilter("t.field0", Predicate.Op.GREATER_THAN, "2500");
+        lp.addFilter("t.field1", Predicate.Op.EQUALS, "42");
+        lp.addProjectField("t.field0", null);
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(tableName, new TableStats(table.getId(), 1));
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+
+        IndexLookup lookup = (IndexLookup) ((Operator) plan).getChildren()[0];
+        assertEquals(1, lookup.getField());
+        assertEquals(1, lookup.getPredicates().length);
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int i = 2542; i < 5000; i += 100)
+            expected.add(new ArrayList<Integer>(Arrays.asList(i)));
+        SystemTestUtil.matchTuples(plan, expected);
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(IndexScanTest.class);
+    }
+}
@@ -0,0 +1,264 @@
+package simpledb.systemtest;
+
+import java.util.*;
+import static org.junit.Assert.*;
+import org.junit.Before;
+import org.junit.Test;
+import simpledb.*;
+
+/**
+ * Checks that repartition and broadcast exchanges send every tuple where it
+ * belongs, and that parallel plans return what serial ones do.
+ */
+public class ParallelQueryTest extends SimpleDbTestBase {
+
+    private HeapFile a, b, c;
+    private HashMap<String, TableStats> stats;
+
+    private HeapFile createHeapFile(int rows, int mod, String prefix) throws Exception {
+        HeapFile hf = SystemTestUtil.createModHeapFile(rows, mod, prefix);
+        stats.put(Database.getCatalog().getTableName(hf.getId()), new TableStats(hf.getId(), 1));
+        return hf;
+    }
+
+    @Before
+    public void createTables() throws Exception {
+        stats = new HashMap<String, TableStats>();
+        a = createHeapFile(20000, 100, "a");
+        b = createHeapFile(50, 50, "b");
+        c = createHeapFile(15000, 7, "c");
+    }
+
+    /** Reads every output of an exchange on a thread of its own. */
+    private static ArrayList<ArrayList<Tuple>> readAll(final Exchange[] outputs) throws Exception {
+        final ArrayList<ArrayList<Tuple>> tuples = new ArrayList<ArrayList<Tuple>>();
+        final Exception[] failure = new Exception[1];
+        Thread[] threads = new Thread[outputs.length];
+        for (int i = 0; i < outputs.length; i++) {
+            final ArrayList<Tuple> read = new ArrayList<Tuple>();
+            tuples.add(read);
+            final Exchange output = outputs[i];
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        output.open();
+                        while (output.hasNext())
+                            read.add(output.next());
+                        output.close();
+                    } catch (Exception e) {
+                        failure[0] = e;
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        for (Thread t : threads)
+            t.join();
+        if (failure[0] != null)
+            throw failure[0];
+        return tuples;
+    }
+
+    private static DbIterator[] mockScans(int n, int tuples) {
+        DbIterator[] children = new DbIterator[n];
+        for (int i = 0; i < n; i++)
+            children[i] = new TestUtil.MockScan(i * tuples, (i + 1) * tuples, 2);
+        return children;
+    }
+
+    /** Each tuple goes to exactly one output, the one its field hashes to. */
+    @Test public void repartition() throws Exception {
+        Exchange[] outputs = Exchange.repartition(mockScans(3, 2000), 1, 4);
+        assertEquals(4, outputs.length);
+        HashSet<Integer> seen = new HashSet<Integer>();
+        ArrayList<ArrayList<Tuple>> tuples = readAll(outputs);
+        for (int o = 0; o < outputs.length; o++) {
+            for (Tuple t : tuples.get(o)) {
+                int v = ((IntField) t.getField(1)).getValue();
+                assertEquals(o, v % 4);
+                assertTrue(seen.add(v));
+            }
+        }
+        assertEquals(6000, seen.size());
+    }
+
+    /** Every output gets every tuple. */
+    @Test public void broadcast() throws Exception {
+        Exchange[] outputs = Exchange.broadcast(mockScans(2, 1000), 3);
+        for (ArrayList<Tuple> tuples : readAll(outputs))
+            assertEquals(2000, tuples.size());
+    }
+
+    /** The outputs of a repartition cannot be rewound on their own. */
+    @Test(expected = DbException.class)
+    public void noRewind() throws Exception {
+        Exchange[] outputs = Exchange.repartition(mockScans(1, 10), 0, 2);
+        outputs[0].open();
+        try {
+            outputs[0].rewind();
+        } finally {
+            outputs[0].close();
+            outputs[1].close();
+        }
+    }
+
+    private DbIterator plan(int parallelism, TransactionId tid, String join, String aggOp,
+            String groupBy) throws Exception {
+        LogicalPlan lp = new LogicalPlan();
+        lp.setParallelism(parallelism);
+        lp.addScan(a.getId(), "ta");
+        lp.addScan(b.getId(), "tb");
+        lp.addScan(c.getId(), "tc");
+        lp.addFilter("tc.c1", Predicate.Op.LESS_THAN, "5");
+        lp.addJoin("ta.a1", "tb.b0", Predicate.Op.EQUALS);
+        lp.addJoin("ta.a0", "tc.c0", join.equals("=") ? Predicate.Op.EQUALS : Predicate.Op.LESS_THAN);
+        if (groupBy != null)
+            lp.addProjectField(groupBy, null);
+        lp.addProjectField("tc.c1", aggOp);
+        lp.addAggregate(aggOp, "tc.c1", groupBy);
+        return lp.physicalPlan(tid, stats, false);
+    }
+
+    /** @return the classes of the operators of a plan */
+    private static HashSet<Class<?>> operators(DbIterator it) {
+        HashSet<Class<?>> classes = new HashSet<Class<?>>();
+        classes.add(it.getClass());
+        if (it instanceof Operator) {
+            for (DbIterator child : ((Operator) it).getChildren()) {
+                if (child != null)
+                    classes.addAll(operators(child));
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * @return the result of the query of {@link #plan} with an equality
+     *         join: the tuples of a with a0 < 15000 join with the tuple of c
+     *         with the same c0 when a0 % 7 < 5, and with the tuple of b
+     *         with b0 = a1 = a0 % 100 when that is under 50, which all
+     *         group on a0 % 100
+     */
+    private static ArrayList<ArrayList<Integer>> expected(String aggOp, boolean grouped) {
+        TreeMap<Integer, ArrayList<Integer>> groups = new TreeMap<Integer, ArrayList<Integer>>();
+        for (int i = 0; i < 15000; i++) {
+            if (i % 100 >= 50 || i % 7 >= 5)
+                continue;
+            int g = grouped ? i % 100 : 0;
+            if (!groups.containsKey(g))
+                groups.put(g, new ArrayList<Integer>());
+            groups.get(g).add(i % 7);
+        }
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (Map.Entry<Integer, ArrayList<Integer>> e : groups.entrySet()) {
+            ArrayList<Integer> values = e.getValue();
+            int sum = 0;
+            for (int v : values)
+                sum += v;
+            int agg;
+            if (aggOp.equals("count"))
+                agg = values.size();
+            else if (aggOp.equals("sum"))
+                agg = sum;
+            else if (aggOp.equals("min"))
+                agg = Collections.min(values);
+            else if (aggOp.equals("max"))
+                agg = Collections.max(values);
+            else
+                agg = sum / values.size();
+            tuples.add(grouped ? new ArrayList<Integer>(Arrays.asList(e.getKey(), agg))
+                    : new ArrayList<Integer>(Arrays.asList(agg)));
+        }
+        return tuples;
+    }
+
+    /**
+     * Parallel plans of equality joins run hash joins and partial
+     * aggregates in pipelines, and return the same results as serial
+     * plans, even when run again.
+     */
+    @Test public void parallelPlans() throws Exception {
+        TransactionId tid = new TransactionId();
+        String[][] queries = { { "count", "tb.b1" }, { "sum", null }, { "max", "ta.a1" },
+                { "min", "tb.b0" }, { "avg", "ta.a1" } };
+        for (String[] q : queries) {
+            assertFalse(operators(plan(1, tid, "=", q[0], q[1])).contains(Exchange.class));
+            DbIterator parallel = plan(4, tid, "=", q[0], q[1]);
+            HashSet<Class<?>> ops = operators(parallel);
+            assertTrue(ops.contains(Exchange.class));
+            assertTrue(ops.contains(HashJoin.class));
+            ArrayList<ArrayList<Integer>> expected = expected(q[0], q[1] != null);
+            SystemTestUtil.matchTuples(parallel, expected);
+            SystemTestUtil.matchTuples(parallel, expected);
+        }
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** @return the hash joins of a plan */
+    private static ArrayList<HashJoin> hashJoins(DbIterator it) {
+        ArrayList<HashJoin> joins = new ArrayList<HashJoin>();
+        if (it instanceof HashJoin)
+            joins.add((HashJoin) it);
+        if (it instanceof Operator) {
+            for (DbIterator child : ((Operator) it).getChildren()) {
+                if (child != null)
+                    joins.addAll(hashJoins(child));
+            }
+        }
+        return joins;
+    }
+
+    /**
+     * Rewinding a parallel plan restarts its pipelines through the gather
+     * above them, rather than rewinding the hash joins that probe the
+     * outputs of repartitions, which cannot be rewound on their own.
+     */
+    @Test public void rewindParallelPlan() throws Exception {
+        TransactionId tid = new TransactionId();
+        DbIterator parallel = plan(4, tid, "=", "count", "tb.b1");
+        boolean repartitioned = false;
+        for (HashJoin j : hashJoins(parallel)) {
+            DbIterator probe = j.getChildren()[j.buildsLeft() ? 1 : 0];
+            repartitioned |= probe instanceof Exchange
+                    && ((Exchange) probe).getMode() == Exchange.Mode.REPARTITION;
+        }
+        assertTrue(repartitioned);
+
+        ArrayList<ArrayList<Integer>> expected = expected("count", true);
+        parallel.open();
+        for (int run = 0; run < 2; run++) {
+            ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+            while (parallel.hasNext())
+                tuples.add(SystemTestUtil.tupleToList(parallel.next()));
+            assertEquals(expected.size(), tuples.size());
+            assertTrue(tuples.containsAll(expected));
+            parallel.rewind();
+        }
+        parallel.close();
+        Database.getBufferPool().transactionComplete(tid);
+
+        Exchange[] left = Exchange.repartition(mockScans(1, 10), 0, 2);
+        Exchange[] right = Exchange.repartition(mockScans(1, 10), 0, 2);
+        HashJoin join = new HashJoin(new JoinPredicate(0, Predicate.Op.EQUALS, 0), left[0], right[0]);
+        join.open();
+        while (join.hasNext())
+            join.next();
+        try {
+            join.rewind();
+            fail("expected the join not to be rewound");
+        } catch (DbException e) {
+            // expected
+        } finally {
+            join.close();
+            left[1].close();
+            right[1].close();
+        }
+    }
+
+    /** Plans with joins other than equality joins are not split. */
+    @Test public void rangeJoinsStaySerial() throws Exception {
+        TransactionId tid = new TransactionId();
+        assertFalse(operators(plan(4, tid, "<", "count", null)).contains(Exchange.class));
+        Database.getBufferPool().transactionComplete(tid);
+    }
+}
@@ -0,0 +1,72 @@
+package simpledb.systemtest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import static org.junit.Assert.*;
+import org.junit.Test;
+import simpledb.*;
+
+/**
+ * Runs the filter system tests with the predicate evaluated by the scan, and
+ * checks that LogicalPlan pushes WHERE clause filters and the referenced
+ * columns into the scans.
+ */
+public class ScanFilterTest extends FilterBase {
+    @Override
+    protected int applyPredicate(HeapFile table, TransactionId tid, Predicate predicate)
+            throws DbException, TransactionAbortedException, IOException {
+        SeqScan ss = new SeqScan(tid, table.getId(), "", null, new Predicate[] { predicate });
+        ss.open();
+
+        int resultCount = 0;
+        while (ss.hasNext()) {
+            assertNotNull(ss.next());
+            resultCount += 1;
+        }
+
+        ss.close();
+        return resultCount;
+    }
+
+    @Test public void pushedIntoScan() throws Exception {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>();
+        for (int i = 0; i < 3000; i++)
+            tuples.add(new ArrayList<Integer>(Arrays.asList(i, i % 10)));
+        File f = File.createTempFile("table", ".dat");
+        f.deleteOnExit();
+        ZoneMap.getZoneFile(f).deleteOnExit();
+        HeapFileEncoder.convert(tuples, f, BufferPool.PAGE_SIZE, 2);
+        HeapFile table = Utility.openHeapFile(2, "field", f);
+        String name = "t";
+
+        TransactionId tid = new TransactionId();
+        LogicalPlan lp = new LogicalPlan();
+        lp.addScan(table.getId(), name);
+        String tableName = Database.getCatalog().getTableName(table.getId());
+        lp.addFilter(name + ".field0", Predicate.Op.LESS_THAN, "100");
+        lp.addFilter(name + ".field1", Predicate.Op.EQUALS, "3");
+        lp.addProjectField(name + ".field0", null);
+        HashMap<String, TableStats> stats = new HashMap<String, TableStats>();
+        stats.put(tableName, new TableStats(table.getId(), 1));
+        DbIterator plan = lp.physicalPlan(tid, stats, false);
+
+        ArrayList<ArrayList<Integer>> expected = new ArrayList<ArrayList<Integer>>();
+        for (int i = 3; i < 100; i += 10)
+            expected.add(new ArrayList<Integer>(Arrays.asList(i)));
+        // only the selected field is decoded by the scan
+        SeqScan scan = (SeqScan) ((Operator) plan).getChildren()[0];
+        assertArrayEquals(new int[] { 0 }, scan.getFields());
+        assertEquals(2, scan.getPredicates().length);
+
+        SystemTestUtil.matchTuples(plan, expected);
+        // the zone map let the scan skip every page but the first
+        assertEquals(1, table.getPagesRead());
+        Database.getBufferPool().transactionComplete(tid);
+    }
+
+    /** Make test compatible with older version of ant. */
+    public static junit.framework.Test suite() {
+        return new junit.framework.JUnit4TestAdapter(ScanFilterTest.class);
+    }
+}
@@ -52,6 +52,25 @@ public class SystemTestUtil {
         return Utility.openHeapFile(columns, colPrefix, temp);
     }
 
+    /**
+     * Creates a heap file of the specified number of two-field tuples whose
+     * first field is a unique id, from 0 up, and second is the id modulo mod.
+     */
+    public static HeapFile createModHeapFile(int rows, int mod, String colPrefix)
+            throws IOException, DbException, TransactionAbortedException {
+        ArrayList<ArrayList<Integer>> tuples = new ArrayList<ArrayList<Integer>>(rows);
+        for (int i = 0; i < rows; i++) {
+            ArrayList<Integer> tuple = new ArrayList<Integer>(2);
+            tuple.add(i);
+            tuple.add(i % mod);
+            tuples.add(tuple);
+        }
+        File temp = File.createTempFile("table", ".dat");
+        temp.deleteOnExit();
+        HeapFileEncoder.convert(tuples, temp, BufferPool.PAGE_SIZE, 2);
+        return Utility.openHeapFile(2, colPrefix, temp);
+    }
+
     public static File createRandomHeapFileUnopened(int columns, int rows,
             int maxValue, Map<Integer, Integer> columnSpecification,
             ArrayList<ArrayList<Integer>> tuples) throws IOException {